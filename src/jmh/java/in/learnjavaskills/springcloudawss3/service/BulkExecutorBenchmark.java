@@ -0,0 +1,76 @@
+package in.learnjavaskills.springcloudawss3.service;
+
+import in.learnjavaskills.springcloudawss3.standin.S3StandInServer;
+import org.openjdk.jmh.annotations.*;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.core.sync.ResponseTransformer;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
+import software.amazon.awssdk.services.s3.S3Client;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Per key GETs through {@link BulkKeyExecutor} on virtual threads against a fixed pool of platform threads of the same
+ * concurrency, against the in-process {@link S3StandInServer} with latencyMillis time to first byte. Scores are
+ * objects per second; with enough concurrency to hide the latency both should approach concurrency / latency, the
+ * difference is in the thread start and context switch cost and, with {@code -prof gc}, in memory per key.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+public class BulkExecutorBenchmark
+{
+    private static final String BUCKET = "benchmark-bucket";
+    private static final int KEY_COUNT = 2000;
+
+    @Param({"VIRTUAL", "PLATFORM"})
+    private BulkKeyExecutor.Threads threads;
+
+    @Param({"64", "512"})
+    private int concurrency;
+
+    @Param({"20"})
+    private long latencyMillis;
+
+    private S3StandInServer s3StandInServer;
+    private S3Client s3Client;
+    private BulkKeyExecutor bulkKeyExecutor;
+    private List<String> keys;
+
+    @Setup(Level.Trial)
+    public void startStandIn() throws IOException {
+        s3StandInServer = S3StandInServer.start();
+        s3StandInServer.createBucket(BUCKET);
+        // one connection per concurrent key, as s3-client.max-connections does for the application
+        s3Client = s3StandInServer.s3ClientBuilder()
+                .httpClientBuilder(ApacheHttpClient.builder().maxConnections(concurrency))
+                .build();
+        bulkKeyExecutor = new BulkKeyExecutor(threads, concurrency);
+        keys = IntStream.range(0, KEY_COUNT).mapToObj(index -> "objects/" + index).toList();
+        for (String key : keys)
+            s3Client.putObject(builder -> builder.bucket(BUCKET).key(key), RequestBody.fromString(key));
+        s3StandInServer.setLatency(Duration.ofMillis(latencyMillis), Duration.ZERO);
+    }
+
+    @TearDown(Level.Trial)
+    public void stopStandIn() throws IOException {
+        s3Client.close();
+        s3StandInServer.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(KEY_COUNT)
+    public BulkOperationReport getEveryKey() {
+        BulkOperationReport bulkOperationReport = bulkKeyExecutor.forEachKey(keys, key ->
+                s3Client.getObject(builder -> builder.bucket(BUCKET).key(key), ResponseTransformer.toBytes()));
+        if (!bulkOperationReport.isComplete())
+            throw new IllegalStateException(bulkOperationReport.failedCount() + " keys failed");
+        return bulkOperationReport;
+    }
+}
@@ -0,0 +1,100 @@
+package in.learnjavaskills.springcloudawss3.service;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32C;
+
+/**
+ * Cost of checksumming the bytes as they stream through. fillPart reads a part into a direct buffer in 64 KiB reads
+ * as {@link StreamingMultipartUploader} does, with no checksum, CRC32C or SHA-256 of every read; verifyDownload copies
+ * an object of 4 parts to a null stream plain, through {@link PartChecksumInputStream} or through a SHA-256 digest.
+ * Scores are parts per second, multiply by PART_SIZE for bytes; CRC32C should stay within a few percent of the plain
+ * copy while SHA-256 runs several times slower.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+public class ChecksumBenchmark
+{
+    private static final int PART_SIZE = 8 * 1024 * 1024;
+    private static final int READ_SIZE = 64 * 1024;
+    private static final int PART_COUNT = 4;
+
+    public enum Algorithm { NONE, CRC32C, SHA256 }
+
+    @Param({"NONE", "CRC32C", "SHA256"})
+    private Algorithm algorithm;
+
+    private byte[] content;
+    private ByteBuffer part;
+    private List<PartChecksumInputStream.Part> parts;
+    private final byte[] copyBuffer = new byte[READ_SIZE];
+
+    @Setup(Level.Trial)
+    public void createContent() {
+        content = new byte[PART_SIZE * PART_COUNT];
+        new Random(22).nextBytes(content);
+        part = ByteBuffer.allocateDirect(PART_SIZE);
+        parts = new ArrayList<>();
+        for (int index = 0; index < PART_COUNT; index++) {
+            CRC32C checksum = new CRC32C();
+            checksum.update(content, index * PART_SIZE, PART_SIZE);
+            parts.add(new PartChecksumInputStream.Part(PART_SIZE, ObjectChecksums.encode(checksum)));
+        }
+    }
+
+    @Benchmark
+    public long fillPart() throws IOException, NoSuchAlgorithmException {
+        ReadableByteChannel readableByteChannel = Channels.newChannel(new ByteArrayInputStream(content, 0, PART_SIZE));
+        CRC32C crc32c = new CRC32C();
+        MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+        part.clear();
+        while (part.hasRemaining()) {
+            int position = part.position();
+            part.limit(Math.min(part.capacity(), position + READ_SIZE));
+            if (readableByteChannel.read(part) < 0)
+                break;
+            switch (algorithm) {
+                case CRC32C -> crc32c.update(part.slice(position, part.position() - position));
+                case SHA256 -> sha256.update(part.slice(position, part.position() - position));
+                case NONE -> {
+                }
+            }
+            part.limit(part.capacity());
+        }
+        return algorithm == Algorithm.SHA256 ? sha256.digest()[0] : crc32c.getValue();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PART_COUNT)
+    public long verifyDownload() throws IOException, NoSuchAlgorithmException {
+        InputStream body = new ByteArrayInputStream(content);
+        switch (algorithm) {
+            case CRC32C -> body = new PartChecksumInputStream(body, "benchmark", parts);
+            case SHA256 -> body = new DigestInputStream(body, MessageDigest.getInstance("SHA-256"));
+            case NONE -> {
+            }
+        }
+        long copied = 0;
+        OutputStream outputStream = OutputStream.nullOutputStream();
+        for (int read; (read = body.read(copyBuffer)) != -1; copied += read)
+            outputStream.write(copyBuffer, 0, read);
+        return copied;
+    }
+}
@@ -0,0 +1,56 @@
+package in.learnjavaskills.springcloudawss3.service;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the old BufferedReader + String.split loop of readFileUsingS3Client with {@link CsvStreamReader}.
+ * Run with {@code ./gradlew jmh -Pjmh.includes=CsvReadBenchmark} and add {@code -prof gc} to see the allocation rate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class CsvReadBenchmark
+{
+    @Param({"10000", "200000"})
+    private int rows;
+
+    private byte[] csv;
+
+    @Setup
+    public void createCsv() {
+        StringBuilder stringBuilder = new StringBuilder("id,name,city,amount,created\n");
+        for (int i = 0; i < rows; i++) {
+            stringBuilder.append(i).append(",customer-").append(i).append(",Mumbai,")
+                    .append(i * 31 % 10_000).append(",2024-09-0").append(i % 9 + 1).append('\n');
+        }
+        csv = stringBuilder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public void bufferedReaderSplit(Blackhole blackhole) throws IOException {
+        BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(csv)));
+        String line;
+        while (Objects.nonNull(line = bufferedReader.readLine())) {
+            for (String field : line.split(","))
+                blackhole.consume(field);
+        }
+    }
+
+    @Benchmark
+    public long csvStreamReader(Blackhole blackhole) throws IOException {
+        return new CsvStreamReader(new ByteArrayInputStream(csv)).read(csvRow -> {
+            for (int i = 0; i < csvRow.fieldCount(); i++)
+                blackhole.consume(csvRow.fieldLength(i));
+            return true;
+        });
+    }
+}
@@ -0,0 +1,69 @@
+package in.learnjavaskills.springcloudawss3.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.http.SdkHttpMethod;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+
+import java.net.URL;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Presigning throughput. {@code singleKey} signs one URL per call on one thread, i.e. signatures per second per core.
+ * {@code bulk} signs a batch through {@link PreSignedUrlObject#createPreSignedUrls} on every core; divide its
+ * score by the number of cores to compare with {@code singleKey}. The cache is configured so nothing is reused.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class PresignBenchmark
+{
+    private static final Duration EXPIRY = Duration.ofMinutes(10);
+    // URLs signed per call of bulk, also its operations per invocation so the score is per URL
+    private static final int BATCH_SIZE = 1000;
+
+    private S3Presigner s3Presigner;
+    private PreSignedUrlObject preSignedUrlObject;
+    private List<String> keys;
+    private int next;
+
+    @Setup
+    public void createPresigner() {
+        s3Presigner = S3Presigner.builder()
+                .region(Region.AP_SOUTH_1)
+                .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create("AKIDEXAMPLE", "secret")))
+                .build();
+        // minimum remaining validity equal to the expiry, so every URL is signed
+        PresignedUrlCache presignedUrlCache = new PresignedUrlCache(new SimpleMeterRegistry(), 1, EXPIRY);
+        preSignedUrlObject = new PreSignedUrlObject(null, s3Presigner, presignedUrlCache, null, EXPIRY);
+        keys = IntStream.range(0, BATCH_SIZE)
+                .mapToObj(i -> "gallery/2024/photo-" + i + ".jpg")
+                .toList();
+    }
+
+    @TearDown
+    public void closePresigner() {
+        s3Presigner.close();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public URL singleKey() {
+        String key = keys.get(next++ % keys.size());
+        return preSignedUrlObject.createPreSignedUrls("learnjavaskills", List.of(key), SdkHttpMethod.GET, EXPIRY)
+                .get(key);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public Map<String, URL> bulk() {
+        return preSignedUrlObject.createPreSignedUrls("learnjavaskills", keys, SdkHttpMethod.GET, EXPIRY);
+    }
+}
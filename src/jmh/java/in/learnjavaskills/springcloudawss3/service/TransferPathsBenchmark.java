@@ -0,0 +1,201 @@
+package in.learnjavaskills.springcloudawss3.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import in.learnjavaskills.springcloudawss3.standin.S3StandInServer;
+import io.awspring.cloud.s3.InMemoryBufferingS3OutputStreamProvider;
+import io.awspring.cloud.s3.Jackson2JsonS3ObjectConverter;
+import io.awspring.cloud.s3.PropertiesS3ObjectContentTypeResolver;
+import io.awspring.cloud.s3.S3Template;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.util.unit.DataSize;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+import software.amazon.awssdk.transfer.s3.S3TransferManager;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Every upload and download path of {@link UploadObjects}, {@link StreamingMultipartUploader} and {@link DownloadObjects}, run against the in-process
+ * {@link S3StandInServer} so results do not depend on the network. Throughput mode gives operations per second,
+ * multiply by objectSize for bytes per second; sample time mode gives the p50/p90/p99 latency per operation.
+ * Add {@code -prof gc} for allocation per operation. The 1 GB size takes minutes per path, select sizes with
+ * {@code -p objectSize=1024,1048576}. latencyMillis and bandwidth make the stand-in behave like a remote bucket,
+ * for example {@code -p latencyMillis=30 -p bandwidth=104857600}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+public class TransferPathsBenchmark
+{
+    private static final String BUCKET = "benchmark-bucket";
+    private static final String DOWNLOAD_KEY = "download-source.csv";
+    private static final byte[] CSV_ROW = "1024,learnjavaskills.in,spring cloud aws s3,2024-01-01\n".getBytes(StandardCharsets.UTF_8);
+
+    @Param({"1024", "1048576", "67108864", "1073741824"})
+    private long objectSize;
+
+    // time to first byte of every request
+    @Param({"0"})
+    private long latencyMillis;
+
+    // bytes per second in each direction, 0 for unlimited
+    @Param({"0"})
+    private long bandwidth;
+
+    private S3StandInServer s3StandInServer;
+    private S3Client s3Client;
+    private S3AsyncClient s3AsyncClient;
+    private S3TransferManager s3TransferManager;
+    private S3Presigner s3Presigner;
+    private TransferProgressPublisher transferProgressPublisher;
+    private UploadObjects uploadObjects;
+    private DownloadObjects downloadObjects;
+    private StreamingMultipartUploader streamingMultipartUploader;
+    private ObjectCompressor objectCompressor;
+    private Path workDirectory;
+    private String sourceFile;
+    private String destinationFile;
+
+    @Setup(Level.Trial)
+    public void startStandIn() throws IOException {
+        s3StandInServer = S3StandInServer.start();
+        s3StandInServer.createBucket(BUCKET);
+        s3Client = s3StandInServer.newS3Client();
+        s3AsyncClient = s3StandInServer.newS3CrtAsyncClient();
+        s3TransferManager = S3TransferManager.builder().s3Client(s3AsyncClient).build();
+        s3Presigner = S3Presigner.builder()
+                .endpointOverride(s3StandInServer.endpoint())
+                .region(S3StandInServer.REGION)
+                .credentialsProvider(StaticCredentialsProvider.create(
+                        AwsBasicCredentials.create(S3StandInServer.ACCESS_KEY, S3StandInServer.SECRET_KEY)))
+                .build();
+        // same wiring as the spring cloud aws auto configuration
+        S3Template s3Template = new S3Template(s3Client,
+                new InMemoryBufferingS3OutputStreamProvider(s3Client, new PropertiesS3ObjectContentTypeResolver()),
+                new Jackson2JsonS3ObjectConverter(new ObjectMapper()), s3Presigner);
+        transferProgressPublisher = new TransferProgressPublisher(new SimpleMeterRegistry());
+        streamingMultipartUploader = new StreamingMultipartUploader(s3Client, DataSize.ofMegabytes(8), 4);
+        objectCompressor = new ObjectCompressor(DataSize.ofMegabytes(4), 0);
+        uploadObjects = new UploadObjects(s3Client, s3TransferManager, s3Template, transferProgressPublisher,
+                streamingMultipartUploader, objectCompressor, null, null);
+        workDirectory = Files.createTempDirectory("transfer-benchmark");
+        ObjectDiskCache objectDiskCache = new ObjectDiskCache(s3Client, new SimpleMeterRegistry(),
+                workDirectory.resolve("cache"), DataSize.ofGigabytes(2));
+        downloadObjects = new DownloadObjects(s3Template, s3Client, s3TransferManager, transferProgressPublisher,
+                objectDiskCache, null, null, null);
+
+        sourceFile = writeCsvFile(workDirectory.resolve("source.csv"), objectSize).toString();
+        destinationFile = workDirectory.resolve("destination.csv").toString();
+        uploadObjects.uploadFileUsingS3Client(BUCKET, DOWNLOAD_KEY, sourceFile);
+        s3StandInServer.setLatency(Duration.ofMillis(latencyMillis), Duration.ZERO);
+        s3StandInServer.setBandwidth(bandwidth);
+    }
+
+    @TearDown(Level.Trial)
+    public void stopStandIn() throws IOException {
+        s3TransferManager.close();
+        s3AsyncClient.close();
+        s3Presigner.close();
+        s3Client.close();
+        transferProgressPublisher.destroy();
+        streamingMultipartUploader.destroy();
+        objectCompressor.destroy();
+        s3StandInServer.close();
+        try (var paths = Files.walk(workDirectory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    // S3Client.getObject(request, Path) refuses to overwrite, every download starts without a destination file
+    @Setup(Level.Invocation)
+    public void deleteDestination() throws IOException {
+        Files.deleteIfExists(Path.of(destinationFile));
+    }
+
+    @Benchmark
+    public void uploadUsingS3Client() {
+        uploadObjects.uploadFileUsingS3Client(BUCKET, "upload-s3-client.csv", sourceFile);
+    }
+
+    @Benchmark
+    public void uploadUsingTransferManager() {
+        uploadObjects.uploadFileWithTransferManager(BUCKET, "upload-transfer-manager.csv", sourceFile);
+    }
+
+    @Benchmark
+    public void uploadUsingS3Template() {
+        uploadObjects.uploadFileUsingS3Template(BUCKET, "upload-s3-template.csv", sourceFile);
+    }
+
+    @Benchmark
+    public StreamingUploadResult uploadUsingStreamingMultipartUploader() throws IOException {
+        try (InputStream inputStream = Files.newInputStream(Path.of(sourceFile))) {
+            return streamingMultipartUploader.upload(BUCKET, "upload-streaming.csv", inputStream);
+        }
+    }
+
+    // with a bandwidth cap the smaller body should win over the plain uploads
+    @Benchmark
+    public void uploadGzipWithMetaData() {
+        uploadObjects.uploadFileWithMetaData(BUCKET, "upload-gzip.csv", sourceFile, ObjectCodec.GZIP);
+    }
+
+    @Benchmark
+    public void downloadUsingS3Client() {
+        downloadObjects.downloadFileUsingS3Client(BUCKET, DOWNLOAD_KEY, destinationFile);
+    }
+
+    @Benchmark
+    public boolean downloadUsingRangedGets() {
+        return downloadObjects.downloadFileUsingRangedGets(BUCKET, DOWNLOAD_KEY, destinationFile,
+                RangedFileDownload.DEFAULT_PART_SIZE, RangedFileDownload.DEFAULT_CONCURRENCY);
+    }
+
+    // every invocation after the first is a revalidated hit
+    @Benchmark
+    public boolean downloadUsingCache() {
+        return downloadObjects.downloadFileUsingCache(BUCKET, DOWNLOAD_KEY, destinationFile);
+    }
+
+    @Benchmark
+    public void downloadUsingTransferManager() {
+        downloadObjects.downloadFileUsingS3TransferManager(BUCKET, DOWNLOAD_KEY, destinationFile);
+    }
+
+    @Benchmark
+    public void downloadUsingS3Template() {
+        downloadObjects.downloadFileUsingS3Template(BUCKET, DOWNLOAD_KEY, destinationFile);
+    }
+
+    @Benchmark
+    public long readUsingS3Client() {
+        return downloadObjects.readFileUsingS3Client(BUCKET, DOWNLOAD_KEY, csvRow -> true);
+    }
+
+    private static Path writeCsvFile(Path path, long size) throws IOException {
+        try (OutputStream outputStream = new BufferedOutputStream(Files.newOutputStream(path), 1024 * 1024)) {
+            long remaining = size;
+            while (remaining > 0) {
+                int length = (int) Math.min(CSV_ROW.length, remaining);
+                outputStream.write(CSV_ROW, 0, length);
+                remaining -= length;
+            }
+        }
+        return path;
+    }
+}
@@ -0,0 +1,42 @@
+package in.learnjavaskills.springcloudawss3.config;
+
+import in.learnjavaskills.springcloudawss3.service.AdaptiveConcurrencyLimiter;
+import io.awspring.cloud.autoconfigure.core.AwsClientCustomizer;
+import io.awspring.cloud.core.SpringCloudClientConfiguration;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
+import software.amazon.awssdk.http.SdkHttpClient;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
+import software.amazon.awssdk.services.s3.S3ClientBuilder;
+
+/**
+ * Customizes the S3Client built by spring-cloud-aws, which every service of the application shares: requests go
+ * through the {@link AdaptiveConcurrencyLimiter} and are retried with jittered backoff, and the connection pool is
+ * large enough for the bulk executor of {@link in.learnjavaskills.springcloudawss3.service.BulkObjectOperations}.
+ */
+@Configuration
+public class S3ClientConfiguration
+{
+    @Bean
+    public AwsClientCustomizer<S3ClientBuilder> s3ClientCustomizer(AdaptiveConcurrencyLimiter adaptiveConcurrencyLimiter,
+                                                                               @Value("${adaptive-limiter.max-retries:8}") int maxRetries,
+                                                                               @Value("${s3-client.max-connections:256}") int maxConnections) {
+        return new AwsClientCustomizer<>() {
+            @Override
+            public ClientOverrideConfiguration overrideConfiguration() {
+                // start from the spring-cloud-aws defaults, a customizer's configuration replaces them
+                return new SpringCloudClientConfiguration().clientOverrideConfiguration().toBuilder()
+                        .addExecutionInterceptor(adaptiveConcurrencyLimiter.executionInterceptor())
+                        .retryPolicy(AdaptiveConcurrencyLimiter.jitteredRetryPolicy(maxRetries))
+                        .build();
+            }
+
+            @Override
+            public SdkHttpClient.Builder<?> httpClientBuilder() {
+                return ApacheHttpClient.builder().maxConnections(maxConnections);
+            }
+        };
+    }
+}
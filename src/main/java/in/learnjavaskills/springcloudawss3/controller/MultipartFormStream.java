@@ -0,0 +1,209 @@
+package in.learnjavaskills.springcloudawss3.controller;
+
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads a multipart/form-data body part by part while it arrives. Every part's body is an InputStream which ends at
+ * the next boundary, nothing is written to disk and only one fixed buffer is held, so a form carrying a file of any
+ * size can be relayed as it is read. A body which ends before its closing boundary, for example because the client
+ * disconnected, makes the part stream throw instead of ending, so a truncated file is never taken as complete.
+ */
+class MultipartFormStream
+{
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_HEADER_BYTES = 16 * 1024;
+
+    private final InputStream inputStream;
+    // CRLF "--" boundary, the first boundary of a body lacks the CRLF which is why the buffer starts with one
+    private final byte[] delimiter;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+    private int limit;
+    private boolean endOfInput;
+    private PartInputStream currentPart;
+    private boolean lastPartRead;
+
+    /**
+     * A part of the form, read its body before asking for the next part.
+     * @param name form field name
+     * @param fileName file name sent by the client, null for plain fields
+     * @param contentType content type of the part, null if the client sent none
+     * @param body content of the part
+     */
+    record Part(String name, String fileName, String contentType, InputStream body) {
+    }
+
+    MultipartFormStream(InputStream inputStream, String boundary) {
+        if (boundary == null || boundary.isEmpty() || boundary.length() > 70)
+            throw new IllegalArgumentException("Invalid multipart boundary " + boundary);
+        this.inputStream = inputStream;
+        this.delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.ISO_8859_1);
+        buffer[0] = '\r';
+        buffer[1] = '\n';
+        limit = 2;
+        // everything before the first boundary is a preamble, read it like a part which nobody asked for
+        currentPart = new PartInputStream();
+    }
+
+    /**
+     * skip what is left of the current part and read the headers of the next one.
+     * @return next part, null after the last one
+     */
+    Part nextPart() throws IOException {
+        if (currentPart != null) {
+            currentPart.skipToEnd();
+            currentPart = null;
+            lastPartRead = readAfterDelimiter();
+        }
+        if (lastPartRead)
+            return null;
+
+        HttpHeaders partHeaders = readHeaders();
+        String contentDisposition = partHeaders.getFirst(HttpHeaders.CONTENT_DISPOSITION);
+        if (contentDisposition == null)
+            throw new IOException("Multipart part without Content-Disposition");
+        ContentDisposition disposition = ContentDisposition.parse(contentDisposition);
+        currentPart = new PartInputStream();
+        return new Part(disposition.getName(), disposition.getFilename(),
+                partHeaders.getFirst(HttpHeaders.CONTENT_TYPE), currentPart);
+    }
+
+    /**
+     * @return true if the delimiter just read was the closing one
+     */
+    private boolean readAfterDelimiter() throws IOException {
+        int first = readByte();
+        int second = readByte();
+        if (first == '-' && second == '-')
+            return true;
+        // transport padding may follow a boundary
+        while (first == ' ' || first == '\t') {
+            first = second;
+            second = readByte();
+        }
+        if (first != '\r' || second != '\n')
+            throw new IOException("Malformed multipart boundary line");
+        return false;
+    }
+
+    private HttpHeaders readHeaders() throws IOException {
+        HttpHeaders partHeaders = new HttpHeaders();
+        StringBuilder line = new StringBuilder();
+        int headerBytes = 0;
+        while (true) {
+            int read = readByte();
+            if (++headerBytes > MAX_HEADER_BYTES)
+                throw new IOException("Multipart part headers are longer than " + MAX_HEADER_BYTES + " bytes");
+            if (read != '\n') {
+                line.append((char) read);
+                continue;
+            }
+            int length = line.length() > 0 && line.charAt(line.length() - 1) == '\r' ? line.length() - 1 : line.length();
+            if (length == 0)
+                return partHeaders;
+            String header = new String(line.substring(0, length).getBytes(StandardCharsets.ISO_8859_1), StandardCharsets.UTF_8);
+            int colon = header.indexOf(':');
+            if (colon > 0)
+                partHeaders.add(header.substring(0, colon).trim(), header.substring(colon + 1).trim());
+            line.setLength(0);
+        }
+    }
+
+    private int readByte() throws IOException {
+        if (position == limit && !fill(1))
+            throw new EOFException("Multipart body ended before its closing boundary");
+        return buffer[position++] & 0xff;
+    }
+
+    /**
+     * move the unread bytes to the front of the buffer and read until at least wanted bytes are buffered.
+     * @return false if the input ended first
+     */
+    private boolean fill(int wanted) throws IOException {
+        if (position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            limit -= position;
+            position = 0;
+        }
+        while (limit < wanted && !endOfInput) {
+            int read = inputStream.read(buffer, limit, buffer.length - limit);
+            if (read < 0)
+                endOfInput = true;
+            else
+                limit += read;
+        }
+        return limit >= wanted;
+    }
+
+    /**
+     * @return start of the first delimiter which lies wholly before searchLimit, -1 if there is none
+     */
+    private int indexOfDelimiter(int searchLimit) {
+        int last = searchLimit - delimiter.length;
+        for (int start = position; start <= last; start++) {
+            if (buffer[start] != delimiter[0])
+                continue;
+            int matched = 1;
+            while (matched < delimiter.length && buffer[start + matched] == delimiter[matched])
+                matched++;
+            if (matched == delimiter.length)
+                return start;
+        }
+        return -1;
+    }
+
+    /**
+     * Body of one part, ends where the next delimiter starts and leaves the buffer right after it.
+     */
+    private final class PartInputStream extends InputStream
+    {
+        private boolean ended;
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) < 0 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] target, int offset, int length) throws IOException {
+            if (ended)
+                return -1;
+            if (length == 0)
+                return 0;
+            if (limit - position < delimiter.length && !fill(delimiter.length))
+                throw new EOFException("Multipart body ended before its closing boundary");
+            // only look as far as this read could return, a large buffer is not scanned again for every small read
+            int searchLimit = (int) Math.min(limit, (long) position + length + delimiter.length - 1);
+            int delimiterStart = indexOfDelimiter(searchLimit);
+            int available;
+            if (delimiterStart == position) {
+                position += delimiter.length;
+                ended = true;
+                return -1;
+            } else if (delimiterStart >= 0) {
+                available = delimiterStart - position;
+            } else {
+                // the tail may be the start of a delimiter, keep it until more input arrives
+                available = searchLimit - position - (delimiter.length - 1);
+            }
+            int copied = Math.min(length, available);
+            System.arraycopy(buffer, position, target, offset, copied);
+            position += copied;
+            return copied;
+        }
+
+        private void skipToEnd() throws IOException {
+            byte[] discarded = new byte[4096];
+            while (read(discarded, 0, discarded.length) >= 0) {
+                // drain
+            }
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package in.learnjavaskills.springcloudawss3.controller;
+
+import in.learnjavaskills.springcloudawss3.service.DownloadObjects;
+import in.learnjavaskills.springcloudawss3.service.ObjectCodec;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+
+/**
+ * Download objects through the application, for clients which cannot reach S3 with a presigned URL. The body is
+ * relayed from S3 as the client reads it, Range and If-None-Match are passed on to S3 so partial and conditional
+ * downloads cost no more than they would against S3 itself. Objects stored gzip compressed by an {@link ObjectCodec}
+ * are relayed compressed with Content-Encoding: gzip to clients which accept gzip, and decoded here for the others.
+ * A range of a compressed object cannot be decoded, those are answered with the whole object.
+ */
+@RestController
+public class ObjectDownloadController
+{
+    private final DownloadObjects downloadObjects;
+
+    @Autowired
+    public ObjectDownloadController(DownloadObjects downloadObjects) {
+        this.downloadObjects = downloadObjects;
+    }
+
+    /**
+     * stream an object, answering 200 with the whole object, 206 with the requested range, 304 if the client's copy is
+     * current, or the status S3 answered with (404, 412, 416); other S3 errors become 502. Range is ignored for objects
+     * stored with an {@link ObjectCodec}. Reading from S3 failing after the body started cuts the response short and
+     * is thrown on, a client disconnecting is not an error.
+     * @param bucketName name of the bucket
+     * @param key key of the object
+     */
+    @GetMapping("/buckets/{bucketName}/objects")
+    public void downloadObject(@PathVariable String bucketName, @RequestParam String key,
+                               @RequestHeader(name = HttpHeaders.RANGE, required = false) String range,
+                               @RequestHeader(name = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+                               @RequestHeader(name = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+                               HttpServletResponse httpServletResponse) throws IOException {
+        try {
+            downloadObjects.streamObject(bucketName, key, range, ifNoneMatch, acceptsGzip(acceptEncoding),
+                    (getObjectResponse, bodyCodec) -> {
+                        writeHeaders(getObjectResponse, bodyCodec, httpServletResponse);
+                        return httpServletResponse.getOutputStream();
+                    });
+        } catch (S3Exception s3Exception) {
+            if (httpServletResponse.isCommitted())
+                throw s3Exception;
+            int statusCode = s3Exception.statusCode();
+            if (statusCode == HttpStatus.NOT_MODIFIED.value()) {
+                httpServletResponse.setStatus(statusCode);
+                if (s3Exception.awsErrorDetails() != null && s3Exception.awsErrorDetails().sdkHttpResponse() != null)
+                    s3Exception.awsErrorDetails().sdkHttpResponse().firstMatchingHeader(HttpHeaders.ETAG)
+                            .ifPresent(eTag -> httpServletResponse.setHeader(HttpHeaders.ETAG, eTag));
+            } else if (statusCode == HttpStatus.NOT_FOUND.value() || statusCode == HttpStatus.PRECONDITION_FAILED.value()
+                    || statusCode == HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value()) {
+                httpServletResponse.sendError(statusCode);
+            } else {
+                httpServletResponse.sendError(HttpStatus.BAD_GATEWAY.value());
+            }
+        } catch (UncheckedIOException uncheckedIOException) {
+            // only writing to the client throws this: it disconnected, the S3 connection is already aborted and there
+            // is nobody left to answer. S3 failing mid-body is an SdkClientException and goes to the error handling
+        }
+    }
+
+    private static void writeHeaders(GetObjectResponse getObjectResponse, ObjectCodec bodyCodec,
+                                     HttpServletResponse httpServletResponse) {
+        boolean coded = ObjectCodec.of(getObjectResponse) != ObjectCodec.NONE;
+        boolean partial = getObjectResponse.contentRange() != null;
+        httpServletResponse.setStatus(partial ? HttpStatus.PARTIAL_CONTENT.value() : HttpStatus.OK.value());
+        httpServletResponse.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        if (partial)
+            httpServletResponse.setHeader(HttpHeaders.CONTENT_RANGE, getObjectResponse.contentRange());
+        // the length of a body decoded on the way is not known up front, it goes out chunked
+        if (getObjectResponse.contentLength() != null && coded == (bodyCodec != ObjectCodec.NONE))
+            httpServletResponse.setContentLengthLong(getObjectResponse.contentLength());
+        if (getObjectResponse.contentType() != null)
+            httpServletResponse.setContentType(getObjectResponse.contentType());
+        if (coded)
+            httpServletResponse.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        // relayed as stored, the client's HTTP stack decodes it
+        if (bodyCodec != ObjectCodec.NONE)
+            httpServletResponse.setHeader(HttpHeaders.CONTENT_ENCODING, bodyCodec.contentEncoding());
+        if (getObjectResponse.eTag() != null)
+            httpServletResponse.setHeader(HttpHeaders.ETAG, getObjectResponse.eTag());
+        if (getObjectResponse.lastModified() != null)
+            httpServletResponse.setHeader(HttpHeaders.LAST_MODIFIED,
+                    DateTimeFormatter.RFC_1123_DATE_TIME.format(getObjectResponse.lastModified().atOffset(ZoneOffset.UTC)));
+    }
+
+    // gzip or x-gzip, or *, listed without q=0
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null)
+            return false;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parameters = coding.split(";");
+            String name = parameters[0].trim().toLowerCase(Locale.ROOT);
+            if (!name.equals("gzip") && !name.equals("x-gzip") && !name.equals("*"))
+                continue;
+            boolean refused = false;
+            for (int index = 1; index < parameters.length; index++) {
+                String parameter = parameters[index].replace(" ", "").toLowerCase(Locale.ROOT);
+                if (parameter.startsWith("q="))
+                    refused = parameter.substring(2).matches("0(\\.0*)?");
+            }
+            if (!refused)
+                return true;
+        }
+        return false;
+    }
+}
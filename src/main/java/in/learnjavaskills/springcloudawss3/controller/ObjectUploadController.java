@@ -0,0 +1,165 @@
+package in.learnjavaskills.springcloudawss3.controller;
+
+import in.learnjavaskills.springcloudawss3.service.StreamingMultipartUploader;
+import in.learnjavaskills.springcloudawss3.service.StreamingUploadResult;
+import in.learnjavaskills.springcloudawss3.service.UploadCapacityExceededException;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RestController;
+import software.amazon.awssdk.core.exception.SdkException;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Upload objects through the application straight from the request body. The body is read as it arrives and handed
+ * to the {@link StreamingMultipartUploader}, which sends it to S3 part by part with several parts in flight; nothing
+ * is staged on disk and memory stays at the uploader's part buffers whatever the size of the upload. If the client
+ * disconnects or sends less than announced, the multipart upload is aborted and no object is written. When every
+ * part buffer is held by other uploads for longer than streaming-upload.buffer-wait the request is answered with
+ * 503 and a Retry-After header rather than tying up its thread any longer; the application's own uploads do not
+ * have this limit and wait for a buffer instead.
+ *
+ * Multipart forms are parsed by {@link MultipartFormStream} rather than the servlet container, which would write every
+ * part to disk first; spring.servlet.multipart.resolve-lazily keeps the container from parsing them ahead of it.
+ */
+@RestController
+public class ObjectUploadController
+{
+    private final StreamingMultipartUploader streamingMultipartUploader;
+    private final Duration bufferWait;
+
+    @Autowired
+    public ObjectUploadController(StreamingMultipartUploader streamingMultipartUploader,
+                                  @Value("${streaming-upload.buffer-wait:10s}") Duration bufferWait) {
+        this.streamingMultipartUploader = streamingMultipartUploader;
+        this.bufferWait = bufferWait;
+    }
+
+    /**
+     * store the raw request body as the object, with the request's Content-Type.
+     * @param bucketName name of the bucket
+     * @param key object key, the rest of the path
+     * @return 201 with the uploaded object, 400 if the body could not be read, 502 if S3 failed, 503 if no part
+     * buffer was free
+     */
+    @PutMapping("/buckets/{bucketName}/uploads/{*key}")
+    public ResponseEntity<StreamingUploadResult> uploadBody(@PathVariable String bucketName, @PathVariable String key,
+                                                            HttpServletRequest httpServletRequest) {
+        String objectKey = stripLeadingSlash(key);
+        if (objectKey.isEmpty())
+            return ResponseEntity.badRequest().build();
+        try {
+            InputStream body = httpServletRequest.getInputStream();
+            long contentLength = httpServletRequest.getContentLengthLong();
+            if (contentLength >= 0)
+                body = new ExactLengthInputStream(body, contentLength);
+            return ResponseEntity.status(HttpStatus.CREATED).body(streamingMultipartUploader.upload(bucketName, objectKey,
+                    httpServletRequest.getContentType(), Map.of(), body, bufferWait));
+        } catch (UploadCapacityExceededException uploadCapacityExceededException) {
+            return serviceUnavailable(null);
+        } catch (IOException ioException) {
+            // the client went away or sent a short body, the upload is already aborted
+            return ResponseEntity.badRequest().build();
+        } catch (SdkException sdkException) {
+            return ResponseEntity.status(HttpStatus.BAD_GATEWAY).build();
+        }
+    }
+
+    /**
+     * store every file of a multipart/form-data body as prefix + file name, one after the other as they arrive.
+     * Fields without a file name are skipped.
+     * @param bucketName name of the bucket
+     * @param prefix key prefix of the files, the rest of the path
+     * @return 201 with the uploaded objects, 400 if the body could not be read, 502 if S3 failed, 503 if no part
+     * buffer was free
+     */
+    @PostMapping(path = "/buckets/{bucketName}/uploads/{*prefix}", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<List<StreamingUploadResult>> uploadForm(@PathVariable String bucketName,
+                                                                  @PathVariable String prefix,
+                                                                  HttpServletRequest httpServletRequest) {
+        String keyPrefix = stripLeadingSlash(prefix);
+        List<StreamingUploadResult> uploaded = new ArrayList<>();
+        try {
+            String boundary = MediaType.parseMediaType(httpServletRequest.getContentType()).getParameter("boundary");
+            MultipartFormStream multipartFormStream = new MultipartFormStream(httpServletRequest.getInputStream(),
+                    unquote(boundary));
+            for (MultipartFormStream.Part part; (part = multipartFormStream.nextPart()) != null; ) {
+                if (part.fileName() == null || part.fileName().isBlank())
+                    continue;
+                uploaded.add(streamingMultipartUploader.upload(bucketName, keyPrefix + baseName(part.fileName()),
+                        part.contentType(), Map.of(), part.body(), bufferWait));
+            }
+            return ResponseEntity.status(HttpStatus.CREATED).body(uploaded);
+        } catch (UploadCapacityExceededException uploadCapacityExceededException) {
+            return serviceUnavailable(uploaded);
+        } catch (IOException | IllegalArgumentException exception) {
+            return ResponseEntity.badRequest().body(uploaded);
+        } catch (SdkException sdkException) {
+            return ResponseEntity.status(HttpStatus.BAD_GATEWAY).body(uploaded);
+        }
+    }
+
+    private static <T> ResponseEntity<T> serviceUnavailable(T body) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "1").body(body);
+    }
+
+    private static String stripLeadingSlash(String path) {
+        return path.startsWith("/") ? path.substring(1) : path;
+    }
+
+    private static String unquote(String value) {
+        return value != null && value.length() > 1 && value.startsWith("\"") && value.endsWith("\"")
+                ? value.substring(1, value.length() - 1) : value;
+    }
+
+    // some browsers send the client side path of the file
+    private static String baseName(String fileName) {
+        return fileName.substring(Math.max(fileName.lastIndexOf('/'), fileName.lastIndexOf('\\')) + 1);
+    }
+
+    /**
+     * Fails instead of ending when the body ends before Content-Length bytes, so a dropped connection is not
+     * taken for the end of the upload.
+     */
+    private static final class ExactLengthInputStream extends FilterInputStream
+    {
+        private long remaining;
+
+        private ExactLengthInputStream(InputStream inputStream, long length) {
+            super(inputStream);
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) < 0 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] target, int offset, int length) throws IOException {
+            if (remaining == 0)
+                return -1;
+            int read = super.read(target, offset, (int) Math.min(length, remaining));
+            if (read < 0)
+                throw new EOFException("Request body ended " + remaining + " bytes before its Content-Length");
+            remaining -= read;
+            return read;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package in.learnjavaskills.springcloudawss3.controller;
+
+import in.learnjavaskills.springcloudawss3.service.TransferProgressEvent;
+import in.learnjavaskills.springcloudawss3.service.TransferProgressPublisher;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.function.Consumer;
+
+/**
+ * Stream transfer progress events to clients as Server-Sent Events. Each client is written to on a thread of its own,
+ * a client which reads too slowly gets only the latest progress of each transfer, and is disconnected once it falls
+ * {@link TransferProgressPublisher#MAX_PENDING_TRANSFERS} transfers behind.
+ */
+@RestController
+public class TransferProgressController
+{
+    private final TransferProgressPublisher transferProgressPublisher;
+
+    @Autowired
+    public TransferProgressController(TransferProgressPublisher transferProgressPublisher) {
+        this.transferProgressPublisher = transferProgressPublisher;
+    }
+
+    /**
+     * subscribe to the progress of every upload and download, one "progress" event per published update.
+     * @return emitter kept open until the client disconnects
+     */
+    @GetMapping(path = "/transfers/progress", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamProgress() {
+        // no timeout, the stream lives as long as the client keeps it open
+        SseEmitter sseEmitter = new SseEmitter(0L);
+        Consumer<TransferProgressEvent> subscriber = new Consumer<>() {
+            @Override
+            public void accept(TransferProgressEvent transferProgressEvent) {
+                try {
+                    sseEmitter.send(SseEmitter.event()
+                            .name("progress")
+                            .id(String.valueOf(transferProgressEvent.transferId()))
+                            .data(transferProgressEvent, MediaType.APPLICATION_JSON));
+                } catch (IOException | IllegalStateException exception) {
+                    // client went away
+                    transferProgressPublisher.unsubscribe(this);
+                }
+            }
+        };
+        sseEmitter.onCompletion(() -> transferProgressPublisher.unsubscribe(subscriber));
+        sseEmitter.onTimeout(() -> transferProgressPublisher.unsubscribe(subscriber));
+        sseEmitter.onError(throwable -> transferProgressPublisher.unsubscribe(subscriber));
+        transferProgressPublisher.subscribe(subscriber, sseEmitter::complete);
+        return sseEmitter;
+    }
+}
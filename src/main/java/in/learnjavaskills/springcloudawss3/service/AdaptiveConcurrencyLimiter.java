@@ -0,0 +1,299 @@
+package in.learnjavaskills.springcloudawss3.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import software.amazon.awssdk.core.interceptor.ExecutionInterceptor;
+import software.amazon.awssdk.core.retry.RetryMode;
+import software.amazon.awssdk.core.retry.RetryPolicy;
+import software.amazon.awssdk.core.retry.backoff.FullJitterBackoffStrategy;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Concurrency limit for S3 requests, learnt separately for every bucket and key prefix (the first prefixDepth
+ * "/" separated segments of the key). Each prefix follows AIMD: a request answered with 503 SlowDown or 429 halves
+ * its limit, a request answered within latencyTolerance times the fastest latency seen raises it by 1/limit, so
+ * about one per round of requests. Callers above the limit wait for a request of the same prefix to finish. A prefix
+ * without requests for idleExpiry is forgotten together with its gauge, so keys with ever new prefixes do not grow the
+ * limits or the meters without bound; it starts again from initialLimit.
+ *
+ * The limiter is applied to every request of the S3Client bean through {@link #executionInterceptor()}, together
+ * with {@link #jitteredRetryPolicy(int)}; throttled requests are retried after a jittered delay while the lowered
+ * limit keeps them from arriving in a burst again.
+ *
+ * Metrics: s3.limiter.limit (gauge tagged bucket and prefix), s3.limiter.throttled (tagged bucket).
+ */
+@Service
+public class AdaptiveConcurrencyLimiter
+{
+    private final MeterRegistry meterRegistry;
+    private final int initialLimit;
+    private final int minLimit;
+    private final int maxLimit;
+    private final double latencyTolerance;
+    private final int prefixDepth;
+    private final long idleExpiryNanos;
+    private final Map<String, PrefixLimit> limits = new ConcurrentHashMap<>();
+    private final AtomicLong lastExpiryNanos = new AtomicLong(System.nanoTime());
+
+    @Autowired
+    public AdaptiveConcurrencyLimiter(MeterRegistry meterRegistry,
+                                      @Value("${adaptive-limiter.initial-limit:16}") int initialLimit,
+                                      @Value("${adaptive-limiter.min-limit:1}") int minLimit,
+                                      @Value("${adaptive-limiter.max-limit:256}") int maxLimit,
+                                      @Value("${adaptive-limiter.latency-tolerance:2.0}") double latencyTolerance,
+                                      @Value("${adaptive-limiter.prefix-depth:1}") int prefixDepth,
+                                      @Value("${adaptive-limiter.idle-expiry:10m}") Duration idleExpiry) {
+        if (minLimit < 1 || initialLimit < minLimit || maxLimit < initialLimit)
+            throw new IllegalArgumentException("limits must satisfy 1 <= minLimit <= initialLimit <= maxLimit");
+        if (!(latencyTolerance >= 1))
+            throw new IllegalArgumentException("latencyTolerance must be at least 1");
+        if (prefixDepth < 0)
+            throw new IllegalArgumentException("prefixDepth must not be negative");
+        if (idleExpiry.isNegative() || idleExpiry.isZero())
+            throw new IllegalArgumentException("idleExpiry must be positive, got " + idleExpiry);
+        this.meterRegistry = meterRegistry;
+        this.initialLimit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.latencyTolerance = latencyTolerance;
+        this.prefixDepth = prefixDepth;
+        this.idleExpiryNanos = idleExpiry.toNanos();
+    }
+
+    /**
+     * @return interceptor which runs every request of a synchronous S3 client through this limiter, do not add it to
+     * asynchronous clients as it blocks the calling thread
+     */
+    public ExecutionInterceptor executionInterceptor() {
+        return new AdaptiveLimitInterceptor(this);
+    }
+
+    /**
+     * Retry policy to pair with the limiter: full jitter backoff for every retry, a longer base delay for throttling,
+     * and no client side retry quota, throttling is handled by lowering the limit instead of failing requests fast.
+     * @param maxRetries retries after the first attempt
+     */
+    public static RetryPolicy jitteredRetryPolicy(int maxRetries) {
+        return RetryPolicy.builder(RetryMode.STANDARD)
+                .numRetries(maxRetries)
+                .backoffStrategy(FullJitterBackoffStrategy.builder()
+                        .baseDelay(Duration.ofMillis(50))
+                        .maxBackoffTime(Duration.ofSeconds(5))
+                        .build())
+                .throttlingBackoffStrategy(FullJitterBackoffStrategy.builder()
+                        .baseDelay(Duration.ofMillis(200))
+                        .maxBackoffTime(Duration.ofSeconds(20))
+                        .build())
+                .retryCapacityCondition(retryPolicyContext -> true)
+                .build();
+    }
+
+    /**
+     * @return current limit of the prefix the key falls under
+     */
+    public int currentLimit(String bucketName, String key) {
+        PrefixLimit prefixLimit = limits.get(limitKey(bucketName, key));
+        return prefixLimit == null ? initialLimit : prefixLimit.limit();
+    }
+
+    /**
+     * @return current limit of every prefix seen so far, keyed by bucket/prefix
+     */
+    public Map<String, Integer> currentLimits() {
+        Map<String, Integer> currentLimits = new TreeMap<>();
+        limits.forEach((limitKey, prefixLimit) -> currentLimits.put(limitKey, prefixLimit.limit()));
+        return currentLimits;
+    }
+
+    /**
+     * wait until the prefix of the key is below its limit.
+     * @param bucketName bucket of the request, null for requests which are not about a bucket
+     * @param key object key or listing prefix, null if the request has none
+     */
+    Permit acquire(String bucketName, String key) throws InterruptedException {
+        expireIdleLimits();
+        String limitKey = limitKey(bucketName, key);
+        while (true) {
+            PrefixLimit prefixLimit = limits.computeIfAbsent(limitKey, ignored -> new PrefixLimit(bucketName, prefix(key)));
+            if (prefixLimit.acquire())
+                return new Permit(prefixLimit);
+            // expired between the lookup and the acquire, it is out of the map already
+        }
+    }
+
+    // at most once per idleExpiry, so a prefix goes after between one and two idleExpiry without requests
+    private void expireIdleLimits() {
+        long now = System.nanoTime();
+        long lastExpiry = lastExpiryNanos.get();
+        if (now - lastExpiry < idleExpiryNanos || !lastExpiryNanos.compareAndSet(lastExpiry, now))
+            return;
+        for (String limitKey : limits.keySet()) {
+            // inside compute, a new limit for the prefix cannot register its gauge before the old one is removed
+            limits.computeIfPresent(limitKey, (ignored, prefixLimit) -> {
+                if (!prefixLimit.expireIfIdle(now))
+                    return prefixLimit;
+                meterRegistry.remove(prefixLimit.limitGauge);
+                return null;
+            });
+        }
+    }
+
+    private String limitKey(String bucketName, String key) {
+        return (bucketName == null ? "" : bucketName) + "/" + prefix(key);
+    }
+
+    private String prefix(String key) {
+        if (key == null)
+            return "";
+        int end = -1;
+        for (int segment = 0; segment < prefixDepth; segment++) {
+            int slash = key.indexOf('/', end + 1);
+            if (slash < 0)
+                break;
+            end = slash;
+        }
+        return key.substring(0, end + 1);
+    }
+
+    /**
+     * One request admitted by the limiter, report every attempt with {@link #sample(long, boolean)} and release the
+     * permit once the request is done.
+     */
+    final class Permit
+    {
+        private final PrefixLimit prefixLimit;
+        private boolean released;
+
+        private Permit(PrefixLimit prefixLimit) {
+            this.prefixLimit = prefixLimit;
+        }
+
+        /**
+         * @param latencyNanos time from sending the request to receiving the response headers
+         * @param throttled true if S3 answered 503 SlowDown or 429
+         */
+        void sample(long latencyNanos, boolean throttled) {
+            prefixLimit.sample(latencyNanos, throttled);
+        }
+
+        synchronized void release() {
+            if (!released) {
+                released = true;
+                prefixLimit.release();
+            }
+        }
+    }
+
+    private final class PrefixLimit
+    {
+        private final Counter throttledCounter;
+        private final Gauge limitGauge;
+        // a lock rather than a monitor, waiting on a monitor pins a virtual thread to its carrier
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition belowLimit = lock.newCondition();
+        // guarded by lock
+        private double limit = initialLimit;
+        private int inFlight;
+        private long fastestLatencyNanos = Long.MAX_VALUE;
+        private long lastDecreaseNanos = System.nanoTime() - Long.MAX_VALUE / 2;
+        private long lastUsedNanos = System.nanoTime();
+        private boolean expired;
+
+        private PrefixLimit(String bucketName, String prefix) {
+            String bucketTag = bucketName == null ? "" : bucketName;
+            this.throttledCounter = meterRegistry.counter("s3.limiter.throttled", "bucket", bucketTag);
+            this.limitGauge = Gauge.builder("s3.limiter.limit", this, PrefixLimit::limit)
+                    .tag("bucket", bucketTag)
+                    .tag("prefix", prefix)
+                    .register(meterRegistry);
+        }
+
+        int limit() {
+            lock.lock();
+            try {
+                return (int) limit;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * @return false if the limit expired and must not be used any more
+         */
+        boolean acquire() throws InterruptedException {
+            lock.lockInterruptibly();
+            try {
+                if (expired)
+                    return false;
+                while (inFlight >= (int) limit)
+                    belowLimit.await();
+                inFlight++;
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void release() {
+            lock.lock();
+            try {
+                inFlight--;
+                lastUsedNanos = System.nanoTime();
+                belowLimit.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        boolean expireIfIdle(long now) {
+            lock.lock();
+            try {
+                expired = expired || (inFlight == 0 && now - lastUsedNanos >= idleExpiryNanos);
+                return expired;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void sample(long latencyNanos, boolean throttled) {
+            long now = System.nanoTime();
+            lock.lock();
+            try {
+                if (throttled) {
+                    throttledCounter.increment();
+                    // requests sent before the last decrease were throttled at the old limit, do not halve twice for them
+                    long window = fastestLatencyNanos == Long.MAX_VALUE ? latencyNanos : fastestLatencyNanos;
+                    if (now - lastDecreaseNanos >= window) {
+                        limit = Math.max(minLimit, limit / 2);
+                        lastDecreaseNanos = now;
+                    }
+                    return;
+                }
+
+                // the fastest latency drifts up slowly so that one lucky request does not make every later one look slow
+                fastestLatencyNanos = latencyNanos < fastestLatencyNanos ? latencyNanos
+                        : fastestLatencyNanos + (latencyNanos - fastestLatencyNanos) / 100;
+                // only grow while the limit is actually used, otherwise it says nothing about what S3 handles
+                if (latencyNanos <= fastestLatencyNanos * latencyTolerance && inFlight * 2 >= (int) limit) {
+                    double increased = Math.min(maxLimit, limit + 1 / limit);
+                    if ((int) increased > (int) limit)
+                        belowLimit.signal();
+                    limit = increased;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package in.learnjavaskills.springcloudawss3.service;
+
+import software.amazon.awssdk.core.SdkRequest;
+import software.amazon.awssdk.core.exception.AbortedException;
+import software.amazon.awssdk.core.interceptor.Context;
+import software.amazon.awssdk.core.interceptor.ExecutionAttribute;
+import software.amazon.awssdk.core.interceptor.ExecutionAttributes;
+import software.amazon.awssdk.core.interceptor.ExecutionInterceptor;
+
+/**
+ * Runs the requests of a synchronous S3 client through an {@link AdaptiveConcurrencyLimiter}. The permit is taken
+ * once per request, before the first attempt, and held across retries; every attempt reports its latency and whether
+ * S3 throttled it.
+ */
+class AdaptiveLimitInterceptor implements ExecutionInterceptor
+{
+    private static final ExecutionAttribute<AdaptiveConcurrencyLimiter.Permit> PERMIT =
+            new ExecutionAttribute<>("AdaptiveConcurrencyLimiter.Permit");
+    private static final ExecutionAttribute<Long> ATTEMPT_START_NANOS =
+            new ExecutionAttribute<>("AdaptiveConcurrencyLimiter.AttemptStartNanos");
+
+    private final AdaptiveConcurrencyLimiter adaptiveConcurrencyLimiter;
+
+    AdaptiveLimitInterceptor(AdaptiveConcurrencyLimiter adaptiveConcurrencyLimiter) {
+        this.adaptiveConcurrencyLimiter = adaptiveConcurrencyLimiter;
+    }
+
+    @Override
+    public void beforeExecution(Context.BeforeExecution context, ExecutionAttributes executionAttributes) {
+        SdkRequest request = context.request();
+        String bucketName = request.getValueForField("Bucket", String.class).orElse(null);
+        String key = request.getValueForField("Key", String.class)
+                .or(() -> request.getValueForField("Prefix", String.class))
+                .orElse(null);
+        try {
+            executionAttributes.putAttribute(PERMIT, adaptiveConcurrencyLimiter.acquire(bucketName, key));
+        } catch (InterruptedException interruptedException) {
+            Thread.currentThread().interrupt();
+            throw AbortedException.builder()
+                    .message("Interrupted while waiting for the concurrency limit of " + bucketName)
+                    .cause(interruptedException)
+                    .build();
+        }
+    }
+
+    @Override
+    public void beforeTransmission(Context.BeforeTransmission context, ExecutionAttributes executionAttributes) {
+        executionAttributes.putAttribute(ATTEMPT_START_NANOS, System.nanoTime());
+    }
+
+    @Override
+    public void afterTransmission(Context.AfterTransmission context, ExecutionAttributes executionAttributes) {
+        AdaptiveConcurrencyLimiter.Permit permit = executionAttributes.getAttribute(PERMIT);
+        Long attemptStartNanos = executionAttributes.getAttribute(ATTEMPT_START_NANOS);
+        if (permit == null || attemptStartNanos == null)
+            return;
+        int statusCode = context.httpResponse().statusCode();
+        permit.sample(System.nanoTime() - attemptStartNanos, statusCode == 503 || statusCode == 429);
+    }
+
+    @Override
+    public void afterExecution(Context.AfterExecution context, ExecutionAttributes executionAttributes) {
+        release(executionAttributes);
+    }
+
+    @Override
+    public void onExecutionFailure(Context.FailedExecution context, ExecutionAttributes executionAttributes) {
+        release(executionAttributes);
+    }
+
+    private static void release(ExecutionAttributes executionAttributes) {
+        AdaptiveConcurrencyLimiter.Permit permit = executionAttributes.getAttribute(PERMIT);
+        if (permit != null)
+            permit.release();
+    }
+}
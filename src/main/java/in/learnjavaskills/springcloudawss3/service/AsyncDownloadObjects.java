@@ -0,0 +1,157 @@
+package in.learnjavaskills.springcloudawss3.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import software.amazon.awssdk.core.FileTransformerConfiguration;
+import software.amazon.awssdk.core.ResponseBytes;
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
+import software.amazon.awssdk.core.async.ResponsePublisher;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.transfer.s3.S3TransferManager;
+import software.amazon.awssdk.transfer.s3.model.CompletedDirectoryDownload;
+import software.amazon.awssdk.transfer.s3.model.CompletedFileDownload;
+import software.amazon.awssdk.transfer.s3.model.DownloadDirectoryRequest;
+import software.amazon.awssdk.transfer.s3.model.DownloadFileRequest;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking counterparts of {@link DownloadObjects}, built on the CRT based S3AsyncClient. Every method returns as
+ * soon as the request is handed to the client and no thread waits while the object is transferred. Failures complete
+ * the future exceptionally, with the S3Exception (for example NoSuchKeyException) or SdkClientException as cause.
+ *
+ * Objects stored with an {@link ObjectCodec} are decoded by the file and in-memory downloads once the body is
+ * complete, on the {@link ObjectDecoder} threads rather than the client's completion threads; {@link #streamObject}
+ * relays the content as stored.
+ */
+@Service
+public class AsyncDownloadObjects
+{
+    private final S3AsyncClient s3AsyncClient;
+    private final S3TransferManager s3TransferManager;
+    private final TransferProgressPublisher transferProgressPublisher;
+    private final ObjectDecoder objectDecoder;
+
+    @Autowired
+    public AsyncDownloadObjects(S3AsyncClient s3AsyncClient, S3TransferManager s3TransferManager,
+                                TransferProgressPublisher transferProgressPublisher, ObjectDecoder objectDecoder) {
+        this.s3AsyncClient = s3AsyncClient;
+        this.s3TransferManager = s3TransferManager;
+        this.transferProgressPublisher = transferProgressPublisher;
+        this.objectDecoder = objectDecoder;
+    }
+
+    /**
+     * download file using S3AsyncClient
+     * @param bucketName name of the bucket
+     * @param key desire key - usually the name of the file
+     * @param downloadDestinationPath file to download to, replaced if it exists
+     * @return future of the GetObject response, complete once the file is written
+     */
+    public CompletableFuture<GetObjectResponse> downloadFile(String bucketName, String key, Path downloadDestinationPath) {
+        return s3AsyncClient.getObject(getObjectRequest(bucketName, key),
+                        AsyncResponseTransformer.toFile(downloadDestinationPath,
+                                FileTransformerConfiguration.defaultCreateOrReplaceExisting()))
+                .thenApplyAsync(getObjectResponse -> {
+                    decodeInPlace(ObjectCodec.of(getObjectResponse), downloadDestinationPath);
+                    return getObjectResponse;
+                }, objectDecoder);
+    }
+
+    /**
+     * read a small object into memory.
+     * @return future of the whole object with its response
+     */
+    public CompletableFuture<ResponseBytes<GetObjectResponse>> readObject(String bucketName, String key) {
+        return s3AsyncClient.getObject(getObjectRequest(bucketName, key), AsyncResponseTransformer.toBytes())
+                .thenApplyAsync(responseBytes -> {
+                    ObjectCodec objectCodec = ObjectCodec.of(responseBytes.response());
+                    if (objectCodec == ObjectCodec.NONE)
+                        return responseBytes;
+                    try {
+                        return ResponseBytes.fromByteArrayUnsafe(responseBytes.response(),
+                                objectCodec.decode(responseBytes.asInputStream()).readAllBytes());
+                    } catch (IOException ioException) {
+                        throw new UncheckedIOException("Decoding " + key + " failed", ioException);
+                    }
+                }, objectDecoder);
+    }
+
+    /**
+     * Stream an object as a reactive stream of buffers. The future completes once the response headers arrived; the
+     * body is fetched only as fast as the subscriber requests it, so an object of any size can be relayed to a slow
+     * consumer without buffering it. Subscribe exactly once, an unsubscribed body keeps its connection open.
+     * The buffers carry the content as stored, {@link ObjectCodec#of(GetObjectResponse)} of the response tells whether
+     * it is coded.
+     * @return future of the response and its body publisher
+     */
+    public CompletableFuture<ResponsePublisher<GetObjectResponse>> streamObject(String bucketName, String key) {
+        return s3AsyncClient.getObject(getObjectRequest(bucketName, key), AsyncResponseTransformer.toPublisher());
+    }
+
+    /**
+     * download file using s3TransferManager without waiting for it, progress goes to the TransferProgressPublisher.
+     * @return future of the completed download
+     */
+    public CompletableFuture<CompletedFileDownload> downloadFileUsingS3TransferManager(String bucketName, String key,
+                                                                                      Path downloadDestinationPath) {
+        DownloadFileRequest downloadFileRequest = DownloadFileRequest.builder()
+                .destination(downloadDestinationPath)
+                .getObjectRequest(getObjectRequest(bucketName, key))
+                .addTransferListener(transferProgressPublisher.listenerFor(TransferProgressEvent.Direction.DOWNLOAD,
+                        bucketName, key))
+                .build();
+        return s3TransferManager.downloadFile(downloadFileRequest).completionFuture()
+                .thenApplyAsync(completedFileDownload -> {
+                    decodeInPlace(ObjectCodec.of(completedFileDownload.response()), downloadDestinationPath);
+                    return completedFileDownload;
+                }, objectDecoder);
+    }
+
+    /**
+     * download every object under a prefix using S3TransferManager without waiting for it. The future completes
+     * normally when single objects fail, they are listed in {@link CompletedDirectoryDownload#failedTransfers()}.
+     * @param prefix key prefix to download, empty for the whole bucket
+     * @return future of the completed directory download
+     */
+    public CompletableFuture<CompletedDirectoryDownload> downloadDirectoryUsingS3TransferManager(String bucketName,
+                                                                                                String prefix,
+                                                                                                Path downloadDestinationPath) {
+        CodedFileCollector codedFileCollector = new CodedFileCollector();
+        DownloadDirectoryRequest downloadDirectoryRequest = DownloadDirectoryRequest.builder()
+                .bucket(bucketName)
+                .listObjectsV2RequestTransformer(builder -> builder.prefix(prefix))
+                .destination(downloadDestinationPath)
+                .downloadFileRequestTransformer(builder -> builder.addTransferListener(codedFileCollector))
+                .build();
+        return s3TransferManager.downloadDirectory(downloadDirectoryRequest).completionFuture()
+                .thenApplyAsync(completedDirectoryDownload -> {
+                    try {
+                        codedFileCollector.decodeAll();
+                    } catch (IOException ioException) {
+                        throw new UncheckedIOException("Decoding a download of " + prefix + " failed", ioException);
+                    }
+                    return completedDirectoryDownload;
+                }, objectDecoder);
+    }
+
+    private static void decodeInPlace(ObjectCodec objectCodec, Path file) {
+        try {
+            objectCodec.decodeInPlace(file);
+        } catch (IOException ioException) {
+            throw new UncheckedIOException("Decoding " + file + " failed", ioException);
+        }
+    }
+
+    private static GetObjectRequest getObjectRequest(String bucketName, String key) {
+        return GetObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .build();
+    }
+}
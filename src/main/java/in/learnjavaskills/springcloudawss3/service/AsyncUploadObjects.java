@@ -0,0 +1,118 @@
+package in.learnjavaskills.springcloudawss3.service;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+import software.amazon.awssdk.transfer.s3.S3TransferManager;
+import software.amazon.awssdk.transfer.s3.model.CompletedFileUpload;
+import software.amazon.awssdk.transfer.s3.model.UploadFileRequest;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking counterparts of {@link UploadObjects}, built on the CRT based S3AsyncClient. Every method returns as
+ * soon as the request is handed to the client; the future completes on a client thread once S3 answered, so a
+ * handful of threads drive any number of concurrent uploads. Failures are not printed but complete the future
+ * exceptionally, with the S3Exception or SdkClientException as cause. Chain further work with the async methods
+ * of CompletableFuture, or return the future from a controller to release the servlet thread.
+ *
+ * The S3AsyncClient does not go through the {@link AdaptiveConcurrencyLimiter} of the synchronous client, the CRT
+ * client applies its own target throughput and retries.
+ */
+@Service
+public class AsyncUploadObjects
+{
+    private static final String DEFAULT_CONTENT_TYPE = "application/octet-stream";
+
+    private final S3AsyncClient s3AsyncClient;
+    private final S3TransferManager s3TransferManager;
+    private final TransferProgressPublisher transferProgressPublisher;
+
+    @Autowired
+    public AsyncUploadObjects(S3AsyncClient s3AsyncClient, S3TransferManager s3TransferManager,
+                              TransferProgressPublisher transferProgressPublisher) {
+        this.s3AsyncClient = s3AsyncClient;
+        this.s3TransferManager = s3TransferManager;
+        this.transferProgressPublisher = transferProgressPublisher;
+    }
+
+    /**
+     * Upload file using S3AsyncClient
+     * @param bucketName name of the bucket
+     * @param key desire key - usually the name of the file
+     * @param filePath file to upload in s3, read on the client's threads
+     * @return future of the PutObject response
+     */
+    public CompletableFuture<PutObjectResponse> uploadFile(String bucketName, String key, Path filePath) {
+        return uploadFile(bucketName, key, filePath, Map.of());
+    }
+
+    /**
+     * Upload file with user metadata using S3AsyncClient
+     * @param metadata user metadata, stored as x-amz-meta-* headers
+     * @return future of the PutObject response
+     */
+    public CompletableFuture<PutObjectResponse> uploadFile(String bucketName, String key, Path filePath,
+                                                           Map<String, String> metadata) {
+        PutObjectRequest putObjectRequest = PutObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .metadata(metadata)
+                .build();
+        return s3AsyncClient.putObject(putObjectRequest, AsyncRequestBody.fromFile(filePath));
+    }
+
+    /**
+     * Upload the bytes of a reactive stream, for example a request body or another object being downloaded. The
+     * publisher is only asked for more buffers as the client sends them, it is never buffered whole.
+     * @param content bytes of the object, may be subscribed again if the request is retried
+     * @param contentLength exact number of bytes the publisher emits
+     * @param contentType content type of the object, null for application/octet-stream
+     * @return future of the PutObject response
+     */
+    public CompletableFuture<PutObjectResponse> upload(String bucketName, String key, Publisher<ByteBuffer> content,
+                                                       long contentLength, String contentType) {
+        PutObjectRequest putObjectRequest = PutObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .contentLength(contentLength)
+                .contentType(contentType == null ? DEFAULT_CONTENT_TYPE : contentType)
+                .build();
+        return s3AsyncClient.putObject(putObjectRequest, new AsyncRequestBody() {
+            @Override
+            public Optional<Long> contentLength() {
+                return Optional.of(contentLength);
+            }
+
+            @Override
+            public void subscribe(Subscriber<? super ByteBuffer> subscriber) {
+                content.subscribe(subscriber);
+            }
+        });
+    }
+
+    /**
+     * Upload file using s3transferManager without waiting for it, progress goes to the TransferProgressPublisher
+     * like for {@link UploadObjects#uploadFileWithTransferManager(String, String, String)}.
+     * @return future of the completed upload
+     */
+    public CompletableFuture<CompletedFileUpload> uploadFileWithTransferManager(String bucketName, String key, Path filePath) {
+        UploadFileRequest uploadFileRequest = UploadFileRequest.builder()
+                .putObjectRequest(builder -> builder.bucket(bucketName)
+                        .key(key))
+                .source(filePath)
+                .addTransferListener(transferProgressPublisher.listenerFor(TransferProgressEvent.Direction.UPLOAD,
+                        bucketName, key))
+                .build();
+        return s3TransferManager.uploadFile(uploadFileRequest).completionFuture();
+    }
+}
@@ -0,0 +1,139 @@
+package in.learnjavaskills.springcloudawss3.service;
+
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.*;
+
+/**
+ * Groups object identifiers into DeleteObjects batches of up to 1,000 keys and keeps a bounded number of batches
+ * in flight. The caller feeds identifiers with {@link #add(ObjectIdentifier)} (usually straight from a paginated listing)
+ * and blocks once every batch slot is busy, so memory stays bounded no matter how large the bucket is.
+ * Several listing threads may feed the same deleter.
+ */
+class BatchDeleter implements AutoCloseable
+{
+    /**
+     * DeleteObjects accepts at most 1,000 keys per request.
+     */
+    static final int MAX_KEYS_PER_BATCH = 1000;
+
+    private final S3Client s3Client;
+    private final String bucketName;
+    private final Semaphore inFlightBatches;
+    private final ExecutorService executorService;
+    private final BucketPurgeProgress progress;
+    private final Queue<BucketPurgeReport.FailedDelete> failures = new ConcurrentLinkedQueue<>();
+    private final List<Future<?>> pendingBatches = new ArrayList<>();
+
+    private List<ObjectIdentifier> currentBatch = new ArrayList<>(MAX_KEYS_PER_BATCH);
+
+    BatchDeleter(S3Client s3Client, String bucketName, int maxConcurrentBatches) {
+        this(s3Client, bucketName, maxConcurrentBatches, new BucketPurgeProgress());
+    }
+
+    BatchDeleter(S3Client s3Client, String bucketName, int maxConcurrentBatches, BucketPurgeProgress progress) {
+        if (maxConcurrentBatches < 1)
+            throw new IllegalArgumentException("maxConcurrentBatches must be at least 1");
+        this.s3Client = s3Client;
+        this.bucketName = bucketName;
+        this.inFlightBatches = new Semaphore(maxConcurrentBatches);
+        this.executorService = Executors.newFixedThreadPool(maxConcurrentBatches);
+        this.progress = progress;
+        progress.started();
+    }
+
+    /**
+     * queue an object for deletion, sending a DeleteObjects request once a full batch is collected.
+     * @param objectIdentifier key and optional version id to delete
+     */
+    synchronized void add(ObjectIdentifier objectIdentifier) {
+        progress.listed(1);
+        currentBatch.add(objectIdentifier);
+        if (currentBatch.size() == MAX_KEYS_PER_BATCH)
+            submitCurrentBatch();
+    }
+
+    /**
+     * flush the last partial batch, wait for every batch to complete and summarise the result.
+     * @return purge report
+     */
+    synchronized BucketPurgeReport finish() {
+        if (!currentBatch.isEmpty())
+            submitCurrentBatch();
+        for (Future<?> pendingBatch : pendingBatches) {
+            try {
+                pendingBatch.get();
+            } catch (InterruptedException interruptedException) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for delete batches", interruptedException);
+            } catch (ExecutionException executionException) {
+                // deleteBatch records its own failures, anything reaching here is a bug
+                throw new IllegalStateException(executionException.getCause());
+            }
+        }
+        pendingBatches.clear();
+        return new BucketPurgeReport(progress.deletedCount(), List.copyOf(failures), progress.elapsed(), null);
+    }
+
+    @Override
+    public void close() {
+        executorService.shutdownNow();
+    }
+
+    private void submitCurrentBatch() {
+        List<ObjectIdentifier> batch = currentBatch;
+        currentBatch = new ArrayList<>(MAX_KEYS_PER_BATCH);
+        try {
+            // blocks the lister while every batch slot is busy
+            inFlightBatches.acquire();
+        } catch (InterruptedException interruptedException) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a free delete batch slot", interruptedException);
+        }
+        try {
+            pendingBatches.add(executorService.submit(() -> {
+                try {
+                    deleteBatch(batch);
+                } finally {
+                    inFlightBatches.release();
+                }
+            }));
+        } catch (RejectedExecutionException rejectedExecutionException) {
+            inFlightBatches.release();
+            throw rejectedExecutionException;
+        }
+        // drop references to batches that already finished so a long purge does not accumulate futures
+        pendingBatches.removeIf(Future::isDone);
+    }
+
+    private void deleteBatch(List<ObjectIdentifier> batch) {
+        try {
+            DeleteObjectsRequest deleteObjectsRequest = DeleteObjectsRequest.builder()
+                    .bucket(bucketName)
+                    // quiet mode, S3 only reports the keys it failed to delete which keeps the response small
+                    .delete(Delete.builder()
+                            .objects(batch)
+                            .quiet(true)
+                            .build())
+                    .build();
+            DeleteObjectsResponse deleteObjectsResponse = s3Client.deleteObjects(deleteObjectsRequest);
+            List<S3Error> errors = deleteObjectsResponse.errors();
+            errors.forEach(s3Error -> failures.add(new BucketPurgeReport.FailedDelete(s3Error.key(),
+                    s3Error.versionId(), s3Error.code(), s3Error.message())));
+            progress.failed(errors.size());
+            progress.deleted(batch.size() - errors.size());
+        } catch (RuntimeException exception) {
+            // the whole request failed, every key of the batch is still in the bucket
+            String code = exception instanceof S3Exception s3Exception && s3Exception.awsErrorDetails() != null
+                    ? s3Exception.awsErrorDetails().errorCode()
+                    : exception.getClass().getSimpleName();
+            batch.forEach(objectIdentifier -> failures.add(new BucketPurgeReport.FailedDelete(objectIdentifier.key(),
+                    objectIdentifier.versionId(), code, exception.getMessage())));
+            progress.failed(batch.size());
+        }
+    }
+}
@@ -5,12 +5,27 @@ import org.springframework.stereotype.Service;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.*;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
 /**
  * create bucket, list bucket, delete empty bucket, delete un-versioned bucket, delete version bucket and delete bucket website
  */
 @Service
 public class Bucket
 {
+    /**
+     * number of DeleteObjects batches kept in flight by deleteUnversionedBucket and deleteVersionedBucket
+     */
+    public static final int DEFAULT_MAX_CONCURRENT_DELETE_BATCHES = 8;
+
     private final S3Client s3Client;
 
     @Autowired
@@ -83,19 +98,13 @@ public class Bucket
         try {
             // Before you can delete an Amazon S3 bucket, you must ensure that the bucket is empty or an error will result.
             // If you have a versioned bucket, you must also delete any versioned objects associated with the bucket.
-            ListObjectsRequest listObjectsRequest = ListObjectsRequest.builder()
-                    .bucket(bucketName)
-                    .build();
-            ListObjectsResponse listObjectsResponse = s3Client.listObjects(listObjectsRequest);
-            listObjectsResponse.contents()
-                    .stream()
-                    // create a DeleteObjectRequest
-                    .map(s3Object -> DeleteObjectRequest.builder()
-                            .bucket(bucketName)
-                            .key(s3Object.key())
-                            .build())
-                    // delete objects
-                    .forEach(deleteObjectRequest -> s3Client.deleteObject(deleteObjectRequest));
+            BucketPurgeReport bucketPurgeReport = purgeUnversionedBucket(bucketName, DEFAULT_MAX_CONCURRENT_DELETE_BATCHES);
+            System.out.println("deleted objects : " + bucketPurgeReport.deletedCount() +
+                    " failed objects : " + bucketPurgeReport.failures().size() +
+                    " elapsed : " + bucketPurgeReport.elapsed() +
+                    " objects/sec : " + bucketPurgeReport.deletedPerSecond());
+            if (!bucketPurgeReport.isComplete())
+                return false;
 
             // once all the objects in a bucket deleted successfully, we can delete empty bucket.
             return deleteEmptyBucket(bucketName);
@@ -105,6 +114,30 @@ public class Bucket
         }
     }
 
+    /**
+     * Delete every object of an un-versioned bucket, keeping the bucket itself.
+     * Pages through the whole bucket with ListObjectsV2 and deletes keys in DeleteObjects batches of 1,000 keys,
+     * with up to maxConcurrentBatches batches in flight.
+     * @param bucketName bucketName
+     * @param maxConcurrentBatches number of DeleteObjects requests allowed in flight at once
+     * @return report of deleted and failed keys
+     */
+    public BucketPurgeReport purgeUnversionedBucket(String bucketName, int maxConcurrentBatches) {
+        ListObjectsV2Request listObjectsV2Request = ListObjectsV2Request.builder()
+                .bucket(bucketName)
+                .maxKeys(BatchDeleter.MAX_KEYS_PER_BATCH)
+                .build();
+        try (BatchDeleter batchDeleter = new BatchDeleter(s3Client, bucketName, maxConcurrentBatches)) {
+            // the paginator fetches the next page lazily, so only the current page and the in-flight batches are held in memory
+            s3Client.listObjectsV2Paginator(listObjectsV2Request)
+                    .contents()
+                    .forEach(s3Object -> batchDeleter.add(ObjectIdentifier.builder()
+                            .key(s3Object.key())
+                            .build()));
+            return batchDeleter.finish();
+        }
+    }
+
     /**
      * Delete version bucket
      * @param bucketName bucketName
@@ -113,22 +146,14 @@ public class Bucket
         try {
             // Before you can delete an Amazon S3 bucket, you must ensure that the bucket is empty or an error will result.
             // If you have a versioned bucket, you must also delete any versioned objects associated with the bucket.
-            ListObjectVersionsRequest listObjectVersionsRequest = ListObjectVersionsRequest.builder()
-                    .bucket(bucketName)
-                    .build();
-            ListObjectVersionsResponse listObjectVersionsResponse = s3Client.listObjectVersions(listObjectVersionsRequest);
-            listObjectVersionsResponse.versions()
-                    .stream()
-                    // create a DeleteObjectRequest
-                    .peek(objectVersion -> System.out.println("versionid: " + objectVersion.versionId() +
-                            " key: " + objectVersion.key()))
-                    .map(objectVersion -> DeleteObjectRequest.builder()
-                            .bucket(bucketName)
-                            .key(objectVersion.key())
-                            .versionId(objectVersion.versionId())
-                            .build())
-                    // delete objets one by one
-                    .forEach(deleteObjectRequest -> s3Client.deleteObject(deleteObjectRequest));
+            BucketPurgeReport bucketPurgeReport = purgeVersionedBucket(bucketName, List.of(),
+                    DEFAULT_MAX_CONCURRENT_DELETE_BATCHES, new BucketPurgeProgress());
+            System.out.println("deleted versions : " + bucketPurgeReport.deletedCount() +
+                    " failed versions : " + bucketPurgeReport.failures().size() +
+                    " elapsed : " + bucketPurgeReport.elapsed() +
+                    " versions/sec : " + bucketPurgeReport.deletedPerSecond());
+            if (!bucketPurgeReport.isComplete())
+                return false;
 
             // once all the objects in a bucket deleted successfully, we can delete empty bucket.
             return deleteEmptyBucket(bucketName);
@@ -138,6 +163,81 @@ public class Bucket
         }
     }
 
+    /**
+     * Delete every object version and delete marker of a versioned bucket, keeping the bucket itself.
+     * Streams every page of ListObjectVersions and deletes in DeleteObjects batches of 1,000 versions.
+     * When prefixes are given each prefix is listed on its own thread, which spreads listing across S3 partitions.
+     * The bucket is listed once more afterwards and a version outside every prefix is reported as
+     * {@link BucketPurgeReport#uncoveredKey()}, so the report is not complete while such versions remain.
+     * @param bucketName bucketName
+     * @param prefixes non-overlapping key prefixes which together cover the bucket, empty to list the whole bucket from one thread
+     * @param maxConcurrentBatches number of DeleteObjects requests allowed in flight at once
+     * @param progress live counters, readable from other threads while the purge runs
+     * @return report of deleted and failed versions
+     */
+    public BucketPurgeReport purgeVersionedBucket(String bucketName, List<String> prefixes, int maxConcurrentBatches,
+                                                  BucketPurgeProgress progress) {
+        List<String> listingPrefixes = prefixes.isEmpty() ? Collections.singletonList(null) : prefixes;
+        ExecutorService listingExecutor = Executors.newFixedThreadPool(Math.min(listingPrefixes.size(), maxConcurrentBatches));
+        try (BatchDeleter batchDeleter = new BatchDeleter(s3Client, bucketName, maxConcurrentBatches, progress)) {
+            List<Future<?>> listings = new ArrayList<>();
+            for (String prefix : listingPrefixes)
+                listings.add(listingExecutor.submit(() -> listObjectVersions(bucketName, prefix, batchDeleter)));
+            for (Future<?> listing : listings)
+                listing.get();
+            BucketPurgeReport bucketPurgeReport = batchDeleter.finish();
+            if (prefixes.isEmpty())
+                return bucketPurgeReport;
+            return bucketPurgeReport.withUncoveredKey(firstUncoveredKey(bucketName, prefixes));
+        } catch (InterruptedException interruptedException) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while purging bucket " + bucketName, interruptedException);
+        } catch (ExecutionException executionException) {
+            if (executionException.getCause() instanceof RuntimeException runtimeException)
+                throw runtimeException;
+            throw new IllegalStateException(executionException.getCause());
+        } finally {
+            listingExecutor.shutdownNow();
+        }
+    }
+
+    private void listObjectVersions(String bucketName, String prefix, BatchDeleter batchDeleter) {
+        ListObjectVersionsRequest listObjectVersionsRequest = ListObjectVersionsRequest.builder()
+                .bucket(bucketName)
+                .prefix(prefix)
+                .maxKeys(BatchDeleter.MAX_KEYS_PER_BATCH)
+                .build();
+        for (ListObjectVersionsResponse listObjectVersionsResponse : s3Client.listObjectVersionsPaginator(listObjectVersionsRequest)) {
+            listObjectVersionsResponse.versions()
+                    .forEach(objectVersion -> batchDeleter.add(ObjectIdentifier.builder()
+                            .key(objectVersion.key())
+                            .versionId(objectVersion.versionId())
+                            .build()));
+            // delete markers are versions too, the bucket is not empty until they are gone
+            listObjectVersionsResponse.deleteMarkers()
+                    .forEach(deleteMarkerEntry -> batchDeleter.add(ObjectIdentifier.builder()
+                            .key(deleteMarkerEntry.key())
+                            .versionId(deleteMarkerEntry.versionId())
+                            .build()));
+        }
+    }
+
+    private String firstUncoveredKey(String bucketName, List<String> prefixes) {
+        ListObjectVersionsRequest listObjectVersionsRequest = ListObjectVersionsRequest.builder()
+                .bucket(bucketName)
+                .maxKeys(BatchDeleter.MAX_KEYS_PER_BATCH)
+                .build();
+        // after the purge only failed deletes and keys outside the prefixes are left, so this is usually one page
+        for (ListObjectVersionsResponse listObjectVersionsResponse : s3Client.listObjectVersionsPaginator(listObjectVersionsRequest)) {
+            Stream<String> keys = Stream.concat(listObjectVersionsResponse.versions().stream().map(ObjectVersion::key),
+                    listObjectVersionsResponse.deleteMarkers().stream().map(DeleteMarkerEntry::key));
+            Optional<String> uncoveredKey = keys.filter(key -> prefixes.stream().noneMatch(key::startsWith)).findFirst();
+            if (uncoveredKey.isPresent())
+                return uncoveredKey.get();
+        }
+        return null;
+    }
+
     /**
      * delete bucket website, This action removes the website configurations for a bucket. Amazon S3 return a 200 OK
      * response upon successfully deleting website configuration on a specific bucket.
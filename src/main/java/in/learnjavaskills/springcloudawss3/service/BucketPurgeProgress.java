@@ -0,0 +1,74 @@
+package in.learnjavaskills.springcloudawss3.service;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Live counters of a running bucket purge. Hand an instance to the purge method and read it from any other thread
+ * (a scheduler, an endpoint, a log line) while the purge is running.
+ */
+public class BucketPurgeProgress
+{
+    private final AtomicLong listedCount = new AtomicLong();
+    private final AtomicLong deletedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private volatile long startNanos = System.nanoTime();
+
+    /**
+     * @return objects, versions and delete markers listed so far
+     */
+    public long listedCount() {
+        return listedCount.get();
+    }
+
+    /**
+     * @return objects, versions and delete markers deleted so far
+     */
+    public long deletedCount() {
+        return deletedCount.get();
+    }
+
+    /**
+     * @return objects, versions and delete markers which failed to delete so far
+     */
+    public long failedCount() {
+        return failedCount.get();
+    }
+
+    /**
+     * @return time since the purge started
+     */
+    public Duration elapsed() {
+        return Duration.ofNanos(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * @return deleted per second since the purge started
+     */
+    public double deletedPerSecond() {
+        long millis = Math.max(1, elapsed().toMillis());
+        return deletedCount() * 1000.0 / millis;
+    }
+
+    @Override
+    public String toString() {
+        return "listed : " + listedCount() + " deleted : " + deletedCount() + " failed : " + failedCount() +
+                " elapsed : " + elapsed() + " deleted/sec : " + deletedPerSecond();
+    }
+
+    void started() {
+        startNanos = System.nanoTime();
+    }
+
+    void listed(long count) {
+        listedCount.addAndGet(count);
+    }
+
+    void deleted(long count) {
+        deletedCount.addAndGet(count);
+    }
+
+    void failed(long count) {
+        failedCount.addAndGet(count);
+    }
+}
@@ -0,0 +1,44 @@
+package in.learnjavaskills.springcloudawss3.service;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Outcome of a bucket purge: how many objects were deleted, which ones could not be deleted and how long it took.
+ * @param deletedCount number of objects (or object versions) deleted
+ * @param failures objects which S3 refused to delete
+ * @param elapsed wall clock time taken by the purge
+ * @param uncoveredKey a key left in the bucket outside every prefix the purge listed, null if the prefixes covered
+ *                     the bucket
+ */
+public record BucketPurgeReport(long deletedCount, List<FailedDelete> failures, Duration elapsed, String uncoveredKey)
+{
+    /**
+     * @return true if every object was deleted, false if a delete failed or the listed prefixes missed a key
+     */
+    public boolean isComplete() {
+        return failures.isEmpty() && uncoveredKey == null;
+    }
+
+    BucketPurgeReport withUncoveredKey(String uncoveredKey) {
+        return new BucketPurgeReport(deletedCount, failures, elapsed, uncoveredKey);
+    }
+
+    /**
+     * @return deleted objects per second over the whole purge
+     */
+    public double deletedPerSecond() {
+        long millis = Math.max(1, elapsed.toMillis());
+        return deletedCount * 1000.0 / millis;
+    }
+
+    /**
+     * A single object which could not be deleted.
+     * @param key object key
+     * @param versionId version id, null for un-versioned objects
+     * @param code S3 error code
+     * @param message S3 error message
+     */
+    public record FailedDelete(String key, String versionId, String code, String message) {
+    }
+}
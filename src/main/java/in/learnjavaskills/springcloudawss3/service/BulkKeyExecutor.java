@@ -0,0 +1,118 @@
+package in.learnjavaskills.springcloudawss3.service;
+
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs a blocking operation for every key of a key set, at most maxConcurrency at a time. Keys are pulled from the
+ * iterable only when a permit is free, so a lazily listed key set of any size is worked through in constant memory.
+ * Of the keys which fail, the first {@link #MAX_REPORTED_FAILURES} are reported with their error and the rest only
+ * counted, so a key set which fails as a whole does not pile up its failures either.
+ *
+ * With {@link Threads#VIRTUAL} every key gets its own virtual thread, a thread blocked on the synchronous S3Client
+ * costs a few hundred bytes of heap instead of a platform thread stack, so maxConcurrency can be set by what S3 and
+ * the HTTP connection pool handle rather than by how many threads the JVM affords. {@link Threads#PLATFORM} runs the
+ * same work on a fixed pool of maxConcurrency platform threads.
+ */
+public final class BulkKeyExecutor
+{
+    /**
+     * failed keys reported with their error, further failures are only counted
+     */
+    public static final int MAX_REPORTED_FAILURES = 1000;
+
+    public enum Threads
+    {
+        VIRTUAL,
+        PLATFORM
+    }
+
+    /**
+     * Work done for a single key, any exception marks the key as failed.
+     */
+    @FunctionalInterface
+    public interface KeyOperation
+    {
+        void apply(String key) throws Exception;
+    }
+
+    private final Threads threads;
+    private final int maxConcurrency;
+
+    public BulkKeyExecutor(Threads threads, int maxConcurrency) {
+        if (maxConcurrency < 1)
+            throw new IllegalArgumentException("maxConcurrency must be positive");
+        this.threads = threads;
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    public Threads threads() {
+        return threads;
+    }
+
+    public int maxConcurrency() {
+        return maxConcurrency;
+    }
+
+    /**
+     * apply the operation to every key, returning once every key is done.
+     * @param keys keys to work on, iterated once from the calling thread
+     * @param operation blocking work for one key, called from many threads at once
+     * @return report of succeeded and failed keys, failures beyond {@link #MAX_REPORTED_FAILURES} only counted
+     */
+    public BulkOperationReport forEachKey(Iterable<String> keys, KeyOperation operation) {
+        long startNanos = System.nanoTime();
+        Semaphore permits = new Semaphore(maxConcurrency);
+        AtomicLong succeededCount = new AtomicLong();
+        AtomicLong failedCount = new AtomicLong();
+        Queue<BulkOperationReport.FailedKey> failures = new ConcurrentLinkedQueue<>();
+        // closing the executor waits for every submitted key
+        try (ExecutorService executorService = newExecutorService()) {
+            for (String key : keys) {
+                permits.acquire();
+                executorService.execute(() -> {
+                    try {
+                        operation.apply(key);
+                        succeededCount.incrementAndGet();
+                    } catch (Exception exception) {
+                        if (failedCount.incrementAndGet() <= MAX_REPORTED_FAILURES)
+                            failures.add(failedKey(key, exception));
+                    } finally {
+                        permits.release();
+                    }
+                });
+            }
+        } catch (InterruptedException interruptedException) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted after " + succeededCount.get() + " keys", interruptedException);
+        }
+        return new BulkOperationReport(succeededCount.get(), failedCount.get(), List.copyOf(failures),
+                Duration.ofNanos(System.nanoTime() - startNanos));
+    }
+
+    private static BulkOperationReport.FailedKey failedKey(String key, Exception exception) {
+        if (exception instanceof S3Exception s3Exception) {
+            String code = s3Exception.awsErrorDetails() == null ? null : s3Exception.awsErrorDetails().errorCode();
+            return new BulkOperationReport.FailedKey(key, code, s3Exception.getMessage());
+        }
+        if (exception instanceof SdkException sdkException)
+            return new BulkOperationReport.FailedKey(key, null, sdkException.getMessage());
+        return new BulkOperationReport.FailedKey(key, null, exception.toString());
+    }
+
+    private ExecutorService newExecutorService() {
+        return switch (threads) {
+            case VIRTUAL -> Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("s3-bulk-", 0).factory());
+            case PLATFORM -> Executors.newFixedThreadPool(maxConcurrency, Thread.ofPlatform().name("s3-bulk-", 0).factory());
+        };
+    }
+}
@@ -0,0 +1,127 @@
+package in.learnjavaskills.springcloudawss3.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.ChecksumAlgorithm;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Object;
+import software.amazon.awssdk.services.s3.model.Tag;
+import software.amazon.awssdk.services.s3.model.Tagging;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Per key uploads, downloads, deletes and tagging over key sets of any size, run on a {@link BulkKeyExecutor}.
+ * Every key is one blocking call to the shared S3Client, so the requests go through its concurrency limiter and
+ * retry policy like those of every other service. Keep bulk-executor.max-concurrency at or below
+ * s3-client.max-connections, requests beyond the connection pool only wait for a connection.
+ *
+ * Deleting every object under a prefix is cheaper with {@link Bucket}'s batch purge, which removes 1,000 keys per
+ * request; deleteObjects here is for scattered keys.
+ */
+@Service
+public class BulkObjectOperations
+{
+    private final S3Client s3Client;
+    private final BulkKeyExecutor bulkKeyExecutor;
+
+    @Autowired
+    public BulkObjectOperations(S3Client s3Client,
+                                @Value("${bulk-executor.threads:VIRTUAL}") BulkKeyExecutor.Threads threads,
+                                @Value("${bulk-executor.max-concurrency:256}") int maxConcurrency) {
+        this(s3Client, new BulkKeyExecutor(threads, maxConcurrency));
+    }
+
+    BulkObjectOperations(S3Client s3Client, BulkKeyExecutor bulkKeyExecutor) {
+        this.s3Client = s3Client;
+        this.bulkKeyExecutor = bulkKeyExecutor;
+    }
+
+    /**
+     * @return every key under the prefix, listed page by page while the iteration goes on
+     */
+    public Iterable<String> keysUnder(String bucketName, String prefix) {
+        return () -> s3Client.listObjectsV2Paginator(builder -> builder.bucket(bucketName).prefix(prefix))
+                .contents().stream()
+                .map(S3Object::key)
+                .iterator();
+    }
+
+    /**
+     * run any blocking per key operation on the bulk executor.
+     */
+    public BulkOperationReport forEachKey(Iterable<String> keys, BulkKeyExecutor.KeyOperation operation) {
+        return bulkKeyExecutor.forEachKey(keys, operation);
+    }
+
+    /**
+     * upload each file to its key with a single PutObject, with a CRC32C S3 keeps for verifying downloads.
+     * @param files local file of every key
+     */
+    public BulkOperationReport uploadFiles(String bucketName, Map<String, Path> files) {
+        return bulkKeyExecutor.forEachKey(files.keySet(), key ->
+                s3Client.putObject(builder -> builder.bucket(bucketName)
+                                .key(key)
+                                .checksumAlgorithm(ChecksumAlgorithm.CRC32_C),
+                        RequestBody.fromFile(files.get(key))));
+    }
+
+    /**
+     * download every key to the file the key maps to, replacing existing files. Objects stored with an
+     * {@link ObjectCodec} are decoded on the way.
+     * @param localFile local file of a key, parent directories are created
+     */
+    public BulkOperationReport downloadObjects(String bucketName, Iterable<String> keys, Function<String, Path> localFile) {
+        return bulkKeyExecutor.forEachKey(keys, key -> {
+            Path file = localFile.apply(key);
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            try (ResponseInputStream<GetObjectResponse> objectStream =
+                         s3Client.getObject(builder -> builder.bucket(bucketName).key(key))) {
+                Files.copy(ObjectCodec.of(objectStream.response()).decode(objectStream), file,
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+        });
+    }
+
+    /**
+     * download every key below the directory, keys which would land outside of it fail.
+     */
+    public BulkOperationReport downloadObjects(String bucketName, Iterable<String> keys, Path directory) {
+        Path destination = directory.toAbsolutePath().normalize();
+        return downloadObjects(bucketName, keys, key -> {
+            Path file = destination.resolve(key).normalize();
+            if (!file.startsWith(destination) || file.equals(destination))
+                throw new IllegalArgumentException("Key " + key + " points outside of " + destination);
+            return file;
+        });
+    }
+
+    /**
+     * delete every key with one DeleteObject request each.
+     */
+    public BulkOperationReport deleteObjects(String bucketName, Iterable<String> keys) {
+        return bulkKeyExecutor.forEachKey(keys, key ->
+                s3Client.deleteObject(builder -> builder.bucket(bucketName).key(key)));
+    }
+
+    /**
+     * make the tags the whole tag set of every key, without reading the current tags.
+     */
+    public BulkOperationReport tagObjects(String bucketName, Iterable<String> keys, Map<String, String> tags) {
+        List<Tag> tagSet = tags.entrySet().stream()
+                .map(tag -> Tag.builder().key(tag.getKey()).value(tag.getValue()).build())
+                .toList();
+        Tagging tagging = Tagging.builder().tagSet(tagSet).build();
+        return bulkKeyExecutor.forEachKey(keys, key ->
+                s3Client.putObjectTagging(builder -> builder.bucket(bucketName).key(key).tagging(tagging)));
+    }
+}
@@ -0,0 +1,30 @@
+package in.learnjavaskills.springcloudawss3.service;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Outcome of running one operation over a key set.
+ * @param succeededCount keys the operation finished for
+ * @param failedCount keys the operation failed for
+ * @param failures the first failed keys, at most {@link BulkKeyExecutor#MAX_REPORTED_FAILURES}; retry them on their own
+ * @param elapsed wall clock time taken by the whole key set
+ */
+public record BulkOperationReport(long succeededCount, long failedCount, List<FailedKey> failures, Duration elapsed)
+{
+    /**
+     * @return true if the operation finished for every key
+     */
+    public boolean isComplete() {
+        return failedCount == 0;
+    }
+
+    /**
+     * A single key the operation failed for.
+     * @param key object key
+     * @param code S3 error code, null if the request never got an answer or did not reach S3
+     * @param message error message
+     */
+    public record FailedKey(String key, String code, String message) {
+    }
+}
@@ -0,0 +1,138 @@
+package in.learnjavaskills.springcloudawss3.service;
+
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.*;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.*;
+
+/**
+ * Change the tags of every object under a prefix. Keys are streamed from the listing and each object gets its own
+ * read-modify-write cycle (GetObjectTagging, then PutObjectTagging or DeleteObjectTagging) on one of concurrency
+ * threads; the listing blocks while every thread is busy, so memory does not grow with the prefix. Every tagging
+ * request first takes a permit from a shared {@link RequestRateLimiter}, which keeps the job under the per-prefix
+ * request rate of S3 however many threads run. Objects which already carry the requested tags are not written.
+ */
+class BulkTagger
+{
+    private final S3Client s3Client;
+    private final BulkTaggingRequest bulkTaggingRequest;
+    private final BulkTaggingProgress progress;
+    private final RequestRateLimiter requestRateLimiter;
+    private final Queue<BulkTaggingReport.FailedTagging> failures = new ConcurrentLinkedQueue<>();
+
+    BulkTagger(S3Client s3Client, BulkTaggingRequest bulkTaggingRequest, BulkTaggingProgress progress) {
+        this.s3Client = s3Client;
+        this.bulkTaggingRequest = bulkTaggingRequest;
+        this.progress = progress;
+        this.requestRateLimiter = new RequestRateLimiter(bulkTaggingRequest.maxRequestsPerSecond());
+    }
+
+    /**
+     * tag every listed object, returning once the listing is exhausted or the job is cancelled and nothing is in flight.
+     * @return report of tagged, unchanged and failed objects with the checkpoint to resume from
+     */
+    BulkTaggingReport run() {
+        ListObjectsV2Request listObjectsV2Request = ListObjectsV2Request.builder()
+                .bucket(bulkTaggingRequest.bucketName())
+                .prefix(bulkTaggingRequest.prefix())
+                .startAfter(bulkTaggingRequest.startAfter())
+                .build();
+        int concurrency = bulkTaggingRequest.concurrency();
+        Semaphore freeWorkers = new Semaphore(concurrency);
+        ExecutorService executorService = Executors.newFixedThreadPool(concurrency);
+        progress.started(bulkTaggingRequest.startAfter());
+        try {
+            for (S3Object s3Object : s3Client.listObjectsV2Paginator(listObjectsV2Request).contents()) {
+                if (progress.isCancelled())
+                    break;
+                freeWorkers.acquire();
+                long sequence = progress.listed(s3Object.key());
+                executorService.execute(() -> {
+                    try {
+                        tag(s3Object.key());
+                    } finally {
+                        progress.finished(sequence);
+                        freeWorkers.release();
+                    }
+                });
+            }
+        } catch (InterruptedException interruptedException) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while tagging " + bulkTaggingRequest.prefix()
+                    + ", resume after " + progress.checkpoint(), interruptedException);
+        } finally {
+            // every object in flight is done once all workers are free
+            freeWorkers.acquireUninterruptibly(concurrency);
+            executorService.shutdownNow();
+        }
+        return new BulkTaggingReport(progress.taggedCount(), progress.unchangedCount(), List.copyOf(failures),
+                progress.checkpoint(), progress.isCancelled(), progress.elapsed());
+    }
+
+    private void tag(String key) {
+        try {
+            Map<String, String> currentTags = null;
+            if (bulkTaggingRequest.mode() != BulkTaggingRequest.Mode.REPLACE) {
+                requestRateLimiter.acquire();
+                currentTags = new LinkedHashMap<>();
+                for (Tag tag : s3Client.getObjectTagging(builder -> builder.bucket(bulkTaggingRequest.bucketName()).key(key)).tagSet())
+                    currentTags.put(tag.key(), tag.value());
+            }
+            Map<String, String> tags = tagsFor(currentTags);
+            if (tags.equals(currentTags)) {
+                progress.unchanged();
+                return;
+            }
+
+            requestRateLimiter.acquire();
+            if (tags.isEmpty()) {
+                s3Client.deleteObjectTagging(builder -> builder.bucket(bulkTaggingRequest.bucketName()).key(key));
+            } else {
+                List<Tag> tagSet = tags.entrySet().stream()
+                        .map(tag -> Tag.builder().key(tag.getKey()).value(tag.getValue()).build())
+                        .toList();
+                s3Client.putObjectTagging(PutObjectTaggingRequest.builder()
+                        .bucket(bulkTaggingRequest.bucketName())
+                        .key(key)
+                        .tagging(Tagging.builder().tagSet(tagSet).build())
+                        .build());
+            }
+            progress.tagged();
+        } catch (S3Exception s3Exception) {
+            String code = s3Exception.awsErrorDetails() == null ? null : s3Exception.awsErrorDetails().errorCode();
+            fail(key, code, s3Exception.getMessage());
+        } catch (SdkException sdkException) {
+            fail(key, null, sdkException.getMessage());
+        } catch (InterruptedException interruptedException) {
+            Thread.currentThread().interrupt();
+            fail(key, null, "Interrupted before tagging");
+        }
+    }
+
+    private Map<String, String> tagsFor(Map<String, String> currentTags) {
+        Map<String, String> requestedTags = bulkTaggingRequest.tags();
+        return switch (bulkTaggingRequest.mode()) {
+            case REPLACE -> requestedTags;
+            case MERGE -> {
+                Map<String, String> merged = new LinkedHashMap<>(currentTags);
+                merged.putAll(requestedTags);
+                yield merged;
+            }
+            case REMOVE -> {
+                Map<String, String> remaining = new LinkedHashMap<>(currentTags);
+                remaining.keySet().removeAll(requestedTags.keySet());
+                yield remaining;
+            }
+        };
+    }
+
+    private void fail(String key, String code, String message) {
+        failures.add(new BulkTaggingReport.FailedTagging(key, code, message));
+        progress.failed();
+    }
+}
@@ -0,0 +1,125 @@
+package in.learnjavaskills.springcloudawss3.service;
+
+import java.time.Duration;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Live counters of a running bulk tagging job. Hand an instance to the tagging method and read it from any other
+ * thread while the job is running. {@link #checkpoint()} is the key up to which every listed object is done, a job
+ * which stopped for any reason resumes from it with {@link BulkTaggingRequest.Builder#startAfter(String)}.
+ */
+public class BulkTaggingProgress
+{
+    private final AtomicLong listedCount = new AtomicLong();
+    private final AtomicLong taggedCount = new AtomicLong();
+    private final AtomicLong unchangedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private volatile long startNanos = System.nanoTime();
+    private volatile boolean cancelled;
+
+    // listing sequence of every object in flight mapped to the key listed before it; guarded by this
+    private final TreeMap<Long, String> inFlight = new TreeMap<>();
+    private long nextSequence;
+    private String lastListedKey;
+
+    /**
+     * @return objects listed so far
+     */
+    public long listedCount() {
+        return listedCount.get();
+    }
+
+    /**
+     * @return objects whose tags were written so far
+     */
+    public long taggedCount() {
+        return taggedCount.get();
+    }
+
+    /**
+     * @return objects which already had the requested tags
+     */
+    public long unchangedCount() {
+        return unchangedCount.get();
+    }
+
+    /**
+     * @return objects which could not be tagged so far
+     */
+    public long failedCount() {
+        return failedCount.get();
+    }
+
+    /**
+     * @return time since the job started
+     */
+    public Duration elapsed() {
+        return Duration.ofNanos(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * @return objects done (tagged, unchanged or failed) per second since the job started
+     */
+    public double objectsPerSecond() {
+        long millis = Math.max(1, elapsed().toMillis());
+        return (taggedCount() + unchangedCount() + failedCount()) * 1000.0 / millis;
+    }
+
+    /**
+     * @return last key of the longest run of finished objects from the start of the listing, null if none finished
+     */
+    public synchronized String checkpoint() {
+        return inFlight.isEmpty() ? lastListedKey : inFlight.firstEntry().getValue();
+    }
+
+    /**
+     * stop listing, the job returns once the objects in flight are done.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    @Override
+    public String toString() {
+        return "listed : " + listedCount() + " tagged : " + taggedCount() + " unchanged : " + unchangedCount() +
+                " failed : " + failedCount() + " elapsed : " + elapsed() + " objects/sec : " + objectsPerSecond() +
+                " checkpoint : " + checkpoint();
+    }
+
+    synchronized void started(String startAfter) {
+        startNanos = System.nanoTime();
+        lastListedKey = startAfter;
+    }
+
+    /**
+     * @return listing sequence of the object, hand it to {@link #finished(long)}
+     */
+    synchronized long listed(String key) {
+        listedCount.incrementAndGet();
+        long sequence = nextSequence++;
+        inFlight.put(sequence, lastListedKey);
+        lastListedKey = key;
+        return sequence;
+    }
+
+    synchronized void finished(long sequence) {
+        inFlight.remove(sequence);
+    }
+
+    void tagged() {
+        taggedCount.incrementAndGet();
+    }
+
+    void unchanged() {
+        unchangedCount.incrementAndGet();
+    }
+
+    void failed() {
+        failedCount.incrementAndGet();
+    }
+}
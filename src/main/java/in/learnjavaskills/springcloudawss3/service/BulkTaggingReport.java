@@ -0,0 +1,33 @@
+package in.learnjavaskills.springcloudawss3.service;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Outcome of a bulk tagging job.
+ * @param taggedCount objects whose tags were written
+ * @param unchangedCount objects which already had the requested tags
+ * @param failures objects which could not be tagged, retry them on their own
+ * @param checkpoint last key of the finished part of the listing, resume after it if the job was cancelled
+ * @param cancelled true if the job stopped before the end of the listing
+ * @param elapsed wall clock time taken by the job
+ */
+public record BulkTaggingReport(long taggedCount, long unchangedCount, List<FailedTagging> failures, String checkpoint,
+                                boolean cancelled, Duration elapsed)
+{
+    /**
+     * @return true if every object of the prefix has the requested tags
+     */
+    public boolean isComplete() {
+        return !cancelled && failures.isEmpty();
+    }
+
+    /**
+     * A single object which could not be tagged.
+     * @param key object key
+     * @param code S3 error code, null if the request never got an answer
+     * @param message error message
+     */
+    public record FailedTagging(String key, String code, String message) {
+    }
+}
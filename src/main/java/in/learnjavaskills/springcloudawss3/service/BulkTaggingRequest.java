@@ -0,0 +1,159 @@
+package in.learnjavaskills.springcloudawss3.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * What {@link UploadObjects#bulkTagObjects(BulkTaggingRequest, BulkTaggingProgress)} should do: which objects, how
+ * their tags change, how many objects are worked on at once and how many requests per second S3 may see.
+ */
+public final class BulkTaggingRequest
+{
+    /**
+     * S3 handles about 3,500 PUT and 5,500 GET requests per second per prefix, stay below the lower one by default
+     */
+    public static final double DEFAULT_MAX_REQUESTS_PER_SECOND = 3000;
+    public static final int DEFAULT_CONCURRENCY = 32;
+
+    public enum Mode
+    {
+        /**
+         * add the tags, overwriting the value of tags already present and keeping all others
+         */
+        MERGE,
+        /**
+         * make the tags the whole tag set of the object, no GetObjectTagging is needed
+         */
+        REPLACE,
+        /**
+         * remove the tags with the given keys, the values are ignored
+         */
+        REMOVE
+    }
+
+    private final String bucketName;
+    private final String prefix;
+    private final Mode mode;
+    private final Map<String, String> tags;
+    private final int concurrency;
+    private final double maxRequestsPerSecond;
+    private final String startAfter;
+
+    private BulkTaggingRequest(Builder builder) {
+        this.bucketName = Objects.requireNonNull(builder.bucketName, "bucketName");
+        this.prefix = builder.prefix;
+        this.mode = Objects.requireNonNull(builder.mode, "mode");
+        this.tags = Map.copyOf(builder.tags);
+        this.concurrency = builder.concurrency;
+        this.maxRequestsPerSecond = builder.maxRequestsPerSecond;
+        this.startAfter = builder.startAfter;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public String bucketName() {
+        return bucketName;
+    }
+
+    public String prefix() {
+        return prefix;
+    }
+
+    public Mode mode() {
+        return mode;
+    }
+
+    public Map<String, String> tags() {
+        return tags;
+    }
+
+    public int concurrency() {
+        return concurrency;
+    }
+
+    public double maxRequestsPerSecond() {
+        return maxRequestsPerSecond;
+    }
+
+    /**
+     * @return key the listing starts after, null to start at the beginning of the prefix
+     */
+    public String startAfter() {
+        return startAfter;
+    }
+
+    public static final class Builder
+    {
+        private String bucketName;
+        private String prefix = "";
+        private Mode mode;
+        private final Map<String, String> tags = new LinkedHashMap<>();
+        private int concurrency = DEFAULT_CONCURRENCY;
+        private double maxRequestsPerSecond = DEFAULT_MAX_REQUESTS_PER_SECOND;
+        private String startAfter;
+
+        private Builder() {
+        }
+
+        public Builder bucket(String bucketName) {
+            this.bucketName = bucketName;
+            return this;
+        }
+
+        public Builder prefix(String prefix) {
+            this.prefix = Objects.requireNonNull(prefix, "prefix");
+            return this;
+        }
+
+        public Builder mode(Mode mode) {
+            this.mode = mode;
+            return this;
+        }
+
+        public Builder tag(String key, String value) {
+            tags.put(Objects.requireNonNull(key, "key"), Objects.requireNonNull(value, "value"));
+            return this;
+        }
+
+        public Builder tags(Map<String, String> tags) {
+            tags.forEach(this::tag);
+            return this;
+        }
+
+        /**
+         * @param concurrency number of objects whose tags are read and written at once
+         */
+        public Builder concurrency(int concurrency) {
+            if (concurrency < 1)
+                throw new IllegalArgumentException("concurrency must be positive");
+            this.concurrency = concurrency;
+            return this;
+        }
+
+        /**
+         * @param maxRequestsPerSecond cap on GetObjectTagging plus PutObjectTagging requests per second
+         */
+        public Builder maxRequestsPerSecond(double maxRequestsPerSecond) {
+            if (!(maxRequestsPerSecond > 0))
+                throw new IllegalArgumentException("maxRequestsPerSecond must be positive");
+            this.maxRequestsPerSecond = maxRequestsPerSecond;
+            return this;
+        }
+
+        /**
+         * @param startAfter resume a job after this key, usually the {@link BulkTaggingReport#checkpoint()} of the
+         *                   run which stopped
+         */
+        public Builder startAfter(String startAfter) {
+            this.startAfter = startAfter;
+            return this;
+        }
+
+        public BulkTaggingRequest build() {
+            return new BulkTaggingRequest(this);
+        }
+    }
+}
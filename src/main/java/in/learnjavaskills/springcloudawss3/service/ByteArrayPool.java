@@ -0,0 +1,37 @@
+package in.learnjavaskills.springcloudawss3.service;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Reusable heap buffers for copying streams. Unlike {@link DirectBufferPool} a caller never waits: when every pooled
+ * buffer is taken a new one is allocated, and at most capacity buffers are kept for reuse once they are released.
+ */
+class ByteArrayPool
+{
+    private final int bufferSize;
+    private final BlockingQueue<byte[]> freeBuffers;
+
+    ByteArrayPool(int bufferSize, int capacity) {
+        if (bufferSize < 1 || capacity < 1)
+            throw new IllegalArgumentException("bufferSize and capacity must be positive");
+        this.bufferSize = bufferSize;
+        this.freeBuffers = new ArrayBlockingQueue<>(capacity);
+    }
+
+    byte[] acquire() {
+        byte[] buffer = freeBuffers.poll();
+        return buffer == null ? new byte[bufferSize] : buffer;
+    }
+
+    /**
+     * give a buffer taken with {@link #acquire()} back, the caller must not touch it afterwards.
+     */
+    void release(byte[] buffer) {
+        freeBuffers.offer(buffer);
+    }
+
+    int bufferSize() {
+        return bufferSize;
+    }
+}
@@ -0,0 +1,37 @@
+package in.learnjavaskills.springcloudawss3.service;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads a buffer from its position to its limit without copying it to the heap.
+ */
+final class ByteBufferInputStream extends InputStream
+{
+    private final ByteBuffer byteBuffer;
+
+    ByteBufferInputStream(ByteBuffer byteBuffer) {
+        this.byteBuffer = byteBuffer;
+    }
+
+    @Override
+    public int read() {
+        return byteBuffer.hasRemaining() ? byteBuffer.get() & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) {
+        if (length == 0)
+            return 0;
+        if (!byteBuffer.hasRemaining())
+            return -1;
+        int count = Math.min(length, byteBuffer.remaining());
+        byteBuffer.get(bytes, offset, count);
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return byteBuffer.remaining();
+    }
+}
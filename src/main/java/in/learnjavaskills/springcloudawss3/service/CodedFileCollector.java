@@ -0,0 +1,45 @@
+package in.learnjavaskills.springcloudawss3.service;
+
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.transfer.s3.model.CompletedFileDownload;
+import software.amazon.awssdk.transfer.s3.model.DownloadFileRequest;
+import software.amazon.awssdk.transfer.s3.progress.TransferListener;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Remembers which files of a directory download hold objects stored with an {@link ObjectCodec}, so they can be
+ * decoded once the whole download is complete instead of on the transfer manager's threads. Add the same instance to
+ * every file download with DownloadDirectoryRequest.downloadFileRequestTransformer.
+ */
+final class CodedFileCollector implements TransferListener
+{
+    private final Queue<CodedFile> codedFiles = new ConcurrentLinkedQueue<>();
+
+    private record CodedFile(Path file, GetObjectResponse getObjectResponse) {
+    }
+
+    @Override
+    public void transferComplete(Context.TransferComplete context) {
+        if (context.request() instanceof DownloadFileRequest downloadFileRequest
+                && context.completedTransfer() instanceof CompletedFileDownload completedFileDownload) {
+            GetObjectResponse getObjectResponse = completedFileDownload.response();
+            // resolved in decodeAll, where an unknown codec can be reported
+            if (getObjectResponse.metadata().containsKey(ObjectCodec.METADATA_KEY)
+                    || getObjectResponse.contentEncoding() != null)
+                codedFiles.add(new CodedFile(downloadFileRequest.destination(), getObjectResponse));
+        }
+    }
+
+    /**
+     * decode every coded file downloaded so far.
+     * @throws IllegalArgumentException if an object names a codec this application cannot decode
+     */
+    void decodeAll() throws IOException {
+        for (CodedFile codedFile; (codedFile = codedFiles.poll()) != null; )
+            ObjectCodec.of(codedFile.getObjectResponse()).decodeInPlace(codedFile.file());
+    }
+}
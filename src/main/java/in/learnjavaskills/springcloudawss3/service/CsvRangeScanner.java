@@ -0,0 +1,148 @@
+package in.learnjavaskills.springcloudawss3.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.Supplier;
+
+/**
+ * Scan a large CSV object in parallel. The object is split into byte ranges using the HeadObject size, every split is
+ * read with its own ranged GetObject requests and parsed on a fork-join pool, and the per split results are merged
+ * pairwise. A split owns every row which starts inside it: it starts reading one byte early, drops everything up to
+ * the first line break, and reads past its end to finish its last row. The dropped bytes are skipped without tracking
+ * quotes, a split cannot know whether it starts inside a quoted field, so quoted fields are fine as long as they
+ * contain no line break. Quoted line breaks are not supported here because a split cannot tell such a line break
+ * from a row boundary, use {@link DownloadObjects#readFileUsingS3Client} for those files.
+ */
+@Service
+public class CsvRangeScanner
+{
+    // the first range of a split reaches this far past the split end, so the last row rarely needs a second request
+    private static final long ROW_OVERRUN = 64 * 1024;
+    // size of the follow up ranges when a row is longer than the overrun
+    private static final long CONTINUATION_RANGE = 1024 * 1024;
+
+    private final S3Client s3Client;
+
+    @Autowired
+    public CsvRangeScanner(S3Client s3Client) {
+        this.s3Client = s3Client;
+    }
+
+    /**
+     * Scan a CSV object, reducing the matching rows of each split into its own result container before merging.
+     * The row handed to the accumulator is only valid during the call.
+     * @param csvScanRequest object, split size, parallelism, row filter and column projection
+     * @param identity creates an empty result container for each split
+     * @param accumulator folds one (projected) row into a split's result container
+     * @param combiner merges the result containers of two neighbouring splits, left one first
+     * @return merged result
+     * @throws UnsupportedOperationException if the object is stored with an {@link ObjectCodec}, splits of it cannot be
+     * decoded on their own; read it with {@link DownloadObjects#readFileUsingS3Client} instead
+     */
+    public <A> A scan(CsvScanRequest csvScanRequest, Supplier<A> identity, BiConsumer<A, CsvRow> accumulator,
+                      BinaryOperator<A> combiner) {
+        HeadObjectResponse headObjectResponse = s3Client.headObject(HeadObjectRequest.builder()
+                .bucket(csvScanRequest.bucketName())
+                .key(csvScanRequest.key())
+                .build());
+        ObjectCodec.of(headObjectResponse).rejectRangedReads(csvScanRequest.key());
+        long objectLength = headObjectResponse.contentLength();
+        if (objectLength == 0)
+            return identity.get();
+
+        long splitSize = csvScanRequest.splitSize();
+        int splitCount = Math.toIntExact((objectLength + splitSize - 1) / splitSize);
+        ScanContext<A> scanContext = new ScanContext<>(csvScanRequest, headObjectResponse.eTag(), objectLength,
+                identity, accumulator, combiner);
+        ForkJoinPool forkJoinPool = new ForkJoinPool(Math.min(csvScanRequest.parallelism(), splitCount));
+        try {
+            return forkJoinPool.invoke(new SplitTask<>(scanContext, 0, splitCount));
+        } finally {
+            forkJoinPool.shutdown();
+        }
+    }
+
+    private record ScanContext<A>(CsvScanRequest csvScanRequest, String eTag, long objectLength,
+                                  Supplier<A> identity, BiConsumer<A, CsvRow> accumulator, BinaryOperator<A> combiner) {
+    }
+
+    /**
+     * divides the split range in halves until a single split is left, so results are combined as a balanced tree.
+     */
+    private final class SplitTask<A> extends RecursiveTask<A>
+    {
+        private final ScanContext<A> scanContext;
+        private final int fromSplit;
+        private final int toSplit;
+
+        private SplitTask(ScanContext<A> scanContext, int fromSplit, int toSplit) {
+            this.scanContext = scanContext;
+            this.fromSplit = fromSplit;
+            this.toSplit = toSplit;
+        }
+
+        @Override
+        protected A compute() {
+            if (toSplit - fromSplit == 1)
+                return scanSplit(scanContext, fromSplit);
+            int middle = (fromSplit + toSplit) >>> 1;
+            SplitTask<A> left = new SplitTask<>(scanContext, fromSplit, middle);
+            SplitTask<A> right = new SplitTask<>(scanContext, middle, toSplit);
+            left.fork();
+            A rightResult = right.compute();
+            return scanContext.combiner().apply(left.join(), rightResult);
+        }
+    }
+
+    private <A> A scanSplit(ScanContext<A> scanContext, int split) {
+        CsvScanRequest csvScanRequest = scanContext.csvScanRequest();
+        long splitStart = split * csvScanRequest.splitSize();
+        long splitEnd = Math.min(scanContext.objectLength(), splitStart + csvScanRequest.splitSize());
+        // start one byte early, the row running through that byte belongs to the previous split; if that byte is the
+        // line break ending it, the first row of this split follows right after
+        long readStart = splitStart == 0 ? 0 : splitStart - 1;
+
+        A result = scanContext.identity().get();
+        int[] projection = csvScanRequest.projectionUnsafe();
+        CsvRow projectedRow = projection == null ? null : new CsvRow();
+        CsvRowVisitor csvRowVisitor = csvRow -> {
+            long position = csvRow.position();
+            if (position < splitStart)
+                return true;
+            if (position >= splitEnd)
+                return false;
+            if (position == 0 && csvScanRequest.skipHeader())
+                return true;
+            if (!csvScanRequest.rowFilter().test(csvRow))
+                return true;
+            if (projectedRow == null) {
+                scanContext.accumulator().accept(result, csvRow);
+            } else {
+                projectedRow.projectFrom(csvRow, projection);
+                scanContext.accumulator().accept(result, projectedRow);
+            }
+            return true;
+        };
+
+        try (InputStream inputStream = new RangedObjectInputStream(s3Client, csvScanRequest.bucketName(),
+                csvScanRequest.key(), scanContext.eTag(), scanContext.objectLength(), readStart,
+                splitEnd - readStart + ROW_OVERRUN, CONTINUATION_RANGE)) {
+            new CsvStreamReader(inputStream, CsvStreamReader.DEFAULT_BUFFER_SIZE, readStart, readStart > 0)
+                    .read(csvRowVisitor);
+        } catch (IOException ioException) {
+            throw new UncheckedIOException("Unable to scan split " + split + " of " + csvScanRequest.key(), ioException);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,171 @@
+package in.learnjavaskills.springcloudawss3.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A parsed CSV row as views into the reader's byte buffer. Each field is an offset and a length into {@link #buffer()},
+ * quoted fields are already un-quoted and un-escaped. The same instance is reused for every row, so field views are
+ * only valid inside {@link CsvRowVisitor#visit(CsvRow)}.
+ */
+public final class CsvRow
+{
+    private byte[] buffer;
+    private int[] fieldOffsets = new int[16];
+    private int[] fieldLengths = new int[16];
+    private int fieldCount;
+    private long position;
+    private long rowNumber;
+
+    CsvRow() {
+    }
+
+    /**
+     * @return buffer holding the bytes of every field of this row
+     */
+    public byte[] buffer() {
+        return buffer;
+    }
+
+    /**
+     * @return number of fields in this row
+     */
+    public int fieldCount() {
+        return fieldCount;
+    }
+
+    /**
+     * @param index zero based field index
+     * @return offset of the field in {@link #buffer()}
+     */
+    public int fieldOffset(int index) {
+        checkIndex(index);
+        return fieldOffsets[index];
+    }
+
+    /**
+     * @param index zero based field index
+     * @return length of the field in bytes
+     */
+    public int fieldLength(int index) {
+        checkIndex(index);
+        return fieldLengths[index];
+    }
+
+    /**
+     * @return byte position of the first byte of this row in the stream
+     */
+    public long position() {
+        return position;
+    }
+
+    /**
+     * @return zero based row number in the stream
+     */
+    public long rowNumber() {
+        return rowNumber;
+    }
+
+    /**
+     * Compare a field with the given bytes without decoding it.
+     * @param index zero based field index
+     * @param expected expected bytes, usually UTF-8 encoded once up front
+     * @return true if the field holds exactly the expected bytes
+     */
+    public boolean fieldEquals(int index, byte[] expected) {
+        int offset = fieldOffset(index);
+        int length = fieldLengths[index];
+        if (length != expected.length)
+            return false;
+        for (int i = 0; i < length; i++) {
+            if (buffer[offset + i] != expected[i])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Parse a field as a decimal long without decoding it to a String.
+     * @param index zero based field index
+     * @return parsed value
+     * @throws NumberFormatException if the field is not a decimal integer
+     */
+    public long fieldAsLong(int index) {
+        int offset = fieldOffset(index);
+        int end = offset + fieldLengths[index];
+        if (offset == end)
+            throw new NumberFormatException("empty field " + index);
+        boolean negative = buffer[offset] == '-';
+        if (negative || buffer[offset] == '+')
+            offset++;
+        if (offset == end)
+            throw new NumberFormatException("no digits in field " + index);
+        long value = 0;
+        for (int i = offset; i < end; i++) {
+            int digit = buffer[i] - '0';
+            if (digit < 0 || digit > 9)
+                throw new NumberFormatException("not a number in field " + index + " : " + fieldAsString(index));
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Decode a field as UTF-8. This allocates, prefer the byte views on hot paths.
+     * @param index zero based field index
+     * @return field value
+     */
+    public String fieldAsString(int index) {
+        return new String(buffer, fieldOffset(index), fieldLengths[index], StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the row formatted like Arrays.toString of its fields
+     */
+    @Override
+    public String toString() {
+        StringBuilder stringBuilder = new StringBuilder("[");
+        for (int i = 0; i < fieldCount; i++) {
+            if (i > 0)
+                stringBuilder.append(", ");
+            stringBuilder.append(fieldAsString(i));
+        }
+        return stringBuilder.append(']').toString();
+    }
+
+    void reset(byte[] buffer, long position, long rowNumber) {
+        this.buffer = buffer;
+        this.position = position;
+        this.rowNumber = rowNumber;
+        this.fieldCount = 0;
+    }
+
+    void addField(int offset, int length) {
+        if (fieldCount == fieldOffsets.length) {
+            fieldOffsets = Arrays.copyOf(fieldOffsets, fieldCount * 2);
+            fieldLengths = Arrays.copyOf(fieldLengths, fieldCount * 2);
+        }
+        fieldOffsets[fieldCount] = offset;
+        fieldLengths[fieldCount] = length;
+        fieldCount++;
+    }
+
+    /**
+     * turn this row into a view of the given columns of another row, without copying bytes.
+     * columns missing from the source row are projected as empty fields.
+     */
+    void projectFrom(CsvRow source, int[] columns) {
+        reset(source.buffer, source.position, source.rowNumber);
+        for (int column : columns) {
+            if (column < source.fieldCount)
+                addField(source.fieldOffsets[column], source.fieldLengths[column]);
+            else
+                addField(0, 0);
+        }
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= fieldCount)
+            throw new IndexOutOfBoundsException("field " + index + " of " + fieldCount);
+    }
+}
@@ -0,0 +1,15 @@
+package in.learnjavaskills.springcloudawss3.service;
+
+/**
+ * Receives the rows parsed by {@link CsvStreamReader}.
+ */
+@FunctionalInterface
+public interface CsvRowVisitor
+{
+    /**
+     * Visit one row. The row and its field views are only valid during this call, copy anything you want to keep.
+     * @param csvRow current row
+     * @return true to continue reading, false to stop
+     */
+    boolean visit(CsvRow csvRow);
+}
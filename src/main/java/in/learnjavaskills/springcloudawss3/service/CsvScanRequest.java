@@ -0,0 +1,144 @@
+package in.learnjavaskills.springcloudawss3.service;
+
+import java.util.Objects;
+import java.util.function.Predicate;
+
+/**
+ * What {@link CsvRangeScanner} should scan: the object, how to split it, which rows to keep and which columns to project.
+ */
+public final class CsvScanRequest
+{
+    /**
+     * default number of bytes scanned by one split
+     */
+    public static final long DEFAULT_SPLIT_SIZE = 32L * 1024 * 1024;
+
+    private final String bucketName;
+    private final String key;
+    private final long splitSize;
+    private final int parallelism;
+    private final boolean skipHeader;
+    private final Predicate<CsvRow> rowFilter;
+    private final int[] projection;
+
+    private CsvScanRequest(Builder builder) {
+        this.bucketName = Objects.requireNonNull(builder.bucketName, "bucketName");
+        this.key = Objects.requireNonNull(builder.key, "key");
+        this.splitSize = builder.splitSize;
+        this.parallelism = builder.parallelism;
+        this.skipHeader = builder.skipHeader;
+        this.rowFilter = builder.rowFilter;
+        this.projection = builder.projection;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public String bucketName() {
+        return bucketName;
+    }
+
+    public String key() {
+        return key;
+    }
+
+    public long splitSize() {
+        return splitSize;
+    }
+
+    public int parallelism() {
+        return parallelism;
+    }
+
+    public boolean skipHeader() {
+        return skipHeader;
+    }
+
+    public Predicate<CsvRow> rowFilter() {
+        return rowFilter;
+    }
+
+    /**
+     * @return indexes of the columns handed to the accumulator, null to hand over every column
+     */
+    public int[] projection() {
+        return projection == null ? null : projection.clone();
+    }
+
+    int[] projectionUnsafe() {
+        return projection;
+    }
+
+    public static final class Builder
+    {
+        private String bucketName;
+        private String key;
+        private long splitSize = DEFAULT_SPLIT_SIZE;
+        private int parallelism = Runtime.getRuntime().availableProcessors();
+        private boolean skipHeader;
+        private Predicate<CsvRow> rowFilter = csvRow -> true;
+        private int[] projection;
+
+        private Builder() {
+        }
+
+        public Builder bucket(String bucketName) {
+            this.bucketName = bucketName;
+            return this;
+        }
+
+        public Builder key(String key) {
+            this.key = key;
+            return this;
+        }
+
+        /**
+         * @param splitSize number of bytes scanned by one split, each split is one or more ranged GETs on its own thread
+         */
+        public Builder splitSize(long splitSize) {
+            if (splitSize < 1)
+                throw new IllegalArgumentException("splitSize must be positive");
+            this.splitSize = splitSize;
+            return this;
+        }
+
+        /**
+         * @param parallelism number of splits scanned at once, defaults to the number of cores
+         */
+        public Builder parallelism(int parallelism) {
+            if (parallelism < 1)
+                throw new IllegalArgumentException("parallelism must be positive");
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        /**
+         * @param skipHeader true if the first row of the object is a header
+         */
+        public Builder skipHeader(boolean skipHeader) {
+            this.skipHeader = skipHeader;
+            return this;
+        }
+
+        /**
+         * @param rowFilter predicate evaluated on the full row, before projection
+         */
+        public Builder rowFilter(Predicate<CsvRow> rowFilter) {
+            this.rowFilter = Objects.requireNonNull(rowFilter, "rowFilter");
+            return this;
+        }
+
+        /**
+         * @param columns indexes of the columns handed to the accumulator, in that order
+         */
+        public Builder projection(int... columns) {
+            this.projection = columns == null ? null : columns.clone();
+            return this;
+        }
+
+        public CsvScanRequest build() {
+            return new CsvScanRequest(this);
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package in.learnjavaskills.springcloudawss3.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Streaming CSV reader which parses straight from a reused byte buffer.
+ * Rows are handed to a {@link CsvRowVisitor} as a reused {@link CsvRow} whose fields are offset/length views into the
+ * buffer, so reading a file allocates nothing per row or per field. Quoted fields (including escaped quotes and line
+ * breaks inside quotes) are supported, both LF and CRLF line endings are accepted. The reader does not close the stream.
+ */
+public class CsvStreamReader
+{
+    /**
+     * default size of the read buffer, it grows only when a single row does not fit
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private static final byte COMMA = ',';
+    private static final byte QUOTE = '"';
+    private static final byte LF = '\n';
+    private static final byte CR = '\r';
+
+    private final InputStream inputStream;
+    private final CsvRow csvRow = new CsvRow();
+
+    private final boolean skipPartialRow;
+
+    private byte[] buffer;
+    // stream position of buffer[0]
+    private long bufferPosition;
+
+    public CsvStreamReader(InputStream inputStream) {
+        this(inputStream, DEFAULT_BUFFER_SIZE);
+    }
+
+    public CsvStreamReader(InputStream inputStream, int bufferSize) {
+        this(inputStream, bufferSize, 0);
+    }
+
+    /**
+     * @param inputStream stream to parse
+     * @param bufferSize initial buffer size
+     * @param startPosition stream position of the first byte of inputStream, reported through {@link CsvRow#position()}
+     */
+    CsvStreamReader(InputStream inputStream, int bufferSize, long startPosition) {
+        this(inputStream, bufferSize, startPosition, false);
+    }
+
+    /**
+     * @param inputStream stream to parse
+     * @param bufferSize initial buffer size
+     * @param startPosition stream position of the first byte of inputStream, reported through {@link CsvRow#position()}
+     * @param skipPartialRow drop everything up to and including the first line break without visiting it, for a
+     *                       stream which starts in the middle of a row. Quotes are not tracked while skipping, the
+     *                       quote state at the start of the stream is unknown; this assumes no quoted line breaks.
+     */
+    CsvStreamReader(InputStream inputStream, int bufferSize, long startPosition, boolean skipPartialRow) {
+        if (bufferSize < 1)
+            throw new IllegalArgumentException("bufferSize must be positive");
+        this.inputStream = inputStream;
+        this.buffer = new byte[bufferSize];
+        this.bufferPosition = startPosition;
+        this.skipPartialRow = skipPartialRow;
+    }
+
+    /**
+     * Read rows until the end of the stream or until the visitor returns false.
+     * @param csvRowVisitor row visitor
+     * @return number of rows visited
+     * @throws IOException if the stream cannot be read
+     */
+    public long read(CsvRowVisitor csvRowVisitor) throws IOException {
+        long rowNumber = 0;
+        // buffer[rowStart, limit) holds bytes not yet handed to the visitor
+        int rowStart = 0;
+        int limit = 0;
+        // scan state for the row end, kept across refills so an incomplete row is never scanned twice
+        int scanPosition = 0;
+        boolean inQuotes = false;
+        boolean endOfStream = false;
+        boolean skipping = skipPartialRow;
+
+        while (true) {
+            int rowEnd = -1;
+            for (int i = scanPosition; i < limit; i++) {
+                byte b = buffer[i];
+                if (skipping) {
+                    if (b == LF) {
+                        skipping = false;
+                        rowStart = i + 1;
+                    }
+                } else if (b == QUOTE)
+                    inQuotes = !inQuotes; // an escaped quote "" toggles twice
+                else if (b == LF && !inQuotes) {
+                    rowEnd = i;
+                    break;
+                }
+            }
+
+            if (rowEnd >= 0) {
+                int contentEnd = rowEnd > rowStart && buffer[rowEnd - 1] == CR ? rowEnd - 1 : rowEnd;
+                if (!visitRow(csvRowVisitor, rowStart, contentEnd, rowNumber++))
+                    return rowNumber;
+                rowStart = rowEnd + 1;
+                scanPosition = rowStart;
+                inQuotes = false;
+                continue;
+            }
+
+            scanPosition = limit;
+            // nothing of the partial row is ever visited, let the buffer drop it
+            if (skipping)
+                rowStart = limit;
+            if (endOfStream) {
+                // last row without a trailing line break
+                if (!skipping && rowStart < limit) {
+                    int contentEnd = buffer[limit - 1] == CR ? limit - 1 : limit;
+                    visitRow(csvRowVisitor, rowStart, contentEnd, rowNumber++);
+                }
+                return rowNumber;
+            }
+
+            // make room for more bytes, keeping the incomplete row at the start of the buffer
+            if (rowStart > 0) {
+                System.arraycopy(buffer, rowStart, buffer, 0, limit - rowStart);
+                bufferPosition += rowStart;
+                limit -= rowStart;
+                scanPosition -= rowStart;
+                rowStart = 0;
+            } else if (limit == buffer.length) {
+                // a single row is larger than the buffer
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+
+            int read = inputStream.read(buffer, limit, buffer.length - limit);
+            if (read < 0)
+                endOfStream = true;
+            else
+                limit += read;
+        }
+    }
+
+    /**
+     * split buffer[start, end) into fields, un-quoting in place, and hand the row to the visitor.
+     */
+    private boolean visitRow(CsvRowVisitor csvRowVisitor, int start, int end, long rowNumber) {
+        csvRow.reset(buffer, bufferPosition + start, rowNumber);
+        int i = start;
+        while (true) {
+            if (i < end && buffer[i] == QUOTE) {
+                // quoted field, shift the content left over the quotes while collapsing "" into "
+                int write = i;
+                int read = i + 1;
+                while (read < end) {
+                    byte b = buffer[read];
+                    if (b == QUOTE) {
+                        if (read + 1 < end && buffer[read + 1] == QUOTE) {
+                            buffer[write++] = QUOTE;
+                            read += 2;
+                        } else {
+                            read++;
+                            break;
+                        }
+                    } else {
+                        buffer[write++] = b;
+                        read++;
+                    }
+                }
+                csvRow.addField(i, write - i);
+                // tolerate stray characters between the closing quote and the next comma
+                while (read < end && buffer[read] != COMMA)
+                    read++;
+                if (read >= end)
+                    break;
+                i = read + 1;
+            } else {
+                int fieldEnd = i;
+                while (fieldEnd < end && buffer[fieldEnd] != COMMA)
+                    fieldEnd++;
+                csvRow.addField(i, fieldEnd - i);
+                if (fieldEnd >= end)
+                    break;
+                i = fieldEnd + 1;
+            }
+        }
+        return csvRowVisitor.visit(csvRow);
+    }
+}
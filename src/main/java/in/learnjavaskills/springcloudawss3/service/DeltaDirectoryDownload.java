@@ -0,0 +1,233 @@
+package in.learnjavaskills.springcloudawss3.service;
+
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.S3Object;
+import software.amazon.awssdk.transfer.s3.S3TransferManager;
+import software.amazon.awssdk.transfer.s3.model.CompletedFileDownload;
+import software.amazon.awssdk.transfer.s3.model.DownloadFileRequest;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bring a local directory up to date with a prefix by downloading only new and changed objects. The listing is merged
+ * with the {@link SyncManifest} of the previous sync: an object is fetched when the manifest has no entry for it,
+ * its size or ETag changed, or the local file is missing or was modified since. Manifest entries left behind by the
+ * merge are objects which are gone; with deleteRemoved their local files are removed. Only files named by the manifest
+ * are ever deleted, other local files are left alone.
+ *
+ * Downloads go through the S3TransferManager with at most maxConcurrentDownloads files in flight, the listing waits
+ * for a free slot. A slot is free again as soon as its transfer completes; decoding and the modified time are done
+ * on the decodeExecutor, off the async client's completion threads. The new manifest is written while listing and replaces the old one once every download finished,
+ * without the keys which failed. An object stored with an {@link ObjectCodec} is decoded as soon as its download
+ * completes; its local file then differs in size from the listing, so the manifest also records the size of the
+ * local file, and a local file counts as unchanged when both its size and its modified time, which the sync sets to
+ * the object's last modified time, are the recorded ones.
+ */
+class DeltaDirectoryDownload
+{
+    static final String DEFAULT_MANIFEST_NAME = ".s3-sync-manifest";
+    static final int DEFAULT_MAX_CONCURRENT_DOWNLOADS = 16;
+
+    private final S3Client s3Client;
+    private final S3TransferManager s3TransferManager;
+    private final Executor decodeExecutor;
+    private final String bucketName;
+    private final String prefix;
+    private final Path destination;
+    private final Path manifest;
+    private final boolean deleteRemoved;
+    private final int maxConcurrentDownloads;
+
+    private final AtomicLong downloadedCount = new AtomicLong();
+    private final AtomicLong downloadedBytes = new AtomicLong();
+    private final Queue<DeltaDownloadReport.FailedDownload> failures = new ConcurrentLinkedQueue<>();
+    private final Set<String> failedKeys = ConcurrentHashMap.newKeySet();
+    private final Map<String, Long> decodedSizes = new ConcurrentHashMap<>();
+    // a permit for every started download once its file is decoded or it failed
+    private final Semaphore finishedDownloads = new Semaphore(0);
+    private int startedDownloads;
+    private long listedCount;
+    private long unchangedCount;
+    private long deletedCount;
+
+    DeltaDirectoryDownload(S3Client s3Client, S3TransferManager s3TransferManager, Executor decodeExecutor,
+                           String bucketName, String prefix, Path destination, Path manifest, boolean deleteRemoved,
+                           int maxConcurrentDownloads) {
+        if (maxConcurrentDownloads < 1)
+            throw new IllegalArgumentException("maxConcurrentDownloads must be positive");
+        this.s3Client = s3Client;
+        this.s3TransferManager = s3TransferManager;
+        this.decodeExecutor = decodeExecutor;
+        this.bucketName = bucketName;
+        this.prefix = prefix;
+        this.destination = destination.toAbsolutePath().normalize();
+        this.manifest = manifest;
+        this.deleteRemoved = deleteRemoved;
+        this.maxConcurrentDownloads = maxConcurrentDownloads;
+    }
+
+    /**
+     * list, download and delete, returning once every download finished.
+     * @return report of downloaded, unchanged, deleted and failed objects
+     * @throws IOException if the manifest cannot be read or written; the previous manifest is then kept
+     */
+    DeltaDownloadReport download() throws IOException {
+        long startNanos = System.nanoTime();
+        Files.createDirectories(destination);
+        ListObjectsV2Request listObjectsV2Request = ListObjectsV2Request.builder()
+                .bucket(bucketName)
+                .prefix(prefix)
+                .build();
+        Semaphore downloadSlots = new Semaphore(maxConcurrentDownloads);
+        try (SyncManifest.Reader previous = SyncManifest.Reader.open(manifest);
+             SyncManifest.Writer next = new SyncManifest.Writer(manifest)) {
+            try {
+                for (S3Object s3Object : s3Client.listObjectsV2Paginator(listObjectsV2Request).contents()) {
+                    listedCount++;
+                    // zero byte folder markers of the console have no file
+                    if (s3Object.key().endsWith("/"))
+                        continue;
+                    // the local size is the listed one until a download decodes the object
+                    SyncManifest.Entry current = new SyncManifest.Entry(s3Object.key().getBytes(StandardCharsets.UTF_8),
+                            s3Object.size(), s3Object.size(), s3Object.lastModified().toEpochMilli(), s3Object.eTag());
+                    while (previous.hasNext() && SyncManifest.compareKeys(previous.peek().key(), current.key()) < 0)
+                        removed(previous.next());
+                    SyncManifest.Entry last = previous.hasNext()
+                            && SyncManifest.compareKeys(previous.peek().key(), current.key()) == 0 ? previous.next() : null;
+
+                    Path localFile = localFile(s3Object.key());
+                    if (localFile == null) {
+                        next.append(current);
+                        fail(s3Object.key(), "key resolves outside of " + destination);
+                    } else if (last != null && last.size() == current.size() && Objects.equals(last.eTag(), current.eTag())
+                            && localFileMatches(localFile, last)) {
+                        next.append(current.withLocalSize(last.localSize()));
+                        unchangedCount++;
+                    } else {
+                        next.append(current);
+                        downloadSlots.acquire();
+                        download(current, localFile, downloadSlots);
+                    }
+                }
+                while (previous.hasNext())
+                    removed(previous.next());
+            } catch (InterruptedException interruptedException) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while syncing " + destination);
+            } finally {
+                // every download in flight has finished once all are counted, decoding included
+                finishedDownloads.acquireUninterruptibly(startedDownloads);
+            }
+            next.commit();
+        }
+        if (!failedKeys.isEmpty() || !decodedSizes.isEmpty())
+            SyncManifest.update(manifest, failedKeys, decodedSizes);
+        return new DeltaDownloadReport(listedCount, downloadedCount.get(), unchangedCount, deletedCount,
+                downloadedBytes.get(), List.copyOf(failures), Duration.ofNanos(System.nanoTime() - startNanos));
+    }
+
+    private void download(SyncManifest.Entry entry, Path localFile, Semaphore downloadSlots) {
+        String key = entry.keyString();
+        try {
+            Files.createDirectories(localFile.getParent());
+            DownloadFileRequest downloadFileRequest = DownloadFileRequest.builder()
+                    .getObjectRequest(builder -> builder.bucket(bucketName).key(key).ifMatch(entry.eTag()))
+                    .destination(localFile)
+                    .build();
+            CompletableFuture<CompletedFileDownload> transfer = s3TransferManager.downloadFile(downloadFileRequest)
+                    .completionFuture();
+            transfer.thenAcceptAsync(completedFileDownload -> finish(entry, localFile, completedFileDownload),
+                            decodeExecutor)
+                    .exceptionally(throwable -> {
+                        fail(key, (throwable instanceof CompletionException && throwable.getCause() != null
+                                ? throwable.getCause() : throwable).toString());
+                        return null;
+                    })
+                    .thenRun(finishedDownloads::release);
+            startedDownloads++;
+            // the slot is not held while the file is decoded
+            transfer.whenComplete((completedFileDownload, throwable) -> downloadSlots.release());
+        } catch (IOException | RuntimeException exception) {
+            fail(key, exception.toString());
+            downloadSlots.release();
+        }
+    }
+
+    private void finish(SyncManifest.Entry entry, Path localFile, CompletedFileDownload completedFileDownload) {
+        try {
+            ObjectCodec objectCodec = ObjectCodec.of(completedFileDownload.response());
+            objectCodec.decodeInPlace(localFile);
+            if (objectCodec != ObjectCodec.NONE)
+                decodedSizes.put(entry.keyString(), Files.size(localFile));
+            // the modified time marks the file as the listed version of the object
+            Files.setLastModifiedTime(localFile, FileTime.fromMillis(entry.lastModifiedMillis()));
+            downloadedCount.incrementAndGet();
+            downloadedBytes.addAndGet(entry.size());
+        } catch (IOException | RuntimeException exception) {
+            fail(entry.keyString(), exception.toString());
+        }
+    }
+
+    private void removed(SyncManifest.Entry entry) {
+        if (!deleteRemoved)
+            return;
+        String key = entry.keyString();
+        Path localFile = localFile(key);
+        if (localFile == null)
+            return;
+        try {
+            if (Files.deleteIfExists(localFile))
+                deletedCount++;
+        } catch (IOException ioException) {
+            failures.add(new DeltaDownloadReport.FailedDownload(key, ioException.toString()));
+        }
+    }
+
+    private void fail(String key, String message) {
+        failures.add(new DeltaDownloadReport.FailedDownload(key, message));
+        failedKeys.add(key);
+    }
+
+    private static boolean localFileMatches(Path localFile, SyncManifest.Entry entry) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(localFile, BasicFileAttributes.class);
+            // a copy restoring the modified time, as cp -p or rsync -t do, is only caught by the size
+            return attributes.isRegularFile() && attributes.size() == entry.localSize()
+                    && attributes.lastModifiedTime().toMillis() == entry.lastModifiedMillis();
+        } catch (IOException ioException) {
+            // missing or unreadable, fetch it again
+            return false;
+        }
+    }
+
+    /**
+     * @return the file of a key below the destination, null for keys such as ../x which would escape it
+     */
+    private Path localFile(String key) {
+        String relativeKey = key.startsWith(prefix) ? key.substring(prefix.length()) : key;
+        while (relativeKey.startsWith("/"))
+            relativeKey = relativeKey.substring(1);
+        Path localFile = destination.resolve(relativeKey).normalize();
+        return localFile.startsWith(destination) && !localFile.equals(destination) ? localFile : null;
+    }
+}
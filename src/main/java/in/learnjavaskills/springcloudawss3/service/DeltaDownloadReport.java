@@ -0,0 +1,34 @@
+package in.learnjavaskills.springcloudawss3.service;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Outcome of a delta directory download: how many objects were listed, fetched or already up to date locally, how many
+ * local files were removed and which objects failed.
+ * @param listedCount objects listed under the prefix
+ * @param downloadedCount objects which were new or changed and got downloaded
+ * @param unchangedCount objects whose local file matched the manifest of the previous sync
+ * @param deletedCount local files removed because their object is gone
+ * @param downloadedBytes bytes written for the downloaded objects
+ * @param failures objects which could not be downloaded, they are fetched again by the next sync
+ * @param elapsed wall clock time taken by the sync
+ */
+public record DeltaDownloadReport(long listedCount, long downloadedCount, long unchangedCount, long deletedCount,
+                                  long downloadedBytes, List<FailedDownload> failures, Duration elapsed)
+{
+    /**
+     * @return true if every listed object is now in the local directory
+     */
+    public boolean isComplete() {
+        return failures.isEmpty();
+    }
+
+    /**
+     * A single object which could not be downloaded or whose local file could not be removed.
+     * @param key object key
+     * @param message reason of the failure
+     */
+    public record FailedDownload(String key, String message) {
+    }
+}
@@ -0,0 +1,84 @@
+package in.learnjavaskills.springcloudawss3.service;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A fixed number of reusable direct buffers. Buffers are allocated on first use, never more than capacity of them,
+ * and {@link #acquire} waits while every buffer is taken, which is what bounds the memory of whoever fills them.
+ */
+class DirectBufferPool
+{
+    private final int bufferSize;
+    private final int capacity;
+    private final BlockingQueue<ByteBuffer> freeBuffers;
+    private final AtomicInteger allocated = new AtomicInteger();
+
+    DirectBufferPool(int bufferSize, int capacity) {
+        if (bufferSize < 1 || capacity < 1)
+            throw new IllegalArgumentException("bufferSize and capacity must be positive");
+        this.bufferSize = bufferSize;
+        this.capacity = capacity;
+        this.freeBuffers = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /**
+     * take a cleared buffer, waiting as long as it takes for one to be released if all capacity buffers are in use.
+     */
+    ByteBuffer acquire() throws InterruptedException {
+        ByteBuffer byteBuffer = allocateOrPoll();
+        return (byteBuffer != null ? byteBuffer : freeBuffers.take()).clear();
+    }
+
+    /**
+     * take a cleared buffer, waiting up to timeout for one to be released if all capacity buffers are in use.
+     * @return the buffer, null if none was released in time
+     */
+    ByteBuffer acquire(Duration timeout) throws InterruptedException {
+        ByteBuffer byteBuffer = allocateOrPoll();
+        if (byteBuffer == null) {
+            byteBuffer = freeBuffers.poll(timeout.toNanos(), TimeUnit.NANOSECONDS);
+            if (byteBuffer == null)
+                return null;
+        }
+        return byteBuffer.clear();
+    }
+
+    // a free buffer or a new one while fewer than capacity exist, null if the caller has to wait
+    private ByteBuffer allocateOrPoll() {
+        ByteBuffer byteBuffer = freeBuffers.poll();
+        if (byteBuffer != null)
+            return byteBuffer;
+        for (int count = allocated.get(); count < capacity; count = allocated.get()) {
+            if (allocated.compareAndSet(count, count + 1))
+                return ByteBuffer.allocateDirect(bufferSize);
+        }
+        return null;
+    }
+
+    /**
+     * give a buffer taken with {@link #acquire} back, the caller must not touch it afterwards.
+     */
+    void release(ByteBuffer byteBuffer) {
+        freeBuffers.add(byteBuffer);
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    int bufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * @return number of direct buffers allocated so far, never more than capacity
+     */
+    int allocatedBuffers() {
+        return allocated.get();
+    }
+}
@@ -0,0 +1,172 @@
+package in.learnjavaskills.springcloudawss3.service;
+
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.ChecksumAlgorithm;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Upload the new and changed files of a local tree. The prefix is listed once, every file which passes the filters is
+ * looked up in the listing and only uploaded when there is no object for it, the sizes differ or the content does not
+ * produce the object ETag (see {@link ETagMatcher}). Comparing and uploading run on concurrency threads, so a mostly
+ * unchanged tree costs one listing plus local hashing of the files whose size did not change.
+ *
+ * Files up to the part size of the {@link StreamingMultipartUploader} are sent with a single PutObject, larger ones as
+ * multipart uploads of that part size, which keeps their ETags recognisable on the next sync. Objects without a local
+ * file are left alone.
+ */
+class DirectorySync
+{
+    private final S3Client s3Client;
+    private final StreamingMultipartUploader streamingMultipartUploader;
+    private final DirectorySyncRequest directorySyncRequest;
+    private final ETagMatcher eTagMatcher;
+
+    private final AtomicLong uploadedCount = new AtomicLong();
+    private final AtomicLong unchangedCount = new AtomicLong();
+    private final AtomicLong uploadedBytes = new AtomicLong();
+    private final Queue<DirectorySyncReport.FailedUpload> failures = new ConcurrentLinkedQueue<>();
+
+    DirectorySync(S3Client s3Client, StreamingMultipartUploader streamingMultipartUploader,
+                  DirectorySyncRequest directorySyncRequest) {
+        this.s3Client = s3Client;
+        this.streamingMultipartUploader = streamingMultipartUploader;
+        this.directorySyncRequest = directorySyncRequest;
+        this.eTagMatcher = new ETagMatcher(streamingMultipartUploader.partSize());
+    }
+
+    /**
+     * compare and upload every file, returning once all of them are done.
+     * @return report of uploaded, unchanged and failed files
+     * @throws IOException if the source directory cannot be walked
+     */
+    DirectorySyncReport sync() throws IOException {
+        long startNanos = System.nanoTime();
+        List<LocalFile> localFiles = walkSourceDirectory();
+        Map<String, S3Object> remoteObjects = listRemoteObjects();
+
+        ExecutorService executorService = Executors.newFixedThreadPool(
+                Math.max(1, Math.min(directorySyncRequest.concurrency(), localFiles.size())));
+        try {
+            List<Future<?>> syncs = new ArrayList<>(localFiles.size());
+            for (LocalFile localFile : localFiles)
+                syncs.add(executorService.submit(() -> syncFile(localFile, remoteObjects.get(localFile.key()))));
+            for (Future<?> sync : syncs)
+                sync.get();
+        } catch (InterruptedException interruptedException) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while syncing " + directorySyncRequest.sourceDirectory());
+        } catch (ExecutionException executionException) {
+            // syncFile records its own failures, anything arriving here is a bug
+            throw new IllegalStateException(executionException.getCause());
+        } finally {
+            executorService.shutdownNow();
+        }
+        return new DirectorySyncReport(localFiles.size(), uploadedCount.get(), unchangedCount.get(), uploadedBytes.get(),
+                List.copyOf(failures), Duration.ofNanos(System.nanoTime() - startNanos));
+    }
+
+    private void syncFile(LocalFile localFile, S3Object remoteObject) {
+        try {
+            if (remoteObject != null && remoteObject.size() == localFile.size()
+                    && eTagMatcher.matches(localFile.path(), localFile.size(), remoteObject.eTag())) {
+                unchangedCount.incrementAndGet();
+                return;
+            }
+            upload(localFile);
+            uploadedCount.incrementAndGet();
+            uploadedBytes.addAndGet(localFile.size());
+        } catch (IOException | RuntimeException exception) {
+            failures.add(new DirectorySyncReport.FailedUpload(localFile.key(), exception.toString()));
+        }
+    }
+
+    private void upload(LocalFile localFile) throws IOException {
+        if (localFile.size() <= streamingMultipartUploader.partSize()) {
+            s3Client.putObject(PutObjectRequest.builder()
+                    .bucket(directorySyncRequest.bucketName())
+                    .key(localFile.key())
+                    .checksumAlgorithm(ChecksumAlgorithm.CRC32_C)
+                    .build(), RequestBody.fromFile(localFile.path()));
+            return;
+        }
+        try (InputStream inputStream = Files.newInputStream(localFile.path())) {
+            streamingMultipartUploader.upload(directorySyncRequest.bucketName(), localFile.key(), inputStream);
+        }
+    }
+
+    private Map<String, S3Object> listRemoteObjects() {
+        ListObjectsV2Request listObjectsV2Request = ListObjectsV2Request.builder()
+                .bucket(directorySyncRequest.bucketName())
+                .prefix(directorySyncRequest.prefix())
+                .build();
+        Map<String, S3Object> remoteObjects = new HashMap<>();
+        s3Client.listObjectsV2Paginator(listObjectsV2Request)
+                .contents()
+                .forEach(s3Object -> remoteObjects.put(s3Object.key(), s3Object));
+        return remoteObjects;
+    }
+
+    private List<LocalFile> walkSourceDirectory() throws IOException {
+        Path sourceDirectory = directorySyncRequest.sourceDirectory();
+        FileSystem fileSystem = sourceDirectory.getFileSystem();
+        List<PathMatcher> includes = directorySyncRequest.includes().stream()
+                .map(glob -> fileSystem.getPathMatcher("glob:" + glob))
+                .toList();
+        List<PathMatcher> excludes = directorySyncRequest.excludes().stream()
+                .map(glob -> fileSystem.getPathMatcher("glob:" + glob))
+                .toList();
+
+        List<LocalFile> localFiles = new ArrayList<>();
+        Files.walkFileTree(sourceDirectory, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes) {
+                Path relativePath = sourceDirectory.relativize(directory);
+                if (!directory.equals(sourceDirectory) && anyMatches(excludes, relativePath))
+                    return FileVisitResult.SKIP_SUBTREE;
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                Path relativePath = sourceDirectory.relativize(file);
+                if (attributes.isRegularFile() && !anyMatches(excludes, relativePath)
+                        && (includes.isEmpty() || anyMatches(includes, relativePath)))
+                    localFiles.add(new LocalFile(file, keyOf(relativePath), attributes.size()));
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return localFiles;
+    }
+
+    private String keyOf(Path relativePath) {
+        String relativeKey = relativePath.toString();
+        if (File.separatorChar != '/')
+            relativeKey = relativeKey.replace(File.separatorChar, '/');
+        return directorySyncRequest.prefix() + relativeKey;
+    }
+
+    private static boolean anyMatches(List<PathMatcher> pathMatchers, Path relativePath) {
+        for (PathMatcher pathMatcher : pathMatchers) {
+            if (pathMatcher.matches(relativePath))
+                return true;
+        }
+        return false;
+    }
+
+    private record LocalFile(Path path, String key, long size) {
+    }
+}
@@ -0,0 +1,32 @@
+package in.learnjavaskills.springcloudawss3.service;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Outcome of a directory sync: how many files were looked at, uploaded or left alone and which ones failed.
+ * @param scannedCount files of the local tree which passed the include and exclude filters
+ * @param uploadedCount files which were new or changed and got uploaded
+ * @param unchangedCount files whose object already had the same size and ETag
+ * @param uploadedBytes bytes sent for the uploaded files
+ * @param failures files which could not be compared or uploaded
+ * @param elapsed wall clock time taken by the sync
+ */
+public record DirectorySyncReport(long scannedCount, long uploadedCount, long unchangedCount, long uploadedBytes,
+                                  List<FailedUpload> failures, Duration elapsed)
+{
+    /**
+     * @return true if every scanned file is now in the bucket
+     */
+    public boolean isComplete() {
+        return failures.isEmpty();
+    }
+
+    /**
+     * A single file which could not be synced.
+     * @param key object key the file maps to
+     * @param message reason of the failure
+     */
+    public record FailedUpload(String key, String message) {
+    }
+}
@@ -0,0 +1,123 @@
+package in.learnjavaskills.springcloudawss3.service;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * What {@link UploadObjects#syncDirectory(DirectorySyncRequest)} should upload: the local tree, where it goes in the
+ * bucket, which files take part and how many are uploaded at once.
+ */
+public final class DirectorySyncRequest
+{
+    public static final int DEFAULT_CONCURRENCY = 8;
+
+    private final Path sourceDirectory;
+    private final String bucketName;
+    private final String prefix;
+    private final int concurrency;
+    private final List<String> includes;
+    private final List<String> excludes;
+
+    private DirectorySyncRequest(Builder builder) {
+        this.sourceDirectory = Objects.requireNonNull(builder.sourceDirectory, "sourceDirectory");
+        this.bucketName = Objects.requireNonNull(builder.bucketName, "bucketName");
+        this.prefix = builder.prefix;
+        this.concurrency = builder.concurrency;
+        this.includes = List.copyOf(builder.includes);
+        this.excludes = List.copyOf(builder.excludes);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public Path sourceDirectory() {
+        return sourceDirectory;
+    }
+
+    public String bucketName() {
+        return bucketName;
+    }
+
+    public String prefix() {
+        return prefix;
+    }
+
+    public int concurrency() {
+        return concurrency;
+    }
+
+    public List<String> includes() {
+        return includes;
+    }
+
+    public List<String> excludes() {
+        return excludes;
+    }
+
+    public static final class Builder
+    {
+        private Path sourceDirectory;
+        private String bucketName;
+        private String prefix = "";
+        private int concurrency = DEFAULT_CONCURRENCY;
+        private final List<String> includes = new ArrayList<>();
+        private final List<String> excludes = new ArrayList<>();
+
+        private Builder() {
+        }
+
+        public Builder sourceDirectory(Path sourceDirectory) {
+            this.sourceDirectory = sourceDirectory;
+            return this;
+        }
+
+        public Builder bucket(String bucketName) {
+            this.bucketName = bucketName;
+            return this;
+        }
+
+        /**
+         * @param prefix key prefix the tree is uploaded under, for example builds/1.4/; the file path relative to the
+         *               source directory is appended with / separators
+         */
+        public Builder prefix(String prefix) {
+            this.prefix = Objects.requireNonNull(prefix, "prefix");
+            return this;
+        }
+
+        /**
+         * @param concurrency number of files compared and uploaded at once
+         */
+        public Builder concurrency(int concurrency) {
+            if (concurrency < 1)
+                throw new IllegalArgumentException("concurrency must be positive");
+            this.concurrency = concurrency;
+            return this;
+        }
+
+        /**
+         * @param glob glob matched against the path relative to the source directory, for example **.jar for jars at
+         *             any depth; once an include is given only matching files are synced
+         */
+        public Builder include(String glob) {
+            includes.add(Objects.requireNonNull(glob, "glob"));
+            return this;
+        }
+
+        /**
+         * @param glob glob matched against the relative path of files and directories, a matching directory is skipped
+         *             with everything below it; excludes win over includes
+         */
+        public Builder exclude(String glob) {
+            excludes.add(Objects.requireNonNull(glob, "glob"));
+            return this;
+        }
+
+        public DirectorySyncRequest build() {
+            return new DirectorySyncRequest(this);
+        }
+    }
+}
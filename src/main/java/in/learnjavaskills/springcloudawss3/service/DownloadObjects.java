@@ -5,20 +5,21 @@ import io.awspring.cloud.s3.S3Template;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.core.exception.SdkClientException;
 import software.amazon.awssdk.services.s3.S3Client;
-import software.amazon.awssdk.services.s3.model.GetObjectRequest;
-import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.*;
 import software.amazon.awssdk.transfer.s3.S3TransferManager;
 import software.amazon.awssdk.transfer.s3.model.*;
 
-import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
-import java.util.Arrays;
-import java.util.Objects;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Download file using STemplate, S3Client and S3TransferManager
@@ -26,33 +27,172 @@ import java.util.Objects;
 @Service
 public class DownloadObjects
 {
+    // copy buffers of streamObject, one per stream in progress
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+    private static final int POOLED_STREAM_BUFFERS = 64;
+
     private final S3Template s3Template;
     private final S3Client s3Client;
 
     private final S3TransferManager s3TransferManager;
+    private final TransferProgressPublisher transferProgressPublisher;
+    private final ObjectDiskCache objectDiskCache;
+    private final ResumableTransfers resumableTransfers;
+    private final ObjectPacks objectPacks;
+    private final ObjectDecoder objectDecoder;
+    private final ByteArrayPool streamBuffers = new ByteArrayPool(STREAM_BUFFER_SIZE, POOLED_STREAM_BUFFERS);
 
     @Autowired
-    public DownloadObjects(S3Template s3Template, S3Client s3Client, S3TransferManager s3TransferManager) {
+    public DownloadObjects(S3Template s3Template, S3Client s3Client, S3TransferManager s3TransferManager,
+                           TransferProgressPublisher transferProgressPublisher, ObjectDiskCache objectDiskCache,
+                           ResumableTransfers resumableTransfers, ObjectPacks objectPacks,
+                           ObjectDecoder objectDecoder) {
         this.s3Template = s3Template;
         this.s3Client = s3Client;
         this.s3TransferManager = s3TransferManager;
+        this.transferProgressPublisher = transferProgressPublisher;
+        this.objectDiskCache = objectDiskCache;
+        this.resumableTransfers = resumableTransfers;
+        this.objectPacks = objectPacks;
+        this.objectDecoder = objectDecoder;
     }
 
     /**
-     * download file using S3Client
+     * download file using S3Client, verifying its checksum, see {@link #downloadVerifiedFile(String, String, Path)}
      * @param bucketName name of the bucket
      * @param key desire key - usually the name of the file
      * @param downloadDestinationPath absolute file path to download from s3
      */
     public void downloadFileUsingS3Client(String bucketName, String key, String downloadDestinationPath) {
         try {
-            GetObjectRequest getObjectRequest = GetObjectRequest.builder()
+            downloadVerifiedFile(bucketName, key, Path.of(downloadDestinationPath));
+        } catch (Exception exception) {
+            exception.printStackTrace();
+        }
+    }
+
+    /**
+     * Download an object to a file and verify the CRC32C it was uploaded with in the same pass which writes the file.
+     * The SDK verifies the checksum of a single part object while the body is read. The checksum of a multipart
+     * object is one over its part checksums, which the SDK skips, so the parts are listed with GetObjectAttributes
+     * and each one is verified as it is written. An object uploaded without a checksum is downloaded unverified.
+     * An object stored with an {@link ObjectCodec} is decoded on the way to the file, the checksum covers the stored
+     * bytes.
+     * @param bucketName name of the bucket
+     * @param key key of the object
+     * @param destination file to write, replaced if it exists
+     * @return the verified checksum, null if the object has none
+     * @throws UncheckedIOException if the checksum does not match or the file cannot be written, the file is deleted
+     * @throws software.amazon.awssdk.core.exception.SdkException if S3 failed, or the SDK found a checksum mismatch
+     */
+    public String downloadVerifiedFile(String bucketName, String key, Path destination) {
+        GetObjectRequest getObjectRequest = GetObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .checksumMode(ChecksumMode.ENABLED)
+                .build();
+        try (ResponseInputStream<GetObjectResponse> objectStream = s3Client.getObject(getObjectRequest)) {
+            String checksum = objectStream.response().checksumCRC32C();
+            try {
+                InputStream body = objectStream;
+                if (ObjectChecksums.isComposite(checksum))
+                    body = new PartChecksumInputStream(objectStream, key,
+                            partChecksums(bucketName, key, objectStream.response(), checksum));
+                body = ObjectCodec.of(objectStream.response()).decode(body);
+                Files.copy(body, destination, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException | RuntimeException exception) {
+                objectStream.abort();
+                Files.deleteIfExists(destination);
+                throw exception;
+            }
+            return checksum;
+        } catch (IOException ioException) {
+            throw new UncheckedIOException(ioException);
+        }
+    }
+
+    /**
+     * list the parts of the object being read, checking that the listing belongs to the same version.
+     */
+    private List<PartChecksumInputStream.Part> partChecksums(String bucketName, String key,
+                                                             GetObjectResponse getObjectResponse,
+                                                             String checksum) throws IOException {
+        List<PartChecksumInputStream.Part> parts = new ArrayList<>();
+        Integer partNumberMarker = null;
+        GetObjectAttributesResponse getObjectAttributesResponse;
+        do {
+            getObjectAttributesResponse = s3Client.getObjectAttributes(GetObjectAttributesRequest.builder()
                     .bucket(bucketName)
                     .key(key)
-                    .build();
-            s3Client.getObject(getObjectRequest, Path.of(downloadDestinationPath));
+                    .versionId(getObjectResponse.versionId())
+                    .objectAttributes(ObjectAttributes.E_TAG, ObjectAttributes.OBJECT_PARTS)
+                    .partNumberMarker(partNumberMarker)
+                    .build());
+            GetObjectAttributesParts objectParts = getObjectAttributesResponse.objectParts();
+            if (objectParts == null)
+                throw new IOException("S3 lists no parts of " + key + " which has the multipart checksum " + checksum);
+            for (ObjectPart objectPart : objectParts.parts())
+                parts.add(new PartChecksumInputStream.Part(objectPart.size(), objectPart.checksumCRC32C()));
+            partNumberMarker = objectParts.nextPartNumberMarker();
+        } while (Boolean.TRUE.equals(getObjectAttributesResponse.objectParts().isTruncated()));
+
+        if (!unquote(getObjectAttributesResponse.eTag()).equals(unquote(getObjectResponse.eTag())))
+            throw new IOException(key + " was replaced while its parts were listed");
+        String listedChecksum = ObjectChecksums.composite(parts.stream()
+                .map(PartChecksumInputStream.Part::checksumCrc32c)
+                .toList());
+        if (!listedChecksum.equals(checksum))
+            throw new IOException("part checksums of " + key + " add up to " + listedChecksum + ", not " + checksum);
+        return parts;
+    }
+
+    private static String unquote(String eTag) {
+        return eTag == null ? "" : eTag.replace("\"", "");
+    }
+
+    /**
+     * download file through the local {@link ObjectDiskCache}. A cached copy is revalidated with If-None-Match and
+     * copied from disk while the object is unchanged, so repeated downloads of the same object only cost a 304.
+     * The cache keeps objects as stored, an object stored with an {@link ObjectCodec} is decoded in the destination.
+     * @param bucketName name of the bucket
+     * @param key desire key - usually the name of the file
+     * @param downloadDestinationPath absolute file path to download from s3, replaced if it exists
+     * @return true if the file was written, from the cache or from S3
+     */
+    public boolean downloadFileUsingCache(String bucketName, String key, String downloadDestinationPath) {
+        try {
+            boolean cacheHit = objectDiskCache.download(bucketName, key, Path.of(downloadDestinationPath));
+            System.out.println((cacheHit ? "served from cache : " : "downloaded from s3 : ") + key);
+            return true;
         } catch (Exception exception) {
             exception.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * download file using S3Client over several connections. The object is fetched as concurrent ranged GETs of
+     * partSize bytes, each written straight to its offset in the destination file. Failed parts are retried on their own.
+     * An object stored with an {@link ObjectCodec} is decoded once all of it is on disk.
+     * @param bucketName name of the bucket
+     * @param key desire key - usually the name of the file
+     * @param downloadDestinationPath absolute file path to download from s3
+     * @param partSize bytes fetched by one ranged GET
+     * @param concurrency number of ranged GETs in flight at once
+     * @return true if the whole object was downloaded and matches its HeadObject size
+     */
+    public boolean downloadFileUsingRangedGets(String bucketName, String key, String downloadDestinationPath,
+                                               long partSize, int concurrency) {
+        try {
+            RangedFileDownload rangedFileDownload = new RangedFileDownload(s3Client, bucketName, key,
+                    Path.of(downloadDestinationPath), partSize, concurrency, RangedFileDownload.DEFAULT_MAX_ATTEMPTS);
+            HeadObjectResponse headObjectResponse = rangedFileDownload.download();
+            ObjectCodec.of(headObjectResponse).decodeInPlace(Path.of(downloadDestinationPath));
+            System.out.println("Download completed, bytes : " + headObjectResponse.contentLength());
+            return true;
+        } catch (Exception exception) {
+            exception.printStackTrace();
+            return false;
         }
     }
 
@@ -62,28 +202,190 @@ public class DownloadObjects
      * @param key
      */
     public void readFileUsingS3Client(String bucketName, String key) {
-        try {
-            GetObjectRequest getObjectRequest = GetObjectRequest.builder()
-                    .bucket(bucketName)
-                    .key(key)
-                    .build();
-
-            ResponseInputStream<GetObjectResponse> responseResponseInputStream = s3Client.getObject(getObjectRequest);
-            BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(responseResponseInputStream));
+        // Since the file format is CSV, each row is split by commas (,) to access individual columns.
+        readFileUsingS3Client(bucketName, key, csvRow -> {
+            System.out.println("line: " + csvRow);
+            return true;
+        });
+    }
 
-            String line = "";
-            while (Objects.nonNull(line = bufferedReader.readLine())) {
-                // Since the file format is CSV, we'll split each line by commas (,) to access individual columns.
-                String[] split = line.split(",");
-                System.out.println("line: " + Arrays.toString(split));
-            }
+    /**
+     * Stream a CSV object from amazon s3 without downloading in local, handing each row to the visitor.
+     * Rows are parsed straight from a reused byte buffer, the visitor gets field views instead of Strings.
+     * An object stored with an {@link ObjectCodec} is decoded while it is read.
+     * @param bucketName name of the bucket
+     * @param key key of the CSV object
+     * @param csvRowVisitor visitor called for every row, return false to stop reading
+     * @return number of rows visited, -1 if the object could not be read
+     */
+    public long readFileUsingS3Client(String bucketName, String key, CsvRowVisitor csvRowVisitor) {
+        GetObjectRequest getObjectRequest = GetObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .build();
+        try (ResponseInputStream<GetObjectResponse> responseResponseInputStream = s3Client.getObject(getObjectRequest)) {
+            InputStream content = ObjectCodec.of(responseResponseInputStream.response()).decode(responseResponseInputStream);
+            long rows = new CsvStreamReader(content).read(csvRowVisitor);
+            // the visitor stopped early, drop the connection instead of draining the rest of the object
+            if (responseResponseInputStream.read() != -1)
+                responseResponseInputStream.abort();
+            return rows;
         } catch (Exception exception) {
             exception.printStackTrace();
+            return -1;
         }
     }
 
     /**
-     * download file using s3TransferManager
+     * Stream an object, or a byte range of it, to an output stream without buffering it. The body is copied through
+     * one reused buffer and read from S3 only as fast as the output stream accepts it, so a slow reader holds back
+     * the S3 connection instead of filling memory. If the output stream fails the S3 connection is aborted rather
+     * than drained. An object stored with an {@link ObjectCodec} is copied as stored if the caller can pass the
+     * encoding on, and decoded otherwise. A range of it cannot be decoded on its own, so a ranged request for a coded
+     * object gets the whole object instead, as an HTTP server may ignore Range.
+     * @param bucketName name of the bucket
+     * @param key key of the object
+     * @param range HTTP Range header passed to S3 as is, null for the whole object
+     * @param ifNoneMatch ETags the caller already has, null to always get the body; a match makes S3 answer 304,
+     *                    thrown as an S3Exception with statusCode() 304 before the handler is called
+     * @param acceptEncoded true to copy a coded object as stored, false to decode it
+     * @param responseHandler called with the response headers, returns the stream the body is copied to
+     * @return number of body bytes copied, decoded bytes when the object was decoded
+     * @throws software.amazon.awssdk.services.s3.model.S3Exception if S3 answered with an error or 304
+     * @throws software.amazon.awssdk.core.exception.SdkClientException if reading or decoding the body from S3 failed
+     * @throws UncheckedIOException if opening or writing to the output stream failed, that is the reader went away
+     */
+    public long streamObject(String bucketName, String key, String range, String ifNoneMatch, boolean acceptEncoded,
+                             ObjectResponseHandler responseHandler) {
+        GetObjectRequest getObjectRequest = GetObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .range(range)
+                .ifNoneMatch(ifNoneMatch)
+                .build();
+        byte[] buffer = streamBuffers.acquire();
+        try (ResponseInputStream<GetObjectResponse> objectStream = getDecodableObject(getObjectRequest)) {
+            ObjectCodec objectCodec = ObjectCodec.of(objectStream.response());
+            ObjectCodec bodyCodec = acceptEncoded ? objectCodec : ObjectCodec.NONE;
+            long copied = 0;
+            try {
+                OutputStream outputStream = writeToReader(() -> responseHandler.open(objectStream.response(), bodyCodec));
+                InputStream body = bodyCodec == objectCodec ? objectStream : objectCodec.decode(objectStream);
+                for (int read; (read = body.read(buffer)) != -1; copied += read) {
+                    int length = read;
+                    writeToReader(() -> {
+                        outputStream.write(buffer, 0, length);
+                        return outputStream;
+                    });
+                }
+                writeToReader(() -> {
+                    outputStream.flush();
+                    return outputStream;
+                });
+            } catch (UncheckedIOException uncheckedIOException) {
+                // the reader went away, do not download the rest of the object just to close the connection
+                objectStream.abort();
+                throw uncheckedIOException;
+            } catch (IOException ioException) {
+                // S3 broke off or sent a damaged body, the reader only gets part of it
+                objectStream.abort();
+                throw SdkClientException.create("Reading " + key + " from S3 failed after " + copied + " bytes",
+                        ioException);
+            }
+            return copied;
+        } catch (IOException ioException) {
+            throw SdkClientException.create("Closing the S3 connection of " + key + " failed", ioException);
+        } finally {
+            streamBuffers.release(buffer);
+        }
+    }
+
+    /**
+     * I/O towards the reader of a stream, a failure is thrown as an UncheckedIOException to tell it from S3 failing.
+     */
+    @FunctionalInterface
+    private interface ReaderIo
+    {
+        OutputStream run() throws IOException;
+    }
+
+    private static OutputStream writeToReader(ReaderIo readerIo) {
+        try {
+            return readerIo.run();
+        } catch (IOException ioException) {
+            throw new UncheckedIOException(ioException);
+        }
+    }
+
+    // a range of a coded object cannot be decoded, fetch the whole object in its place
+    private ResponseInputStream<GetObjectResponse> getDecodableObject(GetObjectRequest getObjectRequest) {
+        ResponseInputStream<GetObjectResponse> objectStream = s3Client.getObject(getObjectRequest);
+        if (objectStream.response().contentRange() == null)
+            return objectStream;
+        ObjectCodec objectCodec;
+        try {
+            objectCodec = ObjectCodec.of(objectStream.response());
+        } catch (IllegalArgumentException illegalArgumentException) {
+            objectStream.abort();
+            throw illegalArgumentException;
+        }
+        if (objectCodec == ObjectCodec.NONE)
+            return objectStream;
+        objectStream.abort();
+        return s3Client.getObject(getObjectRequest.toBuilder().range(null).build());
+    }
+
+    /**
+     * open an object for random access with the default block size, cache size and read-ahead of
+     * {@link S3SeekableByteChannel}.
+     * @param bucketName name of the bucket
+     * @param key key of the object
+     * @return read-only channel over the object as it was when opened
+     * @throws software.amazon.awssdk.services.s3.model.S3Exception if the object cannot be found or read
+     * @throws UnsupportedOperationException if the object is stored with an {@link ObjectCodec}
+     */
+    public S3SeekableByteChannel openSeekableChannel(String bucketName, String key) {
+        return openSeekableChannel(bucketName, key, S3SeekableByteChannel.DEFAULT_BLOCK_SIZE,
+                S3SeekableByteChannel.DEFAULT_CACHE_BLOCKS, S3SeekableByteChannel.DEFAULT_MAX_READ_AHEAD_BLOCKS);
+    }
+
+    /**
+     * open an object for random access, reads are served from a cache of cacheBlocks blocks of blockSize bytes.
+     * @param bucketName name of the bucket
+     * @param key key of the object
+     * @param blockSize bytes per cached block and the smallest range fetched
+     * @param cacheBlocks blocks kept in memory, at least twice maxReadAheadBlocks
+     * @param maxReadAheadBlocks most blocks fetched by one request while reading sequentially
+     * @return read-only channel over the object as it was when opened
+     * @throws software.amazon.awssdk.services.s3.model.S3Exception if the object cannot be found or read
+     * @throws UnsupportedOperationException if the object is stored with an {@link ObjectCodec}, its stored bytes
+     * cannot be decoded at arbitrary positions
+     */
+    public S3SeekableByteChannel openSeekableChannel(String bucketName, String key, int blockSize, int cacheBlocks,
+                                                     int maxReadAheadBlocks) {
+        return new S3SeekableByteChannel(s3Client, bucketName, key, blockSize, cacheBlocks, maxReadAheadBlocks);
+    }
+
+    /**
+     * Read one file of a pack set written by {@link UploadObjects#uploadFilesPacked(String, String, java.util.Map)}.
+     * The index of the pack set is cached locally, so this costs a single ranged GET of the pack holding the file.
+     * @param bucketName name of the bucket
+     * @param packName key prefix of the pack set
+     * @param key key the file was packed under
+     * @return content of the file, null if the pack set has no such key
+     */
+    public byte[] readPackedFile(String bucketName, String packName, String key) {
+        try {
+            return objectPacks.read(bucketName, packName, key);
+        } catch (IOException ioException) {
+            throw new UncheckedIOException("Reading " + key + " from " + packName + " failed", ioException);
+        }
+    }
+
+    /**
+     * download file using s3TransferManager. A download cut off by a restart starts over from the first byte, see
+     * {@link #downloadFileResumable(String, String, String)} for large objects. An object stored with an
+     * {@link ObjectCodec} is decoded once the download is complete.
      * @param bucketName name of the bucket
      * @param key desire key - usually the name of the file
      * @param downloadDestinationPath absolute file path to download from s3
@@ -98,10 +400,13 @@ public class DownloadObjects
             DownloadFileRequest downloadFileRequest = DownloadFileRequest.builder()
                     .destination(Path.of(downloadDestinationPath))
                     .getObjectRequest(getObjectRequest)
+                    .addTransferListener(transferProgressPublisher.listenerFor(TransferProgressEvent.Direction.DOWNLOAD,
+                            bucketName, key))
                     .build();
             FileDownload fileDownload = s3TransferManager.downloadFile(downloadFileRequest);
             CompletedFileDownload completedFileDownload = fileDownload.completionFuture()
                     .join();
+            ObjectCodec.of(completedFileDownload.response()).decodeInPlace(Path.of(downloadDestinationPath));
             String contentType = completedFileDownload.response()
                     .contentType();
             System.out.println("Download completed, content type is : " + contentType);
@@ -111,19 +416,41 @@ public class DownloadObjects
     }
 
     /**
-     * download bucket with all the objects in side bucket using S3TransferManager.
+     * download a large object so that a failure or a restart of the application costs only the parts in flight. Parts
+     * go to a partial file next to the destination and are journaled on local disk once written; calling this again
+     * for the same object and file, or the next start of the application, fetches only the missing parts. See
+     * {@link ResumableTransfers}. An object stored with an {@link ObjectCodec} is decoded once all parts are on disk.
+     * @param bucketName name of the bucket
+     * @param key desire key - usually the name of the file
+     * @param downloadDestinationPath absolute file path to download from s3
+     * @return the completed download, with the parts a previous attempt had already fetched
+     */
+    public ResumableTransferReport downloadFileResumable(String bucketName, String key, String downloadDestinationPath) {
+        try {
+            return resumableTransfers.download(bucketName, key, Path.of(downloadDestinationPath));
+        } catch (IOException ioException) {
+            throw new UncheckedIOException("Download of " + key + " failed, it resumes on the next attempt", ioException);
+        }
+    }
+
+    /**
+     * download bucket with all the objects in side bucket using S3TransferManager. Objects stored with an
+     * {@link ObjectCodec} are decoded once the whole directory is downloaded.
      * @param bucketName name of the bucket
      * @param downloadDestinationPath absolute directory path to download from s3
      */
     public void downloadDirectoryUsingS3TransferManager(String bucketName, String downloadDestinationPath) {
         try {
+            CodedFileCollector codedFileCollector = new CodedFileCollector();
             DownloadDirectoryRequest downloadDirectoryRequest = DownloadDirectoryRequest.builder()
                     .bucket(bucketName)
                     .destination(Path.of(downloadDestinationPath))
+                    .downloadFileRequestTransformer(builder -> builder.addTransferListener(codedFileCollector))
                     .build();
             DirectoryDownload directoryDownload = s3TransferManager.downloadDirectory(downloadDirectoryRequest);
             CompletedDirectoryDownload completedDirectoryDownload = directoryDownload.completionFuture()
                     .join();
+            codedFileCollector.decodeAll();
             completedDirectoryDownload.failedTransfers()
                     .forEach(failedFileDownload -> System.out.println("fail to download : " + failedFileDownload.toString()));
         } catch (Exception exception) {
@@ -132,7 +459,31 @@ public class DownloadObjects
     }
 
     /**
-     * download files using S3Template
+     * download only the objects under a prefix which are new or changed since the last sync into a directory. A sorted
+     * manifest of the previous sync (key, size, ETag, last modified) is kept in the directory and merged with the
+     * listing, unchanged objects cost nothing but their listing entry. Objects stored with an {@link ObjectCodec} are
+     * decoded as each one completes.
+     * @param bucketName name of the bucket
+     * @param prefix key prefix to sync, empty for the whole bucket; it is stripped from the local file names
+     * @param downloadDestinationPath directory to keep up to date
+     * @param deleteRemoved true to delete local files of previously synced objects which no longer exist
+     * @return report of downloaded, unchanged, deleted and failed objects
+     */
+    public DeltaDownloadReport downloadDirectoryDeltaUsingS3TransferManager(String bucketName, String prefix,
+                                                                           String downloadDestinationPath,
+                                                                           boolean deleteRemoved) {
+        Path destination = Path.of(downloadDestinationPath);
+        try {
+            return new DeltaDirectoryDownload(s3Client, s3TransferManager, objectDecoder, bucketName, prefix,
+                    destination, destination.resolve(DeltaDirectoryDownload.DEFAULT_MANIFEST_NAME), deleteRemoved,
+                    DeltaDirectoryDownload.DEFAULT_MAX_CONCURRENT_DOWNLOADS).download();
+        } catch (IOException ioException) {
+            throw new UncheckedIOException(ioException);
+        }
+    }
+
+    /**
+     * download files using S3Template, an object stored with an {@link ObjectCodec} is decoded on the way to the file
      * @param bucketName name of the bucket
      * @param key desire key - usually the name of the file
      * @param downloadDestinationPath absolute file path to download from s3
@@ -140,7 +491,7 @@ public class DownloadObjects
     public void downloadFileUsingS3Template(String bucketName, String key, String downloadDestinationPath) {
         try {
             S3Resource s3Resource = s3Template.download(bucketName, key);
-            InputStream inputStream = s3Resource.getInputStream();
+            InputStream inputStream = ObjectCodec.of(s3Resource.metadata()).decode(s3Resource.getInputStream());
             Files.copy(inputStream, Path.of(downloadDestinationPath), StandardCopyOption.REPLACE_EXISTING);
         } catch (Exception exception) {
             exception.printStackTrace();
@@ -0,0 +1,128 @@
+package in.learnjavaskills.springcloudawss3.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Tell whether a local file holds the content of an S3 object from the size and ETag of the listing alone.
+ * A single part upload has the hex MD5 of its content as ETag. A multipart upload has the MD5 of the concatenated
+ * part MD5s followed by -partCount; the part size is not recorded, so every likely part size which gives partCount
+ * parts is tried: the preferred ones first, then the defaults of the common uploaders. Objects encrypted with SSE-KMS
+ * or SSE-C have ETags which are no digest of their content and never match.
+ */
+final class ETagMatcher
+{
+    private static final long MEBIBYTE = 1024 * 1024;
+    // transfer manager and aws cli, multipart minimum, larger defaults of other tools
+    private static final long[] COMMON_PART_SIZES = {8 * MEBIBYTE, 5 * MEBIBYTE, 16 * MEBIBYTE, 64 * MEBIBYTE, 100 * MEBIBYTE};
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private final long[] preferredPartSizes;
+
+    /**
+     * @param preferredPartSizes part sizes our own uploads use, tried first
+     */
+    ETagMatcher(long... preferredPartSizes) {
+        this.preferredPartSizes = preferredPartSizes.clone();
+    }
+
+    /**
+     * @param file local file, its size must already be known to equal the object size
+     * @param eTag ETag of the object, with or without quotes
+     * @return true if the file content produces the ETag
+     */
+    boolean matches(Path file, long size, String eTag) throws IOException {
+        if (eTag == null)
+            return false;
+        String expected = eTag.replace("\"", "").toLowerCase(Locale.ROOT);
+        int dash = expected.indexOf('-');
+        if (dash < 0)
+            return expected.equals(HexFormat.of().formatHex(md5(file)));
+
+        int partCount;
+        try {
+            partCount = Integer.parseInt(expected.substring(dash + 1));
+        } catch (NumberFormatException numberFormatException) {
+            return false;
+        }
+        for (long partSize : candidatePartSizes(size, partCount)) {
+            if (expected.equals(multipartETag(file, partSize)))
+                return true;
+        }
+        return false;
+    }
+
+    private Set<Long> candidatePartSizes(long size, int partCount) {
+        Set<Long> candidates = new LinkedHashSet<>();
+        for (long partSize : preferredPartSizes)
+            candidates.add(partSize);
+        for (long partSize : COMMON_PART_SIZES)
+            candidates.add(partSize);
+        if (partCount > 0) {
+            long evenSplit = (size + partCount - 1) / partCount;
+            // tools which pick the part size from the file size usually round it up to whole mebibytes
+            candidates.add((evenSplit + MEBIBYTE - 1) / MEBIBYTE * MEBIBYTE);
+            candidates.add(evenSplit);
+        }
+        candidates.removeIf(partSize -> partSize < 1 || (size + partSize - 1) / partSize != partCount);
+        return candidates;
+    }
+
+    private static byte[] md5(Path file) throws IOException {
+        MessageDigest messageDigest = newMd5();
+        try (FileChannel fileChannel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer byteBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+            while (fileChannel.read(byteBuffer) >= 0) {
+                messageDigest.update(byteBuffer.flip());
+                byteBuffer.clear();
+            }
+        }
+        return messageDigest.digest();
+    }
+
+    private static String multipartETag(Path file, long partSize) throws IOException {
+        MessageDigest partDigest = newMd5();
+        MessageDigest eTagDigest = newMd5();
+        int partCount = 0;
+        try (FileChannel fileChannel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer byteBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+            long remainingInPart = partSize;
+            while (true) {
+                byteBuffer.limit((int) Math.min(byteBuffer.capacity(), remainingInPart));
+                int read = fileChannel.read(byteBuffer);
+                if (read < 0)
+                    break;
+                partDigest.update(byteBuffer.flip());
+                byteBuffer.clear();
+                remainingInPart -= read;
+                if (remainingInPart == 0) {
+                    eTagDigest.update(partDigest.digest());
+                    partCount++;
+                    remainingInPart = partSize;
+                }
+            }
+            if (remainingInPart != partSize) {
+                eTagDigest.update(partDigest.digest());
+                partCount++;
+            }
+        }
+        return HexFormat.of().formatHex(eTagDigest.digest()) + "-" + partCount;
+    }
+
+    private static MessageDigest newMd5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException noSuchAlgorithmException) {
+            throw new IllegalStateException("MD5 is required by every Java platform", noSuchAlgorithmException);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package in.learnjavaskills.springcloudawss3.service;
+
+/**
+ * Counters of {@link ObjectDiskCache} since start.
+ * @param hitCount downloads served from disk after the ETag was revalidated
+ * @param missCount downloads which fetched the object body from S3
+ * @param bytesSaved object bytes served from disk instead of S3
+ * @param bytesDownloaded object bytes fetched from S3
+ * @param cachedObjects objects on disk right now
+ * @param cachedBytes bytes on disk right now, at most the configured maximum
+ */
+public record ObjectCacheStats(long hitCount, long missCount, long bytesSaved, long bytesDownloaded, int cachedObjects,
+                               long cachedBytes)
+{
+    /**
+     * @return share of downloads served from disk, 0 before the first download
+     */
+    public double hitRatio() {
+        long requests = hitCount + missCount;
+        return requests == 0 ? 0 : (double) hitCount / requests;
+    }
+}
@@ -0,0 +1,42 @@
+package in.learnjavaskills.springcloudawss3.service;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * CRC32C checksums in the form S3 takes and returns them: the base64 of the big endian value, and for a multipart
+ * object the checksum of its part checksums followed by -partCount. CRC32C rather than SHA-256 because it runs at
+ * memory speed on current CPUs, see ChecksumBenchmark, so computing it while the bytes pass costs next to nothing.
+ */
+final class ObjectChecksums
+{
+    private ObjectChecksums() {
+    }
+
+    /**
+     * @return the checksum as sent in x-amz-checksum-crc32c
+     */
+    static String encode(CRC32C checksum) {
+        return Base64.getEncoder().encodeToString(ByteBuffer.allocate(4).putInt((int) checksum.getValue()).array());
+    }
+
+    /**
+     * @param partChecksums encoded checksums of the parts in part number order
+     * @return checksum S3 reports for the completed multipart object
+     */
+    static String composite(List<String> partChecksums) {
+        CRC32C checksum = new CRC32C();
+        for (String partChecksum : partChecksums)
+            checksum.update(Base64.getDecoder().decode(partChecksum));
+        return encode(checksum) + "-" + partChecksums.size();
+    }
+
+    /**
+     * @return true if the checksum is of a multipart object, which the SDK does not verify on download
+     */
+    static boolean isComposite(String checksum) {
+        return checksum != null && checksum.indexOf('-') > 0;
+    }
+}
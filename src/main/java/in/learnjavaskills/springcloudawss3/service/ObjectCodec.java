@@ -0,0 +1,210 @@
+package in.learnjavaskills.springcloudawss3.service;
+
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Compression of an object's content, recorded in its user metadata under {@link #METADATA_KEY} so the download paths
+ * can decode it without being told. An object another tool stored with Content-Encoding: gzip is treated the same way.
+ * Objects with neither are stored as they are. Content written with {@link ObjectCompressor} is a series of gzip
+ * members, one per chunk, which any gzip reader decodes as one stream.
+ *
+ * Paths which fetch the whole object decode it, as a stream or as a file once it is complete. Paths which read byte
+ * ranges of the stored content on their own, such as {@link S3SeekableByteChannel} and {@link CsvRangeScanner}, cannot,
+ * and refuse a coded object with {@link #rejectRangedReads}.
+ */
+public enum ObjectCodec
+{
+    NONE(null),
+    GZIP("gzip");
+
+    /**
+     * user metadata entry naming the codec, x-amz-meta-codec on the wire
+     */
+    public static final String METADATA_KEY = "codec";
+
+    private static final int DECODE_BUFFER_SIZE = 64 * 1024;
+    private static final String DECODING_SUFFIX = ".decoding";
+
+    private final String metadataValue;
+
+    ObjectCodec(String metadataValue) {
+        this.metadataValue = metadataValue;
+    }
+
+    /**
+     * @param metadata user metadata of an object
+     * @return codec the object was stored with, NONE if the metadata names none
+     * @throws IllegalArgumentException if the metadata names a codec this application cannot decode
+     */
+    public static ObjectCodec of(Map<String, String> metadata) {
+        return of(metadata, null);
+    }
+
+    /**
+     * @param metadata user metadata of an object
+     * @param contentEncoding Content-Encoding of the object, null if it has none
+     * @return codec the object was stored with, by its metadata or else its Content-Encoding
+     * @throws IllegalArgumentException if the metadata names a codec this application cannot decode
+     */
+    public static ObjectCodec of(Map<String, String> metadata, String contentEncoding) {
+        String value = metadata == null ? null : metadata.get(METADATA_KEY);
+        if (value == null)
+            return isGzip(contentEncoding) ? GZIP : NONE;
+        for (ObjectCodec objectCodec : values())
+            if (value.equals(objectCodec.metadataValue))
+                return objectCodec;
+        throw new IllegalArgumentException("Unsupported object codec " + value);
+    }
+
+    public static ObjectCodec of(GetObjectResponse getObjectResponse) {
+        return of(getObjectResponse.metadata(), getObjectResponse.contentEncoding());
+    }
+
+    public static ObjectCodec of(HeadObjectResponse headObjectResponse) {
+        return of(headObjectResponse.metadata(), headObjectResponse.contentEncoding());
+    }
+
+    /**
+     * @return value of Content-Encoding for a response carrying the content as stored, null for none
+     */
+    public String contentEncoding() {
+        return metadataValue;
+    }
+
+    /**
+     * @return copy of the metadata which records this codec
+     */
+    public Map<String, String> recordIn(Map<String, String> metadata) {
+        Map<String, String> recorded = new HashMap<>(metadata);
+        if (metadataValue == null)
+            recorded.remove(METADATA_KEY);
+        else
+            recorded.put(METADATA_KEY, metadataValue);
+        return recorded;
+    }
+
+    /**
+     * @param encoded content as stored
+     * @return stream of the original content, decoded as it is read
+     */
+    public InputStream decode(InputStream encoded) throws IOException {
+        return switch (this) {
+            case NONE -> encoded;
+            case GZIP -> new GZIPInputStream(new EndProbingInputStream(encoded), DECODE_BUFFER_SIZE);
+        };
+    }
+
+    /**
+     * replace a file holding the content as stored with the original content, nothing to do for NONE.
+     * @param file complete download of a coded object
+     */
+    public void decodeInPlace(Path file) throws IOException {
+        if (this != NONE)
+            decodeTo(file, file);
+    }
+
+    /**
+     * write the original content of a file holding the content as stored, through a temporary file next to the
+     * destination which then replaces it. The source is left as it is unless it is the destination.
+     * @param source complete download of an object
+     * @param destination file to write, may be the source
+     */
+    public void decodeTo(Path source, Path destination) throws IOException {
+        Path decoded = destination.resolveSibling(destination.getFileName() + DECODING_SUFFIX);
+        try (InputStream inputStream = decode(Files.newInputStream(source))) {
+            Files.copy(inputStream, decoded, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(decoded, destination, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(decoded);
+        }
+    }
+
+    /**
+     * for readers of byte ranges of the stored content: a range of a gzip stream cannot be decoded on its own.
+     * @param key key of the object, for the message
+     * @throws UnsupportedOperationException if the object is stored with a codec
+     */
+    public void rejectRangedReads(String key) {
+        if (this != NONE)
+            throw new UnsupportedOperationException(key + " is stored " + metadataValue + " coded, byte ranges of it"
+                    + " cannot be decoded; download the whole object instead");
+    }
+
+    // Content-Encoding may list several codings, S3 keeps whatever the uploader sent
+    private static boolean isGzip(String contentEncoding) {
+        if (contentEncoding == null)
+            return false;
+        for (String coding : contentEncoding.split(","))
+            if (coding.trim().equalsIgnoreCase("gzip") || coding.trim().equalsIgnoreCase("x-gzip"))
+                return true;
+        return false;
+    }
+
+    /**
+     * GZIPInputStream only looks for another member when available() is positive, on a network stream which has
+     * nothing buffered at that moment it would end after the first member. available() here blocks for one byte
+     * instead, so it is 0 only at the real end of the stream.
+     */
+    private static final class EndProbingInputStream extends FilterInputStream
+    {
+        private int probed = -1;
+
+        private EndProbingInputStream(InputStream inputStream) {
+            super(inputStream);
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (probed >= 0) {
+                int value = probed;
+                probed = -1;
+                return value;
+            }
+            return in.read();
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (length == 0)
+                return 0;
+            if (probed < 0)
+                return in.read(bytes, offset, length);
+            bytes[offset] = (byte) probed;
+            probed = -1;
+            return 1;
+        }
+
+        @Override
+        public long skip(long count) throws IOException {
+            if (count <= 0)
+                return 0;
+            if (probed < 0)
+                return in.skip(count);
+            probed = -1;
+            return 1;
+        }
+
+        @Override
+        public int available() throws IOException {
+            if (probed < 0)
+                probed = in.read();
+            return probed < 0 ? 0 : 1;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package in.learnjavaskills.springcloudawss3.service;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.InputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Compresses content on its way to S3 with an {@link ObjectCodec}. The content is cut into chunk-size pieces which are
+ * compressed on parallelism threads while the upload reads the compressed stream, so a large upload is not held back
+ * by a single core. The threads are shared by every upload; each stream keeps at most parallelism pieces in memory.
+ */
+@Service
+public class ObjectCompressor implements DisposableBean
+{
+    private final int chunkSize;
+    private final int parallelism;
+    private final ExecutorService compressors;
+
+    @Autowired
+    public ObjectCompressor(@Value("${object-codec.chunk-size:4MB}") DataSize chunkSize,
+                            @Value("${object-codec.parallelism:0}") int parallelism) {
+        if (chunkSize.toBytes() < 1 || chunkSize.toBytes() > Integer.MAX_VALUE - 8)
+            throw new IllegalArgumentException("chunkSize must be between 1 byte and 2GB, got " + chunkSize);
+        this.chunkSize = (int) chunkSize.toBytes();
+        this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        this.compressors = Executors.newFixedThreadPool(this.parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "object-compressor");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @param objectCodec codec to apply
+     * @param content content to compress, closed with the returned stream
+     * @return the content encoded with the codec, compressed as it is read
+     */
+    public InputStream encode(ObjectCodec objectCodec, InputStream content) {
+        return switch (objectCodec) {
+            case NONE -> content;
+            case GZIP -> new ParallelGzipInputStream(content, chunkSize, parallelism, compressors);
+        };
+    }
+
+    @Override
+    public void destroy() {
+        compressors.shutdownNow();
+    }
+}
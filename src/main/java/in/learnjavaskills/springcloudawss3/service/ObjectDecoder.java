@@ -0,0 +1,43 @@
+package in.learnjavaskills.springcloudawss3.service;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Threads for decoding downloads of objects stored with an {@link ObjectCodec} once they are complete. Asynchronous
+ * downloads hand the decoding of a whole file over to these instead of doing it on the thread which completed the
+ * transfer, a completion thread of the async client: a large file inflated there holds back the completion of every
+ * other transfer. At most decode-threads files are decoded at once, the others wait in line.
+ */
+@Service
+public class ObjectDecoder implements Executor, DisposableBean
+{
+    private final ExecutorService decoders;
+
+    @Autowired
+    public ObjectDecoder(@Value("${object-codec.decode-threads:2}") int decodeThreads) {
+        if (decodeThreads < 1)
+            throw new IllegalArgumentException("decodeThreads must be positive, got " + decodeThreads);
+        this.decoders = Executors.newFixedThreadPool(decodeThreads, runnable -> {
+            Thread thread = new Thread(runnable, "object-decoder");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        decoders.execute(command);
+    }
+
+    @Override
+    public void destroy() {
+        decoders.shutdownNow();
+    }
+}
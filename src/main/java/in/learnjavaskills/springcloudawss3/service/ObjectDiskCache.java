@@ -0,0 +1,369 @@
+package in.learnjavaskills.springcloudawss3.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Read-through cache of whole objects on local disk, for objects which the same workers download again and again.
+ * Every download of a cached object is revalidated with a GET carrying If-None-Match of the cached ETag: S3 answers
+ * 304 without a body while the object is unchanged and the cached file is copied to the destination with
+ * FileChannel.transferTo, which the kernel does without passing the bytes through the JVM. Anything else is a miss,
+ * the body is written to the cache and then copied. An object stored with an {@link ObjectCodec} is decoded on its
+ * way into the cache, so the cache holds the original content and a hit copies it as it is; whether it fits the cache
+ * is decided by its decoded size.
+ *
+ * The cache holds at most max-size bytes and evicts the least recently used objects. Every object is a data file plus
+ * a small properties file with its bucket, key and ETag, so the cache survives a restart; the modified time of the data
+ * file records the last use. Each version of an object stored gets files of its own, named with a generation number,
+ * so deleting the files of a replaced or evicted version never touches the current one.
+ *
+ * Metrics: s3.object.cache.requests (tagged result=hit|miss), s3.object.cache.bytes.saved,
+ * s3.object.cache.evictions and s3.object.cache.size (bytes on disk).
+ */
+@Service
+public class ObjectDiskCache
+{
+    private static final String DATA_SUFFIX = ".data";
+    private static final String META_SUFFIX = ".meta";
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+    private static final char GENERATION_SEPARATOR = '-';
+    private static final int NOT_MODIFIED = 304;
+
+    private final S3Client s3Client;
+    private final Path directory;
+    private final long maxSizeBytes;
+    // access ordered, eldest first; guarded by itself together with cachedBytes
+    private final LinkedHashMap<String, CachedObject> cachedObjects = new LinkedHashMap<>(16, 0.75f, true);
+    private long cachedBytes;
+    // numbers the stored versions, continues after the highest found on disk
+    private final AtomicLong generations = new AtomicLong();
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong bytesSaved = new AtomicLong();
+    private final AtomicLong bytesDownloaded = new AtomicLong();
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter savedBytes;
+    private final Counter evictions;
+
+    @Autowired
+    public ObjectDiskCache(S3Client s3Client, MeterRegistry meterRegistry,
+                           @Value("${object-cache.directory:${java.io.tmpdir}/s3-object-cache}") Path directory,
+                           @Value("${object-cache.max-size:1GB}") DataSize maxSize) {
+        if (maxSize.toBytes() < 1)
+            throw new IllegalArgumentException("maxSize must be positive, got " + maxSize);
+        this.s3Client = s3Client;
+        this.directory = directory;
+        this.maxSizeBytes = maxSize.toBytes();
+        this.hits = meterRegistry.counter("s3.object.cache.requests", "result", "hit");
+        this.misses = meterRegistry.counter("s3.object.cache.requests", "result", "miss");
+        this.savedBytes = meterRegistry.counter("s3.object.cache.bytes.saved");
+        this.evictions = meterRegistry.counter("s3.object.cache.evictions");
+        meterRegistry.gauge("s3.object.cache.size", Tags.empty(), this, objectDiskCache -> objectDiskCache.stats().cachedBytes());
+        try {
+            Files.createDirectories(directory);
+            loadCachedObjects();
+        } catch (IOException ioException) {
+            throw new UncheckedIOException("Cannot open object cache " + directory, ioException);
+        }
+    }
+
+    /**
+     * Write the current content of an object to the destination, from the cache if its ETag still matches.
+     * @param bucketName name of the bucket
+     * @param key object key
+     * @param destination file to write, replaced if it exists
+     * @return true if the object was served from disk, false if its body was fetched from S3
+     * @throws IOException if the cache or the destination cannot be written
+     */
+    public boolean download(String bucketName, String key, Path destination) throws IOException {
+        String cacheKey = cacheKey(bucketName, key);
+        CachedObject cachedObject;
+        synchronized (cachedObjects) {
+            cachedObject = cachedObjects.get(cacheKey);
+        }
+        GetObjectRequest.Builder getObjectRequest = GetObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key);
+        if (cachedObject != null)
+            getObjectRequest.ifNoneMatch(cachedObject.eTag);
+
+        try (ResponseInputStream<GetObjectResponse> responseInputStream = s3Client.getObject(getObjectRequest.build())) {
+            miss(responseInputStream.response().contentLength());
+            GetObjectResponse getObjectResponse = responseInputStream.response();
+            ObjectCodec objectCodec = ObjectCodec.of(getObjectResponse);
+            // larger than the whole cache, keeping it would only flush everything else
+            if (objectCodec == ObjectCodec.NONE && getObjectResponse.contentLength() > maxSizeBytes) {
+                Files.copy(responseInputStream, destination, StandardCopyOption.REPLACE_EXISTING);
+                return false;
+            }
+            fetch(cacheKey, bucketName, key, getObjectResponse.eTag(), objectCodec.decode(responseInputStream),
+                    destination);
+            return false;
+        } catch (S3Exception s3Exception) {
+            if (cachedObject == null || s3Exception.statusCode() != NOT_MODIFIED)
+                throw s3Exception;
+        }
+
+        try {
+            transfer(cachedObject.dataFile, destination);
+        } catch (NoSuchFileException noSuchFileException) {
+            // evicted between the lookup and the copy, fetch it again
+            remove(cacheKey, cachedObject);
+            return download(bucketName, key, destination);
+        }
+        hit(cachedObject.size);
+        touch(cachedObject);
+        return true;
+    }
+
+    /**
+     * @return hit ratio, bytes saved and the current size of the cache
+     */
+    public ObjectCacheStats stats() {
+        synchronized (cachedObjects) {
+            return new ObjectCacheStats(hitCount.get(), missCount.get(), bytesSaved.get(), bytesDownloaded.get(),
+                    cachedObjects.size(), cachedBytes);
+        }
+    }
+
+    /**
+     * drop every cached object.
+     */
+    public void clear() throws IOException {
+        List<CachedObject> removed;
+        synchronized (cachedObjects) {
+            removed = new ArrayList<>(cachedObjects.values());
+            cachedObjects.clear();
+            cachedBytes = 0;
+        }
+        for (CachedObject cachedObject : removed)
+            deleteFiles(cachedObject);
+    }
+
+    /**
+     * write the body to a temporary file and the destination from there, and only then publish it: a concurrent miss
+     * of the same key replacing it cannot delete the file being copied. A decoded body found to be larger than the
+     * whole cache while writing is not kept.
+     */
+    private void fetch(String cacheKey, String bucketName, String key, String eTag, InputStream body, Path destination)
+            throws IOException {
+        Path temporaryData = Files.createTempFile(directory, cacheKey, TEMPORARY_SUFFIX);
+        try {
+            long size = copyAtMost(body, temporaryData, maxSizeBytes);
+            transfer(temporaryData, destination);
+            if (size > maxSizeBytes) {
+                try (OutputStream outputStream = Files.newOutputStream(destination, StandardOpenOption.APPEND)) {
+                    body.transferTo(outputStream);
+                }
+                return;
+            }
+            store(cacheKey, bucketName, key, eTag, temporaryData, size);
+        } finally {
+            Files.deleteIfExists(temporaryData);
+        }
+    }
+
+    private void store(String cacheKey, String bucketName, String key, String eTag, Path temporaryData, long size)
+            throws IOException {
+        Path temporaryMeta = Files.createTempFile(directory, cacheKey, TEMPORARY_SUFFIX);
+        try {
+            Properties properties = new Properties();
+            properties.setProperty("bucket", bucketName);
+            properties.setProperty("key", key);
+            properties.setProperty("etag", eTag);
+            try (OutputStream outputStream = Files.newOutputStream(temporaryMeta)) {
+                properties.store(outputStream, null);
+            }
+            String fileName = cacheKey + GENERATION_SEPARATOR + generations.incrementAndGet();
+            CachedObject cachedObject = new CachedObject(cacheKey, eTag, size, directory.resolve(fileName + DATA_SUFFIX),
+                    directory.resolve(fileName + META_SUFFIX));
+            // the rename never shows a partial file, the meta file last so a crash leaves no meta without data
+            Files.move(temporaryData, cachedObject.dataFile, StandardCopyOption.ATOMIC_MOVE);
+            Files.move(temporaryMeta, cachedObject.metaFile, StandardCopyOption.ATOMIC_MOVE);
+            add(cachedObject);
+        } finally {
+            Files.deleteIfExists(temporaryMeta);
+        }
+    }
+
+    private void add(CachedObject cachedObject) throws IOException {
+        List<CachedObject> evicted = new ArrayList<>();
+        CachedObject replaced;
+        synchronized (cachedObjects) {
+            replaced = cachedObjects.put(cachedObject.cacheKey, cachedObject);
+            if (replaced != null)
+                cachedBytes -= replaced.size;
+            cachedBytes += cachedObject.size;
+            Iterator<CachedObject> leastRecentlyUsed = cachedObjects.values().iterator();
+            while (cachedBytes > maxSizeBytes && leastRecentlyUsed.hasNext()) {
+                CachedObject eldest = leastRecentlyUsed.next();
+                if (eldest == cachedObject)
+                    continue;
+                leastRecentlyUsed.remove();
+                cachedBytes -= eldest.size;
+                evicted.add(eldest);
+            }
+        }
+        // files of other generations, readers which still have one open keep reading it
+        if (replaced != null && replaced != cachedObject)
+            deleteFiles(replaced);
+        for (CachedObject eldest : evicted) {
+            evictions.increment();
+            deleteFiles(eldest);
+        }
+    }
+
+    private void remove(String cacheKey, CachedObject cachedObject) {
+        synchronized (cachedObjects) {
+            if (cachedObjects.remove(cacheKey, cachedObject))
+                cachedBytes -= cachedObject.size;
+        }
+    }
+
+    private void touch(CachedObject cachedObject) {
+        try {
+            Files.setLastModifiedTime(cachedObject.dataFile, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException ignored) {
+            // only the order after a restart suffers
+        }
+    }
+
+    private void hit(long size) {
+        hitCount.incrementAndGet();
+        bytesSaved.addAndGet(size);
+        hits.increment();
+        savedBytes.increment(size);
+    }
+
+    private void miss(long size) {
+        missCount.incrementAndGet();
+        bytesDownloaded.addAndGet(size);
+        misses.increment();
+    }
+
+    private void loadCachedObjects() throws IOException {
+        List<CachedObject> found = new ArrayList<>();
+        Map<CachedObject, FileTime> lastUse = new HashMap<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String fileName = file.getFileName().toString();
+                if (fileName.endsWith(TEMPORARY_SUFFIX)) {
+                    // left behind by a crash
+                    Files.deleteIfExists(file);
+                    continue;
+                }
+                if (!fileName.endsWith(META_SUFFIX))
+                    continue;
+                String baseName = fileName.substring(0, fileName.length() - META_SUFFIX.length());
+                int separator = baseName.indexOf(GENERATION_SEPARATOR);
+                String cacheKey = separator < 0 ? baseName : baseName.substring(0, separator);
+                if (separator >= 0)
+                    generations.accumulateAndGet(Long.parseLong(baseName.substring(separator + 1)), Math::max);
+                Path dataFile = directory.resolve(baseName + DATA_SUFFIX);
+                Properties properties = new Properties();
+                try (InputStream inputStream = Files.newInputStream(file)) {
+                    properties.load(inputStream);
+                }
+                if (!Files.exists(dataFile) || properties.getProperty("etag") == null) {
+                    Files.deleteIfExists(file);
+                    continue;
+                }
+                CachedObject cachedObject = new CachedObject(cacheKey, properties.getProperty("etag"), Files.size(dataFile),
+                        dataFile, file);
+                found.add(cachedObject);
+                lastUse.put(cachedObject, Files.getLastModifiedTime(dataFile));
+            }
+        }
+        found.sort(Comparator.comparing(lastUse::get));
+        for (CachedObject cachedObject : found)
+            add(cachedObject);
+    }
+
+    /**
+     * copy the body until it ends or more than limit bytes are written, whichever comes first.
+     * @return bytes written, more than limit if the body is longer
+     */
+    private static long copyAtMost(InputStream body, Path file, long limit) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        long written = 0;
+        try (OutputStream outputStream = Files.newOutputStream(file)) {
+            for (int read; written <= limit && (read = body.read(buffer)) != -1; written += read)
+                outputStream.write(buffer, 0, read);
+        }
+        return written;
+    }
+
+    // kernel to kernel copy, the bytes never enter the heap
+    private static void transfer(Path source, Path destination) throws IOException {
+        try (FileChannel sourceChannel = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel destinationChannel = FileChannel.open(destination, StandardOpenOption.CREATE,
+                     StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = sourceChannel.size();
+            long position = 0;
+            while (position < size)
+                position += sourceChannel.transferTo(position, size - position, destinationChannel);
+        }
+    }
+
+    private static void deleteFiles(CachedObject cachedObject) throws IOException {
+        Files.deleteIfExists(cachedObject.metaFile);
+        Files.deleteIfExists(cachedObject.dataFile);
+    }
+
+    /**
+     * file name of an object, bucket and key may hold characters no file system accepts
+     */
+    private static String cacheKey(String bucketName, String key) {
+        try {
+            MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+            messageDigest.update(bucketName.getBytes(StandardCharsets.UTF_8));
+            messageDigest.update((byte) '/');
+            messageDigest.update(key.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(messageDigest.digest());
+        } catch (NoSuchAlgorithmException noSuchAlgorithmException) {
+            throw new IllegalStateException("SHA-256 is required by every Java platform", noSuchAlgorithmException);
+        }
+    }
+
+    private static final class CachedObject
+    {
+        private final String cacheKey;
+        private final String eTag;
+        private final long size;
+        private final Path dataFile;
+        private final Path metaFile;
+
+        private CachedObject(String cacheKey, String eTag, long size, Path dataFile, Path metaFile) {
+            this.cacheKey = cacheKey;
+            this.eTag = eTag;
+            this.size = size;
+            this.dataFile = dataFile;
+            this.metaFile = metaFile;
+        }
+    }
+}
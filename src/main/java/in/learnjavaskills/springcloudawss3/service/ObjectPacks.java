@@ -0,0 +1,346 @@
+package in.learnjavaskills.springcloudawss3.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32C;
+
+/**
+ * Many small files stored as a few large objects. A pack set named packName is a series of pack objects under
+ * packName/packs/, each the plain concatenation of the files packed into it, and one {@link PackIndex} object at
+ * packName/index mapping every file key to its pack, offset and length. Packing streams the files through the
+ * {@link StreamingMultipartUploader}, so a million files cost a few hundred requests instead of a million PUTs; reading
+ * a file is one ranged GET of its pack.
+ *
+ * The index of every pack set read is cached in index-cache-directory and reused for index-max-age, then revalidated
+ * with If-None-Match of its ETag, which costs no body while it is unchanged; a key the cached index does not know
+ * revalidates it at once. Packs are never rewritten, packing again adds packs and publishes a merged index in which
+ * the latest copy of a key wins, so a cached index is never wrong about a key, only possibly behind. One writer per
+ * pack set at a time: two concurrent packings each publish their own index and the last one wins.
+ */
+@Service
+public class ObjectPacks
+{
+    private static final String PACKS_PREFIX = "/packs/";
+    private static final String INDEX_NAME = "/index";
+    private static final String INDEX_SUFFIX = ".index";
+    private static final String ETAG_SUFFIX = ".etag";
+    private static final String PENDING_SUFFIX = ".pending";
+    private static final String OCTET_STREAM = "application/octet-stream";
+    private static final int NOT_MODIFIED = 304;
+    private static final int NOT_FOUND = 404;
+
+    private final S3Client s3Client;
+    private final StreamingMultipartUploader streamingMultipartUploader;
+    private final Path indexCacheDirectory;
+    private final long packSize;
+    private final long indexMaxAgeNanos;
+    private final Map<String, CachedIndex> cachedIndexes = new ConcurrentHashMap<>();
+    // loads and publishes of indexes, reads of a loaded index do not take it
+    private final ReentrantLock indexLock = new ReentrantLock();
+
+    @Autowired
+    public ObjectPacks(S3Client s3Client, StreamingMultipartUploader streamingMultipartUploader,
+                       @Value("${object-pack.index-cache-directory:${java.io.tmpdir}/s3-pack-index}") Path indexCacheDirectory,
+                       @Value("${object-pack.pack-size:256MB}") DataSize packSize,
+                       @Value("${object-pack.index-max-age:5m}") Duration indexMaxAge) {
+        if (packSize.toBytes() < 1)
+            throw new IllegalArgumentException("packSize must be positive, got " + packSize);
+        this.s3Client = s3Client;
+        this.streamingMultipartUploader = streamingMultipartUploader;
+        this.indexCacheDirectory = indexCacheDirectory;
+        this.packSize = packSize.toBytes();
+        this.indexMaxAgeNanos = indexMaxAge.toNanos();
+        try {
+            Files.createDirectories(indexCacheDirectory);
+        } catch (IOException ioException) {
+            throw new UncheckedIOException("Cannot open pack index cache " + indexCacheDirectory, ioException);
+        }
+    }
+
+    /**
+     * Pack files into the pack set, in key order so files with neighbouring keys share a pack. A new pack is started
+     * once the current one reaches pack-size. The index is published only after every pack is stored, readers never
+     * see a key whose pack is missing.
+     * @param bucketName name of the bucket
+     * @param packName key prefix of the pack set
+     * @param files file to pack by the key it is read back with
+     * @return the packs written and the published index
+     * @throws IOException if a file cannot be read or a pack fails, the index is left as it was
+     */
+    public PackIngestReport pack(String bucketName, String packName, Map<String, Path> files) throws IOException {
+        List<PackedFile> packedFiles = new ArrayList<>(files.size());
+        files.forEach((key, file) -> packedFiles.add(new PackedFile(key.getBytes(StandardCharsets.UTF_8), file)));
+        packedFiles.sort((packedFile, other) -> PackIndex.compareKeys(packedFile.key, other.key));
+        if (packedFiles.isEmpty())
+            return new PackIngestReport(bucketName, packName, 0, 0, List.of(), null);
+
+        List<String> packKeys = new ArrayList<>();
+        List<PackIndex.Entry> entries = new ArrayList<>(packedFiles.size());
+        PackCursor packCursor = new PackCursor(packedFiles);
+        long packedBytes = 0;
+        while (packCursor.hasMore()) {
+            String packKey = packName + PACKS_PREFIX + UUID.randomUUID() + ".pack";
+            try (InputStream pack = packCursor.nextPack(packKeys.size(), entries)) {
+                packedBytes += streamingMultipartUploader.upload(bucketName, packKey, pack).size();
+            }
+            packKeys.add(packKey);
+        }
+        String indexETag = publishIndex(bucketName, packName, packKeys, entries);
+        return new PackIngestReport(bucketName, packName, packedFiles.size(), packedBytes, packKeys, indexETag);
+    }
+
+    /**
+     * Read one packed file with a ranged GET of its pack, verified against the CRC32C recorded when it was packed.
+     * @param bucketName name of the bucket
+     * @param packName key prefix of the pack set
+     * @param key key the file was packed under
+     * @return content of the file, null if the pack set has no such key
+     * @throws IOException if the content read does not match its checksum
+     */
+    public byte[] read(String bucketName, String packName, String key) throws IOException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        CachedIndex cachedIndex = index(bucketName, packName, false);
+        PackIndex.Entry entry = cachedIndex.packIndex.find(keyBytes);
+        if (entry == null) {
+            // packed after the cached index was fetched
+            cachedIndex = index(bucketName, packName, true);
+            entry = cachedIndex.packIndex.find(keyBytes);
+            if (entry == null)
+                return null;
+        }
+        if (entry.length() == 0)
+            return new byte[0];
+
+        GetObjectRequest getObjectRequest = GetObjectRequest.builder()
+                .bucket(bucketName)
+                .key(cachedIndex.packIndex.packKeys().get(entry.pack()))
+                .range("bytes=" + entry.offset() + "-" + (entry.offset() + entry.length() - 1))
+                .build();
+        byte[] content;
+        try (ResponseInputStream<GetObjectResponse> responseInputStream = s3Client.getObject(getObjectRequest)) {
+            content = responseInputStream.readAllBytes();
+        }
+        CRC32C checksum = new CRC32C();
+        checksum.update(content);
+        if (content.length != entry.length() || (int) checksum.getValue() != entry.checksumCrc32c())
+            throw new IOException("Packed file " + key + " of " + packName + " does not match its checksum");
+        return content;
+    }
+
+    private String publishIndex(String bucketName, String packName, List<String> newPackKeys,
+                                List<PackIndex.Entry> newEntries) throws IOException {
+        indexLock.lock();
+        try {
+            // merge with the index as it is now, not as it was cached
+            PackIndex current = index(bucketName, packName, true).packIndex;
+            int firstNewPack = current.packKeys().size();
+            List<String> packKeys = new ArrayList<>(current.packKeys());
+            packKeys.addAll(newPackKeys);
+
+            Path pending = cacheFile(bucketName, packName, PENDING_SUFFIX);
+            try (PackIndex.Writer writer = new PackIndex.Writer(pending, packKeys)) {
+                int currentIndex = 0;
+                for (PackIndex.Entry newEntry : newEntries) {
+                    for (; currentIndex < current.entryCount(); currentIndex++) {
+                        PackIndex.Entry entry = current.entry(currentIndex);
+                        int comparison = PackIndex.compareKeys(entry.key(), newEntry.key());
+                        if (comparison > 0)
+                            break;
+                        // a key packed again is replaced by its new copy
+                        if (comparison < 0)
+                            writer.append(entry);
+                    }
+                    writer.append(new PackIndex.Entry(newEntry.key(), firstNewPack + newEntry.pack(),
+                            newEntry.offset(), newEntry.length(), newEntry.checksumCrc32c()));
+                }
+                for (; currentIndex < current.entryCount(); currentIndex++)
+                    writer.append(current.entry(currentIndex));
+                writer.commit();
+            }
+
+            PutObjectResponse putObjectResponse = s3Client.putObject(PutObjectRequest.builder()
+                    .bucket(bucketName)
+                    .key(packName + INDEX_NAME)
+                    .contentType(OCTET_STREAM)
+                    .checksumAlgorithm(ChecksumAlgorithm.CRC32_C)
+                    .build(), RequestBody.fromFile(pending));
+            install(bucketName, packName, pending, putObjectResponse.eTag());
+            return putObjectResponse.eTag();
+        } finally {
+            indexLock.unlock();
+        }
+    }
+
+    /**
+     * @param revalidate check with S3 even if the cached index is younger than index-max-age
+     */
+    private CachedIndex index(String bucketName, String packName, boolean revalidate) throws IOException {
+        String cacheKey = bucketName + "/" + packName;
+        long requestedAt = System.nanoTime();
+        CachedIndex cachedIndex = cachedIndexes.get(cacheKey);
+        if (cachedIndex != null && !revalidate && requestedAt - cachedIndex.validatedAt < indexMaxAgeNanos)
+            return cachedIndex;
+
+        indexLock.lock();
+        try {
+            cachedIndex = cachedIndexes.get(cacheKey);
+            // another reader revalidated it while this one waited
+            if (cachedIndex != null && cachedIndex.validatedAt - requestedAt >= 0)
+                return cachedIndex;
+            if (cachedIndex == null)
+                cachedIndex = loadCachedFile(bucketName, packName);
+
+            GetObjectRequest.Builder getObjectRequest = GetObjectRequest.builder()
+                    .bucket(bucketName)
+                    .key(packName + INDEX_NAME);
+            if (cachedIndex != null)
+                getObjectRequest.ifNoneMatch(cachedIndex.eTag);
+            try (ResponseInputStream<GetObjectResponse> responseInputStream = s3Client.getObject(getObjectRequest.build())) {
+                Path pending = cacheFile(bucketName, packName, PENDING_SUFFIX);
+                Files.copy(responseInputStream, pending, StandardCopyOption.REPLACE_EXISTING);
+                return install(bucketName, packName, pending, responseInputStream.response().eTag());
+            } catch (S3Exception s3Exception) {
+                if (s3Exception.statusCode() == NOT_MODIFIED && cachedIndex != null)
+                    return put(cacheKey, new CachedIndex(cachedIndex.packIndex, cachedIndex.eTag, System.nanoTime()));
+                if (s3Exception.statusCode() == NOT_FOUND)
+                    return put(cacheKey, new CachedIndex(PackIndex.empty(), null, System.nanoTime()));
+                throw s3Exception;
+            }
+        } finally {
+            indexLock.unlock();
+        }
+    }
+
+    // the index file of a previous run, revalidated before it is used
+    private CachedIndex loadCachedFile(String bucketName, String packName) {
+        try {
+            String eTag = Files.readString(cacheFile(bucketName, packName, ETAG_SUFFIX));
+            return new CachedIndex(PackIndex.open(cacheFile(bucketName, packName, INDEX_SUFFIX)), eTag, 0);
+        } catch (IOException ioException) {
+            return null;
+        }
+    }
+
+    private CachedIndex install(String bucketName, String packName, Path pending, String eTag) throws IOException {
+        Path cacheFile = cacheFile(bucketName, packName, INDEX_SUFFIX);
+        // readers of the previous index keep their mapping, the rename never shows them a partial one
+        Files.move(pending, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        // written after the index, a crash in between only costs a full fetch on the next revalidation
+        Files.writeString(cacheFile(bucketName, packName, ETAG_SUFFIX), eTag);
+        return put(bucketName + "/" + packName, new CachedIndex(PackIndex.open(cacheFile), eTag, System.nanoTime()));
+    }
+
+    private CachedIndex put(String cacheKey, CachedIndex cachedIndex) {
+        cachedIndexes.put(cacheKey, cachedIndex);
+        return cachedIndex;
+    }
+
+    private Path cacheFile(String bucketName, String packName, String suffix) {
+        try {
+            MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+            byte[] digest = messageDigest.digest((bucketName + "\n" + packName).getBytes(StandardCharsets.UTF_8));
+            return indexCacheDirectory.resolve(HexFormat.of().formatHex(digest) + suffix);
+        } catch (NoSuchAlgorithmException noSuchAlgorithmException) {
+            throw new IllegalStateException("SHA-256 is not available", noSuchAlgorithmException);
+        }
+    }
+
+    /**
+     * @param validatedAt System.nanoTime() of the last check with S3, 0 for an index found on disk at startup
+     */
+    private record CachedIndex(PackIndex packIndex, String eTag, long validatedAt) {
+    }
+
+    private record PackedFile(byte[] key, Path file) {
+    }
+
+    /**
+     * Walks the files in key order and hands them out as a series of packs, recording the entry of every file once
+     * it has been read to its end.
+     */
+    private final class PackCursor
+    {
+        private final List<PackedFile> packedFiles;
+        private int next;
+
+        private PackCursor(List<PackedFile> packedFiles) {
+            this.packedFiles = packedFiles;
+        }
+
+        private boolean hasMore() {
+            return next < packedFiles.size();
+        }
+
+        /**
+         * @return the content of the next pack: whole files until pack-size is reached
+         */
+        private InputStream nextPack(int pack, List<PackIndex.Entry> entries) {
+            return new InputStream()
+            {
+                private long position;
+                private InputStream current;
+                private PackedFile currentFile;
+                private long currentStart;
+                private final CRC32C checksum = new CRC32C();
+
+                @Override
+                public int read() throws IOException {
+                    byte[] single = new byte[1];
+                    return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+                }
+
+                @Override
+                public int read(byte[] bytes, int offset, int length) throws IOException {
+                    if (length == 0)
+                        return 0;
+                    while (true) {
+                        if (current == null) {
+                            if (next == packedFiles.size() || position >= packSize)
+                                return -1;
+                            currentFile = packedFiles.get(next++);
+                            current = Files.newInputStream(currentFile.file);
+                            currentStart = position;
+                            checksum.reset();
+                        }
+                        int read = current.read(bytes, offset, length);
+                        if (read > 0) {
+                            checksum.update(bytes, offset, read);
+                            position += read;
+                            if (position - currentStart > Integer.MAX_VALUE)
+                                throw new IOException(currentFile.file + " is too large to pack");
+                            return read;
+                        }
+                        current.close();
+                        current = null;
+                        entries.add(new PackIndex.Entry(currentFile.key, pack, currentStart,
+                                (int) (position - currentStart), (int) checksum.getValue()));
+                    }
+                }
+
+                @Override
+                public void close() throws IOException {
+                    if (current != null)
+                        current.close();
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package in.learnjavaskills.springcloudawss3.service;
+
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Receives the response headers of a streamed object before its body, see
+ * {@link DownloadObjects#streamObject(String, String, String, String, boolean, ObjectResponseHandler)}.
+ */
+@FunctionalInterface
+public interface ObjectResponseHandler
+{
+    /**
+     * @param getObjectResponse response headers, contentRange() is set when a range was returned
+     * @param bodyCodec codec the body is copied in, NONE when it is decoded or was stored as is; contentLength() is
+     *                  the length of the stored body, unknown for a decoded one
+     * @return stream the body is copied to, it is flushed but not closed
+     */
+    OutputStream open(GetObjectResponse getObjectResponse, ObjectCodec bodyCodec) throws IOException;
+}
@@ -0,0 +1,234 @@
+package in.learnjavaskills.springcloudawss3.service;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Index of a pack set: for every packed file its key, the pack object holding it, and its offset, length and CRC32C
+ * within that pack. Entries are sorted by the unsigned UTF-8 bytes of the key and a table of entry positions precedes
+ * them, so a key is found with a binary search straight on a read only mapping of the file and the heap only holds
+ * the entries compared.
+ *
+ * Layout: magic, format version, pack count and entry count as ints; per pack its object key (unsigned short length
+ * and UTF-8 bytes); per entry its position in the file (int); then per entry the key length (unsigned short), key
+ * bytes, pack number (int), offset (long), length (int) and CRC32C (int). An index is at most 2 GB, about 30 million
+ * entries of typical key length.
+ */
+final class PackIndex
+{
+    private static final int MAGIC = 0x5333504b;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final PackIndex EMPTY = new PackIndex(ByteBuffer.allocate(0), List.of(), 0, 0);
+
+    private final ByteBuffer byteBuffer;
+    private final List<String> packKeys;
+    private final int entryCount;
+    private final int slotsPosition;
+
+    private PackIndex(ByteBuffer byteBuffer, List<String> packKeys, int entryCount, int slotsPosition) {
+        this.byteBuffer = byteBuffer;
+        this.packKeys = packKeys;
+        this.entryCount = entryCount;
+        this.slotsPosition = slotsPosition;
+    }
+
+    /**
+     * @param key UTF-8 bytes of the key of the packed file
+     * @param pack number of the pack holding the file, see {@link #packKeys()}
+     * @param offset position of the file within the pack
+     * @param length size of the file
+     * @param checksumCrc32c CRC32C of the file
+     */
+    record Entry(byte[] key, int pack, long offset, int length, int checksumCrc32c)
+    {
+        String keyString() {
+            return new String(key, StandardCharsets.UTF_8);
+        }
+    }
+
+    static PackIndex empty() {
+        return EMPTY;
+    }
+
+    static PackIndex open(Path file) throws IOException {
+        try (FileChannel fileChannel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = fileChannel.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE)
+                throw new IOException(file + " is not a pack index, size " + size);
+            // the mapping stays valid after the channel is closed, and after the file is replaced
+            MappedByteBuffer mappedByteBuffer = fileChannel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            try {
+                if (mappedByteBuffer.getInt() != MAGIC || mappedByteBuffer.getInt() != VERSION)
+                    throw new IOException(file + " is not a pack index of version " + VERSION);
+                String[] packKeys = new String[mappedByteBuffer.getInt()];
+                int entryCount = mappedByteBuffer.getInt();
+                for (int pack = 0; pack < packKeys.length; pack++) {
+                    byte[] packKey = new byte[Short.toUnsignedInt(mappedByteBuffer.getShort())];
+                    mappedByteBuffer.get(packKey);
+                    packKeys[pack] = new String(packKey, StandardCharsets.UTF_8);
+                }
+                int slotsPosition = mappedByteBuffer.position();
+                if ((long) slotsPosition + 4L * entryCount > size)
+                    throw new IOException(file + " is a truncated pack index");
+                return new PackIndex(mappedByteBuffer, List.of(packKeys), entryCount, slotsPosition);
+            } catch (BufferUnderflowException | NegativeArraySizeException exception) {
+                throw new IOException(file + " is a truncated pack index", exception);
+            }
+        }
+    }
+
+    /**
+     * @return object keys of the packs, an entry refers to one by its position in this list
+     */
+    List<String> packKeys() {
+        return packKeys;
+    }
+
+    int entryCount() {
+        return entryCount;
+    }
+
+    /**
+     * @param index position of the entry in key order
+     */
+    Entry entry(int index) {
+        ByteBuffer entry = byteBuffer.duplicate().position(byteBuffer.getInt(slotsPosition + 4 * index));
+        byte[] key = new byte[Short.toUnsignedInt(entry.getShort())];
+        entry.get(key);
+        return new Entry(key, entry.getInt(), entry.getLong(), entry.getInt(), entry.getInt());
+    }
+
+    /**
+     * @param key UTF-8 bytes of the key
+     * @return the entry of the key, null if the index has none
+     */
+    Entry find(byte[] key) {
+        int low = 0;
+        int high = entryCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int position = byteBuffer.getInt(slotsPosition + 4 * middle);
+            int keyLength = Short.toUnsignedInt(byteBuffer.getShort(position));
+            int comparison = compareUnsigned(byteBuffer.slice(position + 2, keyLength), key);
+            if (comparison < 0)
+                low = middle + 1;
+            else if (comparison > 0)
+                high = middle - 1;
+            else
+                return entry(middle);
+        }
+        return null;
+    }
+
+    static int compareKeys(byte[] key, byte[] otherKey) {
+        return Arrays.compareUnsigned(key, otherKey);
+    }
+
+    // ByteBuffer.compareTo compares signed bytes, keys are ordered by unsigned ones
+    private static int compareUnsigned(ByteBuffer indexedKey, byte[] key) {
+        int mismatch = indexedKey.mismatch(ByteBuffer.wrap(key));
+        if (mismatch < 0)
+            return 0;
+        if (mismatch == indexedKey.remaining() || mismatch == key.length)
+            return indexedKey.remaining() - key.length;
+        return Byte.toUnsignedInt(indexedKey.get(mismatch)) - Byte.toUnsignedInt(key[mismatch]);
+    }
+
+    /**
+     * Writes an index to a file, replacing it on {@link #commit()}. Entries must be appended in key order, each key
+     * once. The entries are spooled to a scratch file first since the position table in front of them is only known
+     * once all are appended.
+     */
+    static final class Writer implements AutoCloseable
+    {
+        private static final int ENTRY_FIXED_SIZE = 2 + 4 + 8 + 4 + 4;
+
+        private final Path file;
+        private final Path temporary;
+        private final Path entriesFile;
+        private final List<String> packKeys;
+        private final DataOutputStream entries;
+        private int[] entryPositions = new int[1024];
+        private int entryCount;
+        private long entriesSize;
+        private byte[] lastKey;
+        private boolean committed;
+
+        Writer(Path file, List<String> packKeys) throws IOException {
+            this.file = file;
+            this.temporary = file.resolveSibling(file.getFileName() + ".tmp");
+            this.entriesFile = file.resolveSibling(file.getFileName() + ".entries");
+            this.packKeys = packKeys;
+            this.entries = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(entriesFile), 64 * 1024));
+        }
+
+        void append(Entry entry) throws IOException {
+            if (lastKey != null && compareKeys(lastKey, entry.key()) >= 0)
+                throw new IllegalArgumentException("Pack index keys must be appended in order, once each: "
+                        + entry.keyString());
+            if (entry.key().length > 0xFFFF)
+                throw new IllegalArgumentException("Pack index keys are at most 65535 bytes: " + entry.keyString());
+            if (entryCount == entryPositions.length)
+                entryPositions = Arrays.copyOf(entryPositions, entryCount * 2);
+            if (entriesSize > Integer.MAX_VALUE)
+                throw new IOException("Pack index would exceed 2GB, split the pack set");
+            entryPositions[entryCount++] = (int) entriesSize;
+            entries.writeShort(entry.key().length);
+            entries.write(entry.key());
+            entries.writeInt(entry.pack());
+            entries.writeLong(entry.offset());
+            entries.writeInt(entry.length());
+            entries.writeInt(entry.checksumCrc32c());
+            entriesSize += ENTRY_FIXED_SIZE + entry.key().length;
+            lastKey = entry.key();
+        }
+
+        void commit() throws IOException {
+            entries.close();
+            try (DataOutputStream dataOutputStream = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(temporary), 64 * 1024))) {
+                dataOutputStream.writeInt(MAGIC);
+                dataOutputStream.writeInt(VERSION);
+                dataOutputStream.writeInt(packKeys.size());
+                dataOutputStream.writeInt(entryCount);
+                long headerSize = HEADER_SIZE;
+                for (String packKey : packKeys) {
+                    byte[] packKeyBytes = packKey.getBytes(StandardCharsets.UTF_8);
+                    dataOutputStream.writeShort(packKeyBytes.length);
+                    dataOutputStream.write(packKeyBytes);
+                    headerSize += 2 + packKeyBytes.length;
+                }
+                long entriesPosition = headerSize + 4L * entryCount;
+                if (entriesPosition + entriesSize > Integer.MAX_VALUE)
+                    throw new IOException("Pack index would exceed 2GB, split the pack set");
+                for (int index = 0; index < entryCount; index++)
+                    dataOutputStream.writeInt((int) (entriesPosition + entryPositions[index]));
+                Files.copy(entriesFile, dataOutputStream);
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            committed = true;
+            Files.deleteIfExists(entriesFile);
+        }
+
+        @Override
+        public void close() throws IOException {
+            entries.close();
+            Files.deleteIfExists(entriesFile);
+            if (!committed)
+                Files.deleteIfExists(temporary);
+        }
+    }
+}
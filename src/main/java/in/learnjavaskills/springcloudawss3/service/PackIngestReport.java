@@ -0,0 +1,16 @@
+package in.learnjavaskills.springcloudawss3.service;
+
+import java.util.List;
+
+/**
+ * Outcome of packing files into a pack set, see {@link ObjectPacks}.
+ * @param bucketName name of the bucket
+ * @param packName key prefix of the pack set
+ * @param fileCount files packed
+ * @param packedBytes bytes of the packs written
+ * @param packKeys object keys of the packs written, in the order the files were packed
+ * @param indexETag ETag of the index published, null if there was nothing to pack
+ */
+public record PackIngestReport(String bucketName, String packName, int fileCount, long packedBytes,
+                               List<String> packKeys, String indexETag) {
+}
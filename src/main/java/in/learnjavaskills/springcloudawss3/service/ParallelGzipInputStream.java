@@ -0,0 +1,104 @@
+package in.learnjavaskills.springcloudawss3.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Reads a stream gzip compressed, compressing chunkSize pieces of it in parallel. Every piece becomes a gzip member of
+ * its own and the members are returned in order, which RFC 1952 readers decode as one stream. The source is read on
+ * the calling thread while up to window pieces are compressed on the executor, so memory stays at about window
+ * pieces and their compressed copies.
+ */
+final class ParallelGzipInputStream extends InputStream
+{
+    private final InputStream source;
+    private final int chunkSize;
+    private final int window;
+    private final ExecutorService executorService;
+    private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+    private boolean sourceEnded;
+    private boolean memberWritten;
+    private byte[] current = new byte[0];
+    private int currentPosition;
+
+    ParallelGzipInputStream(InputStream source, int chunkSize, int window, ExecutorService executorService) {
+        this.source = source;
+        this.chunkSize = chunkSize;
+        this.window = window;
+        this.executorService = executorService;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0)
+            return 0;
+        while (currentPosition == current.length) {
+            submitChunks();
+            if (pending.isEmpty())
+                return -1;
+            current = await(pending.removeFirst());
+            currentPosition = 0;
+        }
+        int count = Math.min(length, current.length - currentPosition);
+        System.arraycopy(current, currentPosition, bytes, offset, count);
+        currentPosition += count;
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (Future<byte[]> future : pending)
+            future.cancel(true);
+        pending.clear();
+        source.close();
+    }
+
+    private void submitChunks() throws IOException {
+        while (!sourceEnded && pending.size() < window) {
+            byte[] chunk = source.readNBytes(chunkSize);
+            if (chunk.length < chunkSize)
+                sourceEnded = true;
+            // an empty source still becomes a valid, empty gzip stream
+            if (chunk.length > 0 || !memberWritten) {
+                pending.addLast(executorService.submit(() -> compress(chunk)));
+                memberWritten = true;
+            }
+        }
+    }
+
+    private static byte[] compress(byte[] chunk) {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.max(64, chunk.length / 4));
+        try (GZIPOutputStream gzipOutputStream = new GZIPOutputStream(compressed, 64 * 1024)) {
+            gzipOutputStream.write(chunk);
+        } catch (IOException ioException) {
+            throw new UncheckedIOException(ioException);
+        }
+        return compressed.toByteArray();
+    }
+
+    private static byte[] await(Future<byte[]> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException interruptedException) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a compressed chunk");
+        } catch (ExecutionException executionException) {
+            throw new IOException("Compressing a chunk failed", executionException.getCause());
+        }
+    }
+}
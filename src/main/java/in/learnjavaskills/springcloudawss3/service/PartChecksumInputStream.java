@@ -0,0 +1,97 @@
+package in.learnjavaskills.springcloudawss3.service;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * Verifies a multipart object part by part while it is read. The CRC32C of every part is computed from the bytes as
+ * they are handed to the reader and compared when the part ends, so corruption fails the read at the end of the
+ * damaged part and no second pass over the data is needed. A body shorter or longer than its parts also fails.
+ */
+final class PartChecksumInputStream extends FilterInputStream
+{
+    /**
+     * @param size bytes in the part
+     * @param checksumCrc32c encoded CRC32C S3 recorded for the part
+     */
+    record Part(long size, String checksumCrc32c) {
+    }
+
+    private final String key;
+    private final List<Part> parts;
+    private final CRC32C checksum = new CRC32C();
+    private int partIndex;
+    private long partRemaining;
+
+    PartChecksumInputStream(InputStream inputStream, String key, List<Part> parts) throws IOException {
+        super(inputStream);
+        this.key = key;
+        this.parts = parts;
+        this.partRemaining = parts.isEmpty() ? 0 : parts.get(0).size();
+        verifyEndedParts();
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0)
+            return 0;
+        if (partIndex == parts.size()) {
+            if (in.read() >= 0)
+                throw new IOException(key + " is longer than its " + parts.size() + " parts");
+            return -1;
+        }
+        int read = in.read(bytes, offset, (int) Math.min(length, partRemaining));
+        if (read < 0)
+            throw new IOException(key + " ended " + partRemaining + " bytes before the end of part " + (partIndex + 1));
+        checksum.update(bytes, offset, read);
+        partRemaining -= read;
+        verifyEndedParts();
+        return read;
+    }
+
+    @Override
+    public long skip(long count) throws IOException {
+        // skipped bytes still have to be checksummed
+        byte[] discarded = new byte[(int) Math.min(count, 8192)];
+        long skipped = 0;
+        for (int read; skipped < count && (read = read(discarded, 0, (int) Math.min(discarded.length, count - skipped))) > 0; )
+            skipped += read;
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public void mark(int readLimit) {
+    }
+
+    @Override
+    public void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+
+    private void verifyEndedParts() throws IOException {
+        while (partIndex < parts.size() && partRemaining == 0) {
+            String expected = parts.get(partIndex).checksumCrc32c();
+            String actual = ObjectChecksums.encode(checksum);
+            if (!actual.equals(expected))
+                throw new IOException("CRC32C of part " + (partIndex + 1) + " of " + key + " is " + actual
+                        + ", S3 recorded " + expected);
+            checksum.reset();
+            if (++partIndex < parts.size())
+                partRemaining = parts.get(partIndex).size();
+        }
+    }
+}
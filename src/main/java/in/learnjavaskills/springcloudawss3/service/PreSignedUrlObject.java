@@ -3,9 +3,14 @@ package in.learnjavaskills.springcloudawss3.service;
 import io.awspring.cloud.s3.S3Exception;
 import io.awspring.cloud.s3.S3Template;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import software.amazon.awssdk.http.SdkHttpMethod;
+import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
 import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.S3Object;
 import software.amazon.awssdk.services.s3.presigner.S3Presigner;
 import software.amazon.awssdk.services.s3.presigner.model.GetObjectPresignRequest;
 import software.amazon.awssdk.services.s3.presigner.model.PresignedGetObjectRequest;
@@ -14,20 +19,33 @@ import software.amazon.awssdk.services.s3.presigner.model.PutObjectPresignReques
 
 import java.net.URL;
 import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
 
 /**
  * Create the presigned URL for GET and POST request using the S3Template and S3Presigner.
+ * URLs are served from {@link PresignedUrlCache} while enough of their validity is left, so hot keys are not re-signed.
  */
 @Service
 public class PreSignedUrlObject
 {
     private final S3Template s3Template;
     private final S3Presigner s3Presigner;
+    private final PresignedUrlCache presignedUrlCache;
+    private final S3Client s3Client;
+    private final Duration signatureDuration;
 
     @Autowired
-    public PreSignedUrlObject(S3Template s3Template, S3Presigner s3Presigner) {
+    public PreSignedUrlObject(S3Template s3Template, S3Presigner s3Presigner, PresignedUrlCache presignedUrlCache,
+                              S3Client s3Client,
+                              @Value("${presigned-url.signature-duration:10m}") Duration signatureDuration) {
         this.s3Template=s3Template;
         this.s3Presigner = s3Presigner;
+        this.presignedUrlCache = presignedUrlCache;
+        this.s3Client = s3Client;
+        this.signatureDuration = signatureDuration;
     }
 
     /**
@@ -38,7 +56,8 @@ public class PreSignedUrlObject
      */
     public URL createPreSignedUrlUsingS3TemplateForGetRequest(String bucketName, String key) {
         try {
-            return s3Template.createSignedGetURL(bucketName, key, Duration.ofMinutes(10));
+            return presignedUrlCache.get(new PresignedUrlCache.CacheKey(bucketName, key, SdkHttpMethod.GET, signatureDuration),
+                    () -> s3Template.createSignedGetURL(bucketName, key, signatureDuration));
         } catch (S3Exception s3Exception) {
             s3Exception.printStackTrace();
             return null;
@@ -53,7 +72,8 @@ public class PreSignedUrlObject
      */
     public URL createPreSignedUrlUsingS3TemplateForPutRequest(String bucketName, String key) {
         try {
-            return s3Template.createSignedPutURL(bucketName, key, Duration.ofMinutes(10));
+            return presignedUrlCache.get(new PresignedUrlCache.CacheKey(bucketName, key, SdkHttpMethod.PUT, signatureDuration),
+                    () -> s3Template.createSignedPutURL(bucketName, key, signatureDuration));
         } catch (S3Exception s3Exception) {
             s3Exception.printStackTrace();
             return null;
@@ -69,20 +89,12 @@ public class PreSignedUrlObject
     public URL createPreSignedUrlUsingS3PresignerForGetRequest(String bucketName, String key) {
         try
         {
-            GetObjectRequest objectRequest = GetObjectRequest.builder()
-                    .bucket(bucketName)
-                    .key(key)
-                    .build();
-
-            GetObjectPresignRequest objectPresignRequest = GetObjectPresignRequest.builder()
-                    .signatureDuration(Duration.ofMinutes(10)) // URL will expire after 10 minutes
-                    .getObjectRequest(objectRequest)
-                    .build();
-            PresignedGetObjectRequest presignedGetObjectRequest = s3Presigner.presignGetObject(objectPresignRequest);
-
-            URL url = presignedGetObjectRequest.url();
-            System.out.println("presigned url : " + url.toString());
-            return url;
+            return presignedUrlCache.get(new PresignedUrlCache.CacheKey(bucketName, key, SdkHttpMethod.GET, signatureDuration),
+                    () -> {
+                        URL url = presignGet(bucketName, key, signatureDuration);
+                        System.out.println("presigned url : " + url.toString());
+                        return url;
+                    });
         } catch (S3Exception s3Exception) {
             s3Exception.printStackTrace();
             return null;
@@ -97,22 +109,96 @@ public class PreSignedUrlObject
      */
     public URL createPreSignedUrlUsingS3PresignerForPutRequest(String bucketName, String key) {
         try {
-            PutObjectRequest putObjectRequest = PutObjectRequest.builder()
-                    .bucket(bucketName)
-                    .key(key)
-                    .build();
-            PutObjectPresignRequest putObjectPresignRequest = PutObjectPresignRequest.builder()
-                    .signatureDuration(Duration.ofMinutes(10)) // URL will expire after 10 minutes
-                    .putObjectRequest(putObjectRequest)
-                    .build();
-
-            PresignedPutObjectRequest presignedPutObjectRequest = s3Presigner.presignPutObject(putObjectPresignRequest);
-            URL url = presignedPutObjectRequest.url();
-            System.out.println("presigned url : " + url.toString());
-            return  url;
+            return presignedUrlCache.get(new PresignedUrlCache.CacheKey(bucketName, key, SdkHttpMethod.PUT, signatureDuration),
+                    () -> {
+                        URL url = presignPut(bucketName, key, signatureDuration);
+                        System.out.println("presigned url : " + url.toString());
+                        return  url;
+                    });
         } catch (S3Exception s3Exception) {
             s3Exception.printStackTrace();
             return null;
         }
     }
+
+    /**
+     * Create pre-signed URLs for many keys at once using S3Presigner. Keys are signed in parallel across cores, the
+     * presigner derives the SigV4 signing key once per credential scope (day, region, service) and reuses it for every
+     * key. URLs still valid in {@link PresignedUrlCache} are not signed again, new ones are not added to it so a large
+     * batch does not evict the URLs single requests keep reusing.
+     * @param bucketName bucketName
+     * @param keys object keys
+     * @param method GET to download or PUT to upload
+     * @param expiry how long the URLs stay valid
+     * @return presigned URL per key, in the order of the given keys
+     */
+    public Map<String, URL> createPreSignedUrls(String bucketName, List<String> keys, SdkHttpMethod method, Duration expiry) {
+        if (method != SdkHttpMethod.GET && method != SdkHttpMethod.PUT)
+            throw new IllegalArgumentException("Only GET and PUT URLs can be presigned, got " + method);
+        URL[] urls = new URL[keys.size()];
+        IntStream.range(0, keys.size())
+                .parallel()
+                .forEach(index -> {
+                    String key = keys.get(index);
+                    urls[index] = presignedUrlCache.getWithoutCaching(
+                            new PresignedUrlCache.CacheKey(bucketName, key, method, expiry),
+                            () -> method == SdkHttpMethod.GET
+                                    ? presignGet(bucketName, key, expiry)
+                                    : presignPut(bucketName, key, expiry));
+                });
+        Map<String, URL> urlsByKey = new LinkedHashMap<>(keys.size() * 4 / 3 + 1);
+        for (int index = 0; index < urls.length; index++)
+            urlsByKey.put(keys.get(index), urls[index]);
+        return urlsByKey;
+    }
+
+    /**
+     * Create pre-signed URLs for every object under a prefix, see {@link #createPreSignedUrls(String, List, SdkHttpMethod, Duration)}.
+     * @param bucketName bucketName
+     * @param prefix key prefix to list, for example a gallery folder
+     * @param method GET to download or PUT to overwrite
+     * @param expiry how long the URLs stay valid
+     * @return presigned URL per key, in listing order
+     */
+    public Map<String, URL> createPreSignedUrlsForPrefix(String bucketName, String prefix, SdkHttpMethod method,
+                                                         Duration expiry) {
+        ListObjectsV2Request listObjectsV2Request = ListObjectsV2Request.builder()
+                .bucket(bucketName)
+                .prefix(prefix)
+                .build();
+        List<String> keys = s3Client.listObjectsV2Paginator(listObjectsV2Request)
+                .contents()
+                .stream()
+                .map(S3Object::key)
+                .toList();
+        return createPreSignedUrls(bucketName, keys, method, expiry);
+    }
+
+    private URL presignGet(String bucketName, String key, Duration expiry) {
+        GetObjectRequest objectRequest = GetObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .build();
+
+        GetObjectPresignRequest objectPresignRequest = GetObjectPresignRequest.builder()
+                .signatureDuration(expiry)
+                .getObjectRequest(objectRequest)
+                .build();
+        PresignedGetObjectRequest presignedGetObjectRequest = s3Presigner.presignGetObject(objectPresignRequest);
+        return presignedGetObjectRequest.url();
+    }
+
+    private URL presignPut(String bucketName, String key, Duration expiry) {
+        PutObjectRequest putObjectRequest = PutObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .build();
+        PutObjectPresignRequest putObjectPresignRequest = PutObjectPresignRequest.builder()
+                .signatureDuration(expiry)
+                .putObjectRequest(putObjectRequest)
+                .build();
+
+        PresignedPutObjectRequest presignedPutObjectRequest = s3Presigner.presignPutObject(putObjectPresignRequest);
+        return presignedPutObjectRequest.url();
+    }
 }
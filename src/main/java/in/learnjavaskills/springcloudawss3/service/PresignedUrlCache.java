@@ -0,0 +1,168 @@
+package in.learnjavaskills.springcloudawss3.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import software.amazon.awssdk.http.SdkHttpMethod;
+
+import java.net.URL;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Supplier;
+
+/**
+ * Bounded, concurrent cache of presigned URLs. A cached URL is handed out only while at least
+ * minRemainingValidity of its signature is left, so callers always get a URL that stays usable for a while.
+ * Entries leave the cache in signing order, when they stop being reusable or when the cache is over maxEntries.
+ *
+ * Metrics: presigned.url.cache.requests (tagged result=hit|miss), presigned.url.cache.evictions
+ * (tagged cause=expired|size) and presigned.url.cache.size.
+ */
+@Service
+public class PresignedUrlCache
+{
+    private final int maxEntries;
+    private final Duration minRemainingValidity;
+    private final Map<CacheKey, CacheEntry> entries = new ConcurrentHashMap<>();
+    // entries in signing order, which is also expiry order as long as most URLs share one signature duration
+    private final Queue<CacheEntry> signingOrder = new ConcurrentLinkedQueue<>();
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter expiredEvictions;
+    private final Counter sizeEvictions;
+
+    @Autowired
+    public PresignedUrlCache(MeterRegistry meterRegistry,
+                             @Value("${presigned-url.cache.max-entries:10000}") int maxEntries,
+                             @Value("${presigned-url.cache.min-remaining-validity:5m}") Duration minRemainingValidity) {
+        if (maxEntries < 1)
+            throw new IllegalArgumentException("maxEntries must be positive");
+        this.maxEntries = maxEntries;
+        this.minRemainingValidity = minRemainingValidity;
+        this.hits = meterRegistry.counter("presigned.url.cache.requests", "result", "hit");
+        this.misses = meterRegistry.counter("presigned.url.cache.requests", "result", "miss");
+        this.expiredEvictions = meterRegistry.counter("presigned.url.cache.evictions", "cause", "expired");
+        this.sizeEvictions = meterRegistry.counter("presigned.url.cache.evictions", "cause", "size");
+        meterRegistry.gaugeMapSize("presigned.url.cache.size", Tags.empty(), entries);
+    }
+
+    /**
+     * Return a cached URL for the key, or sign a new one.
+     * @param cacheKey bucket, key, method, signed headers and signature duration of the request
+     * @param signer signs a new URL on a miss
+     * @return presigned URL with at least minRemainingValidity left, or the freshly signed URL
+     */
+    public URL get(CacheKey cacheKey, Supplier<URL> signer) {
+        long now = System.nanoTime();
+        URL cached = reusable(cacheKey, now);
+        if (cached != null)
+            return cached;
+        URL url = signer.get();
+        long reusableNanos = cacheKey.signatureDuration().minus(minRemainingValidity).toNanos();
+        // too short to ever be reused, do not let it evict useful entries
+        if (url == null || reusableNanos <= 0)
+            return url;
+
+        CacheEntry signedEntry = new CacheEntry(cacheKey, url, now + reusableNanos);
+        entries.put(cacheKey, signedEntry);
+        signingOrder.add(signedEntry);
+        evict(now);
+        return url;
+    }
+
+    /**
+     * Return a cached URL for the key, or sign a new one without caching it. For signing in bulk, where thousands of
+     * URLs signed once would push out the ones single requests keep reusing.
+     * @param cacheKey bucket, key, method, signed headers and signature duration of the request
+     * @param signer signs a new URL on a miss
+     * @return presigned URL with at least minRemainingValidity left, or the freshly signed URL
+     */
+    public URL getWithoutCaching(CacheKey cacheKey, Supplier<URL> signer) {
+        URL cached = reusable(cacheKey, System.nanoTime());
+        return cached != null ? cached : signer.get();
+    }
+
+    /**
+     * @return number of cached URLs
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    public void clear() {
+        entries.clear();
+        signingOrder.clear();
+    }
+
+    private URL reusable(CacheKey cacheKey, long now) {
+        CacheEntry cacheEntry = entries.get(cacheKey);
+        if (cacheEntry != null && now - cacheEntry.reusableUntilNanos < 0) {
+            hits.increment();
+            return cacheEntry.url;
+        }
+        misses.increment();
+        return null;
+    }
+
+    private void evict(long now) {
+        CacheEntry head;
+        while ((head = signingOrder.peek()) != null) {
+            boolean replaced = entries.get(head.cacheKey) != head;
+            boolean expired = now - head.reusableUntilNanos >= 0;
+            boolean overCapacity = entries.size() > maxEntries;
+            if (!replaced && !expired && !overCapacity)
+                return;
+            if (!signingOrder.remove(head))
+                continue; // another thread evicted it
+            if (replaced)
+                continue;
+            if (entries.remove(head.cacheKey, head)) {
+                if (expired)
+                    expiredEvictions.increment();
+                else
+                    sizeEvictions.increment();
+            }
+        }
+    }
+
+    /**
+     * Identity of a presigned request. Two requests with the same key produce interchangeable URLs.
+     * @param bucketName bucket name
+     * @param key object key
+     * @param method http method the URL is signed for
+     * @param signedHeaders headers which are part of the signature, such as content type or metadata
+     * @param signatureDuration validity requested for the URL
+     */
+    public record CacheKey(String bucketName, String key, SdkHttpMethod method, Map<String, String> signedHeaders,
+                           Duration signatureDuration)
+    {
+        public CacheKey {
+            signedHeaders = Map.copyOf(signedHeaders);
+        }
+
+        public CacheKey(String bucketName, String key, SdkHttpMethod method, Duration signatureDuration) {
+            this(bucketName, key, method, Map.of(), signatureDuration);
+        }
+    }
+
+    // identity matters, a re-signed URL for the same key is a different entry
+    private static final class CacheEntry
+    {
+        private final CacheKey cacheKey;
+        private final URL url;
+        private final long reusableUntilNanos;
+
+        private CacheEntry(CacheKey cacheKey, URL url, long reusableUntilNanos) {
+            this.cacheKey = cacheKey;
+            this.url = url;
+            this.reusableUntilNanos = reusableUntilNanos;
+        }
+    }
+}
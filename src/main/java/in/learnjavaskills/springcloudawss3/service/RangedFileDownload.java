@@ -0,0 +1,166 @@
+package in.learnjavaskills.springcloudawss3.service;
+
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Download one object over several connections with the plain S3Client. The object is split into parts of partSize
+ * bytes, up to concurrency ranged GETs run at once and every part is streamed straight to its offset in the destination
+ * file with positional FileChannel writes, so no part is ever staged in memory. Parts which fail are retried on their
+ * own, the rest of the file is not fetched again; a part refused with 412 because the object changed after the
+ * HeadObject can never succeed and fails the download at once. The parts are written to a temporary file next to the
+ * destination which replaces it once complete, a failed download leaves the destination as it was.
+ */
+class RangedFileDownload
+{
+    static final long DEFAULT_PART_SIZE = 8L * 1024 * 1024;
+    static final int DEFAULT_CONCURRENCY = 8;
+    static final int DEFAULT_MAX_ATTEMPTS = 3;
+    private static final String PARTIAL_SUFFIX = ".partial";
+    private static final int PRECONDITION_FAILED = 412;
+
+    private final S3Client s3Client;
+    private final String bucketName;
+    private final String key;
+    private final Path destination;
+    private final long partSize;
+    private final int concurrency;
+    private final int maxAttempts;
+
+    RangedFileDownload(S3Client s3Client, String bucketName, String key, Path destination, long partSize,
+                       int concurrency, int maxAttempts) {
+        if (partSize < 1 || concurrency < 1 || maxAttempts < 1)
+            throw new IllegalArgumentException("partSize, concurrency and maxAttempts must be positive");
+        this.s3Client = s3Client;
+        this.bucketName = bucketName;
+        this.key = key;
+        this.destination = destination;
+        this.partSize = partSize;
+        this.concurrency = concurrency;
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * download the object, returning once every part is on disk and the file size matches HeadObject.
+     * @return the HeadObject response the download was verified against
+     * @throws IOException if a part still fails after maxAttempts, the object changed after the HeadObject or the file
+     * does not match the object
+     */
+    HeadObjectResponse download() throws IOException {
+        HeadObjectResponse headObjectResponse = s3Client.headObject(HeadObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .build());
+        long objectLength = headObjectResponse.contentLength();
+        int partCount = Math.toIntExact((objectLength + partSize - 1) / partSize);
+
+        Path partial = destination.resolveSibling(destination.getFileName() + PARTIAL_SUFFIX);
+        try {
+            downloadParts(partial, headObjectResponse, partCount);
+            Files.move(partial, destination, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(partial);
+        }
+        return headObjectResponse;
+    }
+
+    private void downloadParts(Path partial, HeadObjectResponse headObjectResponse, int partCount) throws IOException {
+        long objectLength = headObjectResponse.contentLength();
+        try (FileChannel fileChannel = FileChannel.open(partial, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            // size the file up front, parts then land at their offsets in any order
+            if (objectLength > 0)
+                fileChannel.write(ByteBuffer.allocate(1), objectLength - 1);
+
+            List<Integer> pendingParts = new ArrayList<>(partCount);
+            for (int part = 0; part < partCount; part++)
+                pendingParts.add(part);
+
+            ExecutorService executorService = Executors.newFixedThreadPool(Math.max(1, Math.min(concurrency, partCount)));
+            try {
+                IOException lastFailure = null;
+                for (int attempt = 1; attempt <= maxAttempts && !pendingParts.isEmpty(); attempt++) {
+                    List<Future<?>> futures = new ArrayList<>(pendingParts.size());
+                    for (int part : pendingParts)
+                        futures.add(executorService.submit(() -> {
+                            downloadPart(fileChannel, headObjectResponse.eTag(), objectLength, part);
+                            return null;
+                        }));
+                    List<Integer> failedParts = new ArrayList<>();
+                    for (int i = 0; i < futures.size(); i++) {
+                        try {
+                            futures.get(i).get();
+                        } catch (ExecutionException executionException) {
+                            if (executionException.getCause() instanceof S3Exception s3Exception
+                                    && s3Exception.statusCode() == PRECONDITION_FAILED)
+                                throw new IOException(key + " changed after HeadObject, part " + pendingParts.get(i)
+                                        + " no longer matches ETag " + headObjectResponse.eTag(), s3Exception);
+                            failedParts.add(pendingParts.get(i));
+                            lastFailure = new IOException("part " + pendingParts.get(i) + " of " + key + " failed",
+                                    executionException.getCause());
+                        }
+                    }
+                    pendingParts = failedParts;
+                }
+                if (!pendingParts.isEmpty())
+                    throw new IOException(pendingParts.size() + " of " + partCount + " parts of " + key +
+                            " failed after " + maxAttempts + " attempts", lastFailure);
+            } catch (InterruptedException interruptedException) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while downloading " + key, interruptedException);
+            } finally {
+                executorService.shutdownNow();
+            }
+
+            if (fileChannel.size() != objectLength)
+                throw new IOException("downloaded " + fileChannel.size() + " bytes of " + key + ", HeadObject reported " + objectLength);
+        }
+    }
+
+    private void downloadPart(FileChannel fileChannel, String eTag, long objectLength, int part) throws IOException {
+        long start = part * partSize;
+        long end = Math.min(objectLength, start + partSize) - 1;
+        long expectedLength = end - start + 1;
+        GetObjectRequest getObjectRequest = GetObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .range("bytes=" + start + "-" + end)
+                // every part must come from the same object version HeadObject described
+                .ifMatch(eTag)
+                .build();
+        try (ResponseInputStream<GetObjectResponse> responseInputStream = s3Client.getObject(getObjectRequest)) {
+            Long contentLength = responseInputStream.response().contentLength();
+            if (contentLength != null && contentLength != expectedLength)
+                throw new IOException("part " + part + " returned " + contentLength + " bytes, expected " + expectedLength);
+
+            ReadableByteChannel source = Channels.newChannel(responseInputStream);
+            long written = 0;
+            while (written < expectedLength) {
+                long transferred = fileChannel.transferFrom(source, start + written, expectedLength - written);
+                if (transferred == 0)
+                    break;
+                written += transferred;
+            }
+            if (written != expectedLength)
+                throw new IOException("part " + part + " ended after " + written + " of " + expectedLength + " bytes");
+        }
+    }
+}
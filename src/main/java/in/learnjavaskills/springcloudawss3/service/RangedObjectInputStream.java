@@ -0,0 +1,102 @@
+package in.learnjavaskills.springcloudawss3.service;
+
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads an object from a start position through a sequence of ranged GetObject requests.
+ * The first range is sized by the caller, every following range is chunkSize bytes, so a reader which stops shortly
+ * after the expected end only ever fetches a small overrun. Every range is conditional on the ETag, a concurrent
+ * overwrite of the object fails the read instead of mixing two versions.
+ */
+class RangedObjectInputStream extends InputStream
+{
+    private final S3Client s3Client;
+    private final String bucketName;
+    private final String key;
+    private final String eTag;
+    private final long objectLength;
+    private final long chunkSize;
+
+    private long nextRangeStart;
+    private long nextRangeLength;
+    private ResponseInputStream<GetObjectResponse> currentRange;
+    private long currentRangeRemaining;
+
+    /**
+     * @param start position of the first byte to read
+     * @param firstRangeLength number of bytes fetched by the first request
+     * @param chunkSize number of bytes fetched by each following request
+     */
+    RangedObjectInputStream(S3Client s3Client, String bucketName, String key, String eTag, long objectLength,
+                            long start, long firstRangeLength, long chunkSize) {
+        this.s3Client = s3Client;
+        this.bucketName = bucketName;
+        this.key = key;
+        this.eTag = eTag;
+        this.objectLength = objectLength;
+        this.chunkSize = chunkSize;
+        this.nextRangeStart = start;
+        this.nextRangeLength = firstRangeLength;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        int read = read(single, 0, 1);
+        return read < 0 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0)
+            return 0;
+        while (currentRange == null || currentRangeRemaining == 0) {
+            if (!openNextRange())
+                return -1;
+        }
+        int read = currentRange.read(bytes, offset, (int) Math.min(length, currentRangeRemaining));
+        if (read < 0)
+            throw new IOException("range of " + key + " ended " + currentRangeRemaining + " bytes early");
+        currentRangeRemaining -= read;
+        return read;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closeCurrentRange();
+    }
+
+    private boolean openNextRange() throws IOException {
+        closeCurrentRange();
+        if (nextRangeStart >= objectLength)
+            return false;
+        long end = Math.min(objectLength, nextRangeStart + nextRangeLength) - 1;
+        GetObjectRequest getObjectRequest = GetObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .ifMatch(eTag)
+                .range("bytes=" + nextRangeStart + "-" + end)
+                .build();
+        currentRange = s3Client.getObject(getObjectRequest);
+        currentRangeRemaining = end - nextRangeStart + 1;
+        nextRangeStart = end + 1;
+        nextRangeLength = chunkSize;
+        return true;
+    }
+
+    private void closeCurrentRange() throws IOException {
+        if (currentRange == null)
+            return;
+        // unread bytes left, abort instead of draining them over the network
+        if (currentRangeRemaining > 0)
+            currentRange.abort();
+        currentRange.close();
+        currentRange = null;
+    }
+}
@@ -0,0 +1,48 @@
+package in.learnjavaskills.springcloudawss3.service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Token bucket which caps requests per second across threads. Tokens are added continuously at the rate and at most
+ * a tenth of a second worth of them is saved up, so a quiet moment is not followed by a burst over the limit.
+ */
+class RequestRateLimiter
+{
+    private final double permitsPerNano;
+    private final double maxStoredPermits;
+    private double storedPermits;
+    private long lastRefillNanos = System.nanoTime();
+
+    /**
+     * @param permitsPerSecond sustained rate, for example 3500 to stay under the S3 PUT limit of one prefix
+     */
+    RequestRateLimiter(double permitsPerSecond) {
+        if (!(permitsPerSecond > 0))
+            throw new IllegalArgumentException("permitsPerSecond must be positive, got " + permitsPerSecond);
+        this.permitsPerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.maxStoredPermits = Math.max(1, permitsPerSecond / 10);
+        this.storedPermits = maxStoredPermits;
+    }
+
+    /**
+     * take one permit, sleeping until it is available.
+     */
+    void acquire() throws InterruptedException {
+        long waitNanos;
+        synchronized (this) {
+            long now = System.nanoTime();
+            storedPermits = Math.min(maxStoredPermits, storedPermits + (now - lastRefillNanos) * permitsPerNano);
+            lastRefillNanos = now;
+            // taking the permit now, possibly going into debt, reserves it for the waiting caller
+            storedPermits -= 1;
+            waitNanos = storedPermits >= 0 ? 0 : (long) Math.ceil(-storedPermits / permitsPerNano);
+        }
+        long deadline = System.nanoTime() + waitNanos;
+        for (long remaining = waitNanos; remaining > 0; remaining = deadline - System.nanoTime()) {
+            LockSupport.parkNanos(remaining);
+            if (Thread.interrupted())
+                throw new InterruptedException();
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package in.learnjavaskills.springcloudawss3.service;
+
+import java.nio.file.Path;
+
+/**
+ * Outcome of a resumable upload or download.
+ * @param direction upload or download
+ * @param bucketName name of the bucket
+ * @param key object key
+ * @param file source of the upload or destination of the download
+ * @param size bytes of the object
+ * @param partCount parts the object was transferred in
+ * @param resumedParts parts an earlier, interrupted attempt had already transferred, 0 for a fresh transfer
+ * @param eTag ETag of the object
+ */
+public record ResumableTransferReport(TransferProgressEvent.Direction direction, String bucketName, String key,
+                                      Path file, long size, int partCount, int resumedParts, String eTag)
+{
+    /**
+     * @return parts sent or fetched by this attempt
+     */
+    public int transferredParts() {
+        return partCount - resumedParts;
+    }
+}
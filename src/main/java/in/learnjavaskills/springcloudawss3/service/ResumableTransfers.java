@@ -0,0 +1,571 @@
+package in.learnjavaskills.springcloudawss3.service;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.*;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.CRC32C;
+
+/**
+ * Uploads and downloads of large files which survive a restart of the JVM. Every transfer is cut into parts and keeps
+ * a {@link TransferJournal} in journal-directory: the multipart upload id or the ETag of the object being downloaded,
+ * and every part which is done. A transfer which fails or is cut off by a restart leaves its journal behind; calling
+ * it again, or the next start of the application, picks it up and only moves the parts the journal does not list.
+ *
+ * Uploads are multipart uploads with a CRC32C per part. Each part is read from the file once with positional reads
+ * into a buffer of its own, one per concurrent part, taking the checksum as the bytes arrive, and sent from the
+ * buffer. A resumed upload starts over if the file changed size or modified time, or if S3 no longer knows the
+ * upload, for example after a lifecycle rule aborted it; unless the object in S3 already has the size and checksum of
+ * the journaled parts, which is a run cut off between completing the upload and deleting its journal.
+ *
+ * Downloads are ranged GETs with If-Match of the ETag into a .partial file next to the destination, which is moved
+ * into place once complete. A part is recorded only after it is forced to disk. A resumed download starts over if the
+ * object changed in the meantime. An object stored with an {@link ObjectCodec} is decoded from the complete .partial
+ * file into the destination.
+ */
+@Service
+public class ResumableTransfers implements DisposableBean
+{
+    private static final String JOURNAL_SUFFIX = ".journal";
+    private static final String PARTIAL_SUFFIX = ".partial";
+    private static final String OCTET_STREAM = "application/octet-stream";
+    private static final int NOT_FOUND = 404;
+    private static final int PRECONDITION_FAILED = 412;
+
+    private final S3Client s3Client;
+    private final Path journalDirectory;
+    private final long partSize;
+    // one per part transfer thread, so one is always free for the thread asking
+    private final DirectBufferPool partBuffers;
+    private final ExecutorService partTransfers;
+    private final ExecutorService resumer;
+    // journals of the transfers running in this JVM, a transfer never runs twice at once
+    private final Set<Path> activeJournals = ConcurrentHashMap.newKeySet();
+
+    @Autowired
+    public ResumableTransfers(S3Client s3Client,
+                              @Value("${resumable-transfer.journal-directory:${app.data-directory}/transfer-journal}") Path journalDirectory,
+                              @Value("${resumable-transfer.part-size:8MB}") DataSize partSize,
+                              @Value("${resumable-transfer.concurrency:8}") int concurrency) {
+        if (partSize.toBytes() < StreamingMultipartUploader.MIN_PART_SIZE)
+            throw new IllegalArgumentException("partSize must be at least 5MB, got " + partSize);
+        if (concurrency < 1)
+            throw new IllegalArgumentException("concurrency must be positive, got " + concurrency);
+        this.s3Client = s3Client;
+        this.journalDirectory = journalDirectory;
+        this.partSize = partSize.toBytes();
+        this.partBuffers = new DirectBufferPool(Math.toIntExact(partSize.toBytes()), concurrency);
+        this.partTransfers = Executors.newFixedThreadPool(concurrency, daemonThreads("resumable-transfer"));
+        this.resumer = Executors.newSingleThreadExecutor(daemonThreads("resumable-transfer-resume"));
+        try {
+            Files.createDirectories(journalDirectory);
+        } catch (IOException ioException) {
+            throw new UncheckedIOException("Cannot open transfer journal directory " + journalDirectory, ioException);
+        }
+    }
+
+    /**
+     * Upload a file as a multipart upload, or finish the interrupted upload of the same file to the same key.
+     * @param bucketName name of the bucket
+     * @param key object key
+     * @param source file to upload
+     * @return the completed upload
+     * @throws IOException if the file cannot be read or a part fails, the journal is kept so the upload can resume
+     * @throws IllegalStateException if the same upload is already running
+     */
+    public ResumableTransferReport upload(String bucketName, String key, Path source) throws IOException {
+        Path file = source.toAbsolutePath();
+        Path journalPath = journalPath(TransferProgressEvent.Direction.UPLOAD, bucketName, key, file);
+        claim(journalPath);
+        try {
+            return runUpload(bucketName, key, file, journalPath);
+        } finally {
+            activeJournals.remove(journalPath);
+        }
+    }
+
+    /**
+     * Download an object with ranged GETs, or finish the interrupted download of the same object to the same file.
+     * @param bucketName name of the bucket
+     * @param key object key
+     * @param destination file to write, replaced once the whole object is on disk
+     * @return the completed download
+     * @throws IOException if a part fails, the journal and the partial file are kept so the download can resume
+     * @throws IllegalStateException if the same download is already running
+     */
+    public ResumableTransferReport download(String bucketName, String key, Path destination) throws IOException {
+        Path file = destination.toAbsolutePath();
+        Path journalPath = journalPath(TransferProgressEvent.Direction.DOWNLOAD, bucketName, key, file);
+        claim(journalPath);
+        try {
+            return runDownload(bucketName, key, file, journalPath);
+        } finally {
+            activeJournals.remove(journalPath);
+        }
+    }
+
+    /**
+     * resume the transfers a previous run left unfinished once the application is up, in the background.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeOnStartup() {
+        resumer.execute(this::resumeInterrupted);
+    }
+
+    /**
+     * Resume every transfer which has a journal, one after the other. An upload whose source file is gone is aborted
+     * and forgotten, any other failure keeps the journal for the next attempt.
+     * @return the transfers completed
+     */
+    public List<ResumableTransferReport> resumeInterrupted() {
+        List<Path> journalPaths;
+        try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(journalDirectory, "*" + JOURNAL_SUFFIX)) {
+            journalPaths = new ArrayList<>();
+            directoryStream.forEach(journalPaths::add);
+        } catch (IOException ioException) {
+            throw new UncheckedIOException("Cannot list transfer journals in " + journalDirectory, ioException);
+        }
+
+        List<ResumableTransferReport> reports = new ArrayList<>();
+        for (Path journalPath : journalPaths) {
+            TransferJournal.Header header;
+            try (TransferJournal transferJournal = TransferJournal.open(journalPath)) {
+                if (transferJournal == null)
+                    continue;
+                header = transferJournal.header();
+            } catch (IOException ioException) {
+                System.out.println("Dropping unreadable transfer journal " + journalPath + " : " + ioException.getMessage());
+                deleteQuietly(journalPath);
+                continue;
+            }
+            try {
+                reports.add(header.direction() == TransferProgressEvent.Direction.UPLOAD
+                        ? upload(header.bucketName(), header.key(), header.file())
+                        : download(header.bucketName(), header.key(), header.file()));
+            } catch (NoSuchFileException noSuchFileException) {
+                System.out.println("Source of upload " + header.key() + " is gone, aborting it");
+                abortQuietly(header);
+                deleteQuietly(journalPath);
+            } catch (IllegalStateException alreadyRunning) {
+                // started again by a caller meanwhile
+            } catch (Exception exception) {
+                exception.printStackTrace();
+            }
+        }
+        return reports;
+    }
+
+    @Override
+    public void destroy() {
+        resumer.shutdownNow();
+        partTransfers.shutdownNow();
+    }
+
+    private ResumableTransferReport runUpload(String bucketName, String key, Path source, Path journalPath)
+            throws IOException {
+        long size = Files.size(source);
+        long modifiedMillis = Files.getLastModifiedTime(source).toMillis();
+
+        TransferJournal transferJournal = TransferJournal.open(journalPath);
+        if (transferJournal != null && (transferJournal.header().size() != size
+                || transferJournal.header().fileModifiedMillis() != modifiedMillis)) {
+            abortQuietly(transferJournal.header());
+            transferJournal.delete();
+            transferJournal = null;
+        }
+        boolean resumed = transferJournal != null;
+        if (!resumed)
+            transferJournal = startUpload(bucketName, key, source, size, modifiedMillis, journalPath);
+        try {
+            try {
+                return uploadParts(transferJournal);
+            } catch (IOException | S3Exception exception) {
+                if (!resumed || !isNoSuchUpload(exception))
+                    throw exception;
+            }
+            // the previous run completed the upload but did not get to delete the journal
+            ResumableTransferReport completed = completedUpload(transferJournal);
+            if (completed != null) {
+                transferJournal.delete();
+                return completed;
+            }
+            // the upload was aborted behind our back, all parts have to go again
+            transferJournal.delete();
+            transferJournal = startUpload(bucketName, key, source, size, modifiedMillis, journalPath);
+            return uploadParts(transferJournal);
+        } finally {
+            transferJournal.close();
+        }
+    }
+
+    private TransferJournal startUpload(String bucketName, String key, Path source, long size, long modifiedMillis,
+                                        Path journalPath) throws IOException {
+        // S3 takes at most 10000 parts, larger files get larger parts
+        long minimumPartSize = (size + StreamingMultipartUploader.MAX_PART_COUNT - 1) / StreamingMultipartUploader.MAX_PART_COUNT;
+        long uploadPartSize = Math.max(partSize, minimumPartSize);
+        CreateMultipartUploadResponse createMultipartUploadResponse = s3Client.createMultipartUpload(
+                CreateMultipartUploadRequest.builder()
+                        .bucket(bucketName)
+                        .key(key)
+                        .contentType(OCTET_STREAM)
+                        .checksumAlgorithm(ChecksumAlgorithm.CRC32_C)
+                        .build());
+        TransferJournal.Header header = new TransferJournal.Header(TransferProgressEvent.Direction.UPLOAD, bucketName,
+                key, source, size, modifiedMillis, "", uploadPartSize, createMultipartUploadResponse.uploadId());
+        try {
+            return TransferJournal.create(journalPath, header);
+        } catch (IOException ioException) {
+            abortQuietly(header);
+            throw ioException;
+        }
+    }
+
+    private ResumableTransferReport uploadParts(TransferJournal transferJournal) throws IOException {
+        TransferJournal.Header header = transferJournal.header();
+        // an empty file is still one (empty) part
+        int partCount = Math.max(1, header.partCount());
+        Map<Integer, TransferJournal.Part> completedParts = transferJournal.parts();
+        int resumedParts = completedParts.size();
+
+        try (FileChannel fileChannel = FileChannel.open(header.file(), StandardOpenOption.READ)) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int partNumber = 1; partNumber <= partCount; partNumber++) {
+                if (completedParts.containsKey(partNumber))
+                    continue;
+                int part = partNumber;
+                futures.add(partTransfers.submit(() -> {
+                    transferJournal.append(uploadPart(fileChannel, header, part));
+                    return null;
+                }));
+            }
+            awaitParts(futures, header.key());
+        }
+
+        List<CompletedPart> parts = transferJournal.parts().values().stream()
+                .sorted(Comparator.comparingInt(TransferJournal.Part::partNumber))
+                .map(part -> CompletedPart.builder()
+                        .partNumber(part.partNumber())
+                        .eTag(part.eTag())
+                        .checksumCRC32C(part.checksumCrc32c())
+                        .build())
+                .toList();
+        CompleteMultipartUploadResponse completeMultipartUploadResponse = s3Client.completeMultipartUpload(
+                CompleteMultipartUploadRequest.builder()
+                        .bucket(header.bucketName())
+                        .key(header.key())
+                        .uploadId(header.uploadId())
+                        .multipartUpload(CompletedMultipartUpload.builder().parts(parts).build())
+                        .build());
+        transferJournal.delete();
+        return new ResumableTransferReport(TransferProgressEvent.Direction.UPLOAD, header.bucketName(), header.key(),
+                header.file(), header.size(), partCount, resumedParts, completeMultipartUploadResponse.eTag());
+    }
+
+    private TransferJournal.Part uploadPart(FileChannel fileChannel, TransferJournal.Header header, int partNumber)
+            throws IOException, InterruptedException {
+        long start = (partNumber - 1) * header.partSize();
+        int length = Math.toIntExact(Math.min(header.partSize(), header.size() - start));
+        // parts only outgrow the pooled buffers in files of more than 10000 parts of part-size
+        boolean pooled = length <= partBuffers.bufferSize();
+        ByteBuffer part = pooled ? partBuffers.acquire(Duration.ZERO) : ByteBuffer.allocate(length);
+        try {
+            String checksum = read(fileChannel, start, part.limit(length));
+            UploadPartResponse uploadPartResponse = s3Client.uploadPart(UploadPartRequest.builder()
+                    .bucket(header.bucketName())
+                    .key(header.key())
+                    .uploadId(header.uploadId())
+                    .partNumber(partNumber)
+                    .contentLength((long) length)
+                    .checksumCRC32C(checksum)
+                    .build(), RequestBody.fromContentProvider(() -> new ByteBufferInputStream(part.duplicate()),
+                    length, OCTET_STREAM));
+            return new TransferJournal.Part(partNumber, uploadPartResponse.eTag(), checksum);
+        } finally {
+            if (pooled)
+                partBuffers.release(part);
+        }
+    }
+
+    /**
+     * the object as the previous run completed it, if it has the size of the file and the checksum of the journaled
+     * parts; null if it does not, or if the journal is missing parts and the upload cannot have been completed.
+     */
+    private ResumableTransferReport completedUpload(TransferJournal transferJournal) {
+        TransferJournal.Header header = transferJournal.header();
+        int partCount = Math.max(1, header.partCount());
+        Map<Integer, TransferJournal.Part> parts = transferJournal.parts();
+        if (parts.size() != partCount)
+            return null;
+        HeadObjectResponse headObjectResponse;
+        try {
+            headObjectResponse = s3Client.headObject(HeadObjectRequest.builder()
+                    .bucket(header.bucketName())
+                    .key(header.key())
+                    .checksumMode(ChecksumMode.ENABLED)
+                    .build());
+        } catch (S3Exception s3Exception) {
+            if (s3Exception.statusCode() == NOT_FOUND)
+                return null;
+            throw s3Exception;
+        }
+        String checksum = ObjectChecksums.composite(parts.values().stream()
+                .sorted(Comparator.comparingInt(TransferJournal.Part::partNumber))
+                .map(TransferJournal.Part::checksumCrc32c)
+                .toList());
+        if (headObjectResponse.contentLength() != header.size() || !checksum.equals(headObjectResponse.checksumCRC32C()))
+            return null;
+        return new ResumableTransferReport(TransferProgressEvent.Direction.UPLOAD, header.bucketName(), header.key(),
+                header.file(), header.size(), partCount, partCount, headObjectResponse.eTag());
+    }
+
+    private ResumableTransferReport runDownload(String bucketName, String key, Path destination, Path journalPath)
+            throws IOException {
+        Path partial = destination.resolveSibling(destination.getFileName() + PARTIAL_SUFFIX);
+
+        TransferJournal transferJournal = TransferJournal.open(journalPath);
+        if (transferJournal != null && !(Files.exists(partial) && Files.size(partial) == transferJournal.header().size())) {
+            transferJournal.delete();
+            transferJournal = null;
+        }
+        boolean resumed = transferJournal != null;
+        if (!resumed)
+            transferJournal = startDownload(bucketName, key, destination, partial, journalPath);
+        try {
+            int resumedParts = transferJournal.parts().size();
+            GetObjectResponse partResponse;
+            try {
+                partResponse = downloadParts(transferJournal, partial);
+            } catch (IOException ioException) {
+                if (!resumed || !isPreconditionFailed(ioException))
+                    throw ioException;
+                // the object changed since the download started, what is on disk belongs to the old one
+                transferJournal.delete();
+                transferJournal = startDownload(bucketName, key, destination, partial, journalPath);
+                resumedParts = 0;
+                partResponse = downloadParts(transferJournal, partial);
+            }
+            ObjectCodec objectCodec = codecOf(transferJournal.header(), partResponse);
+            if (objectCodec == ObjectCodec.NONE) {
+                Files.move(partial, destination, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } else {
+                objectCodec.decodeTo(partial, destination);
+                Files.delete(partial);
+            }
+            transferJournal.delete();
+            TransferJournal.Header header = transferJournal.header();
+            return new ResumableTransferReport(TransferProgressEvent.Direction.DOWNLOAD, bucketName, key, destination,
+                    header.size(), header.partCount(), resumedParts, header.eTag());
+        } finally {
+            transferJournal.close();
+        }
+    }
+
+    private TransferJournal startDownload(String bucketName, String key, Path destination, Path partial,
+                                          Path journalPath) throws IOException {
+        HeadObjectResponse headObjectResponse = s3Client.headObject(HeadObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .build());
+        long size = headObjectResponse.contentLength();
+        // size the file up front, parts then land at their offsets in any order
+        try (FileChannel fileChannel = FileChannel.open(partial, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            if (size > 0)
+                fileChannel.write(ByteBuffer.allocate(1), size - 1);
+            fileChannel.force(true);
+        }
+        return TransferJournal.create(journalPath, new TransferJournal.Header(TransferProgressEvent.Direction.DOWNLOAD,
+                bucketName, key, destination, size, 0, headObjectResponse.eTag(), partSize, ""));
+    }
+
+    /**
+     * @return response to one of the parts fetched, null if every part was already on disk
+     */
+    private GetObjectResponse downloadParts(TransferJournal transferJournal, Path partial) throws IOException {
+        TransferJournal.Header header = transferJournal.header();
+        Map<Integer, TransferJournal.Part> completedParts = transferJournal.parts();
+        AtomicReference<GetObjectResponse> partResponse = new AtomicReference<>();
+        try (FileChannel fileChannel = FileChannel.open(partial, StandardOpenOption.WRITE)) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int partNumber = 1; partNumber <= header.partCount(); partNumber++) {
+                if (completedParts.containsKey(partNumber))
+                    continue;
+                int part = partNumber;
+                futures.add(partTransfers.submit(() -> {
+                    partResponse.set(downloadPart(fileChannel, header, part));
+                    // the journal must never list a part which is not on disk yet
+                    fileChannel.force(false);
+                    transferJournal.append(new TransferJournal.Part(part, "", ""));
+                    return null;
+                }));
+            }
+            awaitParts(futures, header.key());
+        }
+        return partResponse.get();
+    }
+
+    /**
+     * codec of the object being downloaded, from the metadata every part response carries; a HEAD of the same version
+     * if no part was fetched by this attempt.
+     */
+    private ObjectCodec codecOf(TransferJournal.Header header, GetObjectResponse partResponse) {
+        if (partResponse != null)
+            return ObjectCodec.of(partResponse);
+        return ObjectCodec.of(s3Client.headObject(HeadObjectRequest.builder()
+                .bucket(header.bucketName())
+                .key(header.key())
+                .ifMatch(header.eTag())
+                .build()));
+    }
+
+    private GetObjectResponse downloadPart(FileChannel fileChannel, TransferJournal.Header header, int partNumber)
+            throws IOException {
+        long start = (partNumber - 1) * header.partSize();
+        long length = Math.min(header.partSize(), header.size() - start);
+        GetObjectRequest getObjectRequest = GetObjectRequest.builder()
+                .bucket(header.bucketName())
+                .key(header.key())
+                .range("bytes=" + start + "-" + (start + length - 1))
+                .ifMatch(header.eTag())
+                .build();
+        try (ResponseInputStream<GetObjectResponse> responseInputStream = s3Client.getObject(getObjectRequest)) {
+            ReadableByteChannel source = Channels.newChannel(responseInputStream);
+            long written = 0;
+            while (written < length) {
+                long transferred = fileChannel.transferFrom(source, start + written, length - written);
+                if (transferred == 0)
+                    break;
+                written += transferred;
+            }
+            if (written != length)
+                throw new IOException("part " + partNumber + " of " + header.key() + " ended after " + written
+                        + " of " + length + " bytes");
+            return responseInputStream.response();
+        }
+    }
+
+    /**
+     * wait for every part, so none is still writing when the caller closes the file, and report the first failure.
+     */
+    private static void awaitParts(List<Future<?>> futures, String key) throws IOException {
+        IOException failure = null;
+        boolean interrupted = false;
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException interruptedException) {
+                interrupted = true;
+                futures.forEach(pending -> pending.cancel(true));
+                if (failure == null)
+                    failure = new InterruptedIOException("Interrupted while transferring " + key);
+            } catch (ExecutionException executionException) {
+                if (failure == null)
+                    failure = new IOException("Part of " + key + " failed", executionException.getCause());
+            } catch (CancellationException ignored) {
+                // cancelled above, the interruption is reported
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+        if (failure != null)
+            throw failure;
+    }
+
+    /**
+     * fill the buffer from the file at start, adding every read to the checksum while it is still in cache.
+     * @return encoded checksum of the buffer, which is flipped for sending
+     */
+    private static String read(FileChannel fileChannel, long start, ByteBuffer byteBuffer) throws IOException {
+        CRC32C checksum = new CRC32C();
+        while (byteBuffer.hasRemaining()) {
+            int position = byteBuffer.position();
+            int read = fileChannel.read(byteBuffer, start + position);
+            if (read < 0)
+                throw new IOException("File ended at " + (start + position) + ", it changed during the upload");
+            checksum.update(byteBuffer.slice(position, read));
+        }
+        byteBuffer.flip();
+        return ObjectChecksums.encode(checksum);
+    }
+
+    private static boolean isNoSuchUpload(Exception exception) {
+        Throwable cause = exception instanceof IOException ? exception.getCause() : exception;
+        return cause instanceof S3Exception s3Exception && s3Exception.awsErrorDetails() != null
+                && "NoSuchUpload".equals(s3Exception.awsErrorDetails().errorCode());
+    }
+
+    private static boolean isPreconditionFailed(IOException ioException) {
+        return ioException.getCause() instanceof S3Exception s3Exception
+                && s3Exception.statusCode() == PRECONDITION_FAILED;
+    }
+
+    private void abortQuietly(TransferJournal.Header header) {
+        if (header.direction() != TransferProgressEvent.Direction.UPLOAD)
+            return;
+        try {
+            s3Client.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                    .bucket(header.bucketName())
+                    .key(header.key())
+                    .uploadId(header.uploadId())
+                    .build());
+        } catch (S3Exception s3Exception) {
+            // already gone, nothing left to clean up
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ioException) {
+            ioException.printStackTrace();
+        }
+    }
+
+    private void claim(Path journalPath) {
+        if (!activeJournals.add(journalPath))
+            throw new IllegalStateException("Transfer " + journalPath.getFileName() + " is already running");
+    }
+
+    // one journal per direction, object and local file, so calling a transfer again finds its journal
+    private Path journalPath(TransferProgressEvent.Direction direction, String bucketName, String key, Path file) {
+        try {
+            MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+            byte[] digest = messageDigest.digest((direction + "\n" + bucketName + "\n" + key + "\n" + file)
+                    .getBytes(StandardCharsets.UTF_8));
+            return journalDirectory.resolve(HexFormat.of().formatHex(digest) + JOURNAL_SUFFIX);
+        } catch (NoSuchAlgorithmException noSuchAlgorithmException) {
+            throw new IllegalStateException("SHA-256 is not available", noSuchAlgorithmException);
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,230 @@
+package in.learnjavaskills.springcloudawss3.service;
+
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Read-only random access to an object, for formats which read their index first: Parquet and ORC footers, the ZIP
+ * central directory, MP4 moov atoms. The object is split into blockSize aligned blocks and a read is served from a
+ * cache of the cacheBlocks most recently used ones; a missing block is fetched with a ranged GET conditional on the
+ * ETag seen when the channel was opened, so a concurrent overwrite fails the read instead of mixing two versions.
+ *
+ * A miss right after the last fetched run is taken as sequential reading and doubles the number of blocks the next
+ * GET fetches, up to maxReadAheadBlocks; any other miss fetches a single block. A reader jumping around costs one
+ * small request per block it touches, a reader scanning the object costs few large ones. Evicted block arrays are
+ * reused, so the channel holds at most cacheBlocks * blockSize bytes however much of the object it reads.
+ */
+public final class S3SeekableByteChannel implements SeekableByteChannel
+{
+    public static final int DEFAULT_BLOCK_SIZE = 256 * 1024;
+    public static final int DEFAULT_CACHE_BLOCKS = 64;
+    public static final int DEFAULT_MAX_READ_AHEAD_BLOCKS = 16;
+
+    private final S3Client s3Client;
+    private final String bucketName;
+    private final String key;
+    private final String eTag;
+    private final long size;
+    private final int blockSize;
+    private final int cacheBlocks;
+    private final int maxReadAheadBlocks;
+    private final AtomicLong rangeRequestCount = new AtomicLong();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    // guarded by lock, block index to block in access order
+    private final LinkedHashMap<Long, Block> blocks = new LinkedHashMap<>(16, 0.75f, true);
+    private long position;
+    private long nextSequentialBlock = -1;
+    private int readAheadBlocks = 1;
+    private volatile boolean open = true;
+
+    private record Block(byte[] data, int length) {
+    }
+
+    /**
+     * @param blockSize bytes per block, the unit of caching and the smallest range fetched
+     * @param cacheBlocks number of blocks kept, at least twice maxReadAheadBlocks so read-ahead does not evict itself
+     * @param maxReadAheadBlocks most blocks fetched by one GET while reading sequentially
+     */
+    S3SeekableByteChannel(S3Client s3Client, String bucketName, String key, int blockSize, int cacheBlocks,
+                          int maxReadAheadBlocks) {
+        if (blockSize < 1 || maxReadAheadBlocks < 1 || cacheBlocks < 2 * maxReadAheadBlocks)
+            throw new IllegalArgumentException("blockSize and maxReadAheadBlocks must be positive and cacheBlocks at"
+                    + " least twice maxReadAheadBlocks");
+        HeadObjectResponse headObjectResponse = s3Client.headObject(builder -> builder.bucket(bucketName).key(key));
+        // positions are positions in the stored bytes, a coded object would hand out encoded content
+        ObjectCodec.of(headObjectResponse).rejectRangedReads(key);
+        this.s3Client = s3Client;
+        this.bucketName = bucketName;
+        this.key = key;
+        this.eTag = headObjectResponse.eTag();
+        this.size = headObjectResponse.contentLength();
+        this.blockSize = blockSize;
+        this.cacheBlocks = cacheBlocks;
+        this.maxReadAheadBlocks = maxReadAheadBlocks;
+    }
+
+    @Override
+    public int read(ByteBuffer destination) throws IOException {
+        lock.lock();
+        try {
+            ensureOpen();
+            if (position >= size)
+                return -1;
+            int read = 0;
+            while (destination.hasRemaining() && position < size) {
+                long blockIndex = position / blockSize;
+                Block block = blocks.get(blockIndex);
+                if (block == null)
+                    block = fetch(blockIndex);
+                int offset = (int) (position - blockIndex * blockSize);
+                int length = Math.min(destination.remaining(), block.length() - offset);
+                destination.put(block.data(), offset, length);
+                position += length;
+                read += length;
+            }
+            return read;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long position() throws IOException {
+        lock.lock();
+        try {
+            ensureOpen();
+            return position;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public SeekableByteChannel position(long newPosition) throws IOException {
+        if (newPosition < 0)
+            throw new IllegalArgumentException("position must not be negative");
+        lock.lock();
+        try {
+            ensureOpen();
+            position = newPosition;
+            return this;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long size() throws IOException {
+        ensureOpen();
+        return size;
+    }
+
+    @Override
+    public int write(ByteBuffer source) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public SeekableByteChannel truncate(long size) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            open = false;
+            blocks.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return ETag of the object the channel reads
+     */
+    public String eTag() {
+        return eTag;
+    }
+
+    /**
+     * @return ranged GETs sent so far
+     */
+    public long rangeRequestCount() {
+        return rangeRequestCount.get();
+    }
+
+    /**
+     * fetch the block and, when reading sequentially, the blocks after it that are not cached yet.
+     * @return the requested block
+     */
+    private Block fetch(long blockIndex) throws IOException {
+        readAheadBlocks = blockIndex == nextSequentialBlock ? Math.min(maxReadAheadBlocks, readAheadBlocks * 2) : 1;
+        long lastBlock = (size - 1) / blockSize;
+        long endBlock = blockIndex;
+        while (endBlock + 1 < blockIndex + readAheadBlocks && endBlock + 1 <= lastBlock && !blocks.containsKey(endBlock + 1))
+            endBlock++;
+
+        long start = blockIndex * blockSize;
+        long end = Math.min(size, (endBlock + 1) * blockSize) - 1;
+        GetObjectRequest getObjectRequest = GetObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .ifMatch(eTag)
+                .range("bytes=" + start + "-" + end)
+                .build();
+        rangeRequestCount.incrementAndGet();
+        Block first = null;
+        try (ResponseInputStream<GetObjectResponse> range = s3Client.getObject(getObjectRequest)) {
+            for (long index = blockIndex; index <= endBlock; index++) {
+                int length = (int) Math.min(blockSize, size - index * blockSize);
+                byte[] data = freeArray();
+                int filled = range.readNBytes(data, 0, length);
+                if (filled < length)
+                    throw new IOException("range of " + key + " ended " + (length - filled) + " bytes early");
+                Block block = new Block(data, length);
+                blocks.put(index, block);
+                if (first == null)
+                    first = block;
+            }
+        }
+        nextSequentialBlock = endBlock + 1;
+        // re-read so the requested block is the most recently used one
+        blocks.get(blockIndex);
+        return first;
+    }
+
+    private byte[] freeArray() {
+        if (blocks.size() < cacheBlocks)
+            return new byte[blockSize];
+        Iterator<Map.Entry<Long, Block>> eldest = blocks.entrySet().iterator();
+        byte[] reused = eldest.next().getValue().data();
+        eldest.remove();
+        return reused;
+    }
+
+    private void ensureOpen() throws ClosedChannelException {
+        if (!open)
+            throw new ClosedChannelException();
+    }
+}
@@ -0,0 +1,408 @@
+package in.learnjavaskills.springcloudawss3.service;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.CRC32C;
+
+/**
+ * Upload an InputStream of unknown length, for example a generated export or piped data, without staging it on disk.
+ * The calling thread reads the stream into part sized direct buffers taken from a fixed pool and hands every full
+ * buffer to an upload thread. One upload holds at most concurrency buffers; with all of them in flight the caller
+ * blocks until one of its parts finishes, so the stream is only read as fast as S3 takes it. The pool of buffers and
+ * the upload threads are shared by every upload of this bean, so direct memory is bounded by partSize * buffers, 128MB
+ * with the default 16 buffers of 8MB, however many uploads run; concurrency only limits a single upload. A buffer is
+ * held while its part is being read from the caller's stream, so a slow producer, such as an HTTP client on a slow
+ * link, holds one for as long as it takes to send a part. Uploads wait for a free buffer for as long as it takes,
+ * except those started with a bufferWait: they wait at most that long for their first buffer and then fail with
+ * {@link UploadCapacityExceededException} instead of queueing behind the slow ones. Once it has its first buffer an
+ * upload is never turned away, however long its later parts wait.
+ *
+ * A stream shorter than one part is sent with a single PutObject; anything longer becomes a multipart upload which is
+ * aborted if the stream or any part fails.
+ *
+ * The CRC32C of every part is computed as the bytes are read into its buffer and sent with the part, so S3 rejects a
+ * part damaged on the way with 400 BadDigest and stores the checksum for verification on download, without reading
+ * the data a second time.
+ */
+@Service
+public class StreamingMultipartUploader implements DisposableBean
+{
+    /**
+     * S3 refuses parts smaller than 5 MB, except for the last one
+     */
+    public static final long MIN_PART_SIZE = 5L * 1024 * 1024;
+    public static final int MAX_PART_COUNT = 10_000;
+    private static final String OCTET_STREAM = "application/octet-stream";
+
+    private final S3Client s3Client;
+    private final DirectBufferPool directBufferPool;
+    private final int concurrency;
+    private final ExecutorService partUploaders;
+
+    /**
+     * an uploader with a pool of concurrency buffers, one upload at a time can use all of them.
+     */
+    public StreamingMultipartUploader(S3Client s3Client, DataSize partSize, int concurrency) {
+        this(s3Client, partSize, concurrency, concurrency);
+    }
+
+    @Autowired
+    public StreamingMultipartUploader(S3Client s3Client,
+                                      @Value("${streaming-upload.part-size:8MB}") DataSize partSize,
+                                      @Value("${streaming-upload.concurrency:4}") int concurrency,
+                                      @Value("${streaming-upload.buffers:16}") int buffers) {
+        if (partSize.toBytes() < MIN_PART_SIZE || partSize.toBytes() > Integer.MAX_VALUE - 8)
+            throw new IllegalArgumentException("partSize must be between 5MB and 2GB, got " + partSize);
+        if (concurrency < 1)
+            throw new IllegalArgumentException("concurrency must be positive, got " + concurrency);
+        if (buffers < 1)
+            throw new IllegalArgumentException("buffers must be positive, got " + buffers);
+        this.s3Client = s3Client;
+        this.directBufferPool = new DirectBufferPool((int) partSize.toBytes(), buffers);
+        this.concurrency = concurrency;
+        this.partUploaders = Executors.newFixedThreadPool(concurrency, runnable -> {
+            Thread thread = new Thread(runnable, "streaming-upload");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Upload the stream as an application/octet-stream object, see {@link #upload(String, String, String, Map, InputStream)}.
+     */
+    public StreamingUploadResult upload(String bucketName, String key, InputStream inputStream) throws IOException {
+        return upload(bucketName, key, null, Map.of(), inputStream);
+    }
+
+    /**
+     * Read the stream to its end and store it as one object, waiting for part buffers as long as other uploads hold
+     * them. The stream is not closed.
+     * @param bucketName name of the bucket
+     * @param key object key
+     * @param contentType content type of the object, null for application/octet-stream
+     * @param metadata user metadata of the object
+     * @param inputStream content, read on the calling thread
+     * @return the uploaded object
+     * @throws IOException if the stream fails, the upload is aborted and no object is written
+     * @throws S3Exception if S3 rejects a part, the upload is aborted and no object is written
+     */
+    public StreamingUploadResult upload(String bucketName, String key, String contentType, Map<String, String> metadata,
+                                        InputStream inputStream) throws IOException {
+        return upload(bucketName, key, contentType, metadata, inputStream, null);
+    }
+
+    /**
+     * Read the stream to its end and store it as one object, for callers which would rather turn an upload away than
+     * queue it, such as a request thread. The stream is not closed.
+     * @param bucketName name of the bucket
+     * @param key object key
+     * @param contentType content type of the object, null for application/octet-stream
+     * @param metadata user metadata of the object
+     * @param inputStream content, read on the calling thread
+     * @param bufferWait longest wait for the first part buffer, null to wait as long as it takes
+     * @return the uploaded object
+     * @throws UploadCapacityExceededException if no part buffer became free within bufferWait, nothing was read from
+     * the stream and no object is written
+     * @throws IOException if the stream fails, the upload is aborted and no object is written
+     * @throws S3Exception if S3 rejects a part, the upload is aborted and no object is written
+     */
+    public StreamingUploadResult upload(String bucketName, String key, String contentType, Map<String, String> metadata,
+                                        InputStream inputStream, Duration bufferWait) throws IOException {
+        String objectContentType = contentType != null ? contentType : OCTET_STREAM;
+        ReadableByteChannel readableByteChannel = Channels.newChannel(inputStream);
+
+        UploadBuffers uploadBuffers = new UploadBuffers();
+        ByteBuffer firstPart = uploadBuffers.acquire(bufferWait);
+        CRC32C checksum = new CRC32C();
+        boolean endOfStream;
+        try {
+            endOfStream = fill(readableByteChannel, firstPart, checksum);
+        } catch (IOException | RuntimeException exception) {
+            uploadBuffers.release(firstPart);
+            throw exception;
+        }
+        if (endOfStream)
+            return putSinglePart(bucketName, key, objectContentType, metadata, uploadBuffers, firstPart,
+                    ObjectChecksums.encode(checksum));
+
+        CreateMultipartUploadResponse createMultipartUploadResponse;
+        try {
+            createMultipartUploadResponse = s3Client.createMultipartUpload(CreateMultipartUploadRequest.builder()
+                    .bucket(bucketName)
+                    .key(key)
+                    .contentType(objectContentType)
+                    .metadata(metadata)
+                    .checksumAlgorithm(ChecksumAlgorithm.CRC32_C)
+                    .build());
+        } catch (RuntimeException exception) {
+            uploadBuffers.release(firstPart);
+            throw exception;
+        }
+        MultipartUpload multipartUpload = new MultipartUpload(bucketName, key, createMultipartUploadResponse.uploadId(),
+                uploadBuffers);
+        try {
+            long size = 0;
+            int partNumber = 1;
+            ByteBuffer part = firstPart;
+            while (true) {
+                part.flip();
+                size += part.remaining();
+                multipartUpload.submit(partNumber, part, ObjectChecksums.encode(checksum));
+                if (endOfStream)
+                    break;
+                multipartUpload.throwIfFailed();
+                part = uploadBuffers.acquire(null);
+                checksum.reset();
+                try {
+                    endOfStream = fill(readableByteChannel, part, checksum);
+                } catch (IOException | RuntimeException exception) {
+                    uploadBuffers.release(part);
+                    throw exception;
+                }
+                // the stream ended exactly on a part boundary
+                if (endOfStream && part.position() == 0) {
+                    uploadBuffers.release(part);
+                    break;
+                }
+                if (++partNumber > MAX_PART_COUNT) {
+                    uploadBuffers.release(part);
+                    throw new IOException("Stream is longer than " + MAX_PART_COUNT + " parts of "
+                            + directBufferPool.bufferSize() + " bytes, raise streaming-upload.part-size");
+                }
+            }
+            List<CompletedPart> completedParts = multipartUpload.awaitParts();
+            CompleteMultipartUploadResponse completeMultipartUploadResponse = s3Client.completeMultipartUpload(
+                    CompleteMultipartUploadRequest.builder()
+                            .bucket(bucketName)
+                            .key(key)
+                            .uploadId(multipartUpload.uploadId)
+                            .multipartUpload(CompletedMultipartUpload.builder().parts(completedParts).build())
+                            .build());
+            String compositeChecksum = ObjectChecksums.composite(completedParts.stream()
+                    .map(CompletedPart::checksumCRC32C)
+                    .toList());
+            return new StreamingUploadResult(bucketName, key, completeMultipartUploadResponse.eTag(), size,
+                    completedParts.size(), compositeChecksum);
+        } catch (IOException | RuntimeException exception) {
+            multipartUpload.abort(exception);
+            throw exception;
+        }
+    }
+
+    @Override
+    public void destroy() {
+        partUploaders.shutdownNow();
+    }
+
+    /**
+     * @return bytes per part of multipart uploads, streams up to this size are sent with a single PutObject
+     */
+    long partSize() {
+        return directBufferPool.bufferSize();
+    }
+
+    /**
+     * @return direct buffers allocated so far, never more than buffers
+     */
+    int allocatedBuffers() {
+        return directBufferPool.allocatedBuffers();
+    }
+
+    private StreamingUploadResult putSinglePart(String bucketName, String key, String contentType,
+                                                Map<String, String> metadata, UploadBuffers uploadBuffers,
+                                                ByteBuffer content, String checksum) {
+        try {
+            content.flip();
+            long size = content.remaining();
+            PutObjectResponse putObjectResponse = s3Client.putObject(PutObjectRequest.builder()
+                    .bucket(bucketName)
+                    .key(key)
+                    .contentType(contentType)
+                    .metadata(metadata)
+                    .checksumCRC32C(checksum)
+                    .build(), requestBody(content, contentType));
+            return new StreamingUploadResult(bucketName, key, putObjectResponse.eTag(), size, 1, checksum);
+        } finally {
+            uploadBuffers.release(content);
+        }
+    }
+
+    /**
+     * read until the buffer is full or the stream ends, adding every read to the checksum while it is still in cache.
+     * @return true if the stream ended
+     */
+    private static boolean fill(ReadableByteChannel readableByteChannel, ByteBuffer byteBuffer, CRC32C checksum)
+            throws IOException {
+        while (byteBuffer.hasRemaining()) {
+            int position = byteBuffer.position();
+            int read = readableByteChannel.read(byteBuffer);
+            if (read < 0)
+                return true;
+            checksum.update(byteBuffer.slice(position, read));
+        }
+        return false;
+    }
+
+    // the SDK may read the body more than once (signing, retries), every stream starts at the beginning of the part
+    private static RequestBody requestBody(ByteBuffer content, String contentType) {
+        return RequestBody.fromContentProvider(() -> new ByteBufferInputStream(content.duplicate()),
+                content.remaining(), contentType);
+    }
+
+    /**
+     * The buffers of one upload: at most concurrency of them at once, taken from the shared pool.
+     */
+    private final class UploadBuffers
+    {
+        private final Semaphore budget = new Semaphore(concurrency);
+
+        /**
+         * waiting for a part of this upload to finish is the backpressure on the producer and is not limited, waiting
+         * for the shared pool is limited to bufferWait unless that is null.
+         */
+        private ByteBuffer acquire(Duration bufferWait) throws IOException {
+            try {
+                budget.acquire();
+                ByteBuffer byteBuffer = bufferWait != null ? directBufferPool.acquire(bufferWait)
+                        : directBufferPool.acquire();
+                if (byteBuffer == null) {
+                    budget.release();
+                    throw new UploadCapacityExceededException("All " + directBufferPool.capacity()
+                            + " streaming upload buffers stayed in use for " + bufferWait);
+                }
+                return byteBuffer;
+            } catch (InterruptedException interruptedException) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for a free part buffer");
+            }
+        }
+
+        private void release(ByteBuffer byteBuffer) {
+            directBufferPool.release(byteBuffer);
+            budget.release();
+        }
+    }
+
+    /**
+     * Parts of one multipart upload. Every submitted part owns its buffer and returns it to the pool when done.
+     */
+    private final class MultipartUpload
+    {
+        private final String bucketName;
+        private final String key;
+        private final String uploadId;
+        private final List<Future<CompletedPart>> parts = new ArrayList<>();
+        private final AtomicReference<Exception> failure = new AtomicReference<>();
+        private final UploadBuffers uploadBuffers;
+
+        private MultipartUpload(String bucketName, String key, String uploadId, UploadBuffers uploadBuffers) {
+            this.bucketName = bucketName;
+            this.key = key;
+            this.uploadId = uploadId;
+            this.uploadBuffers = uploadBuffers;
+        }
+
+        private void submit(int partNumber, ByteBuffer part, String checksum) {
+            Callable<CompletedPart> uploadPart = () -> {
+                try {
+                    // a part queued behind a failure is not sent
+                    if (failure.get() != null)
+                        return null;
+                    UploadPartResponse uploadPartResponse = s3Client.uploadPart(UploadPartRequest.builder()
+                            .bucket(bucketName)
+                            .key(key)
+                            .uploadId(uploadId)
+                            .partNumber(partNumber)
+                            .contentLength((long) part.remaining())
+                            .checksumCRC32C(checksum)
+                            .build(), requestBody(part, OCTET_STREAM));
+                    return CompletedPart.builder()
+                            .partNumber(partNumber)
+                            .eTag(uploadPartResponse.eTag())
+                            .checksumCRC32C(checksum)
+                            .build();
+                } catch (RuntimeException exception) {
+                    failure.compareAndSet(null, exception);
+                    throw exception;
+                } finally {
+                    uploadBuffers.release(part);
+                }
+            };
+            try {
+                parts.add(partUploaders.submit(uploadPart));
+            } catch (RejectedExecutionException rejectedExecutionException) {
+                uploadBuffers.release(part);
+                throw rejectedExecutionException;
+            }
+        }
+
+        private void throwIfFailed() throws IOException {
+            Exception exception = failure.get();
+            if (exception != null)
+                throw new IOException("Part upload of " + key + " failed", exception);
+        }
+
+        private List<CompletedPart> awaitParts() throws IOException {
+            List<CompletedPart> completedParts = new ArrayList<>(parts.size());
+            for (Future<CompletedPart> part : parts) {
+                try {
+                    completedParts.add(part.get());
+                } catch (InterruptedException interruptedException) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for the parts of " + key);
+                } catch (ExecutionException executionException) {
+                    throw new IOException("Part upload of " + key + " failed", executionException.getCause());
+                }
+            }
+            return completedParts;
+        }
+
+        /**
+         * stop sending parts and abort once the parts in flight are done, S3 could otherwise keep a part that finishes
+         * after the abort.
+         */
+        private void abort(Exception cause) {
+            failure.compareAndSet(null, cause);
+            boolean interrupted = Thread.interrupted();
+            for (Future<CompletedPart> part : parts) {
+                try {
+                    part.get();
+                } catch (InterruptedException interruptedException) {
+                    interrupted = true;
+                } catch (ExecutionException | CancellationException ignored) {
+                    // already recorded, the first failure is the one reported
+                }
+            }
+            try {
+                s3Client.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                        .bucket(bucketName)
+                        .key(key)
+                        .uploadId(uploadId)
+                        .build());
+            } catch (RuntimeException abortFailure) {
+                cause.addSuppressed(abortFailure);
+            }
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package in.learnjavaskills.springcloudawss3.service;
+
+/**
+ * Object written by {@link StreamingMultipartUploader}.
+ * @param bucketName name of the bucket
+ * @param key object key
+ * @param eTag ETag S3 returned, a multipart ETag ends with -partCount
+ * @param size number of bytes read from the stream
+ * @param partCount number of parts uploaded, 1 when the stream fitted in a single PutObject
+ * @param checksumCrc32c CRC32C S3 verified and stored, a multipart checksum ends with -partCount
+ */
+public record StreamingUploadResult(String bucketName, String key, String eTag, long size, int partCount,
+                                    String checksumCrc32c) {
+}
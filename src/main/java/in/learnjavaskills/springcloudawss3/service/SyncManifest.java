@@ -0,0 +1,216 @@
+package in.learnjavaskills.springcloudawss3.service;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The objects of the last successful directory download, one entry per key with its size, ETag and last modified
+ * time, and the size of the local file, which differs from the object's for objects stored with an {@link ObjectCodec}. Entries are sorted by the unsigned UTF-8 bytes of the key, the order S3 lists keys in, so the previous
+ * manifest is merged with a listing by walking both from the front: nothing is looked up and nothing is loaded into
+ * a map. The file is read through a read only mapping, the heap only holds the entry being compared.
+ *
+ * Layout: magic, format version and entry count as ints, then per entry the key length (int), key bytes, size (long),
+ * local size (long), last modified epoch millis (long), ETag length (short) and ETag bytes. Version 1 had no local
+ * size, its entries read with the object size in its place. A manifest is at most 2 GB, about 20 million
+ * keys of typical length.
+ */
+final class SyncManifest
+{
+    private static final int MAGIC = 0x53334d46;
+    private static final int VERSION = 2;
+    private static final int VERSION_WITHOUT_LOCAL_SIZE = 1;
+    private static final int HEADER_SIZE = 12;
+
+    private SyncManifest() {
+    }
+
+    /**
+     * @param key UTF-8 bytes of the object key
+     * @param size object size in bytes
+     * @param localSize size of the local file, the decoded size for an object stored with a codec
+     * @param lastModifiedMillis object last modified time, also the modified time of the local file
+     * @param eTag object ETag as listed, quotes included
+     */
+    record Entry(byte[] key, long size, long localSize, long lastModifiedMillis, String eTag)
+    {
+        String keyString() {
+            return new String(key, StandardCharsets.UTF_8);
+        }
+
+        Entry withLocalSize(long newLocalSize) {
+            return new Entry(key, size, newLocalSize, lastModifiedMillis, eTag);
+        }
+    }
+
+    static int compareKeys(byte[] key, byte[] otherKey) {
+        return Arrays.compareUnsigned(key, otherKey);
+    }
+
+    /**
+     * rewrite a manifest once its downloads are done: drop the given keys, for example the keys whose download failed
+     * so they are fetched again, and record the local size of files which were decoded.
+     * @param removedKeys keys to drop
+     * @param localSizes local size by key, for entries written before the size of their file was known
+     */
+    static void update(Path manifest, Set<String> removedKeys, Map<String, Long> localSizes) throws IOException {
+        try (Reader reader = Reader.open(manifest); Writer writer = new Writer(manifest)) {
+            while (reader.hasNext()) {
+                Entry entry = reader.next();
+                String key = entry.keyString();
+                if (removedKeys.contains(key))
+                    continue;
+                Long localSize = localSizes.get(key);
+                writer.append(localSize != null ? entry.withLocalSize(localSize) : entry);
+            }
+            writer.commit();
+        }
+    }
+
+    /**
+     * Reads the entries of a manifest in key order.
+     */
+    static final class Reader implements AutoCloseable
+    {
+        private final ByteBuffer byteBuffer;
+        private final boolean withLocalSize;
+        private int remaining;
+        private Entry next;
+
+        private Reader(ByteBuffer byteBuffer, boolean withLocalSize, int entryCount) throws IOException {
+            this.byteBuffer = byteBuffer;
+            this.withLocalSize = withLocalSize;
+            this.remaining = entryCount;
+            advance();
+        }
+
+        /**
+         * @param manifest manifest file, a missing file reads as an empty manifest
+         */
+        static Reader open(Path manifest) throws IOException {
+            try (FileChannel fileChannel = FileChannel.open(manifest, StandardOpenOption.READ)) {
+                long size = fileChannel.size();
+                if (size < HEADER_SIZE || size > Integer.MAX_VALUE)
+                    throw new IOException(manifest + " is not a sync manifest, size " + size);
+                // the mapping stays valid after the channel is closed
+                MappedByteBuffer mappedByteBuffer = fileChannel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                if (mappedByteBuffer.getInt() != MAGIC)
+                    throw new IOException(manifest + " is not a sync manifest");
+                int version = mappedByteBuffer.getInt();
+                if (version != VERSION && version != VERSION_WITHOUT_LOCAL_SIZE)
+                    throw new IOException(manifest + " is a sync manifest of unknown version " + version);
+                return new Reader(mappedByteBuffer, version == VERSION, mappedByteBuffer.getInt());
+            } catch (NoSuchFileException noSuchFileException) {
+                return new Reader(ByteBuffer.allocate(0), true, 0);
+            }
+        }
+
+        boolean hasNext() {
+            return next != null;
+        }
+
+        /**
+         * @return the entry {@link #next()} returns, without moving past it
+         */
+        Entry peek() {
+            return next;
+        }
+
+        Entry next() throws IOException {
+            Entry entry = next;
+            advance();
+            return entry;
+        }
+
+        private void advance() throws IOException {
+            if (remaining == 0) {
+                next = null;
+                return;
+            }
+            try {
+                byte[] key = new byte[byteBuffer.getInt()];
+                byteBuffer.get(key);
+                long size = byteBuffer.getLong();
+                long localSize = withLocalSize ? byteBuffer.getLong() : size;
+                long lastModifiedMillis = byteBuffer.getLong();
+                byte[] eTag = new byte[byteBuffer.getShort()];
+                byteBuffer.get(eTag);
+                next = new Entry(key, size, localSize, lastModifiedMillis, new String(eTag, StandardCharsets.US_ASCII));
+                remaining--;
+            } catch (BufferUnderflowException | NegativeArraySizeException exception) {
+                throw new IOException("Sync manifest is truncated", exception);
+            }
+        }
+
+        @Override
+        public void close() {
+            // nothing to release, the mapping goes away with the buffer
+        }
+    }
+
+    /**
+     * Writes a new manifest next to the old one and replaces it on {@link #commit()}, entries must be appended in key
+     * order. Closing without committing leaves the old manifest as it was.
+     */
+    static final class Writer implements AutoCloseable
+    {
+        private final Path manifest;
+        private final Path temporary;
+        private final DataOutputStream dataOutputStream;
+        private int entryCount;
+        private boolean committed;
+
+        Writer(Path manifest) throws IOException {
+            this.manifest = manifest;
+            this.temporary = manifest.resolveSibling(manifest.getFileName() + ".tmp");
+            this.dataOutputStream = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary), 64 * 1024));
+            dataOutputStream.writeInt(MAGIC);
+            dataOutputStream.writeInt(VERSION);
+            // patched on commit
+            dataOutputStream.writeInt(0);
+        }
+
+        void append(Entry entry) throws IOException {
+            byte[] eTag = entry.eTag() == null ? new byte[0] : entry.eTag().getBytes(StandardCharsets.US_ASCII);
+            dataOutputStream.writeInt(entry.key().length);
+            dataOutputStream.write(entry.key());
+            dataOutputStream.writeLong(entry.size());
+            dataOutputStream.writeLong(entry.localSize());
+            dataOutputStream.writeLong(entry.lastModifiedMillis());
+            dataOutputStream.writeShort(eTag.length);
+            dataOutputStream.write(eTag);
+            entryCount++;
+        }
+
+        void commit() throws IOException {
+            dataOutputStream.close();
+            try (FileChannel fileChannel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                fileChannel.write(ByteBuffer.allocate(4).putInt(0, entryCount), 8);
+                fileChannel.force(true);
+            }
+            Files.move(temporary, manifest, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            committed = true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (committed)
+                return;
+            dataOutputStream.close();
+            Files.deleteIfExists(temporary);
+        }
+    }
+}
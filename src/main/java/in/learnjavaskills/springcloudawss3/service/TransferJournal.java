@@ -0,0 +1,231 @@
+package in.learnjavaskills.springcloudawss3.service;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * On-disk state of one resumable transfer: what is transferred and how it is cut into parts, then one record per part
+ * which is done. A record is appended and forced to disk only after its part is durable on the other side, so after a
+ * crash every recorded part can be trusted and at worst a part finished just before the crash is sent again.
+ *
+ * Layout: magic and format version as ints, direction (byte), bucket, key and local path as strings, size (long),
+ * modified time of the local file in epoch millis (long), object ETag (string), part size (long) and multipart upload
+ * id (string); then per completed part its number (int), ETag and CRC32C (strings). Strings are an unsigned short
+ * length and UTF-8 bytes. The header is written next to the journal and moved into place, a record cut short by a
+ * crash is dropped when the journal is opened again.
+ */
+final class TransferJournal implements AutoCloseable
+{
+    private static final int MAGIC = 0x53335452;
+    private static final int VERSION = 1;
+
+    private final Path path;
+    private final Header header;
+    private final Map<Integer, Part> parts;
+    private final FileChannel fileChannel;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private TransferJournal(Path path, Header header, Map<Integer, Part> parts, FileChannel fileChannel) {
+        this.path = path;
+        this.header = header;
+        this.parts = parts;
+        this.fileChannel = fileChannel;
+    }
+
+    /**
+     * @param direction upload or download
+     * @param bucketName name of the bucket
+     * @param key object key
+     * @param file source of an upload, destination of a download
+     * @param size bytes to transfer
+     * @param fileModifiedMillis modified time of the source of an upload, 0 for a download
+     * @param eTag ETag of the object being downloaded, empty for an upload
+     * @param partSize bytes per part, the last one may be shorter
+     * @param uploadId id of the multipart upload, empty for a download
+     */
+    record Header(TransferProgressEvent.Direction direction, String bucketName, String key, Path file, long size,
+                  long fileModifiedMillis, String eTag, long partSize, String uploadId)
+    {
+        int partCount() {
+            return Math.toIntExact((size + partSize - 1) / partSize);
+        }
+    }
+
+    /**
+     * @param partNumber 1 based number of the part
+     * @param eTag ETag S3 returned for an uploaded part, empty for a download
+     * @param checksumCrc32c base64 CRC32C of an uploaded part, empty for a download
+     */
+    record Part(int partNumber, String eTag, String checksumCrc32c) {
+    }
+
+    /**
+     * start a journal without any completed part, replacing whatever journal was at the path.
+     */
+    static TransferJournal create(Path path, Header header) throws IOException {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel temporaryChannel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(temporaryChannel, encode(header));
+            temporaryChannel.force(true);
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return new TransferJournal(path, header, new HashMap<>(),
+                FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND));
+    }
+
+    /**
+     * @return the journal at the path, null if there is none
+     * @throws IOException if the file is not a transfer journal
+     */
+    static TransferJournal open(Path path) throws IOException {
+        byte[] content;
+        try {
+            content = Files.readAllBytes(path);
+        } catch (NoSuchFileException noSuchFileException) {
+            return null;
+        }
+        ByteBuffer byteBuffer = ByteBuffer.wrap(content);
+        Header header;
+        try {
+            if (byteBuffer.getInt() != MAGIC || byteBuffer.getInt() != VERSION)
+                throw new IOException(path + " is not a transfer journal of version " + VERSION);
+            header = new Header(TransferProgressEvent.Direction.values()[byteBuffer.get()], getString(byteBuffer),
+                    getString(byteBuffer), Path.of(getString(byteBuffer)), byteBuffer.getLong(), byteBuffer.getLong(),
+                    getString(byteBuffer), byteBuffer.getLong(), getString(byteBuffer));
+        } catch (BufferUnderflowException | ArrayIndexOutOfBoundsException exception) {
+            throw new IOException(path + " has no valid transfer journal header", exception);
+        }
+        if (header.partSize() < 1 || header.size() < 0)
+            throw new IOException(path + " has no valid transfer journal header");
+
+        Map<Integer, Part> parts = new HashMap<>();
+        int validLength = byteBuffer.position();
+        try {
+            while (byteBuffer.hasRemaining()) {
+                Part part = new Part(byteBuffer.getInt(), getString(byteBuffer), getString(byteBuffer));
+                // a crash may leave the end of the file zero filled
+                if (part.partNumber() < 1 || part.partNumber() > header.partCount())
+                    break;
+                parts.put(part.partNumber(), part);
+                validLength = byteBuffer.position();
+            }
+        } catch (BufferUnderflowException ignored) {
+            // the last record was cut short, its part is transferred again
+        }
+
+        FileChannel fileChannel = FileChannel.open(path, StandardOpenOption.WRITE);
+        try {
+            if (validLength < content.length) {
+                fileChannel.truncate(validLength);
+                fileChannel.force(true);
+            }
+            fileChannel.position(validLength);
+        } catch (IOException ioException) {
+            fileChannel.close();
+            throw ioException;
+        }
+        return new TransferJournal(path, header, parts, fileChannel);
+    }
+
+    Header header() {
+        return header;
+    }
+
+    /**
+     * @return the completed parts by part number, a copy
+     */
+    Map<Integer, Part> parts() {
+        lock.lock();
+        try {
+            return new HashMap<>(parts);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * record a completed part, returning once the record is on disk.
+     */
+    void append(Part part) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(4 + stringLength(part.eTag()) + stringLength(part.checksumCrc32c()));
+        record.putInt(part.partNumber());
+        putString(record, part.eTag());
+        putString(record, part.checksumCrc32c());
+        lock.lock();
+        try {
+            writeFully(fileChannel, record.flip());
+            fileChannel.force(false);
+            parts.put(part.partNumber(), part);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * close and remove the journal, once the transfer is complete or abandoned.
+     */
+    void delete() throws IOException {
+        close();
+        Files.deleteIfExists(path);
+    }
+
+    @Override
+    public void close() throws IOException {
+        fileChannel.close();
+    }
+
+    private static ByteBuffer encode(Header header) {
+        String file = header.file().toString();
+        ByteBuffer byteBuffer = ByteBuffer.allocate(4 + 4 + 1 + stringLength(header.bucketName())
+                + stringLength(header.key()) + stringLength(file) + 8 + 8 + stringLength(header.eTag()) + 8
+                + stringLength(header.uploadId()));
+        byteBuffer.putInt(MAGIC);
+        byteBuffer.putInt(VERSION);
+        byteBuffer.put((byte) header.direction().ordinal());
+        putString(byteBuffer, header.bucketName());
+        putString(byteBuffer, header.key());
+        putString(byteBuffer, file);
+        byteBuffer.putLong(header.size());
+        byteBuffer.putLong(header.fileModifiedMillis());
+        putString(byteBuffer, header.eTag());
+        byteBuffer.putLong(header.partSize());
+        putString(byteBuffer, header.uploadId());
+        return byteBuffer.flip();
+    }
+
+    private static int stringLength(String value) {
+        int length = value.getBytes(StandardCharsets.UTF_8).length;
+        if (length > 0xFFFF)
+            throw new IllegalArgumentException("Journal strings are at most 65535 bytes, got " + length);
+        return 2 + length;
+    }
+
+    private static void putString(ByteBuffer byteBuffer, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        byteBuffer.putShort((short) bytes.length);
+        byteBuffer.put(bytes);
+    }
+
+    private static String getString(ByteBuffer byteBuffer) {
+        byte[] bytes = new byte[Short.toUnsignedInt(byteBuffer.getShort())];
+        byteBuffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeFully(FileChannel fileChannel, ByteBuffer byteBuffer) throws IOException {
+        while (byteBuffer.hasRemaining())
+            fileChannel.write(byteBuffer);
+    }
+}
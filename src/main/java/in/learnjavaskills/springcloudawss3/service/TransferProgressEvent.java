@@ -0,0 +1,29 @@
+package in.learnjavaskills.springcloudawss3.service;
+
+import java.time.Duration;
+
+/**
+ * Progress of one upload or download, published by {@link TransferProgressPublisher}.
+ * @param transferId id unique to the transfer within this JVM
+ * @param direction upload or download
+ * @param status in progress, completed or failed
+ * @param bucketName name of the bucket
+ * @param key object key
+ * @param bytesTransferred bytes transferred so far
+ * @param totalBytes total size of the transfer, -1 if unknown
+ * @param bytesPerSecond average rate since the transfer started
+ * @param eta estimated time left, null if the total size is unknown or nothing was transferred yet
+ */
+public record TransferProgressEvent(long transferId, Direction direction, Status status, String bucketName, String key,
+                                    long bytesTransferred, long totalBytes, double bytesPerSecond, Duration eta)
+{
+    public enum Direction
+    {
+        UPLOAD, DOWNLOAD
+    }
+
+    public enum Status
+    {
+        IN_PROGRESS, COMPLETED, FAILED
+    }
+}
@@ -0,0 +1,304 @@
+package in.learnjavaskills.springcloudawss3.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import software.amazon.awssdk.transfer.s3.progress.TransferListener;
+import software.amazon.awssdk.transfer.s3.progress.TransferProgressSnapshot;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Turns S3TransferManager callbacks into throttled {@link TransferProgressEvent}s and Micrometer metrics.
+ * Attach {@link #listenerFor} to an upload or download request; the transfer threads drive the listener, nothing polls.
+ * Events are published at most once per {@link #PUBLISH_INTERVAL} per transfer, plus once on completion or failure.
+ *
+ * Every subscriber has its own queue and is called on a delivery thread of its own while it has events pending, so a
+ * slow subscriber neither stalls a transfer nor the other subscribers. While a subscriber is behind, a new progress
+ * event of a transfer replaces the one still pending for it, outcomes are always delivered. A subscriber with events of
+ * more than {@link #MAX_PENDING_TRANSFERS} transfers pending is dropped.
+ *
+ * Metrics: s3.transfer.active (gauge), s3.transfer.bytes (counter) and s3.transfer.duration (timer), tagged by direction.
+ */
+@Service
+public class TransferProgressPublisher implements DisposableBean
+{
+    /**
+     * minimum time between two progress events of the same transfer
+     */
+    public static final Duration PUBLISH_INTERVAL = Duration.ofMillis(500);
+
+    /**
+     * number of transfers a subscriber may have undelivered events of before it is dropped
+     */
+    public static final int MAX_PENDING_TRANSFERS = 256;
+
+    private final MeterRegistry meterRegistry;
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    // a thread per subscriber with events pending, idle ones are reclaimed
+    private final ExecutorService deliveries = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "transfer-progress-delivery");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicLong transferIds = new AtomicLong();
+    private final AtomicInteger activeUploads = new AtomicInteger();
+    private final AtomicInteger activeDownloads = new AtomicInteger();
+
+    @Autowired
+    public TransferProgressPublisher(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        meterRegistry.gauge("s3.transfer.active", Tags.of("direction", "upload"), activeUploads);
+        meterRegistry.gauge("s3.transfer.active", Tags.of("direction", "download"), activeDownloads);
+    }
+
+    /**
+     * Create a listener for one transfer. Use a new listener for every transfer.
+     * @param direction upload or download
+     * @param bucketName name of the bucket
+     * @param key object key
+     * @return listener to add to the UploadFileRequest or DownloadFileRequest
+     */
+    public TransferListener listenerFor(TransferProgressEvent.Direction direction, String bucketName, String key) {
+        return new ThrottledTransferListener(transferIds.incrementAndGet(), direction, bucketName, key);
+    }
+
+    /**
+     * Receive published events until {@link #unsubscribe} is called, see {@link #subscribe(Consumer, Runnable)}.
+     */
+    public void subscribe(Consumer<TransferProgressEvent> subscriber) {
+        subscribe(subscriber, () -> {
+        });
+    }
+
+    /**
+     * Receive published events until {@link #unsubscribe} is called or the subscriber falls too far behind.
+     * @param subscriber called with one event at a time on a delivery thread of its own, may block
+     * @param onDropped called once if the subscriber is dropped for having events of more than
+     *                  {@link #MAX_PENDING_TRANSFERS} transfers pending
+     */
+    public void subscribe(Consumer<TransferProgressEvent> subscriber, Runnable onDropped) {
+        subscriptions.add(new Subscription(subscriber, onDropped));
+    }
+
+    public void unsubscribe(Consumer<TransferProgressEvent> subscriber) {
+        subscriptions.removeIf(subscription -> subscription.subscriber == subscriber);
+    }
+
+    @Override
+    public void destroy() {
+        deliveries.shutdownNow();
+    }
+
+    private void publish(TransferProgressEvent transferProgressEvent) {
+        for (Subscription subscription : subscriptions)
+            subscription.offer(transferProgressEvent);
+    }
+
+    /**
+     * The events of one subscriber not delivered yet, and whether a delivery thread is working on them.
+     */
+    private final class Subscription implements Runnable
+    {
+        private final Consumer<TransferProgressEvent> subscriber;
+        private final Runnable onDropped;
+        private final ReentrantLock lock = new ReentrantLock();
+        // by transfer, in the order the transfers got an event pending
+        private final Map<Long, PendingEvents> pending = new LinkedHashMap<>();
+        private boolean delivering;
+
+        private Subscription(Consumer<TransferProgressEvent> subscriber, Runnable onDropped) {
+            this.subscriber = subscriber;
+            this.onDropped = onDropped;
+        }
+
+        private void offer(TransferProgressEvent transferProgressEvent) {
+            boolean dropped = false;
+            boolean startDelivery = false;
+            lock.lock();
+            try {
+                pending.computeIfAbsent(transferProgressEvent.transferId(), transferId -> new PendingEvents())
+                        .add(transferProgressEvent);
+                if (pending.size() > MAX_PENDING_TRANSFERS) {
+                    pending.clear();
+                    dropped = true;
+                } else if (!delivering) {
+                    delivering = true;
+                    startDelivery = true;
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (dropped && subscriptions.remove(this)) {
+                try {
+                    onDropped.run();
+                } catch (RuntimeException exception) {
+                    exception.printStackTrace();
+                }
+            } else if (startDelivery) {
+                try {
+                    deliveries.execute(this);
+                } catch (RejectedExecutionException shutDown) {
+                    // destroyed, nothing is delivered any more
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                PendingEvents pendingEvents;
+                lock.lock();
+                try {
+                    Iterator<PendingEvents> iterator = pending.values().iterator();
+                    if (!iterator.hasNext()) {
+                        delivering = false;
+                        return;
+                    }
+                    pendingEvents = iterator.next();
+                    iterator.remove();
+                } finally {
+                    lock.unlock();
+                }
+                deliver(pendingEvents.progress);
+                deliver(pendingEvents.outcome);
+            }
+        }
+
+        private void deliver(TransferProgressEvent transferProgressEvent) {
+            if (transferProgressEvent == null)
+                return;
+            try {
+                subscriber.accept(transferProgressEvent);
+            } catch (RuntimeException exception) {
+                exception.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * The latest progress event of a transfer and its outcome, an outcome is never replaced by a later progress event.
+     */
+    private static final class PendingEvents
+    {
+        private TransferProgressEvent progress;
+        private TransferProgressEvent outcome;
+
+        private void add(TransferProgressEvent transferProgressEvent) {
+            if (transferProgressEvent.status() != TransferProgressEvent.Status.IN_PROGRESS)
+                outcome = transferProgressEvent;
+            else if (outcome == null)
+                progress = transferProgressEvent;
+        }
+    }
+
+    private AtomicInteger activeCounter(TransferProgressEvent.Direction direction) {
+        return direction == TransferProgressEvent.Direction.UPLOAD ? activeUploads : activeDownloads;
+    }
+
+    private final class ThrottledTransferListener implements TransferListener
+    {
+        private final long transferId;
+        private final TransferProgressEvent.Direction direction;
+        private final String bucketName;
+        private final String key;
+        private final String directionTag;
+        private final Counter bytesCounter;
+        private final AtomicLong lastPublishNanos = new AtomicLong();
+        private final AtomicLong countedBytes = new AtomicLong();
+        private final AtomicBoolean active = new AtomicBoolean();
+        private volatile long startNanos = System.nanoTime();
+
+        private ThrottledTransferListener(long transferId, TransferProgressEvent.Direction direction, String bucketName,
+                                          String key) {
+            this.transferId = transferId;
+            this.direction = direction;
+            this.bucketName = bucketName;
+            this.key = key;
+            this.directionTag = direction.name().toLowerCase();
+            this.bytesCounter = meterRegistry.counter("s3.transfer.bytes", "direction", directionTag);
+        }
+
+        @Override
+        public void transferInitiated(Context.TransferInitiated context) {
+            startNanos = System.nanoTime();
+            lastPublishNanos.set(startNanos);
+            if (active.compareAndSet(false, true))
+                activeCounter(direction).incrementAndGet();
+            publish(eventOf(TransferProgressEvent.Status.IN_PROGRESS, context.progressSnapshot()));
+        }
+
+        @Override
+        public void bytesTransferred(Context.BytesTransferred context) {
+            TransferProgressSnapshot progressSnapshot = context.progressSnapshot();
+            countBytes(progressSnapshot);
+            long now = System.nanoTime();
+            long last = lastPublishNanos.get();
+            // only the thread which wins the slot publishes, the others return immediately
+            if (now - last >= PUBLISH_INTERVAL.toNanos() && lastPublishNanos.compareAndSet(last, now))
+                publish(eventOf(TransferProgressEvent.Status.IN_PROGRESS, progressSnapshot));
+        }
+
+        @Override
+        public void transferComplete(Context.TransferComplete context) {
+            finished(TransferProgressEvent.Status.COMPLETED, context.progressSnapshot());
+        }
+
+        @Override
+        public void transferFailed(Context.TransferFailed context) {
+            finished(TransferProgressEvent.Status.FAILED, context.progressSnapshot());
+        }
+
+        private void finished(TransferProgressEvent.Status status, TransferProgressSnapshot progressSnapshot) {
+            countBytes(progressSnapshot);
+            // a transfer can fail before it was ever initiated
+            if (active.compareAndSet(true, false))
+                activeCounter(direction).decrementAndGet();
+            Timer.builder("s3.transfer.duration")
+                    .tag("direction", directionTag)
+                    .tag("outcome", status.name().toLowerCase())
+                    .register(meterRegistry)
+                    .record(Duration.ofNanos(System.nanoTime() - startNanos));
+            publish(eventOf(status, progressSnapshot));
+        }
+
+        private void countBytes(TransferProgressSnapshot progressSnapshot) {
+            // snapshots are cumulative, the counter only receives the growth since the last callback
+            long transferred = progressSnapshot.transferredBytes();
+            long previous = countedBytes.getAndAccumulate(transferred, Math::max);
+            if (transferred > previous)
+                bytesCounter.increment(transferred - previous);
+        }
+
+        private TransferProgressEvent eventOf(TransferProgressEvent.Status status, TransferProgressSnapshot progressSnapshot) {
+            long transferred = progressSnapshot.transferredBytes();
+            long total = progressSnapshot.totalBytes().orElse(-1);
+            double seconds = Math.max(1, System.nanoTime() - startNanos) / 1_000_000_000.0;
+            double bytesPerSecond = transferred / seconds;
+            Duration eta = null;
+            if (status == TransferProgressEvent.Status.COMPLETED)
+                eta = Duration.ZERO;
+            else if (total >= 0 && bytesPerSecond > 0)
+                eta = Duration.ofMillis((long) ((total - transferred) / bytesPerSecond * 1000));
+            return new TransferProgressEvent(transferId, direction, status, bucketName, key, transferred, total,
+                    bytesPerSecond, eta);
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package in.learnjavaskills.springcloudawss3.service;
+
+import java.io.IOException;
+
+/**
+ * Thrown by {@link StreamingMultipartUploader} when an upload started with a bufferWait found no part buffer free
+ * within it, every buffer being held by other uploads. Nothing was written; the upload can be retried later.
+ */
+public class UploadCapacityExceededException extends IOException
+{
+    public UploadCapacityExceededException(String message) {
+        super(message);
+    }
+}
@@ -16,12 +16,13 @@ import software.amazon.awssdk.transfer.s3.model.UploadFileRequest;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.net.URL;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.OptionalLong;
 
 /**
  * Upload file in S3 using various API such as s3Client, s3TransferManager and s3Template
@@ -33,16 +34,30 @@ public class UploadObjects
     private final S3TransferManager s3transferManager;
 
     private final S3Template s3Template;
+    private final TransferProgressPublisher transferProgressPublisher;
+    private final StreamingMultipartUploader streamingMultipartUploader;
+    private final ObjectCompressor objectCompressor;
+    private final ResumableTransfers resumableTransfers;
+    private final ObjectPacks objectPacks;
 
     @Autowired
-    public UploadObjects(S3Client s3Client, S3TransferManager s3TransferManager, S3Template s3Template) {
+    public UploadObjects(S3Client s3Client, S3TransferManager s3TransferManager, S3Template s3Template,
+                         TransferProgressPublisher transferProgressPublisher,
+                         StreamingMultipartUploader streamingMultipartUploader, ObjectCompressor objectCompressor,
+                         ResumableTransfers resumableTransfers, ObjectPacks objectPacks) {
         this.s3Client = s3Client;
         this.s3transferManager = s3TransferManager;
         this.s3Template = s3Template;
+        this.transferProgressPublisher = transferProgressPublisher;
+        this.streamingMultipartUploader = streamingMultipartUploader;
+        this.objectCompressor = objectCompressor;
+        this.resumableTransfers = resumableTransfers;
+        this.objectPacks = objectPacks;
     }
 
     /**
-     * Upload file using s3Client
+     * Upload file using s3Client. With a checksum algorithm set the SDK computes the CRC32C while it streams the file
+     * and sends it as a trailer over HTTPS, S3 rejects the upload if the bytes it received do not match.
      * @param bucketName name of the bucket
      * @param key desire key - usually the name of the file
      * @param filePath absolute file path to upload in s3
@@ -52,6 +67,7 @@ public class UploadObjects
             PutObjectRequest putObjectRequest = PutObjectRequest.builder()
                     .bucket(bucketName)
                     .key(key)
+                    .checksumAlgorithm(ChecksumAlgorithm.CRC32_C)
                     .build();
             s3Client.putObject(putObjectRequest, RequestBody.fromFile(Paths.get(filePath)));
         } catch (S3Exception s3Exception) {
@@ -59,6 +75,25 @@ public class UploadObjects
         }
     }
 
+    /**
+     * Upload many small files as a pack set instead of one PUT each: the files are concatenated into large pack
+     * objects and a sorted index of key, offset and length is published next to them. Read a file back with
+     * {@link DownloadObjects#readPackedFile(String, String, String)}, one ranged GET. See {@link ObjectPacks}.
+     * @param bucketName name of the bucket
+     * @param packName key prefix of the pack set
+     * @param filePathsByKey absolute file path to upload by the key it is read back with
+     * @return the packs written and the published index
+     */
+    public PackIngestReport uploadFilesPacked(String bucketName, String packName, Map<String, String> filePathsByKey) {
+        Map<String, Path> files = new HashMap<>(filePathsByKey.size());
+        filePathsByKey.forEach((key, filePath) -> files.put(key, Paths.get(filePath)));
+        try {
+            return objectPacks.pack(bucketName, packName, files);
+        } catch (IOException ioException) {
+            throw new UncheckedIOException("Packing into " + packName + " failed", ioException);
+        }
+    }
+
     /**
      * Upload a file with tag using s3 client
      * @param bucketName name of the bucket
@@ -85,6 +120,7 @@ public class UploadObjects
                     .bucket(bucketName)
                     .key(key)
                     .tagging(tagging)
+                    .checksumAlgorithm(ChecksumAlgorithm.CRC32_C)
                     .build();
             s3Client.putObject(putObjectRequest, RequestBody.fromFile(Paths.get(filePath)));
         } catch (S3Exception s3Exception) {
@@ -146,15 +182,11 @@ public class UploadObjects
      */
     public void uploadFileWithMetaData(String bucketName, String key, String filePath) {
         try {
-            Map<String, String> metadata = new HashMap<>();
-            metadata.put("author", "learnjavaskills.in");
-            metadata.put("file-type", "txt");
-            metadata.put("version", "1.0");
-
             PutObjectRequest putObjectRequest = PutObjectRequest.builder()
                     .bucket(bucketName)
                     .key(key)
-                    .metadata(metadata)
+                    .metadata(sampleMetadata())
+                    .checksumAlgorithm(ChecksumAlgorithm.CRC32_C)
                     .build();
             s3Client.putObject(putObjectRequest, RequestBody.fromFile(Paths.get(filePath)));
         } catch (S3Exception s3Exception) {
@@ -163,7 +195,39 @@ public class UploadObjects
     }
 
     /**
-     * Upload file using s3transferManager
+     * upload file with metadata using s3 client, compressed with the codec while it is read. The codec is recorded in
+     * the object metadata and the download paths of {@link DownloadObjects} decode it again. The compressed length is
+     * not known up front, so the file goes through the {@link StreamingMultipartUploader}.
+     * @param bucketName name of the bucket
+     * @param key desire key - usually the name of the file
+     * @param filePath absolute file path to upload in s3
+     * @param objectCodec codec to store the file with, NONE for {@link #uploadFileWithMetaData(String, String, String)}
+     */
+    public void uploadFileWithMetaData(String bucketName, String key, String filePath, ObjectCodec objectCodec) {
+        if (objectCodec == ObjectCodec.NONE) {
+            uploadFileWithMetaData(bucketName, key, filePath);
+            return;
+        }
+        try (InputStream encoded = objectCompressor.encode(objectCodec, new FileInputStream(filePath))) {
+            StreamingUploadResult streamingUploadResult = streamingMultipartUploader.upload(bucketName, key, null,
+                    objectCodec.recordIn(sampleMetadata()), encoded);
+            System.out.println("File uploaded with " + objectCodec + ", stored bytes : " + streamingUploadResult.size());
+        } catch (S3Exception | IOException exception) {
+            exception.printStackTrace();
+        }
+    }
+
+    private static Map<String, String> sampleMetadata() {
+        Map<String, String> metadata = new HashMap<>();
+        metadata.put("author", "learnjavaskills.in");
+        metadata.put("file-type", "txt");
+        metadata.put("version", "1.0");
+        return metadata;
+    }
+
+    /**
+     * Upload file using s3transferManager. An upload cut off by a restart starts over from the first byte, see
+     * {@link #uploadFileResumable(String, String, String)} for large files.
      * @param bucketName name of the bucket
      * @param key desire key - usually the name of the file
      * @param filePath absolute file path to upload in s3
@@ -175,21 +239,11 @@ public class UploadObjects
                     .putObjectRequest(builder -> builder.bucket(bucketName)
                             .key(key))
                     .source(Paths.get(filePath))
+                    // progress is pushed to TransferProgressPublisher subscribers and metrics, no polling
+                    .addTransferListener(transferProgressPublisher.listenerFor(TransferProgressEvent.Direction.UPLOAD,
+                            bucketName, key))
                     .build();
             FileUpload fileUpload = s3transferManager.uploadFile(uploadFileRequest);
-            // check progress of file upload
-            while (true)
-            {
-                OptionalLong optionalLong = fileUpload.progress()
-                        .snapshot()
-                        .remainingBytes();
-                if (optionalLong.isPresent())
-                {
-                    System.out.println("remaining byte transfer : " + optionalLong.getAsLong());
-                    if (optionalLong.getAsLong() == 0)
-                        break;
-                }
-            }
 
             CompletedFileUpload completedFileUpload = fileUpload.completionFuture().join();
             boolean successful = completedFileUpload.response().sdkHttpResponse().isSuccessful();
@@ -199,6 +253,35 @@ public class UploadObjects
         }
     }
 
+    /**
+     * Upload a large file so that a failure or a restart of the application costs only the parts in flight. The
+     * multipart upload id and every completed part are journaled on local disk; calling this again for the same file
+     * and key, or the next start of the application, sends only the missing parts. See {@link ResumableTransfers}.
+     * @param bucketName name of the bucket
+     * @param key desire key - usually the name of the file
+     * @param filePath absolute file path to upload in s3
+     * @return the completed upload, with the parts a previous attempt had already sent
+     */
+    public ResumableTransferReport uploadFileResumable(String bucketName, String key, String filePath) {
+        try {
+            return resumableTransfers.upload(bucketName, key, Paths.get(filePath));
+        } catch (IOException ioException) {
+            throw new UncheckedIOException("Upload of " + key + " failed, it resumes on the next attempt", ioException);
+        }
+    }
+
+    /**
+     * Merge, replace or remove tags on every object under a prefix, for example to move a prefix under a lifecycle
+     * rule. Objects are tagged concurrently with a cap on requests per second, see {@link BulkTaggingRequest}. Read
+     * the progress from another thread while the job runs, or cancel it there and resume from the report checkpoint.
+     * @param bulkTaggingRequest bucket and prefix, mode and tags, concurrency and rate cap
+     * @param progress live counters and checkpoint of the job
+     * @return report of tagged, unchanged and failed objects
+     */
+    public BulkTaggingReport bulkTagObjects(BulkTaggingRequest bulkTaggingRequest, BulkTaggingProgress progress) {
+        return new BulkTagger(s3Client, bulkTaggingRequest, progress).run();
+    }
+
     /**
      * upload file using s3Template
      * @param bucketName name of the bucket
@@ -206,8 +289,7 @@ public class UploadObjects
      * @param filePath absolute file path to upload in s3
      */
     public void uploadFileUsingS3Template(String bucketName, String key, String filePath) {
-        try {
-            InputStream inputStream = new FileInputStream(filePath);
+        try (InputStream inputStream = new FileInputStream(filePath)) {
             S3Resource s3Resource = s3Template.upload(bucketName, key, inputStream);
             URL url = s3Resource.getURL();
             System.out.println("File uploaded successfully at " + url.toString());
@@ -223,13 +305,27 @@ public class UploadObjects
      * @param filePath absolute file path to upload in s3
      */
     public void uploadFileUsingS3TemplateWithMetadata(String bucketName, String key, String filePath) {
-        try {
-            InputStream inputStream = new FileInputStream(filePath);
-            ObjectMetadata objectMetadata = ObjectMetadata.builder()
+        uploadFileUsingS3TemplateWithMetadata(bucketName, key, filePath, ObjectCodec.NONE);
+    }
+
+    /**
+     * upload file using s3Template with objectMetaData, compressed with the codec while it is read. The codec is
+     * recorded in the object metadata and the download paths of {@link DownloadObjects} decode it again.
+     * @param bucketName name of the bucket
+     * @param key desire key - usually the name of the file
+     * @param filePath absolute file path to upload in s3
+     * @param objectCodec codec to store the file with
+     */
+    public void uploadFileUsingS3TemplateWithMetadata(String bucketName, String key, String filePath,
+                                                      ObjectCodec objectCodec) {
+        try (InputStream inputStream = objectCompressor.encode(objectCodec, new FileInputStream(filePath))) {
+            ObjectMetadata.Builder objectMetadataBuilder = ObjectMetadata.builder()
                     .metadata("author", "learnjavaskills.in")
                     .metadata("version", "1.0")
-                    .contentType("text/plain")
-                    .build();
+                    .contentType("text/plain");
+            if (objectCodec != ObjectCodec.NONE)
+                objectCodec.recordIn(Map.of()).forEach(objectMetadataBuilder::metadata);
+            ObjectMetadata objectMetadata = objectMetadataBuilder.build();
             S3Resource s3Resource = s3Template.upload(bucketName, key, inputStream, objectMetadata);
             URL url = s3Resource.getURL();
             System.out.println("File uploaded successfully at " + url.toString());
@@ -237,4 +333,19 @@ public class UploadObjects
             exception.printStackTrace();
         }
     }
+
+    /**
+     * Upload the new and changed files of a local directory. The prefix is listed once and a file is only uploaded
+     * when its object is missing or differs in size or ETag, so syncing a mostly unchanged tree again costs a listing
+     * and a few PUTs. Objects without a local file are kept.
+     * @param directorySyncRequest source directory, bucket and prefix, filters and concurrency
+     * @return report of uploaded, unchanged and failed files
+     */
+    public DirectorySyncReport syncDirectory(DirectorySyncRequest directorySyncRequest) {
+        try {
+            return new DirectorySync(s3Client, streamingMultipartUploader, directorySyncRequest).sync();
+        } catch (IOException ioException) {
+            throw new UncheckedIOException(ioException);
+        }
+    }
 }
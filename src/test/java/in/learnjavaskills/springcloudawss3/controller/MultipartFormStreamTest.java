@@ -0,0 +1,82 @@
+package in.learnjavaskills.springcloudawss3.controller;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MultipartFormStreamTest
+{
+    private static final String BOUNDARY = "----form-boundary-7MA4YWxkTrZu0gW";
+
+    @Test
+    void partsAreSplitWhereverTheReadsEnd() throws IOException {
+        byte[] file = new byte[300_000];
+        new Random(5).nextBytes(file);
+        // a file which contains most of the delimiter must not be cut there
+        byte[] almostDelimiter = ("\r\n--" + BOUNDARY.substring(0, BOUNDARY.length() - 1)).getBytes(StandardCharsets.ISO_8859_1);
+        System.arraycopy(almostDelimiter, 0, file, 1000, almostDelimiter.length);
+        byte[] body = form(file);
+
+        for (int maxRead : new int[]{1, 7, 4096, Integer.MAX_VALUE}) {
+            MultipartFormStream multipartFormStream = new MultipartFormStream(chunked(body, maxRead), BOUNDARY);
+            MultipartFormStream.Part field = multipartFormStream.nextPart();
+            assertEquals("description", field.name());
+            assertNull(field.fileName());
+            assertEquals("quarterly report", new String(field.body().readAllBytes(), StandardCharsets.UTF_8));
+
+            MultipartFormStream.Part filePart = multipartFormStream.nextPart();
+            assertEquals("file", filePart.name());
+            assertEquals("report €.bin", filePart.fileName());
+            assertEquals("application/octet-stream", filePart.contentType());
+            assertArrayEquals(file, filePart.body().readAllBytes(), "reads of at most " + maxRead);
+
+            // an unread part is skipped
+            assertEquals("skipped.txt", multipartFormStream.nextPart().fileName());
+            assertNull(multipartFormStream.nextPart());
+        }
+    }
+
+    @Test
+    void truncatedBodyFailsInsteadOfEnding() throws IOException {
+        byte[] file = new byte[100_000];
+        byte[] body = form(file);
+        MultipartFormStream multipartFormStream = new MultipartFormStream(
+                new ByteArrayInputStream(Arrays.copyOf(body, body.length / 2)), BOUNDARY);
+        multipartFormStream.nextPart();
+        InputStream fileBody = multipartFormStream.nextPart().body();
+        assertThrows(EOFException.class, fileBody::readAllBytes);
+    }
+
+    private static byte[] form(byte[] file) throws IOException {
+        ByteArrayOutputStream form = new ByteArrayOutputStream();
+        form.write(("preamble to ignore\r\n--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"description\"\r\n\r\n"
+                + "quarterly report\r\n--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"report €.bin\"\r\n"
+                + "Content-Type: application/octet-stream\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+        form.write(file);
+        form.write(("\r\n--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"other\"; filename=\"skipped.txt\"\r\n\r\n"
+                + "not read\r\n--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.UTF_8));
+        return form.toByteArray();
+    }
+
+    // hands out at most maxRead bytes per read, like a slow network
+    private static InputStream chunked(byte[] body, int maxRead) {
+        return new ByteArrayInputStream(body) {
+            @Override
+            public synchronized int read(byte[] target, int offset, int length) {
+                return super.read(target, offset, Math.min(length, maxRead));
+            }
+        };
+    }
+}
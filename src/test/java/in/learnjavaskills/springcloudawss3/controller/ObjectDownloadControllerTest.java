@@ -0,0 +1,183 @@
+package in.learnjavaskills.springcloudawss3.controller;
+
+import in.learnjavaskills.springcloudawss3.service.DownloadObjects;
+import in.learnjavaskills.springcloudawss3.service.ObjectCodec;
+import in.learnjavaskills.springcloudawss3.standin.S3StandInServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class ObjectDownloadControllerTest
+{
+    private static final String BUCKET = "download-proxy";
+    private static final String KEY = "reports/2024/report.bin";
+    private static final S3StandInServer S3_STAND_IN_SERVER = startStandIn();
+
+    @Autowired private S3Client s3Client;
+    @Autowired private DownloadObjects downloadObjects;
+    @LocalServerPort private int port;
+
+    private final HttpClient httpClient = HttpClient.newHttpClient();
+    private byte[] content;
+
+    @DynamicPropertySource
+    static void standInProperties(DynamicPropertyRegistry dynamicPropertyRegistry) {
+        S3_STAND_IN_SERVER.springProperties().forEach((name, value) -> dynamicPropertyRegistry.add(name, () -> value));
+    }
+
+    @AfterAll
+    static void stopStandIn() throws IOException {
+        S3_STAND_IN_SERVER.close();
+    }
+
+    @BeforeEach
+    void uploadObject() {
+        S3_STAND_IN_SERVER.createBucket(BUCKET);
+        content = new byte[3 * 1024 * 1024 + 11];
+        new Random(19).nextBytes(content);
+        s3Client.putObject(builder -> builder.bucket(BUCKET).key(KEY).contentType("application/pdf"),
+                RequestBody.fromBytes(content));
+    }
+
+    @Test
+    void wholeObjectRangeAndNotModified() throws Exception {
+        HttpResponse<byte[]> whole = get(KEY, null, null);
+        assertEquals(200, whole.statusCode());
+        assertArrayEquals(content, whole.body());
+        assertEquals("application/pdf", whole.headers().firstValue("Content-Type").orElseThrow());
+        assertEquals("bytes", whole.headers().firstValue("Accept-Ranges").orElseThrow());
+        String eTag = whole.headers().firstValue("ETag").orElseThrow();
+
+        HttpResponse<byte[]> range = get(KEY, "bytes=100-199", null);
+        assertEquals(206, range.statusCode());
+        assertEquals("bytes 100-199/" + content.length, range.headers().firstValue("Content-Range").orElseThrow());
+        assertArrayEquals(Arrays.copyOfRange(content, 100, 200), range.body());
+
+        HttpResponse<byte[]> notModified = get(KEY, null, eTag);
+        assertEquals(304, notModified.statusCode());
+        assertEquals(0, notModified.body().length);
+        assertEquals(eTag, notModified.headers().firstValue("ETag").orElseThrow());
+    }
+
+    @Test
+    void s3ErrorsArePassedOn() throws Exception {
+        assertEquals(404, get("missing.bin", null, null).statusCode());
+        assertEquals(416, get(KEY, "bytes=" + (content.length + 10) + "-", null).statusCode());
+    }
+
+    @Test
+    void clientLeavingEarlyDoesNotBreakLaterDownloads() throws Exception {
+        HttpResponse<InputStream> response = httpClient.send(request(KEY, null, null).build(), HttpResponse.BodyHandlers.ofInputStream());
+        try (InputStream body = response.body()) {
+            assertEquals(200, response.statusCode());
+            assertEquals(content[0], (byte) body.read());
+        }
+        assertArrayEquals(content, get(KEY, null, null).body());
+    }
+
+    @Test
+    void gzipObjectsAreDecodedForClientsWhichDoNotAcceptGzip() throws Exception {
+        byte[] compressed = putCompressed("coded.bin");
+
+        HttpResponse<byte[]> passedOn = send(request("coded.bin", null, null).header("Accept-Encoding", "br, gzip"));
+        assertEquals(200, passedOn.statusCode());
+        assertEquals("gzip", passedOn.headers().firstValue("Content-Encoding").orElseThrow());
+        assertEquals("Accept-Encoding", passedOn.headers().firstValue("Vary").orElseThrow());
+        assertArrayEquals(compressed, passedOn.body());
+
+        for (String acceptEncoding : new String[]{null, "br", "gzip;q=0"}) {
+            HttpRequest.Builder builder = request("coded.bin", null, null);
+            if (acceptEncoding != null)
+                builder.header("Accept-Encoding", acceptEncoding);
+            HttpResponse<byte[]> decoded = send(builder);
+            assertEquals(200, decoded.statusCode(), acceptEncoding);
+            assertTrue(decoded.headers().firstValue("Content-Encoding").isEmpty(), acceptEncoding);
+            assertArrayEquals(content, decoded.body(), acceptEncoding);
+        }
+
+        // a range of the compressed bytes means nothing to the client, it gets the whole object
+        HttpResponse<byte[]> range = get("coded.bin", "bytes=100-199", null);
+        assertEquals(200, range.statusCode());
+        assertTrue(range.headers().firstValue("Content-Range").isEmpty());
+        assertArrayEquals(content, range.body());
+    }
+
+    @Test
+    void s3ReadFailuresAreNotTakenForDisconnects() throws Exception {
+        // a damaged gzip trailer only shows once most of the body is relayed
+        byte[] compressed = putCompressed("damaged.bin");
+        S3_STAND_IN_SERVER.corruptObject(BUCKET, "damaged.bin", compressed.length - 6);
+        assertThrows(SdkClientException.class, () -> downloadObjects.streamObject(BUCKET, "damaged.bin", null, null,
+                false, (getObjectResponse, bodyCodec) -> OutputStream.nullOutputStream()));
+
+        OutputStream disconnected = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("Broken pipe");
+            }
+        };
+        assertThrows(UncheckedIOException.class, () -> downloadObjects.streamObject(BUCKET, KEY, null, null, false,
+                (getObjectResponse, bodyCodec) -> disconnected));
+    }
+
+    private byte[] putCompressed(String key) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzipOutputStream = new GZIPOutputStream(compressed)) {
+            gzipOutputStream.write(content);
+        }
+        s3Client.putObject(builder -> builder.bucket(BUCKET).key(key).metadata(ObjectCodec.GZIP.recordIn(Map.of())),
+                RequestBody.fromBytes(compressed.toByteArray()));
+        return compressed.toByteArray();
+    }
+
+    private HttpResponse<byte[]> get(String key, String range, String ifNoneMatch) throws Exception {
+        return send(request(key, range, ifNoneMatch));
+    }
+
+    private HttpResponse<byte[]> send(HttpRequest.Builder builder) throws Exception {
+        return httpClient.send(builder.build(), HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    private HttpRequest.Builder request(String key, String range, String ifNoneMatch) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(
+                URI.create("http://localhost:" + port + "/buckets/" + BUCKET + "/objects?key=" + key));
+        if (range != null)
+            builder.header("Range", range);
+        if (ifNoneMatch != null)
+            builder.header("If-None-Match", ifNoneMatch);
+        return builder;
+    }
+
+    private static S3StandInServer startStandIn() {
+        try {
+            return S3StandInServer.start();
+        } catch (IOException ioException) {
+            throw new UncheckedIOException(ioException);
+        }
+    }
+}
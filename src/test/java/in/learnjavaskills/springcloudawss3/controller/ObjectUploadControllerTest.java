@@ -0,0 +1,189 @@
+package in.learnjavaskills.springcloudawss3.controller;
+
+import in.learnjavaskills.springcloudawss3.standin.S3StandInServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import software.amazon.awssdk.core.ResponseBytes;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {"streaming-upload.buffers=" + ObjectUploadControllerTest.BUFFERS, "streaming-upload.buffer-wait=500ms"})
+class ObjectUploadControllerTest
+{
+    static final int BUFFERS = 3;
+    private static final String BUCKET = "upload-proxy";
+    private static final S3StandInServer S3_STAND_IN_SERVER = startStandIn();
+
+    @Autowired private S3Client s3Client;
+    @LocalServerPort private int port;
+
+    private final HttpClient httpClient = HttpClient.newHttpClient();
+
+    @DynamicPropertySource
+    static void standInProperties(DynamicPropertyRegistry dynamicPropertyRegistry) {
+        S3_STAND_IN_SERVER.springProperties().forEach((name, value) -> dynamicPropertyRegistry.add(name, () -> value));
+    }
+
+    @AfterAll
+    static void stopStandIn() throws IOException {
+        S3_STAND_IN_SERVER.close();
+    }
+
+    @BeforeEach
+    void createBucket() {
+        S3_STAND_IN_SERVER.createBucket(BUCKET);
+    }
+
+    @Test
+    void rawBodyBecomesMultipartUpload() throws Exception {
+        byte[] content = randomBytes(20 * 1024 * 1024 + 3, 1);
+        HttpResponse<String> response = httpClient.send(HttpRequest.newBuilder(uri("/uploads/videos/clip.mp4"))
+                .header("Content-Type", "video/mp4")
+                .PUT(HttpRequest.BodyPublishers.ofByteArray(content))
+                .build(), HttpResponse.BodyHandlers.ofString());
+
+        assertEquals(201, response.statusCode(), response.body());
+        assertTrue(response.body().contains("\"partCount\":3"), response.body());
+        ResponseBytes<GetObjectResponse> stored = s3Client.getObjectAsBytes(builder -> builder.bucket(BUCKET).key("videos/clip.mp4"));
+        assertEquals("video/mp4", stored.response().contentType());
+        assertArrayEquals(content, stored.asByteArray());
+    }
+
+    @Test
+    void everyFileOfAFormIsUploaded() throws Exception {
+        byte[] first = randomBytes(9 * 1024 * 1024, 2);
+        byte[] second = "second file".getBytes(StandardCharsets.UTF_8);
+        String boundary = "upload-boundary-42";
+        ByteArrayOutputStream form = new ByteArrayOutputStream();
+        form.write(("--" + boundary + "\r\nContent-Disposition: form-data; name=\"note\"\r\n\r\nignored\r\n"
+                + "--" + boundary + "\r\nContent-Disposition: form-data; name=\"files\"; filename=\"C:\\\\tmp\\\\first.bin\"\r\n"
+                + "Content-Type: application/x-first\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+        form.write(first);
+        form.write(("\r\n--" + boundary + "\r\nContent-Disposition: form-data; name=\"files\"; filename=\"second.txt\"\r\n\r\n")
+                .getBytes(StandardCharsets.UTF_8));
+        form.write(second);
+        form.write(("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.UTF_8));
+
+        HttpResponse<String> response = httpClient.send(HttpRequest.newBuilder(uri("/uploads/inbox/"))
+                .header("Content-Type", "multipart/form-data; boundary=" + boundary)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(form.toByteArray()))
+                .build(), HttpResponse.BodyHandlers.ofString());
+
+        assertEquals(201, response.statusCode(), response.body());
+        ResponseBytes<GetObjectResponse> storedFirst = s3Client.getObjectAsBytes(builder -> builder.bucket(BUCKET).key("inbox/first.bin"));
+        assertArrayEquals(first, storedFirst.asByteArray());
+        assertEquals("application/x-first", storedFirst.response().contentType());
+        assertArrayEquals(second, s3Client.getObjectAsBytes(builder -> builder.bucket(BUCKET).key("inbox/second.txt")).asByteArray());
+    }
+
+    @Test
+    void disconnectAbortsTheMultipartUpload() throws Exception {
+        byte[] sent = randomBytes(18 * 1024 * 1024, 3);
+        try (Socket socket = new Socket("localhost", port)) {
+            OutputStream outputStream = socket.getOutputStream();
+            outputStream.write(("PUT /buckets/" + BUCKET + "/uploads/partial.bin HTTP/1.1\r\n"
+                    + "Host: localhost\r\nContent-Type: application/octet-stream\r\n"
+                    + "Content-Length: " + (64L * 1024 * 1024) + "\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+            outputStream.write(sent);
+            outputStream.flush();
+        }
+
+        // wait for the server side to settle, no S3 request for a second
+        long deadline = System.nanoTime() + 20_000_000_000L;
+        long requestCount = -1;
+        for (int quietPolls = 0; quietPolls < 5 && System.nanoTime() < deadline; ) {
+            Thread.sleep(200);
+            long currentCount = S3_STAND_IN_SERVER.requestCount();
+            quietPolls = currentCount == requestCount && S3_STAND_IN_SERVER.openMultipartUploads() == 0 ? quietPolls + 1 : 0;
+            requestCount = currentCount;
+        }
+        assertEquals(0, S3_STAND_IN_SERVER.openMultipartUploads());
+        assertThrows(NoSuchKeyException.class, () -> s3Client.headObject(builder -> builder.bucket(BUCKET).key("partial.bin")));
+    }
+
+    @Test
+    void uploadBeyondTheBuffersHeldBySlowClientsIsTurnedAway() throws Exception {
+        // a cold S3 client could hold the buffer of this upload long enough to turn a slow client away
+        assertEquals(201, awaitStatus(201, "warm-up.bin").statusCode());
+        List<Socket> slowClients = new ArrayList<>();
+        try {
+            // every slow client holds the buffer its first part is read into
+            for (int client = 0; client < BUFFERS; client++) {
+                Socket socket = new Socket("localhost", port);
+                slowClients.add(socket);
+                OutputStream outputStream = socket.getOutputStream();
+                outputStream.write(("PUT /buckets/" + BUCKET + "/uploads/slow-" + client + ".bin HTTP/1.1\r\n"
+                        + "Host: localhost\r\nContent-Type: application/octet-stream\r\n"
+                        + "Content-Length: " + (64L * 1024 * 1024) + "\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+                outputStream.write(randomBytes(1024, client));
+                outputStream.flush();
+            }
+
+            Thread.sleep(200);
+            HttpResponse<String> turnedAway = awaitStatus(503, "extra.bin");
+            assertEquals(503, turnedAway.statusCode());
+            assertTrue(turnedAway.headers().firstValue("Retry-After").isPresent());
+        } finally {
+            for (Socket slowClient : slowClients)
+                slowClient.close();
+        }
+
+        // the buffers of the aborted slow uploads are free again
+        assertEquals(201, awaitStatus(201, "extra.bin").statusCode());
+        assertEquals(0, S3_STAND_IN_SERVER.openMultipartUploads());
+    }
+
+    private HttpResponse<String> awaitStatus(int status, String key) throws IOException, InterruptedException {
+        long deadline = System.nanoTime() + 20_000_000_000L;
+        while (true) {
+            HttpResponse<String> response = httpClient.send(HttpRequest.newBuilder(uri("/uploads/" + key))
+                    .PUT(HttpRequest.BodyPublishers.ofByteArray(randomBytes(1000, 4)))
+                    .build(), HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() == status || System.nanoTime() > deadline)
+                return response;
+            Thread.sleep(100);
+        }
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://localhost:" + port + "/buckets/" + BUCKET + path);
+    }
+
+    private static byte[] randomBytes(int length, long seed) {
+        byte[] bytes = new byte[length];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static S3StandInServer startStandIn() {
+        try {
+            return S3StandInServer.start();
+        } catch (IOException ioException) {
+            throw new UncheckedIOException(ioException);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package in.learnjavaskills.springcloudawss3.service;
+
+import in.learnjavaskills.springcloudawss3.standin.S3StandInExtension;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdaptiveConcurrencyLimiterTest
+{
+    private static final String BUCKET = "adaptive-limits";
+
+    @RegisterExtension
+    final S3StandInExtension standIn = new S3StandInExtension(BUCKET);
+
+    private SimpleMeterRegistry meterRegistry;
+    private AdaptiveConcurrencyLimiter adaptiveConcurrencyLimiter;
+    private S3Client s3Client;
+
+    @BeforeEach
+    void start() throws IOException {
+        meterRegistry = new SimpleMeterRegistry();
+        adaptiveConcurrencyLimiter = new AdaptiveConcurrencyLimiter(meterRegistry, 16, 1, 256, 2.0, 1, Duration.ofMinutes(10));
+        s3Client = standIn.server().s3ClientBuilder()
+                .overrideConfiguration(builder -> builder
+                        .addExecutionInterceptor(adaptiveConcurrencyLimiter.executionInterceptor())
+                        .retryPolicy(AdaptiveConcurrencyLimiter.jitteredRetryPolicy(8)))
+                .build();
+    }
+
+    @AfterEach
+    void stop() throws IOException {
+        s3Client.close();
+    }
+
+    @Test
+    void slowDownHalvesTheLimitOfItsPrefixOnly() {
+        standIn.server().slowDownNext(1);
+        s3Client.putObject(builder -> builder.bucket(BUCKET).key("data/2024/a.bin"), RequestBody.fromString("a"));
+
+        assertEquals(1, standIn.server().slowDownCount());
+        assertEquals(8, adaptiveConcurrencyLimiter.currentLimit(BUCKET, "data/2025/b.bin"));
+        assertEquals(16, adaptiveConcurrencyLimiter.currentLimit(BUCKET, "logs/a.log"));
+        assertEquals(16, adaptiveConcurrencyLimiter.currentLimit("other-bucket", "data/a.bin"));
+        assertEquals(8, adaptiveConcurrencyLimiter.currentLimits().get(BUCKET + "/data/"));
+        assertEquals(1, meterRegistry.counter("s3.limiter.throttled", "bucket", BUCKET).count());
+    }
+
+    @Test
+    void limitGrowsWhileLatencyIsHealthy() throws Exception {
+        standIn.server().setLatency(Duration.ofMillis(20), Duration.ZERO);
+        runPuts("grow/", 16, 320);
+
+        assertTrue(adaptiveConcurrencyLimiter.currentLimit(BUCKET, "grow/") > 16,
+                adaptiveConcurrencyLimiter.currentLimits().toString());
+        assertEquals(adaptiveConcurrencyLimiter.currentLimit(BUCKET, "grow/"),
+                (int) meterRegistry.get("s3.limiter.limit").tag("prefix", "grow/").gauge().value());
+    }
+
+    @Test
+    void everyRequestCompletesUnderSustainedThrottling() throws Exception {
+        standIn.server().setSlowDownRate(0.2);
+        runPuts("busy/", 16, 200);
+
+        assertTrue(standIn.server().slowDownCount() > 0);
+        assertEquals(200, s3Client.listObjectsV2Paginator(builder -> builder.bucket(BUCKET).prefix("busy/"))
+                .contents().stream().count());
+        assertTrue(adaptiveConcurrencyLimiter.currentLimit(BUCKET, "busy/") < 16);
+    }
+
+    @Test
+    void idlePrefixesAreForgottenWithTheirGauges() throws Exception {
+        AdaptiveConcurrencyLimiter shortLived = new AdaptiveConcurrencyLimiter(meterRegistry, 16, 1, 256, 2.0, 1,
+                Duration.ofMillis(50));
+        shortLived.acquire(BUCKET, "idle/a.bin").release();
+        AdaptiveConcurrencyLimiter.Permit busy = shortLived.acquire(BUCKET, "busy/a.bin");
+        TimeUnit.MILLISECONDS.sleep(120);
+        shortLived.acquire(BUCKET, "new/a.bin").release();
+
+        // a request still in flight keeps its prefix however long it takes
+        assertEquals(Set.of(BUCKET + "/busy/", BUCKET + "/new/"), shortLived.currentLimits().keySet());
+        assertNull(meterRegistry.find("s3.limiter.limit").tag("prefix", "idle/").gauge());
+        assertNotNull(meterRegistry.find("s3.limiter.limit").tag("prefix", "busy/").gauge());
+        busy.release();
+
+        shortLived.acquire(BUCKET, "idle/b.bin").release();
+        assertEquals(16, (int) meterRegistry.get("s3.limiter.limit").tag("prefix", "idle/").gauge().value());
+    }
+
+    private void runPuts(String prefix, int threads, int objects) throws Exception {
+        ExecutorService executorService = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int index = 0; index < objects; index++) {
+                String key = prefix + index;
+                futures.add(executorService.submit(() ->
+                        s3Client.putObject(builder -> builder.bucket(BUCKET).key(key), RequestBody.fromString(key))));
+            }
+            for (Future<?> future : futures)
+                future.get();
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+}
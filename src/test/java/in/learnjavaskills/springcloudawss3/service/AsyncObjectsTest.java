@@ -0,0 +1,171 @@
+package in.learnjavaskills.springcloudawss3.service;
+
+import in.learnjavaskills.springcloudawss3.standin.S3StandInExtension;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.junit.jupiter.api.io.TempDir;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.core.async.ResponsePublisher;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.transfer.s3.S3TransferManager;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AsyncObjectsTest
+{
+    private static final String BUCKET = "async-objects";
+
+    @RegisterExtension
+    final S3StandInExtension standIn = new S3StandInExtension(BUCKET);
+
+    private S3AsyncClient s3AsyncClient;
+    private S3TransferManager s3TransferManager;
+    private TransferProgressPublisher transferProgressPublisher;
+    private ObjectDecoder objectDecoder;
+    private final AtomicInteger decodeTasks = new AtomicInteger();
+    private AsyncUploadObjects asyncUploadObjects;
+    private AsyncDownloadObjects asyncDownloadObjects;
+
+    @BeforeEach
+    void start() throws IOException {
+        s3AsyncClient = standIn.server().newS3CrtAsyncClient();
+        s3TransferManager = S3TransferManager.builder().s3Client(s3AsyncClient).build();
+        transferProgressPublisher = new TransferProgressPublisher(new SimpleMeterRegistry());
+        asyncUploadObjects = new AsyncUploadObjects(s3AsyncClient, s3TransferManager, transferProgressPublisher);
+        objectDecoder = new ObjectDecoder(2) {
+            @Override
+            public void execute(Runnable command) {
+                decodeTasks.incrementAndGet();
+                super.execute(command);
+            }
+        };
+        asyncDownloadObjects = new AsyncDownloadObjects(s3AsyncClient, s3TransferManager, transferProgressPublisher,
+                objectDecoder);
+    }
+
+    @AfterEach
+    void stop() throws IOException {
+        transferProgressPublisher.destroy();
+        objectDecoder.destroy();
+        s3TransferManager.close();
+        s3AsyncClient.close();
+    }
+
+    @Test
+    void manyTransfersInFlightFromOneThread(@TempDir Path tempDir) throws Exception {
+        standIn.server().setLatency(Duration.ofMillis(50), Duration.ZERO);
+        Path source = tempDir.resolve("source.txt");
+        Files.writeString(source, "async body");
+
+        long startNanos = System.nanoTime();
+        List<CompletableFuture<?>> uploads = new ArrayList<>();
+        for (int index = 0; index < 100; index++)
+            uploads.add(asyncUploadObjects.uploadFile(BUCKET, "many/" + index, source, Map.of("index", Integer.toString(index))));
+        CompletableFuture.allOf(uploads.toArray(CompletableFuture[]::new)).get(30, TimeUnit.SECONDS);
+
+        List<CompletableFuture<GetObjectResponse>> downloads = new ArrayList<>();
+        for (int index = 0; index < 100; index++)
+            downloads.add(asyncDownloadObjects.downloadFile(BUCKET, "many/" + index, tempDir.resolve(index + ".txt")));
+        CompletableFuture.allOf(downloads.toArray(CompletableFuture[]::new)).get(30, TimeUnit.SECONDS);
+        // 200 requests of 50 ms each, one after the other would take 10 seconds
+        assertTrue(System.nanoTime() - startNanos < TimeUnit.SECONDS.toNanos(8));
+
+        assertEquals("async body", Files.readString(tempDir.resolve("42.txt")));
+        assertEquals(Map.of("index", "42"), downloads.get(42).get().metadata());
+    }
+
+    @Test
+    void publisherUploadAndStreamedDownload() throws Exception {
+        byte[] content = new byte[3 * 1024 * 1024 + 5];
+        new Random(7).nextBytes(content);
+        asyncUploadObjects.upload(BUCKET, "stream.bin", AsyncRequestBody.fromBytes(content), content.length, null)
+                .get(30, TimeUnit.SECONDS);
+
+        ResponsePublisher<GetObjectResponse> responsePublisher =
+                asyncDownloadObjects.streamObject(BUCKET, "stream.bin").get(30, TimeUnit.SECONDS);
+        assertEquals(content.length, responsePublisher.response().contentLength());
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        responsePublisher.subscribe(byteBuffer -> {
+            byte[] chunk = new byte[byteBuffer.remaining()];
+            byteBuffer.get(chunk);
+            received.write(chunk, 0, chunk.length);
+        }).get(30, TimeUnit.SECONDS);
+        assertArrayEquals(content, received.toByteArray());
+
+        assertEquals("application/octet-stream",
+                asyncDownloadObjects.readObject(BUCKET, "stream.bin").get(30, TimeUnit.SECONDS).response().contentType());
+    }
+
+    @Test
+    void failuresCompleteTheFutureExceptionally(@TempDir Path tempDir) {
+        ExecutionException readFailure = assertThrows(ExecutionException.class,
+                () -> asyncDownloadObjects.readObject(BUCKET, "missing.txt").get(30, TimeUnit.SECONDS));
+        S3Exception s3Exception = assertInstanceOf(S3Exception.class, readFailure.getCause());
+        assertEquals(404, s3Exception.statusCode());
+
+        ExecutionException uploadFailure = assertThrows(ExecutionException.class,
+                () -> asyncUploadObjects.uploadFile("no-such-bucket", "key", writeFile(tempDir)).get(30, TimeUnit.SECONDS));
+        assertInstanceOf(S3Exception.class, uploadFailure.getCause());
+    }
+
+    @Test
+    void transferManagerFutures(@TempDir Path tempDir) throws Exception {
+        Path source = writeFile(tempDir);
+        asyncUploadObjects.uploadFileWithTransferManager(BUCKET, "dir/a.txt", source).get(30, TimeUnit.SECONDS);
+        asyncUploadObjects.uploadFileWithTransferManager(BUCKET, "dir/b.txt", source).get(30, TimeUnit.SECONDS);
+
+        asyncDownloadObjects.downloadFileUsingS3TransferManager(BUCKET, "dir/a.txt", tempDir.resolve("a.txt"))
+                .get(30, TimeUnit.SECONDS);
+        assertEquals("transfer manager", Files.readString(tempDir.resolve("a.txt")));
+
+        Path directory = tempDir.resolve("directory");
+        assertTrue(asyncDownloadObjects.downloadDirectoryUsingS3TransferManager(BUCKET, "dir/", directory)
+                .get(30, TimeUnit.SECONDS).failedTransfers().isEmpty());
+        assertEquals("transfer manager", Files.readString(directory.resolve("b.txt")));
+    }
+
+    @Test
+    void codedDownloadsAreDecodedOnTheDecoderThreads(@TempDir Path tempDir) throws Exception {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzipOutputStream = new GZIPOutputStream(compressed)) {
+            gzipOutputStream.write("decoded off the client threads".getBytes(StandardCharsets.UTF_8));
+        }
+        s3AsyncClient.putObject(builder -> builder.bucket(BUCKET).key("coded.txt")
+                        .metadata(ObjectCodec.GZIP.recordIn(Map.of())),
+                AsyncRequestBody.fromBytes(compressed.toByteArray())).get(30, TimeUnit.SECONDS);
+
+        asyncDownloadObjects.downloadFile(BUCKET, "coded.txt", tempDir.resolve("file.txt")).get(30, TimeUnit.SECONDS);
+        asyncDownloadObjects.downloadFileUsingS3TransferManager(BUCKET, "coded.txt", tempDir.resolve("manager.txt"))
+                .get(30, TimeUnit.SECONDS);
+        assertEquals("decoded off the client threads",
+                asyncDownloadObjects.readObject(BUCKET, "coded.txt").get(30, TimeUnit.SECONDS).asUtf8String());
+        assertEquals("decoded off the client threads", Files.readString(tempDir.resolve("file.txt")));
+        assertEquals("decoded off the client threads", Files.readString(tempDir.resolve("manager.txt")));
+        assertEquals(3, decodeTasks.get());
+    }
+
+    private static Path writeFile(Path tempDir) throws IOException {
+        return Files.writeString(tempDir.resolve("transfer.txt"), "transfer manager", StandardCharsets.UTF_8);
+    }
+}
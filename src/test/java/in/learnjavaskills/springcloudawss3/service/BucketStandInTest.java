@@ -0,0 +1,67 @@
+package in.learnjavaskills.springcloudawss3.service;
+
+import in.learnjavaskills.springcloudawss3.standin.S3StandInExtension;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.BucketVersioningStatus;
+import software.amazon.awssdk.services.s3.model.ListObjectVersionsResponse;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BucketStandInTest
+{
+    private static final String BUCKET = "versioned";
+
+    @RegisterExtension
+    final S3StandInExtension standIn = new S3StandInExtension(BUCKET);
+
+    private S3Client s3Client;
+    private Bucket bucket;
+
+    @BeforeEach
+    void start() {
+        s3Client = standIn.s3Client();
+        bucket = new Bucket(s3Client);
+        s3Client.putBucketVersioning(builder -> builder.bucket(BUCKET)
+                .versioningConfiguration(configuration -> configuration.status(BucketVersioningStatus.ENABLED)));
+        for (String key : List.of("a/1.txt", "a/2.txt", "b/1.txt", "logs/1.txt")) {
+            s3Client.putObject(builder -> builder.bucket(BUCKET).key(key), RequestBody.fromString("first"));
+            s3Client.putObject(builder -> builder.bucket(BUCKET).key(key), RequestBody.fromString("second"));
+        }
+        s3Client.deleteObject(builder -> builder.bucket(BUCKET).key("a/2.txt"));
+    }
+
+    @Test
+    void purgeWithPrefixesReportsKeysOutsideThem() {
+        BucketPurgeReport partialPurge = bucket.purgeVersionedBucket(BUCKET, List.of("a/", "b/"),
+                Bucket.DEFAULT_MAX_CONCURRENT_DELETE_BATCHES, new BucketPurgeProgress());
+        // two versions of three keys and the delete marker
+        assertEquals(7, partialPurge.deletedCount());
+        assertTrue(partialPurge.failures().isEmpty());
+        assertEquals("logs/1.txt", partialPurge.uncoveredKey());
+        assertFalse(partialPurge.isComplete());
+
+        BucketPurgeReport fullPurge = bucket.purgeVersionedBucket(BUCKET, List.of("a/", "b/", "logs/"),
+                Bucket.DEFAULT_MAX_CONCURRENT_DELETE_BATCHES, new BucketPurgeProgress());
+        assertEquals(2, fullPurge.deletedCount());
+        assertTrue(fullPurge.isComplete());
+        ListObjectVersionsResponse remaining = s3Client.listObjectVersions(builder -> builder.bucket(BUCKET));
+        assertTrue(remaining.versions().isEmpty());
+        assertTrue(remaining.deleteMarkers().isEmpty());
+    }
+
+    @Test
+    void purgeWithoutPrefixesEmptiesTheBucket() {
+        BucketPurgeReport bucketPurgeReport = bucket.purgeVersionedBucket(BUCKET, List.of(),
+                Bucket.DEFAULT_MAX_CONCURRENT_DELETE_BATCHES, new BucketPurgeProgress());
+        assertEquals(9, bucketPurgeReport.deletedCount());
+        assertNull(bucketPurgeReport.uncoveredKey());
+        assertTrue(bucketPurgeReport.isComplete());
+        assertTrue(bucket.deleteEmptyBucket(BUCKET));
+    }
+}
@@ -5,6 +5,8 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.stereotype.Service;
 
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 @SpringBootTest
@@ -40,6 +42,13 @@ class BucketTest
         assertTrue(isDeleted);
     }
 
+    @Test
+    void purgeUnversionedBucket()
+    {
+        BucketPurgeReport bucketPurgeReport = bucket.purgeUnversionedBucket(LEARNJAVASKILLS, Bucket.DEFAULT_MAX_CONCURRENT_DELETE_BATCHES);
+        assertTrue(bucketPurgeReport.isComplete());
+    }
+
     @Test
     void deleteVersionedBucket()
     {
@@ -47,6 +56,16 @@ class BucketTest
         assertTrue(isDeleted);
     }
 
+    @Test
+    void purgeVersionedBucket()
+    {
+        BucketPurgeProgress bucketPurgeProgress = new BucketPurgeProgress();
+        BucketPurgeReport bucketPurgeReport = bucket.purgeVersionedBucket(LEARNJAVASKILLS, List.of(),
+                Bucket.DEFAULT_MAX_CONCURRENT_DELETE_BATCHES, bucketPurgeProgress);
+        System.out.println("progress : " + bucketPurgeProgress);
+        assertTrue(bucketPurgeReport.isComplete());
+    }
+
     @Test
     void deleteBucketWebsite()
     {
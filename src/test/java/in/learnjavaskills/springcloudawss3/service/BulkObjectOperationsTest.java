@@ -0,0 +1,135 @@
+package in.learnjavaskills.springcloudawss3.service;
+
+import in.learnjavaskills.springcloudawss3.standin.S3StandInExtension;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.junit.jupiter.api.io.TempDir;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.ChecksumMode;
+import software.amazon.awssdk.services.s3.model.Tag;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BulkObjectOperationsTest
+{
+    private static final String BUCKET = "bulk-operations";
+
+    @RegisterExtension
+    final S3StandInExtension standIn = new S3StandInExtension(BUCKET);
+
+    private S3Client s3Client;
+    private BulkObjectOperations bulkObjectOperations;
+
+    @BeforeEach
+    void start() throws IOException {
+        s3Client = standIn.s3Client();
+        bulkObjectOperations = new BulkObjectOperations(s3Client, new BulkKeyExecutor(BulkKeyExecutor.Threads.VIRTUAL, 32));
+    }
+
+    @Test
+    void uploadDownloadTagAndDeleteOnVirtualThreads(@TempDir Path tempDir) throws IOException {
+        standIn.server().setLatency(Duration.ofMillis(5), Duration.ZERO);
+        Map<String, Path> files = new TreeMap<>();
+        for (int index = 0; index < 200; index++) {
+            Path file = tempDir.resolve("source/" + index + ".txt");
+            Files.createDirectories(file.getParent());
+            Files.writeString(file, "object " + index);
+            files.put("data/" + index % 4 + "/" + index + ".txt", file);
+        }
+
+        BulkOperationReport uploaded = bulkObjectOperations.uploadFiles(BUCKET, files);
+        assertTrue(uploaded.isComplete(), uploaded.failures().toString());
+        assertEquals(200, uploaded.succeededCount());
+        assertNotNull(s3Client.headObject(builder -> builder.bucket(BUCKET).key("data/1/57.txt")
+                .checksumMode(ChecksumMode.ENABLED)).checksumCRC32C());
+
+        Path downloadDirectory = tempDir.resolve("download");
+        BulkOperationReport downloaded = bulkObjectOperations.downloadObjects(BUCKET,
+                bulkObjectOperations.keysUnder(BUCKET, "data/"), downloadDirectory);
+        assertEquals(200, downloaded.succeededCount());
+        assertEquals("object 57", Files.readString(downloadDirectory.resolve("data/1/57.txt")));
+
+        BulkOperationReport tagged = bulkObjectOperations.tagObjects(BUCKET, files.keySet(), Map.of("stage", "cold"));
+        assertEquals(200, tagged.succeededCount());
+        assertEquals(List.of(Tag.builder().key("stage").value("cold").build()),
+                s3Client.getObjectTagging(builder -> builder.bucket(BUCKET).key("data/3/123.txt")).tagSet());
+
+        BulkOperationReport deleted = bulkObjectOperations.deleteObjects(BUCKET, bulkObjectOperations.keysUnder(BUCKET, "data/"));
+        assertEquals(200, deleted.succeededCount());
+        assertEquals(0, s3Client.listObjectsV2(builder -> builder.bucket(BUCKET)).keyCount());
+    }
+
+    @Test
+    void codedObjectsAreDecodedOnDownload(@TempDir Path tempDir) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzipOutputStream = new GZIPOutputStream(compressed)) {
+            gzipOutputStream.write("decoded content".getBytes(StandardCharsets.UTF_8));
+        }
+        s3Client.putObject(builder -> builder.bucket(BUCKET).key("coded.txt")
+                .metadata(ObjectCodec.GZIP.recordIn(Map.of())), RequestBody.fromBytes(compressed.toByteArray()));
+        s3Client.putObject(builder -> builder.bucket(BUCKET).key("plain.txt"), RequestBody.fromString("plain content"));
+
+        BulkOperationReport downloaded = bulkObjectOperations.downloadObjects(BUCKET, List.of("coded.txt", "plain.txt"),
+                tempDir);
+        assertTrue(downloaded.isComplete(), downloaded.failures().toString());
+        assertEquals("decoded content", Files.readString(tempDir.resolve("coded.txt")));
+        assertEquals("plain content", Files.readString(tempDir.resolve("plain.txt")));
+    }
+
+    @Test
+    void failedKeysAreReportedAndOthersStillRun(@TempDir Path tempDir) {
+        BulkOperationReport bulkOperationReport = bulkObjectOperations.downloadObjects(BUCKET,
+                List.of("missing.txt", "../escape.txt"), tempDir);
+        assertFalse(bulkOperationReport.isComplete());
+        Map<String, String> codes = new TreeMap<>();
+        bulkOperationReport.failures().forEach(failedKey -> codes.put(failedKey.key(), String.valueOf(failedKey.code())));
+        assertEquals(Map.of("missing.txt", "NoSuchKey", "../escape.txt", "null"), codes);
+    }
+
+    @Test
+    void failuresBeyondTheReportedOnesAreOnlyCounted() {
+        int keyCount = BulkKeyExecutor.MAX_REPORTED_FAILURES + 500;
+        List<String> keys = IntStream.range(0, keyCount).mapToObj(Integer::toString).toList();
+        BulkOperationReport bulkOperationReport = new BulkKeyExecutor(BulkKeyExecutor.Threads.VIRTUAL, 32)
+                .forEachKey(keys, key -> {
+                    if (!key.equals("7"))
+                        throw new IllegalStateException("refused " + key);
+                });
+        assertEquals(1, bulkOperationReport.succeededCount());
+        assertEquals(keyCount - 1, bulkOperationReport.failedCount());
+        assertEquals(BulkKeyExecutor.MAX_REPORTED_FAILURES, bulkOperationReport.failures().size());
+        assertFalse(bulkOperationReport.isComplete());
+    }
+
+    @Test
+    void concurrencyStaysWithinTheLimitForBothThreadKinds() {
+        for (BulkKeyExecutor.Threads threads : BulkKeyExecutor.Threads.values()) {
+            AtomicInteger running = new AtomicInteger();
+            AtomicInteger mostRunning = new AtomicInteger();
+            BulkKeyExecutor bulkKeyExecutor = new BulkKeyExecutor(threads, 8);
+            List<String> keys = IntStream.range(0, 500).mapToObj(Integer::toString).toList();
+            BulkOperationReport bulkOperationReport = bulkKeyExecutor.forEachKey(keys, key -> {
+                mostRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                Thread.sleep(1);
+                running.decrementAndGet();
+            });
+            assertEquals(500, bulkOperationReport.succeededCount(), threads.name());
+            assertTrue(mostRunning.get() <= 8, threads + " ran " + mostRunning.get() + " keys at once");
+        }
+    }
+}
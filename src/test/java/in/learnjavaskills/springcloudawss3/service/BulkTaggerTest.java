@@ -0,0 +1,140 @@
+package in.learnjavaskills.springcloudawss3.service;
+
+import in.learnjavaskills.springcloudawss3.standin.S3StandInExtension;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.Tag;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BulkTaggerTest
+{
+    private static final String BUCKET = "bulk-tagging";
+
+    @RegisterExtension
+    final S3StandInExtension standIn = new S3StandInExtension(BUCKET);
+
+    private S3Client s3Client;
+
+    @BeforeEach
+    void start() throws IOException {
+        s3Client = standIn.s3Client();
+        for (int index = 0; index < 40; index++) {
+            String key = String.format("logs/%03d.log", index);
+            s3Client.putObject(builder -> builder.bucket(BUCKET).key(key).tagging("team=core&stage=hot"),
+                    RequestBody.fromString(key));
+        }
+        s3Client.putObject(builder -> builder.bucket(BUCKET).key("other/kept.log"), RequestBody.fromString("kept"));
+    }
+
+    @Test
+    void mergeReplaceAndRemove() {
+        BulkTaggingReport merged = bulkTag(request(BulkTaggingRequest.Mode.MERGE)
+                .tag("stage", "cold")
+                .tag("retention", "90d")
+                .build(), new BulkTaggingProgress());
+        assertTrue(merged.isComplete(), merged.failures().toString());
+        assertEquals(40, merged.taggedCount());
+        assertEquals("logs/039.log", merged.checkpoint());
+        assertEquals(Map.of("team", "core", "stage", "cold", "retention", "90d"), tags("logs/007.log"));
+        assertEquals(Map.of(), tags("other/kept.log"));
+
+        BulkTaggingReport mergedAgain = bulkTag(request(BulkTaggingRequest.Mode.MERGE)
+                .tag("stage", "cold")
+                .build(), new BulkTaggingProgress());
+        assertEquals(0, mergedAgain.taggedCount());
+        assertEquals(40, mergedAgain.unchangedCount());
+
+        bulkTag(request(BulkTaggingRequest.Mode.REMOVE).tag("stage", "").build(),
+                new BulkTaggingProgress());
+        assertEquals(Map.of("team", "core", "retention", "90d"), tags("logs/021.log"));
+
+        bulkTag(request(BulkTaggingRequest.Mode.REPLACE).tag("archived", "true").build(),
+                new BulkTaggingProgress());
+        assertEquals(Map.of("archived", "true"), tags("logs/000.log"));
+    }
+
+    @Test
+    void requestRateIsCapped() {
+        long startNanos = System.nanoTime();
+        // 40 merges are 80 requests, at 100 per second with a burst of 10 they take at least 0.7 seconds
+        BulkTaggingReport bulkTaggingReport = bulkTag(request(BulkTaggingRequest.Mode.MERGE)
+                .tag("stage", "cold")
+                .maxRequestsPerSecond(100)
+                .build(), new BulkTaggingProgress());
+        assertEquals(40, bulkTaggingReport.taggedCount());
+        assertTrue(System.nanoTime() - startNanos >= 700_000_000L);
+    }
+
+    @Test
+    void failedKeysAreReportedAndCancelledJobResumes() {
+        // ten tags already, one more is rejected by S3
+        Map<String, String> tenTags = new HashMap<>();
+        for (int index = 0; index < 10; index++)
+            tenTags.put("tag-" + index, "value");
+        String tagging = tenTags.entrySet().stream().map(tag -> tag.getKey() + "=" + tag.getValue())
+                .collect(Collectors.joining("&"));
+        s3Client.putObject(builder -> builder.bucket(BUCKET).key("logs/013.log").tagging(tagging), RequestBody.fromString("x"));
+
+        BulkTaggingProgress progress = new BulkTaggingProgress();
+        BulkTaggingRequest bulkTaggingRequest = request(BulkTaggingRequest.Mode.MERGE)
+                .tag("stage", "cold")
+                .tag("extra", "yes")
+                .concurrency(1)
+                .maxRequestsPerSecond(20)
+                .build();
+        // cancel from the outside once a few objects are done, ten objects per second leave plenty of time before 013
+        Thread canceller = new Thread(() -> {
+            while (progress.taggedCount() < 5) {
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException interruptedException) {
+                    return;
+                }
+            }
+            progress.cancel();
+        });
+        canceller.start();
+        BulkTaggingReport firstRun = bulkTag(bulkTaggingRequest, progress);
+        assertTrue(firstRun.cancelled());
+        assertFalse(firstRun.isComplete());
+        assertNotNull(firstRun.checkpoint());
+        assertTrue(firstRun.taggedCount() < 40);
+
+        BulkTaggingReport resumed = bulkTag(request(BulkTaggingRequest.Mode.MERGE)
+                .tag("stage", "cold")
+                .tag("extra", "yes")
+                .startAfter(firstRun.checkpoint())
+                .build(), new BulkTaggingProgress());
+        assertEquals(39, firstRun.taggedCount() + resumed.taggedCount());
+        assertEquals(List.of("logs/013.log"), resumed.failures().stream().map(BulkTaggingReport.FailedTagging::key).toList());
+        assertEquals("BadRequest", resumed.failures().get(0).code());
+        assertEquals("yes", tags("logs/039.log").get("extra"));
+    }
+
+    private BulkTaggingReport bulkTag(BulkTaggingRequest bulkTaggingRequest, BulkTaggingProgress progress) {
+        return new BulkTagger(s3Client, bulkTaggingRequest, progress).run();
+    }
+
+    private static BulkTaggingRequest.Builder request(BulkTaggingRequest.Mode mode) {
+        return BulkTaggingRequest.builder()
+                .bucket(BUCKET)
+                .prefix("logs/")
+                .mode(mode)
+                .concurrency(4);
+    }
+
+    private Map<String, String> tags(String key) {
+        return s3Client.getObjectTagging(builder -> builder.bucket(BUCKET).key(key)).tagSet().stream()
+                .collect(Collectors.toMap(Tag::key, Tag::value));
+    }
+}
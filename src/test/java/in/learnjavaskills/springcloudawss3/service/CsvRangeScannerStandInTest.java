@@ -0,0 +1,70 @@
+package in.learnjavaskills.springcloudawss3.service;
+
+import in.learnjavaskills.springcloudawss3.standin.S3StandInExtension;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CsvRangeScannerStandInTest
+{
+    private static final String BUCKET = "csv";
+
+    @RegisterExtension
+    final S3StandInExtension standIn = new S3StandInExtension(BUCKET);
+
+    private S3Client s3Client;
+    private CsvRangeScanner csvRangeScanner;
+
+    @BeforeEach
+    void start() throws IOException {
+        s3Client = standIn.s3Client();
+        csvRangeScanner = new CsvRangeScanner(s3Client);
+    }
+
+    @Test
+    void splitsStartingInsideQuotedFieldsKeepEveryRow() {
+        s3Client.putObject(builder -> builder.bucket(BUCKET).key("quoted.csv"),
+                RequestBody.fromString("1,\"ab\"\n2,\"cd\"\n3,\"ef\"\n4,\"gh\"\n"));
+        // every split size puts some split start inside a quoted field
+        for (long splitSize = 1; splitSize <= 12; splitSize++)
+            assertEquals(List.of("1", "2", "3", "4"), firstFields("quoted.csv", splitSize), "split size " + splitSize);
+    }
+
+    @Test
+    void scanMatchesSequentialReadWithQuotesAndCrlf() throws IOException {
+        StringBuilder csv = new StringBuilder();
+        for (int row = 0; row < 2000; row++)
+            csv.append(row).append(",\"name, with comma ").append(row).append("\",\"say \"\"hi\"\"\"\r\n");
+        s3Client.putObject(builder -> builder.bucket(BUCKET).key("large.csv"), RequestBody.fromString(csv.toString()));
+
+        for (long splitSize : new long[]{7, 100, 4096}) {
+            List<String> fields = firstFields("large.csv", splitSize);
+            assertEquals(2000, fields.size(), "split size " + splitSize);
+            for (int row = 0; row < fields.size(); row++)
+                assertEquals(String.valueOf(row), fields.get(row));
+        }
+    }
+
+    private List<String> firstFields(String key, long splitSize) {
+        CsvScanRequest csvScanRequest = CsvScanRequest.builder()
+                .bucket(BUCKET)
+                .key(key)
+                .splitSize(splitSize)
+                .parallelism(4)
+                .build();
+        return csvRangeScanner.scan(csvScanRequest, ArrayList::new,
+                (fields, csvRow) -> fields.add(csvRow.fieldAsString(0)),
+                (left, right) -> {
+                    left.addAll(right);
+                    return left;
+                });
+    }
+}
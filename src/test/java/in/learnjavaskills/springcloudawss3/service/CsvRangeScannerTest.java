@@ -0,0 +1,38 @@
+package in.learnjavaskills.springcloudawss3.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+class CsvRangeScannerTest
+{
+    @Autowired private CsvRangeScanner csvRangeScanner;
+
+    @Autowired private DownloadObjects downloadObjects;
+
+    private final String bucketName = "learnjavaskills";
+
+    private final String csvFileName = "sample-file.csv";
+
+    @Test
+    void scanMatchesSequentialRead()
+    {
+        long sequentialRows = downloadObjects.readFileUsingS3Client(bucketName, csvFileName, csvRow -> true);
+
+        CsvScanRequest csvScanRequest = CsvScanRequest.builder()
+                .bucket(bucketName)
+                .key(csvFileName)
+                .splitSize(1024)
+                .projection(0)
+                .build();
+        AtomicLong scannedRows = csvRangeScanner.scan(csvScanRequest, AtomicLong::new,
+                (rows, csvRow) -> rows.incrementAndGet(),
+                (left, right) -> new AtomicLong(left.get() + right.get()));
+        assertEquals(sequentialRows, scannedRows.get());
+    }
+}
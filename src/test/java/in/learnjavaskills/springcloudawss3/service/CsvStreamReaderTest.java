@@ -0,0 +1,65 @@
+package in.learnjavaskills.springcloudawss3.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CsvStreamReaderTest
+{
+    private List<String> readAll(String csv, int bufferSize) throws IOException {
+        List<String> rows = new ArrayList<>();
+        ByteArrayInputStream inputStream = new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8));
+        new CsvStreamReader(inputStream, bufferSize).read(csvRow -> rows.add(csvRow.toString()));
+        return rows;
+    }
+
+    @Test
+    void readPlainRows() throws IOException
+    {
+        assertEquals(List.of("[a, b, c]", "[1, 2, 3]"), readAll("a,b,c\n1,2,3\n", 64));
+    }
+
+    @Test
+    void readQuotedFields() throws IOException
+    {
+        List<String> rows = readAll("\"x,y\",\"say \"\"hi\"\"\",\"multi\nline\"\r\nlast,\n", 64);
+        assertEquals(List.of("[x,y, say \"hi\", multi\nline]", "[last, ]"), rows);
+    }
+
+    @Test
+    void readRowsLargerThanBuffer() throws IOException
+    {
+        String longField = "z".repeat(1000);
+        List<String> rows = readAll("head\n" + longField + ",\"" + longField + "\"\ntail", 8);
+        assertEquals(List.of("[head]", "[" + longField + ", " + longField + "]", "[tail]"), rows);
+    }
+
+    @Test
+    void reportRowPositionAndParseNumbers() throws IOException
+    {
+        byte[] csv = "id,amount\n7,-42\n".getBytes(StandardCharsets.UTF_8);
+        List<Long> positions = new ArrayList<>();
+        long rows = new CsvStreamReader(new ByteArrayInputStream(csv), 4).read(csvRow -> {
+            positions.add(csvRow.position());
+            if (csvRow.rowNumber() == 1)
+                assertEquals(-42, csvRow.fieldAsLong(1));
+            return true;
+        });
+        assertEquals(2, rows);
+        assertEquals(List.of(0L, 10L), positions);
+    }
+
+    @Test
+    void stopWhenVisitorReturnsFalse() throws IOException
+    {
+        byte[] csv = "1\n2\n3\n".getBytes(StandardCharsets.UTF_8);
+        long rows = new CsvStreamReader(new ByteArrayInputStream(csv)).read(csvRow -> csvRow.rowNumber() < 1);
+        assertEquals(2, rows);
+    }
+}
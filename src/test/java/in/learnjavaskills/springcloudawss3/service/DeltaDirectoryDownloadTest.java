@@ -0,0 +1,159 @@
+package in.learnjavaskills.springcloudawss3.service;
+
+import in.learnjavaskills.springcloudawss3.standin.S3StandInExtension;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.junit.jupiter.api.io.TempDir;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.transfer.s3.S3TransferManager;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeltaDirectoryDownloadTest
+{
+    private static final String BUCKET = "delta-download";
+
+    @RegisterExtension
+    final S3StandInExtension standIn = new S3StandInExtension(BUCKET);
+
+    private S3Client s3Client;
+    private S3AsyncClient s3AsyncClient;
+    private S3TransferManager s3TransferManager;
+    private ObjectDecoder objectDecoder;
+
+    @BeforeEach
+    void start() throws IOException {
+        s3Client = standIn.s3Client();
+        s3AsyncClient = standIn.server().newS3CrtAsyncClient();
+        s3TransferManager = S3TransferManager.builder().s3Client(s3AsyncClient).build();
+        objectDecoder = new ObjectDecoder(2);
+    }
+
+    @AfterEach
+    void stop() throws IOException {
+        objectDecoder.destroy();
+        s3TransferManager.close();
+        s3AsyncClient.close();
+    }
+
+    @Test
+    void onlyNewAndChangedObjectsAreDownloaded(@TempDir Path tempDir) throws IOException {
+        put("site/index.html", "<html>1</html>");
+        put("site/css/main.css", "body {}");
+        put("site/img/logo.svg", "<svg/>");
+        put("other/skipped.txt", "not under the prefix");
+        Files.writeString(tempDir.resolve("local-only.txt"), "not synced");
+
+        DeltaDownloadReport firstSync = sync("site/", tempDir, true);
+        assertTrue(firstSync.isComplete(), firstSync.failures().toString());
+        assertEquals(3, firstSync.downloadedCount());
+        assertEquals("body {}", Files.readString(tempDir.resolve("css/main.css")));
+        assertTrue(Files.exists(tempDir.resolve(DeltaDirectoryDownload.DEFAULT_MANIFEST_NAME)));
+
+        long requestsBefore = standIn.server().requestCount();
+        DeltaDownloadReport unchangedSync = sync("site/", tempDir, true);
+        assertEquals(0, unchangedSync.downloadedCount());
+        assertEquals(3, unchangedSync.unchangedCount());
+        // the listing is the only request
+        assertEquals(1, standIn.server().requestCount() - requestsBefore);
+
+        put("site/index.html", "<html>2</html>");
+        put("site/about.html", "<html>about</html>");
+        s3Client.deleteObject(builder -> builder.bucket(BUCKET).key("site/img/logo.svg"));
+        Files.writeString(tempDir.resolve("css/main.css"), "edited locally");
+        DeltaDownloadReport changedSync = sync("site/", tempDir, true);
+        assertTrue(changedSync.isComplete(), changedSync.failures().toString());
+        assertEquals(3, changedSync.listedCount());
+        assertEquals(3, changedSync.downloadedCount());
+        assertEquals(0, changedSync.unchangedCount());
+        assertEquals(1, changedSync.deletedCount());
+        assertEquals("<html>2</html>", Files.readString(tempDir.resolve("index.html")));
+        assertEquals("<html>about</html>", Files.readString(tempDir.resolve("about.html")));
+        assertEquals("body {}", Files.readString(tempDir.resolve("css/main.css")));
+        assertFalse(Files.exists(tempDir.resolve("img/logo.svg")));
+        assertEquals("not synced", Files.readString(tempDir.resolve("local-only.txt")));
+    }
+
+    @Test
+    void manifestKeepsUtf8KeyOrder(@TempDir Path tempDir) throws IOException {
+        Path manifest = tempDir.resolve("manifest");
+        // U+FF21 sorts before U+1F600 in UTF-8 but after it in UTF-16
+        List<String> keys = List.of("a", "a/b", "b", "Ａ", "😀");
+        try (SyncManifest.Writer writer = new SyncManifest.Writer(manifest)) {
+            for (int index = 0; index < keys.size(); index++)
+                writer.append(new SyncManifest.Entry(keys.get(index).getBytes(StandardCharsets.UTF_8), index, index,
+                        1000L * index, "\"etag-" + index + "\""));
+            writer.commit();
+        }
+        SyncManifest.update(manifest, Set.of("a/b"), Map.of("b", 42L));
+
+        List<SyncManifest.Entry> entries = new ArrayList<>();
+        try (SyncManifest.Reader reader = SyncManifest.Reader.open(manifest)) {
+            while (reader.hasNext())
+                entries.add(reader.next());
+        }
+        assertEquals(List.of("a", "b", "Ａ", "😀"), entries.stream().map(SyncManifest.Entry::keyString).toList());
+        for (int index = 1; index < entries.size(); index++)
+            assertTrue(SyncManifest.compareKeys(entries.get(index - 1).key(), entries.get(index).key()) < 0);
+        assertEquals("\"etag-4\"", entries.get(3).eTag());
+        assertEquals(4000L, entries.get(3).lastModifiedMillis());
+        assertEquals(42L, entries.get(1).localSize());
+        assertEquals(2L, entries.get(1).size());
+        assertEquals(4L, entries.get(3).localSize());
+        assertFalse(SyncManifest.Reader.open(tempDir.resolve("missing")).hasNext());
+    }
+
+    @Test
+    void localCopyWithRestoredModifiedTimeIsDownloadedAgain(@TempDir Path tempDir) throws IOException {
+        put("data/plain.txt", "plain content");
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzipOutputStream = new GZIPOutputStream(compressed)) {
+            gzipOutputStream.write("coded content, decoded on download".getBytes(StandardCharsets.UTF_8));
+        }
+        s3Client.putObject(builder -> builder.bucket(BUCKET).key("data/coded.txt")
+                .metadata(ObjectCodec.GZIP.recordIn(Map.of())), RequestBody.fromBytes(compressed.toByteArray()));
+
+        assertEquals(2, sync("data/", tempDir, false).downloadedCount());
+        assertEquals("coded content, decoded on download", Files.readString(tempDir.resolve("coded.txt")));
+        // the decoded file is recognised by the size recorded for it
+        assertEquals(2, sync("data/", tempDir, false).unchangedCount());
+
+        // edited and then given back its modified time, as cp -p, rsync -t or touch -r would
+        for (String name : List.of("plain.txt", "coded.txt")) {
+            Path localFile = tempDir.resolve(name);
+            FileTime lastModifiedTime = Files.getLastModifiedTime(localFile);
+            Files.writeString(localFile, "edited");
+            Files.setLastModifiedTime(localFile, lastModifiedTime);
+        }
+        DeltaDownloadReport report = sync("data/", tempDir, false);
+        assertEquals(2, report.downloadedCount());
+        assertEquals("plain content", Files.readString(tempDir.resolve("plain.txt")));
+        assertEquals("coded content, decoded on download", Files.readString(tempDir.resolve("coded.txt")));
+    }
+
+    private DeltaDownloadReport sync(String prefix, Path directory, boolean deleteRemoved) throws IOException {
+        return new DeltaDirectoryDownload(s3Client, s3TransferManager, objectDecoder, BUCKET, prefix, directory,
+                directory.resolve(DeltaDirectoryDownload.DEFAULT_MANIFEST_NAME), deleteRemoved,
+                DeltaDirectoryDownload.DEFAULT_MAX_CONCURRENT_DOWNLOADS).download();
+    }
+
+    private void put(String key, String content) {
+        s3Client.putObject(builder -> builder.bucket(BUCKET).key(key), RequestBody.fromString(content));
+    }
+}
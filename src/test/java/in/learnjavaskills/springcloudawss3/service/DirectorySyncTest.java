@@ -0,0 +1,131 @@
+package in.learnjavaskills.springcloudawss3.service;
+
+import in.learnjavaskills.springcloudawss3.standin.S3StandInExtension;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.ChecksumMode;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DirectorySyncTest
+{
+    private static final String BUCKET = "directory-sync";
+    private static final int MEBIBYTE = 1024 * 1024;
+
+    @RegisterExtension
+    final S3StandInExtension standIn = new S3StandInExtension(BUCKET);
+
+    private S3Client s3Client;
+    private StreamingMultipartUploader streamingMultipartUploader;
+
+    @BeforeEach
+    void start() throws IOException {
+        s3Client = standIn.s3Client();
+        streamingMultipartUploader = new StreamingMultipartUploader(s3Client, DataSize.ofMegabytes(5), 2);
+    }
+
+    @AfterEach
+    void stop() throws IOException {
+        streamingMultipartUploader.destroy();
+    }
+
+    @Test
+    void secondSyncOnlyUploadsChangedFiles(@TempDir Path tempDir) throws IOException {
+        Files.write(tempDir.resolve("app.jar"), randomBytes(2000, 1));
+        Files.createDirectories(tempDir.resolve("lib/nested"));
+        Files.write(tempDir.resolve("lib/nested/big.jar"), randomBytes(12 * MEBIBYTE + 17, 2));
+        Files.write(tempDir.resolve("lib/notes.txt"), randomBytes(100, 3));
+        Files.createDirectories(tempDir.resolve("tmp"));
+        Files.write(tempDir.resolve("tmp/scratch.jar"), randomBytes(100, 4));
+        DirectorySyncRequest directorySyncRequest = DirectorySyncRequest.builder()
+                .sourceDirectory(tempDir)
+                .bucket(BUCKET)
+                .prefix("builds/")
+                .include("**.jar")
+                .exclude("tmp")
+                .concurrency(4)
+                .build();
+
+        DirectorySyncReport firstSync = sync(directorySyncRequest);
+        assertTrue(firstSync.isComplete(), firstSync.failures().toString());
+        assertEquals(2, firstSync.scannedCount());
+        assertEquals(2, firstSync.uploadedCount());
+        assertEquals(12 * MEBIBYTE + 17 + 2000, firstSync.uploadedBytes());
+        assertArrayEquals(Files.readAllBytes(tempDir.resolve("lib/nested/big.jar")),
+                s3Client.getObjectAsBytes(builder -> builder.bucket(BUCKET).key("builds/lib/nested/big.jar")).asByteArray());
+        // single PutObject and multipart alike are stored with a checksum to verify downloads against
+        for (String key : List.of("builds/app.jar", "builds/lib/nested/big.jar"))
+            assertNotNull(s3Client.headObject(builder -> builder.bucket(BUCKET).key(key)
+                    .checksumMode(ChecksumMode.ENABLED)).checksumCRC32C(), key);
+        assertThrows(NoSuchKeyException.class, () -> s3Client.headObject(builder -> builder.bucket(BUCKET).key("builds/tmp/scratch.jar")));
+        assertThrows(NoSuchKeyException.class, () -> s3Client.headObject(builder -> builder.bucket(BUCKET).key("builds/lib/notes.txt")));
+
+        long requestsBefore = standIn.server().requestCount();
+        DirectorySyncReport unchangedSync = sync(directorySyncRequest);
+        assertEquals(0, unchangedSync.uploadedCount());
+        assertEquals(2, unchangedSync.unchangedCount());
+        // a single listing, nothing uploaded
+        assertEquals(1, standIn.server().requestCount() - requestsBefore);
+
+        // same size, different content: only the ETag tells them apart
+        Files.write(tempDir.resolve("app.jar"), randomBytes(2000, 5));
+        DirectorySyncReport changedSync = sync(directorySyncRequest);
+        assertEquals(1, changedSync.uploadedCount());
+        assertEquals(1, changedSync.unchangedCount());
+        assertArrayEquals(Files.readAllBytes(tempDir.resolve("app.jar")),
+                s3Client.getObjectAsBytes(builder -> builder.bucket(BUCKET).key("builds/app.jar")).asByteArray());
+    }
+
+    @Test
+    void multipartETagOfOtherUploaderIsRecognised(@TempDir Path tempDir) throws IOException {
+        // 22 MB in 6 MB parts, a part size we never use ourselves
+        byte[] content = randomBytes(22 * MEBIBYTE, 6);
+        Path file = Files.write(tempDir.resolve("archive.zip"), content);
+        String uploadId = s3Client.createMultipartUpload(builder -> builder.bucket(BUCKET).key("archive.zip")).uploadId();
+        List<CompletedPart> completedParts = new ArrayList<>();
+        for (int partNumber = 1, offset = 0; offset < content.length; partNumber++, offset += 6 * MEBIBYTE) {
+            int number = partNumber;
+            byte[] part = Arrays.copyOfRange(content, offset, Math.min(content.length, offset + 6 * MEBIBYTE));
+            String eTag = s3Client.uploadPart(builder -> builder.bucket(BUCKET).key("archive.zip").uploadId(uploadId)
+                    .partNumber(number), RequestBody.fromBytes(part)).eTag();
+            completedParts.add(CompletedPart.builder().partNumber(partNumber).eTag(eTag).build());
+        }
+        s3Client.completeMultipartUpload(builder -> builder.bucket(BUCKET).key("archive.zip").uploadId(uploadId)
+                .multipartUpload(multipartUpload -> multipartUpload.parts(completedParts)));
+        S3Object s3Object = s3Client.listObjectsV2(builder -> builder.bucket(BUCKET)).contents().get(0);
+        assertTrue(s3Object.eTag().endsWith("-4\""));
+
+        ETagMatcher eTagMatcher = new ETagMatcher(5L * MEBIBYTE);
+        assertTrue(eTagMatcher.matches(file, content.length, s3Object.eTag()));
+        content[content.length - 1]++;
+        Files.write(file, content);
+        assertFalse(eTagMatcher.matches(file, content.length, s3Object.eTag()));
+    }
+
+    private DirectorySyncReport sync(DirectorySyncRequest directorySyncRequest) throws IOException {
+        return new DirectorySync(s3Client, streamingMultipartUploader, directorySyncRequest).sync();
+    }
+
+    private static byte[] randomBytes(int length, long seed) {
+        byte[] bytes = new byte[length];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+}
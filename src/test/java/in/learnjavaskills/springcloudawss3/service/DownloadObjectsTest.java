@@ -27,11 +27,25 @@ class DownloadObjectsTest
         downloadObjects.downloadFileUsingS3Client(bucketName, key, destinationPath);
     }
 
+    @Test
+    void downloadFileUsingRangedGets()
+    {
+        boolean downloaded = downloadObjects.downloadFileUsingRangedGets(bucketName, key, destinationPath,
+                1024 * 1024, 4);
+        assertTrue(downloaded);
+    }
+
     @Test
     void readFileWithoutDownloadingUsingS3Client() {
         downloadObjects.readFileUsingS3Client(bucketName, csvFileName);
     }
 
+    @Test
+    void readFileWithVisitorUsingS3Client() {
+        long rows = downloadObjects.readFileUsingS3Client(bucketName, csvFileName, csvRow -> csvRow.fieldCount() > 0);
+        assertTrue(rows >= 0);
+    }
+
     @Test
     void downloadFileUsingS3TransferManager()
     {
@@ -0,0 +1,111 @@
+package in.learnjavaskills.springcloudawss3.service;
+
+import in.learnjavaskills.springcloudawss3.standin.S3StandInExtension;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.CRC32C;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ObjectChecksumsTest
+{
+    private static final String BUCKET = "checksums";
+    private static final int PART_SIZE = 5 * 1024 * 1024;
+
+    @RegisterExtension
+    final S3StandInExtension standIn = new S3StandInExtension(BUCKET);
+
+    private S3Client s3Client;
+    private StreamingMultipartUploader streamingMultipartUploader;
+    private DownloadObjects downloadObjects;
+
+    @BeforeEach
+    void start() throws IOException {
+        s3Client = standIn.s3Client();
+        streamingMultipartUploader = new StreamingMultipartUploader(s3Client, DataSize.ofBytes(PART_SIZE), 2);
+        downloadObjects = new DownloadObjects(null, s3Client, null, null, null, null, null, null);
+    }
+
+    @AfterEach
+    void stop() throws IOException {
+        streamingMultipartUploader.destroy();
+    }
+
+    @Test
+    void multipartObjectIsVerifiedPartByPart(@TempDir Path tempDir) throws IOException {
+        byte[] content = randomBytes(3 * PART_SIZE + 777);
+        StreamingUploadResult streamingUploadResult = streamingMultipartUploader.upload(BUCKET, "large.bin",
+                new ByteArrayInputStream(content));
+
+        List<String> partChecksums = new ArrayList<>();
+        for (int start = 0; start < content.length; start += PART_SIZE)
+            partChecksums.add(crc32c(content, start, Math.min(PART_SIZE, content.length - start)));
+        assertEquals(ObjectChecksums.composite(partChecksums), streamingUploadResult.checksumCrc32c());
+        assertTrue(streamingUploadResult.checksumCrc32c().endsWith("-4"));
+
+        Path destination = tempDir.resolve("large.bin");
+        assertEquals(streamingUploadResult.checksumCrc32c(), downloadObjects.downloadVerifiedFile(BUCKET, "large.bin", destination));
+        assertArrayEquals(content, Files.readAllBytes(destination));
+
+        standIn.server().corruptObject(BUCKET, "large.bin", 2L * PART_SIZE + 10);
+        UncheckedIOException uncheckedIOException = assertThrows(UncheckedIOException.class,
+                () -> downloadObjects.downloadVerifiedFile(BUCKET, "large.bin", destination));
+        assertTrue(uncheckedIOException.getMessage().contains("part 3"), uncheckedIOException.getMessage());
+        assertFalse(Files.exists(destination));
+    }
+
+    @Test
+    void singlePartObjectIsVerifiedBySdk(@TempDir Path tempDir) throws IOException {
+        byte[] content = randomBytes(100_000);
+        StreamingUploadResult streamingUploadResult = streamingMultipartUploader.upload(BUCKET, "small.bin",
+                new ByteArrayInputStream(content));
+        assertEquals(crc32c(content, 0, content.length), streamingUploadResult.checksumCrc32c());
+
+        Path destination = tempDir.resolve("small.bin");
+        assertEquals(streamingUploadResult.checksumCrc32c(), downloadObjects.downloadVerifiedFile(BUCKET, "small.bin", destination));
+        assertArrayEquals(content, Files.readAllBytes(destination));
+
+        standIn.server().corruptObject(BUCKET, "small.bin", 5);
+        assertThrows(SdkClientException.class, () -> downloadObjects.downloadVerifiedFile(BUCKET, "small.bin", destination));
+        assertFalse(Files.exists(destination));
+    }
+
+    @Test
+    void damagedUploadIsRejected() {
+        S3Exception s3Exception = assertThrows(S3Exception.class, () -> s3Client.putObject(builder -> builder
+                .bucket(BUCKET)
+                .key("damaged.txt")
+                .checksumCRC32C(crc32c(new byte[]{1, 2, 3}, 0, 3)), RequestBody.fromBytes(new byte[]{1, 2, 4})));
+        assertEquals(400, s3Exception.statusCode());
+        assertEquals("BadDigest", s3Exception.awsErrorDetails().errorCode());
+    }
+
+    private static String crc32c(byte[] bytes, int offset, int length) {
+        CRC32C checksum = new CRC32C();
+        checksum.update(bytes, offset, length);
+        return ObjectChecksums.encode(checksum);
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random(22).nextBytes(bytes);
+        return bytes;
+    }
+}
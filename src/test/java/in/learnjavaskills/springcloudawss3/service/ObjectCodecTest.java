@@ -0,0 +1,182 @@
+package in.learnjavaskills.springcloudawss3.service;
+
+import in.learnjavaskills.springcloudawss3.standin.S3StandInExtension;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ObjectCodecTest
+{
+    private static final String BUCKET = "codec";
+
+    @TempDir
+    Path tempDir;
+
+    @RegisterExtension
+    final S3StandInExtension standIn = new S3StandInExtension(BUCKET);
+
+    private S3Client s3Client;
+    private StreamingMultipartUploader streamingMultipartUploader;
+    private ObjectCompressor objectCompressor;
+    private ResumableTransfers resumableTransfers;
+    private UploadObjects uploadObjects;
+    private DownloadObjects downloadObjects;
+
+    @BeforeEach
+    void start() throws IOException {
+        s3Client = standIn.s3Client();
+        streamingMultipartUploader = new StreamingMultipartUploader(s3Client, DataSize.ofMegabytes(5), 2);
+        objectCompressor = new ObjectCompressor(DataSize.ofKilobytes(64), 4);
+        uploadObjects = new UploadObjects(s3Client, null, null, null, streamingMultipartUploader, objectCompressor,
+                null, null);
+        resumableTransfers = new ResumableTransfers(s3Client, tempDir.resolve("journal"), DataSize.ofMegabytes(5), 2);
+        downloadObjects = new DownloadObjects(null, s3Client, null, null,
+                new ObjectDiskCache(s3Client, new SimpleMeterRegistry(), tempDir.resolve("cache"), DataSize.ofMegabytes(10)),
+                resumableTransfers, null, null);
+    }
+
+    @AfterEach
+    void stop() throws IOException {
+        resumableTransfers.destroy();
+        objectCompressor.destroy();
+        streamingMultipartUploader.destroy();
+    }
+
+    @Test
+    void compressedChunksDecodeAsOneStream() throws IOException {
+        byte[] content = csv(20_000);
+        ExecutorService executorService = Executors.newFixedThreadPool(3);
+        try {
+            byte[] compressed = new ParallelGzipInputStream(new ByteArrayInputStream(content), 1000, 3, executorService)
+                    .readAllBytes();
+            // a network stream often has nothing available between two members
+            assertArrayEquals(content, ObjectCodec.GZIP.decode(new NothingAvailableInputStream(compressed)).readAllBytes());
+
+            byte[] empty = new ParallelGzipInputStream(InputStream.nullInputStream(), 1000, 3, executorService).readAllBytes();
+            assertTrue(empty.length > 0);
+            assertEquals(0, ObjectCodec.GZIP.decode(new ByteArrayInputStream(empty)).readAllBytes().length);
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test
+    void uploadIsCompressedAndReadsDecodeIt() throws IOException {
+        byte[] content = csv(100_000);
+        Path source = Files.write(tempDir.resolve("source.csv"), content);
+
+        uploadObjects.uploadFileWithMetaData(BUCKET, "data.csv", source.toString(), ObjectCodec.GZIP);
+
+        HeadObjectResponse headObjectResponse = s3Client.headObject(builder -> builder.bucket(BUCKET).key("data.csv"));
+        assertEquals("gzip", headObjectResponse.metadata().get(ObjectCodec.METADATA_KEY));
+        assertEquals("learnjavaskills.in", headObjectResponse.metadata().get("author"));
+        assertTrue(headObjectResponse.contentLength() * 5 < content.length, "stored " + headObjectResponse.contentLength());
+
+        Path destination = tempDir.resolve("data.csv");
+        downloadObjects.downloadVerifiedFile(BUCKET, "data.csv", destination);
+        assertArrayEquals(content, Files.readAllBytes(destination));
+        assertEquals(100_000, downloadObjects.readFileUsingS3Client(BUCKET, "data.csv", csvRow -> true));
+    }
+
+    @Test
+    void everyFileDownloadDecodes() throws IOException {
+        byte[] content = csv(50_000);
+        uploadObjects.uploadFileWithMetaData(BUCKET, "data.csv", Files.write(tempDir.resolve("source.csv"), content)
+                .toString(), ObjectCodec.GZIP);
+
+        Path ranged = tempDir.resolve("ranged.csv");
+        assertTrue(downloadObjects.downloadFileUsingRangedGets(BUCKET, "data.csv", ranged.toString(), 16 * 1024, 3));
+        assertArrayEquals(content, Files.readAllBytes(ranged));
+
+        Path resumable = tempDir.resolve("resumable.csv");
+        downloadObjects.downloadFileResumable(BUCKET, "data.csv", resumable.toString());
+        assertArrayEquals(content, Files.readAllBytes(resumable));
+        assertFalse(Files.exists(tempDir.resolve("resumable.csv.partial")));
+
+        // the miss fills the cache, the hit copies from it
+        for (int download = 0; download < 2; download++) {
+            Path cached = tempDir.resolve("cached-" + download + ".csv");
+            assertTrue(downloadObjects.downloadFileUsingCache(BUCKET, "data.csv", cached.toString()));
+            assertArrayEquals(content, Files.readAllBytes(cached));
+        }
+    }
+
+    @Test
+    void contentEncodingGzipIsDecoded() throws IOException {
+        byte[] content = csv(1000);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzipOutputStream = new GZIPOutputStream(compressed)) {
+            gzipOutputStream.write(content);
+        }
+        assertEquals(ObjectCodec.GZIP, ObjectCodec.of(Map.of(), "gzip"));
+        assertEquals(ObjectCodec.NONE, ObjectCodec.of(Map.of(), "identity"));
+
+        // the stand-in keeps no Content-Encoding, the response is what S3 sends for such an object
+        GetObjectResponse getObjectResponse = GetObjectResponse.builder().contentEncoding("gzip").build();
+        assertArrayEquals(content, ObjectCodec.of(getObjectResponse)
+                .decode(new ByteArrayInputStream(compressed.toByteArray())).readAllBytes());
+    }
+
+    @Test
+    void rangedReadsOfCodedObjectsAreRefused() throws IOException {
+        uploadObjects.uploadFileWithMetaData(BUCKET, "data.csv", Files.write(tempDir.resolve("source.csv"), csv(1000))
+                .toString(), ObjectCodec.GZIP);
+
+        assertThrows(UnsupportedOperationException.class, () -> downloadObjects.openSeekableChannel(BUCKET, "data.csv"));
+        CsvScanRequest csvScanRequest = CsvScanRequest.builder().bucket(BUCKET).key("data.csv").build();
+        assertThrows(UnsupportedOperationException.class, () -> new CsvRangeScanner(s3Client)
+                .scan(csvScanRequest, () -> null, (result, csvRow) -> { }, (left, right) -> left));
+    }
+
+    @Test
+    void unknownCodecIsRefused() {
+        assertEquals(ObjectCodec.NONE, ObjectCodec.of(Map.of("author", "someone")));
+        assertThrows(IllegalArgumentException.class, () -> ObjectCodec.of(Map.of(ObjectCodec.METADATA_KEY, "lz4")));
+    }
+
+    private static byte[] csv(int rows) {
+        StringBuilder csv = new StringBuilder();
+        for (int row = 0; row < rows; row++)
+            csv.append(row).append(",learnjavaskills.in,spring cloud aws s3,2024-01-01\n");
+        return csv.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    // hands out small reads and reports nothing available, like a socket between packets
+    private static final class NothingAvailableInputStream extends ByteArrayInputStream
+    {
+        private NothingAvailableInputStream(byte[] bytes) {
+            super(bytes);
+        }
+
+        @Override
+        public synchronized int read(byte[] target, int offset, int length) {
+            return super.read(target, offset, Math.min(length, 700));
+        }
+
+        @Override
+        public synchronized int available() {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package in.learnjavaskills.springcloudawss3.service;
+
+import in.learnjavaskills.springcloudawss3.standin.S3StandInExtension;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ObjectDiskCacheTest
+{
+    private static final String BUCKET = "object-cache";
+
+    @TempDir
+    private Path tempDir;
+    @RegisterExtension
+    final S3StandInExtension standIn = new S3StandInExtension(BUCKET);
+
+    private S3Client s3Client;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void start() throws IOException {
+        s3Client = standIn.s3Client();
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @Test
+    void unchangedObjectIsServedFromDisk() throws IOException {
+        ObjectDiskCache objectDiskCache = newCache(DataSize.ofMegabytes(1));
+        put("reference.csv", "id,name\n1,learnjavaskills\n");
+        Path destination = tempDir.resolve("reference.csv");
+
+        assertFalse(objectDiskCache.download(BUCKET, "reference.csv", destination));
+        Files.writeString(destination, "overwritten by the next download");
+        assertTrue(objectDiskCache.download(BUCKET, "reference.csv", destination));
+        assertTrue(objectDiskCache.download(BUCKET, "reference.csv", destination));
+        assertEquals("id,name\n1,learnjavaskills\n", Files.readString(destination));
+
+        put("reference.csv", "id,name\n2,changed\n");
+        assertFalse(objectDiskCache.download(BUCKET, "reference.csv", destination));
+        assertEquals("id,name\n2,changed\n", Files.readString(destination));
+
+        ObjectCacheStats objectCacheStats = objectDiskCache.stats();
+        assertEquals(2, objectCacheStats.hitCount());
+        assertEquals(2, objectCacheStats.missCount());
+        assertEquals(0.5, objectCacheStats.hitRatio());
+        assertEquals(2 * 26, objectCacheStats.bytesSaved());
+        assertEquals(1, objectCacheStats.cachedObjects());
+        assertEquals(2.0, meterRegistry.get("s3.object.cache.requests").tag("result", "hit").counter().count());
+        assertEquals(52.0, meterRegistry.get("s3.object.cache.bytes.saved").counter().count());
+    }
+
+    @Test
+    void leastRecentlyUsedObjectsAreEvicted() throws IOException {
+        ObjectDiskCache objectDiskCache = newCache(DataSize.ofBytes(250));
+        for (String key : new String[]{"a", "b", "c"})
+            put(key, "x".repeat(100));
+        Path destination = tempDir.resolve("destination");
+
+        objectDiskCache.download(BUCKET, "a", destination);
+        objectDiskCache.download(BUCKET, "b", destination);
+        // a becomes the most recently used, b is evicted for c
+        assertTrue(objectDiskCache.download(BUCKET, "a", destination));
+        objectDiskCache.download(BUCKET, "c", destination);
+        assertEquals(200, objectDiskCache.stats().cachedBytes());
+        assertTrue(objectDiskCache.download(BUCKET, "a", destination));
+        assertFalse(objectDiskCache.download(BUCKET, "b", destination));
+
+        // larger than the whole cache: written to the destination, never cached
+        put("large", "y".repeat(300));
+        assertFalse(objectDiskCache.download(BUCKET, "large", destination));
+        assertEquals(300, Files.size(destination));
+        assertFalse(objectDiskCache.download(BUCKET, "large", destination));
+    }
+
+    @Test
+    void cacheSurvivesRestart() throws IOException {
+        put("reference.csv", "id,name\n");
+        Path destination = tempDir.resolve("reference.csv");
+        assertFalse(newCache(DataSize.ofMegabytes(1)).download(BUCKET, "reference.csv", destination));
+
+        ObjectDiskCache restarted = newCache(DataSize.ofMegabytes(1));
+        assertEquals(1, restarted.stats().cachedObjects());
+        assertTrue(restarted.download(BUCKET, "reference.csv", destination));
+        restarted.clear();
+        assertEquals(0, restarted.stats().cachedBytes());
+        assertFalse(restarted.download(BUCKET, "reference.csv", destination));
+    }
+
+    @Test
+    void replacedVersionsLeaveOnlyTheCurrentFiles() throws IOException {
+        Path destination = tempDir.resolve("reference.csv");
+        ObjectDiskCache objectDiskCache = newCache(DataSize.ofMegabytes(1));
+        for (int version = 1; version <= 3; version++) {
+            put("reference.csv", "version " + version);
+            assertFalse(objectDiskCache.download(BUCKET, "reference.csv", destination));
+        }
+        assertEquals(2, cacheFileCount());
+
+        // the generations continue after a restart, a new version never lands on the files of a loaded one
+        ObjectDiskCache restarted = newCache(DataSize.ofMegabytes(1));
+        assertTrue(restarted.download(BUCKET, "reference.csv", destination));
+        put("reference.csv", "version 4");
+        assertFalse(restarted.download(BUCKET, "reference.csv", destination));
+        assertEquals(2, cacheFileCount());
+        assertTrue(newCache(DataSize.ofMegabytes(1)).download(BUCKET, "reference.csv", destination));
+        assertEquals("version 4", Files.readString(destination));
+    }
+
+    @Test
+    void codedObjectLargerThanTheCacheOnceDecodedIsNotKept() throws IOException {
+        ObjectDiskCache objectDiskCache = newCache(DataSize.ofBytes(250));
+        put("small", "x".repeat(100));
+        Path destination = tempDir.resolve("destination");
+        objectDiskCache.download(BUCKET, "small", destination);
+
+        // a few dozen bytes stored, 10000 once decoded
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzipOutputStream = new GZIPOutputStream(compressed)) {
+            gzipOutputStream.write("z".repeat(10_000).getBytes(StandardCharsets.US_ASCII));
+        }
+        s3Client.putObject(builder -> builder.bucket(BUCKET).key("coded").metadata(ObjectCodec.GZIP.recordIn(Map.of())),
+                RequestBody.fromBytes(compressed.toByteArray()));
+        assertFalse(objectDiskCache.download(BUCKET, "coded", destination));
+        assertEquals("z".repeat(10_000), Files.readString(destination));
+
+        assertEquals(100, objectDiskCache.stats().cachedBytes());
+        assertTrue(objectDiskCache.download(BUCKET, "small", destination));
+    }
+
+    @Test
+    void concurrentMissesOfOneKeyAllGetTheObject() throws Exception {
+        ObjectDiskCache objectDiskCache = newCache(DataSize.ofMegabytes(1));
+        int threads = 4;
+        ExecutorService executorService = Executors.newFixedThreadPool(threads);
+        try {
+            for (int version = 0; version < 20; version++) {
+                String content = ("version " + version + " ").repeat(1000);
+                put("shared.txt", content);
+                // every thread misses at once, the later ones replace the version the earlier ones stored
+                CyclicBarrier cyclicBarrier = new CyclicBarrier(threads);
+                List<Future<String>> downloads = new ArrayList<>();
+                for (int thread = 0; thread < threads; thread++) {
+                    Path destination = tempDir.resolve("destination-" + thread);
+                    downloads.add(executorService.submit(() -> {
+                        cyclicBarrier.await();
+                        objectDiskCache.download(BUCKET, "shared.txt", destination);
+                        return Files.readString(destination);
+                    }));
+                }
+                for (Future<String> download : downloads)
+                    assertEquals(content, download.get());
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+        assertEquals(2, cacheFileCount());
+    }
+
+    private long cacheFileCount() throws IOException {
+        try (var files = Files.list(tempDir.resolve("cache"))) {
+            return files.count();
+        }
+    }
+
+    private ObjectDiskCache newCache(DataSize maxSize) {
+        return new ObjectDiskCache(s3Client, meterRegistry, tempDir.resolve("cache"), maxSize);
+    }
+
+    private void put(String key, String content) {
+        s3Client.putObject(builder -> builder.bucket(BUCKET).key(key), RequestBody.fromString(content));
+    }
+}
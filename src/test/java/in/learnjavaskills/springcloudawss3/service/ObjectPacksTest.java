@@ -0,0 +1,161 @@
+package in.learnjavaskills.springcloudawss3.service;
+
+import in.learnjavaskills.springcloudawss3.standin.S3StandInExtension;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+import software.amazon.awssdk.services.s3.S3Client;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ObjectPacksTest
+{
+    private static final String BUCKET = "packs";
+
+    @TempDir
+    Path tempDir;
+
+    @RegisterExtension
+    final S3StandInExtension standIn = new S3StandInExtension(BUCKET);
+
+    private S3Client s3Client;
+    private StreamingMultipartUploader streamingMultipartUploader;
+    private final Random random = new Random(25);
+
+    @BeforeEach
+    void start() throws IOException {
+        s3Client = standIn.s3Client();
+        streamingMultipartUploader = new StreamingMultipartUploader(s3Client, DataSize.ofMegabytes(5), 2);
+    }
+
+    @AfterEach
+    void stop() throws IOException {
+        streamingMultipartUploader.destroy();
+    }
+
+    @Test
+    void packedFilesAreReadWithOneRequestEach() throws IOException {
+        Map<String, byte[]> contents = smallFiles("logs/", 600);
+        contents.put("logs/empty", new byte[0]);
+        ObjectPacks objectPacks = newObjectPacks(Duration.ofMinutes(5));
+
+        long requestsBefore = standIn.server().requestCount();
+        PackIngestReport report = objectPacks.pack(BUCKET, "archive", write(contents));
+        // a few packs, the index lookup and the index itself instead of 601 PUTs
+        assertEquals(601, report.fileCount());
+        assertTrue(report.packKeys().size() >= 3, "packs " + report.packKeys());
+        assertTrue(standIn.server().requestCount() - requestsBefore <= report.packKeys().size() + 2);
+
+        requestsBefore = standIn.server().requestCount();
+        for (Map.Entry<String, byte[]> content : contents.entrySet())
+            assertArrayEquals(content.getValue(), objectPacks.read(BUCKET, "archive", content.getKey()),
+                    content.getKey());
+        assertEquals(600, standIn.server().requestCount() - requestsBefore);
+
+        // a new instance finds the index on disk and only revalidates it
+        ObjectPacks restarted = newObjectPacks(Duration.ofMinutes(5));
+        requestsBefore = standIn.server().requestCount();
+        assertArrayEquals(contents.get("logs/00042"), restarted.read(BUCKET, "archive", "logs/00042"));
+        assertArrayEquals(contents.get("logs/00043"), restarted.read(BUCKET, "archive", "logs/00043"));
+        assertEquals(3, standIn.server().requestCount() - requestsBefore);
+        assertNull(restarted.read(BUCKET, "archive", "logs/missing"));
+    }
+
+    @Test
+    void packingAgainMergesTheIndex() throws IOException {
+        Map<String, byte[]> first = smallFiles("a/", 50);
+        ObjectPacks reader = newObjectPacks(Duration.ofHours(1));
+        newObjectPacks(Duration.ofMinutes(5)).pack(BUCKET, "merged", write(first));
+        assertArrayEquals(first.get("a/00001"), reader.read(BUCKET, "merged", "a/00001"));
+
+        Map<String, byte[]> second = smallFiles("b/", 50);
+        byte[] replaced = new byte[]{1, 2, 3};
+        second.put("a/00007", replaced);
+        newObjectPacks(Duration.ofMinutes(5)).pack(BUCKET, "merged", write(second));
+
+        // the reader's cached index does not know the new keys yet, a miss fetches the new index
+        assertArrayEquals(second.get("b/00003"), reader.read(BUCKET, "merged", "b/00003"));
+        assertArrayEquals(replaced, reader.read(BUCKET, "merged", "a/00007"));
+        assertArrayEquals(first.get("a/00049"), reader.read(BUCKET, "merged", "a/00049"));
+        assertNull(reader.read(BUCKET, "merged", "c/00001"));
+    }
+
+    @Test
+    void damagedPackIsDetected() throws IOException {
+        Map<String, byte[]> contents = Map.of("only", randomBytes(5000));
+        ObjectPacks objectPacks = newObjectPacks(Duration.ofMinutes(5));
+        PackIngestReport report = objectPacks.pack(BUCKET, "damaged", write(contents));
+
+        standIn.server().corruptObject(BUCKET, report.packKeys().get(0), 100);
+        IOException ioException = assertThrows(IOException.class, () -> objectPacks.read(BUCKET, "damaged", "only"));
+        assertTrue(ioException.getMessage().contains("checksum"), ioException.getMessage());
+    }
+
+    @Test
+    void indexFindsKeysByUnsignedBytes() throws IOException {
+        Path file = tempDir.resolve("test.index");
+        List<String> keys = List.of("A", "a", "a/b", "ab", "z", "é", "中");
+        try (PackIndex.Writer writer = new PackIndex.Writer(file, List.of("pack-0", "pack-1"))) {
+            for (int index = 0; index < keys.size(); index++)
+                writer.append(new PackIndex.Entry(utf8(keys.get(index)), index % 2, index * 10L, index, index));
+            assertThrows(IllegalArgumentException.class,
+                    () -> writer.append(new PackIndex.Entry(utf8("b"), 0, 0, 0, 0)));
+            writer.commit();
+        }
+
+        PackIndex packIndex = PackIndex.open(file);
+        assertEquals(List.of("pack-0", "pack-1"), packIndex.packKeys());
+        for (int index = 0; index < keys.size(); index++) {
+            PackIndex.Entry entry = packIndex.find(utf8(keys.get(index)));
+            assertEquals(keys.get(index), entry.keyString());
+            assertEquals(index * 10L, entry.offset());
+            assertEquals(index % 2, entry.pack());
+        }
+        assertNull(packIndex.find(utf8("b")));
+        assertNull(packIndex.find(utf8("")));
+    }
+
+    private ObjectPacks newObjectPacks(Duration indexMaxAge) {
+        return new ObjectPacks(s3Client, streamingMultipartUploader, tempDir.resolve("index-cache"),
+                DataSize.ofMegabytes(1), indexMaxAge);
+    }
+
+    private Map<String, byte[]> smallFiles(String prefix, int count) {
+        Map<String, byte[]> contents = new HashMap<>();
+        for (int index = 0; index < count; index++)
+            contents.put(prefix + String.format("%05d", index), randomBytes(1 + random.nextInt(10_000)));
+        return contents;
+    }
+
+    private Map<String, Path> write(Map<String, byte[]> contents) throws IOException {
+        Path directory = Files.createTempDirectory(tempDir, "files");
+        Map<String, Path> files = new HashMap<>();
+        int index = 0;
+        for (Map.Entry<String, byte[]> content : contents.entrySet())
+            files.put(content.getKey(), Files.write(directory.resolve("file-" + index++), content.getValue()));
+        return files;
+    }
+
+    private static byte[] utf8(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -3,8 +3,14 @@ package in.learnjavaskills.springcloudawss3.service;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import software.amazon.awssdk.http.SdkHttpMethod;
 
 import java.net.URL;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
 
 @SpringBootTest
 class PreSignedUrlObjectTest
@@ -46,4 +52,21 @@ class PreSignedUrlObjectTest
         URL url = preSignedUrlObject.createPreSignedUrlUsingS3PresignerForPutRequest(bucketName, key2);
         System.out.println("s3 presigner url post : " + url.toString());
     }
-}
\ No newline at end of file
+
+    @Test
+    void createPreSignedUrls()
+    {
+        Map<String, URL> urls = preSignedUrlObject.createPreSignedUrls(bucketName, List.of(key, key2), SdkHttpMethod.GET,
+                Duration.ofMinutes(30));
+        urls.forEach((objectKey, url) -> System.out.println(objectKey + " : " + url));
+        assertEquals(2, urls.size());
+    }
+
+    @Test
+    void createPreSignedUrlsForPrefix()
+    {
+        Map<String, URL> urls = preSignedUrlObject.createPreSignedUrlsForPrefix(bucketName, "", SdkHttpMethod.GET,
+                Duration.ofMinutes(30));
+        assertTrue(urls.containsKey(key));
+    }
+}
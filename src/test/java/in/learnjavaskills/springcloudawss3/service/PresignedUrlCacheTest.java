@@ -0,0 +1,78 @@
+package in.learnjavaskills.springcloudawss3.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.http.SdkHttpMethod;
+
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URL;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PresignedUrlCacheTest
+{
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void reuseUrlWhileEnoughValidityIsLeft() throws MalformedURLException
+    {
+        PresignedUrlCache presignedUrlCache = new PresignedUrlCache(meterRegistry, 100, Duration.ofMinutes(5));
+        AtomicInteger signatures = new AtomicInteger();
+        URL url = URI.create("https://learnjavaskills.s3.amazonaws.com/hat.png?X-Amz-Signature=1").toURL();
+        PresignedUrlCache.CacheKey cacheKey = new PresignedUrlCache.CacheKey("learnjavaskills", "hat.png", SdkHttpMethod.GET,
+                Duration.ofMinutes(10));
+
+        for (int i = 0; i < 10; i++) {
+            URL cached = presignedUrlCache.get(cacheKey, () -> {
+                signatures.incrementAndGet();
+                return url;
+            });
+            assertSame(url, cached);
+        }
+        assertEquals(1, signatures.get());
+        assertEquals(9, meterRegistry.get("presigned.url.cache.requests").tag("result", "hit").counter().count());
+        assertEquals(1, meterRegistry.get("presigned.url.cache.requests").tag("result", "miss").counter().count());
+    }
+
+    @Test
+    void neverCacheUrlsTooShortToReuse() throws MalformedURLException
+    {
+        PresignedUrlCache presignedUrlCache = new PresignedUrlCache(meterRegistry, 100, Duration.ofMinutes(5));
+        URL url = URI.create("https://learnjavaskills.s3.amazonaws.com/hat.png").toURL();
+        presignedUrlCache.get(new PresignedUrlCache.CacheKey("learnjavaskills", "hat.png", SdkHttpMethod.GET,
+                Duration.ofMinutes(1)), () -> url);
+        assertEquals(0, presignedUrlCache.size());
+    }
+
+    @Test
+    void bulkSigningReusesButDoesNotEvict() throws MalformedURLException
+    {
+        PresignedUrlCache presignedUrlCache = new PresignedUrlCache(meterRegistry, 3, Duration.ofMinutes(5));
+        URL hot = URI.create("https://learnjavaskills.s3.amazonaws.com/hot.png").toURL();
+        PresignedUrlCache.CacheKey hotKey = new PresignedUrlCache.CacheKey("learnjavaskills", "hot.png",
+                SdkHttpMethod.GET, Duration.ofMinutes(10));
+        presignedUrlCache.get(hotKey, () -> hot);
+
+        URL signed = URI.create("https://learnjavaskills.s3.amazonaws.com/").toURL();
+        for (int i = 0; i < 10; i++)
+            assertSame(signed, presignedUrlCache.getWithoutCaching(new PresignedUrlCache.CacheKey("learnjavaskills",
+                    "key-" + i, SdkHttpMethod.GET, Duration.ofMinutes(10)), () -> signed));
+        assertSame(hot, presignedUrlCache.getWithoutCaching(hotKey, () -> signed));
+        assertEquals(1, presignedUrlCache.size());
+    }
+
+    @Test
+    void evictOldestEntriesOverCapacity() throws MalformedURLException
+    {
+        PresignedUrlCache presignedUrlCache = new PresignedUrlCache(meterRegistry, 3, Duration.ofMinutes(5));
+        URL url = URI.create("https://learnjavaskills.s3.amazonaws.com/").toURL();
+        for (int i = 0; i < 10; i++)
+            presignedUrlCache.get(new PresignedUrlCache.CacheKey("learnjavaskills", "key-" + i, SdkHttpMethod.GET,
+                    Duration.ofMinutes(10)), () -> url);
+        assertEquals(3, presignedUrlCache.size());
+        assertEquals(7, meterRegistry.get("presigned.url.cache.evictions").tag("cause", "size").counter().count());
+    }
+}
@@ -0,0 +1,128 @@
+package in.learnjavaskills.springcloudawss3.service;
+
+import in.learnjavaskills.springcloudawss3.standin.S3StandInExtension;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.junit.jupiter.api.io.TempDir;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.core.interceptor.Context;
+import software.amazon.awssdk.core.interceptor.ExecutionAttributes;
+import software.amazon.awssdk.core.interceptor.ExecutionInterceptor;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RangedFileDownloadTest
+{
+    private static final String BUCKET = "ranged";
+    private static final int PART_SIZE = 1024;
+    private static final int PART_COUNT = 4;
+
+    @TempDir
+    Path tempDir;
+
+    @RegisterExtension
+    final S3StandInExtension standIn = new S3StandInExtension(BUCKET);
+
+    private S3Client s3Client;
+
+    @BeforeEach
+    void start() throws IOException {
+        s3Client = standIn.s3Client();
+    }
+
+    @Test
+    void downloadReplacesTheDestination() throws IOException {
+        byte[] content = randomBytes(PART_COUNT * PART_SIZE - 100);
+        s3Client.putObject(builder -> builder.bucket(BUCKET).key("object"), RequestBody.fromBytes(content));
+        Path destination = Files.writeString(tempDir.resolve("object"), "previous download, longer than nothing at all");
+
+        new RangedFileDownload(s3Client, BUCKET, "object", destination, PART_SIZE, 2, RangedFileDownload.DEFAULT_MAX_ATTEMPTS)
+                .download();
+
+        assertArrayEquals(content, Files.readAllBytes(destination));
+        assertEquals(1, fileCount());
+    }
+
+    @Test
+    void objectChangedAfterHeadFailsWithoutRetrying() throws IOException {
+        s3Client.putObject(builder -> builder.bucket(BUCKET).key("object"), RequestBody.fromBytes(randomBytes(PART_COUNT * PART_SIZE)));
+        Path destination = Files.writeString(tempDir.resolve("object"), "previous download");
+        AtomicInteger partRequests = new AtomicInteger();
+
+        // the object is overwritten between the HeadObject and the ranged GETs, no part can match its ETag
+        try (S3Client changingClient = interceptedClient(new ExecutionInterceptor() {
+            @Override
+            public void beforeExecution(Context.BeforeExecution context, ExecutionAttributes executionAttributes) {
+                if (context.request() instanceof GetObjectRequest)
+                    partRequests.incrementAndGet();
+            }
+
+            @Override
+            public void afterExecution(Context.AfterExecution context, ExecutionAttributes executionAttributes) {
+                if (context.response() instanceof HeadObjectResponse)
+                    s3Client.putObject(builder -> builder.bucket(BUCKET).key("object"), RequestBody.fromBytes(randomBytes(PART_SIZE)));
+            }
+        })) {
+            IOException failure = assertThrows(IOException.class, () -> new RangedFileDownload(changingClient, BUCKET, "object",
+                    destination, PART_SIZE, 1, RangedFileDownload.DEFAULT_MAX_ATTEMPTS).download());
+            assertEquals(412, assertInstanceOf(S3Exception.class, failure.getCause()).statusCode());
+        }
+
+        assertTrue(partRequests.get() <= PART_COUNT, partRequests + " part requests, the parts were retried");
+        assertEquals("previous download", Files.readString(destination));
+        assertEquals(1, fileCount());
+    }
+
+    @Test
+    void failedDownloadLeavesTheDestinationAsItWas() throws IOException {
+        s3Client.putObject(builder -> builder.bucket(BUCKET).key("object"), RequestBody.fromBytes(randomBytes(PART_COUNT * PART_SIZE)));
+        Path destination = Files.writeString(tempDir.resolve("object"), "previous download");
+
+        // the last part never arrives, the others are already written when the download gives up
+        try (S3Client failingClient = interceptedClient(new ExecutionInterceptor() {
+            @Override
+            public void beforeExecution(Context.BeforeExecution context, ExecutionAttributes executionAttributes) {
+                if (context.request() instanceof GetObjectRequest getObjectRequest
+                        && getObjectRequest.range().startsWith("bytes=" + (PART_COUNT - 1) * PART_SIZE))
+                    throw SdkClientException.create("connection lost");
+            }
+        })) {
+            assertThrows(IOException.class, () -> new RangedFileDownload(failingClient, BUCKET, "object", destination,
+                    PART_SIZE, 2, RangedFileDownload.DEFAULT_MAX_ATTEMPTS).download());
+        }
+
+        assertEquals("previous download", Files.readString(destination));
+        assertEquals(1, fileCount());
+    }
+
+    private long fileCount() throws IOException {
+        try (Stream<Path> files = Files.list(tempDir)) {
+            return files.count();
+        }
+    }
+
+    private S3Client interceptedClient(ExecutionInterceptor executionInterceptor) {
+        return standIn.server().s3ClientBuilder()
+                .overrideConfiguration(builder -> builder.addExecutionInterceptor(executionInterceptor))
+                .build();
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,220 @@
+package in.learnjavaskills.springcloudawss3.service;
+
+import in.learnjavaskills.springcloudawss3.standin.S3StandInExtension;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.core.interceptor.Context;
+import software.amazon.awssdk.core.interceptor.ExecutionAttributes;
+import software.amazon.awssdk.core.interceptor.ExecutionInterceptor;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResumableTransfersTest
+{
+    private static final String BUCKET = "resumable";
+    private static final int PART_SIZE = 5 * 1024 * 1024;
+
+    @TempDir
+    Path tempDir;
+
+    @RegisterExtension
+    final S3StandInExtension standIn = new S3StandInExtension(BUCKET);
+
+    private S3Client s3Client;
+    private Path journalDirectory;
+
+    @BeforeEach
+    void start() throws IOException {
+        s3Client = standIn.s3Client();
+        journalDirectory = tempDir.resolve("journal");
+    }
+
+    @Test
+    void interruptedUploadSendsOnlyMissingParts() throws IOException {
+        byte[] content = randomBytes(3 * PART_SIZE + 1234);
+        Path source = Files.write(tempDir.resolve("large.bin"), content);
+
+        // the first run dies after two parts, as a restart would cut it off
+        try (S3Client failingClient = failingClient(request -> request instanceof UploadPartRequest uploadPartRequest
+                && uploadPartRequest.partNumber() > 2)) {
+            ResumableTransfers interrupted = newResumableTransfers(failingClient);
+            assertThrows(IOException.class, () -> interrupted.upload(BUCKET, "large.bin", source));
+            interrupted.destroy();
+        }
+        assertEquals(1, standIn.server().openMultipartUploads());
+
+        ResumableTransfers resumableTransfers = newResumableTransfers(s3Client);
+        long requestsBefore = standIn.server().requestCount();
+        List<ResumableTransferReport> reports = resumableTransfers.resumeInterrupted();
+        resumableTransfers.destroy();
+
+        assertEquals(1, reports.size());
+        assertEquals(4, reports.get(0).partCount());
+        assertEquals(2, reports.get(0).resumedParts());
+        // two parts and the completion
+        assertEquals(3, standIn.server().requestCount() - requestsBefore);
+        assertEquals(0, standIn.server().openMultipartUploads());
+        assertArrayEquals(content, s3Client.getObjectAsBytes(builder -> builder.bucket(BUCKET).key("large.bin")).asByteArray());
+        assertJournalEmpty();
+    }
+
+    @Test
+    void uploadCompletedJustBeforeCrashIsNotSentAgain() throws IOException {
+        byte[] content = randomBytes(2 * PART_SIZE + 77);
+        Path source = Files.write(tempDir.resolve("completed.bin"), content);
+
+        // S3 completes the upload, the run dies before it deletes the journal
+        try (S3Client failingClient = interceptedClient(new ExecutionInterceptor() {
+            @Override
+            public void afterExecution(Context.AfterExecution context, ExecutionAttributes executionAttributes) {
+                if (context.request() instanceof CompleteMultipartUploadRequest)
+                    throw SdkClientException.create("connection lost");
+            }
+        })) {
+            ResumableTransfers interrupted = newResumableTransfers(failingClient);
+            assertThrows(SdkClientException.class, () -> interrupted.upload(BUCKET, "completed.bin", source));
+            interrupted.destroy();
+        }
+
+        ResumableTransfers resumableTransfers = newResumableTransfers(s3Client);
+        long requestsBefore = standIn.server().requestCount();
+        List<ResumableTransferReport> reports = resumableTransfers.resumeInterrupted();
+        resumableTransfers.destroy();
+
+        assertEquals(1, reports.size());
+        assertEquals(3, reports.get(0).resumedParts());
+        // the completion S3 no longer knows and the HEAD which finds the object, no part again
+        assertEquals(2, standIn.server().requestCount() - requestsBefore);
+        assertArrayEquals(content, s3Client.getObjectAsBytes(builder -> builder.bucket(BUCKET).key("completed.bin")).asByteArray());
+        assertJournalEmpty();
+    }
+
+    @Test
+    void interruptedDownloadFetchesOnlyMissingParts() throws IOException {
+        byte[] content = randomBytes(3 * PART_SIZE + 99);
+        s3Client.putObject(builder -> builder.bucket(BUCKET).key("large.bin"), RequestBody.fromBytes(content));
+        Path destination = tempDir.resolve("large.bin");
+
+        interruptDownload(destination);
+        assertFalse(Files.exists(destination));
+
+        ResumableTransfers resumableTransfers = newResumableTransfers(s3Client);
+        long requestsBefore = standIn.server().requestCount();
+        ResumableTransferReport report = resumableTransfers.download(BUCKET, "large.bin", destination);
+        resumableTransfers.destroy();
+
+        assertEquals(2, report.resumedParts());
+        assertEquals(2, report.transferredParts());
+        assertEquals(2, standIn.server().requestCount() - requestsBefore);
+        assertArrayEquals(content, Files.readAllBytes(destination));
+        assertFalse(Files.exists(tempDir.resolve("large.bin.partial")));
+        assertJournalEmpty();
+    }
+
+    @Test
+    void downloadStartsOverWhenObjectChanged() throws IOException {
+        s3Client.putObject(builder -> builder.bucket(BUCKET).key("large.bin"),
+                RequestBody.fromBytes(randomBytes(3 * PART_SIZE + 99)));
+        Path destination = tempDir.resolve("large.bin");
+        interruptDownload(destination);
+
+        byte[] replaced = randomBytes(2 * PART_SIZE + 5);
+        replaced[0]++;
+        s3Client.putObject(builder -> builder.bucket(BUCKET).key("large.bin"), RequestBody.fromBytes(replaced));
+
+        ResumableTransfers resumableTransfers = newResumableTransfers(s3Client);
+        ResumableTransferReport report = resumableTransfers.resumeInterrupted().get(0);
+        resumableTransfers.destroy();
+
+        assertEquals(0, report.resumedParts());
+        assertEquals(3, report.partCount());
+        assertArrayEquals(replaced, Files.readAllBytes(destination));
+        assertJournalEmpty();
+    }
+
+    @Test
+    void recordCutShortByCrashIsDropped() throws IOException {
+        Path journalPath = tempDir.resolve("torn.journal");
+        TransferJournal.Header header = new TransferJournal.Header(TransferProgressEvent.Direction.UPLOAD, BUCKET,
+                "large.bin", tempDir.resolve("large.bin"), 3L * PART_SIZE, 42, "", PART_SIZE, "upload-id");
+        try (TransferJournal transferJournal = TransferJournal.create(journalPath, header)) {
+            transferJournal.append(new TransferJournal.Part(1, "\"etag-1\"", "AAAAAA=="));
+            transferJournal.append(new TransferJournal.Part(3, "\"etag-3\"", "AAAAAB=="));
+        }
+        try (FileChannel fileChannel = FileChannel.open(journalPath, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            fileChannel.write(ByteBuffer.allocate(6).putInt(2).putShort((short) 8).flip());
+        }
+
+        try (TransferJournal transferJournal = TransferJournal.open(journalPath)) {
+            assertEquals(header, transferJournal.header());
+            assertEquals(List.of(1, 3), transferJournal.parts().keySet().stream().sorted().toList());
+            transferJournal.append(new TransferJournal.Part(2, "\"etag-2\"", "AAAAAC=="));
+        }
+        try (TransferJournal transferJournal = TransferJournal.open(journalPath)) {
+            assertEquals("\"etag-2\"", transferJournal.parts().get(2).eTag());
+            assertEquals(3, transferJournal.parts().size());
+        }
+    }
+
+    // the first run dies after two of the four parts
+    private void interruptDownload(Path destination) throws IOException {
+        try (S3Client failingClient = failingClient(request -> request instanceof GetObjectRequest getObjectRequest
+                && getObjectRequest.range() != null && !getObjectRequest.range().startsWith("bytes=0-")
+                && !getObjectRequest.range().startsWith("bytes=" + PART_SIZE + "-"))) {
+            ResumableTransfers interrupted = newResumableTransfers(failingClient);
+            assertThrows(IOException.class, () -> interrupted.download(BUCKET, "large.bin", destination));
+            interrupted.destroy();
+        }
+    }
+
+    private ResumableTransfers newResumableTransfers(S3Client client) {
+        return new ResumableTransfers(client, journalDirectory, DataSize.ofBytes(PART_SIZE), 1);
+    }
+
+    private S3Client failingClient(Predicate<Object> failing) {
+        return interceptedClient(new ExecutionInterceptor() {
+            @Override
+            public void beforeExecution(Context.BeforeExecution context, ExecutionAttributes executionAttributes) {
+                if (failing.test(context.request()))
+                    throw SdkClientException.create("connection lost");
+            }
+        });
+    }
+
+    private S3Client interceptedClient(ExecutionInterceptor executionInterceptor) {
+        return standIn.server().s3ClientBuilder()
+                .overrideConfiguration(builder -> builder.addExecutionInterceptor(executionInterceptor))
+                .build();
+    }
+
+    private void assertJournalEmpty() throws IOException {
+        try (var journals = Files.list(journalDirectory)) {
+            assertEquals(0, journals.count());
+        }
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random(24).nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,103 @@
+package in.learnjavaskills.springcloudawss3.service;
+
+import in.learnjavaskills.springcloudawss3.standin.S3StandInExtension;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.NonWritableChannelException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class S3SeekableByteChannelTest
+{
+    private static final String BUCKET = "seekable";
+    private static final String KEY = "data/table.parquet";
+    private static final int BLOCK_SIZE = 64 * 1024;
+
+    @RegisterExtension
+    final S3StandInExtension standIn = new S3StandInExtension(BUCKET);
+
+    private S3Client s3Client;
+    private byte[] content;
+
+    @BeforeEach
+    void start() throws IOException {
+        s3Client = standIn.s3Client();
+        content = new byte[10 * BLOCK_SIZE + 1234];
+        new Random(21).nextBytes(content);
+        s3Client.putObject(builder -> builder.bucket(BUCKET).key(KEY), RequestBody.fromBytes(content));
+    }
+
+    @Test
+    void randomReadsMatchTheObject() throws IOException {
+        Random random = new Random(7);
+        try (S3SeekableByteChannel channel = new S3SeekableByteChannel(s3Client, BUCKET, KEY, BLOCK_SIZE, 4, 2)) {
+            assertEquals(content.length, channel.size());
+            for (int read = 0; read < 200; read++) {
+                int position = random.nextInt(content.length);
+                ByteBuffer buffer = ByteBuffer.allocate(1 + random.nextInt(3 * BLOCK_SIZE));
+                channel.position(position);
+                int length = channel.read(buffer);
+                assertEquals(Math.min(buffer.capacity(), content.length - position), length);
+                assertEquals(position + length, channel.position());
+                assertArrayEquals(Arrays.copyOfRange(content, position, position + length),
+                        Arrays.copyOf(buffer.array(), length), "read at " + position);
+            }
+            channel.position(content.length + 10L);
+            assertEquals(-1, channel.read(ByteBuffer.allocate(1)));
+            assertThrows(NonWritableChannelException.class, () -> channel.write(ByteBuffer.allocate(1)));
+        }
+    }
+
+    @Test
+    void footerIsReadWithOneRequest() throws IOException {
+        try (S3SeekableByteChannel channel = new S3SeekableByteChannel(s3Client, BUCKET, KEY, BLOCK_SIZE, 8, 4)) {
+            // a Parquet reader reads the footer length, then the footer just before it
+            ByteBuffer tail = ByteBuffer.allocate(8);
+            channel.position(channel.size() - 8).read(tail);
+            ByteBuffer footer = ByteBuffer.allocate(1000);
+            channel.position(channel.size() - 8 - 1000).read(footer);
+
+            assertArrayEquals(Arrays.copyOfRange(content, content.length - 8, content.length), tail.array());
+            assertArrayEquals(Arrays.copyOfRange(content, content.length - 1008, content.length - 8), footer.array());
+            assertEquals(1, channel.rangeRequestCount());
+        }
+    }
+
+    @Test
+    void sequentialReadsFetchAhead() throws IOException {
+        try (S3SeekableByteChannel channel = new S3SeekableByteChannel(s3Client, BUCKET, KEY, BLOCK_SIZE, 8, 4)) {
+            byte[] read = new byte[content.length];
+            ByteBuffer buffer = ByteBuffer.allocate(8 * 1024);
+            int total = 0;
+            for (int length; (length = channel.read(buffer.clear())) != -1; total += length)
+                System.arraycopy(buffer.array(), 0, read, total, length);
+
+            assertArrayEquals(content, read);
+            // 11 blocks in runs of 1, 2, 4, 4
+            assertEquals(4, channel.rangeRequestCount());
+        }
+    }
+
+    @Test
+    void overwrittenObjectFailsTheRead() throws IOException {
+        try (S3SeekableByteChannel channel = new S3SeekableByteChannel(s3Client, BUCKET, KEY, BLOCK_SIZE, 4, 2)) {
+            channel.read(ByteBuffer.allocate(10));
+            s3Client.putObject(builder -> builder.bucket(BUCKET).key(KEY), RequestBody.fromString("replaced"));
+
+            // the cached block is still served, a new one must come from the version the channel opened
+            assertEquals(10, channel.position(0).read(ByteBuffer.allocate(10)));
+            S3Exception s3Exception = assertThrows(S3Exception.class,
+                    () -> channel.position(5L * BLOCK_SIZE).read(ByteBuffer.allocate(10)));
+            assertEquals(412, s3Exception.statusCode());
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package in.learnjavaskills.springcloudawss3.service;
+
+import in.learnjavaskills.springcloudawss3.standin.S3StandInExtension;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.util.unit.DataSize;
+import software.amazon.awssdk.core.ResponseBytes;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StreamingMultipartUploaderTest
+{
+    private static final String BUCKET = "streaming-upload";
+    private static final int PART_SIZE = 5 * 1024 * 1024;
+
+    @RegisterExtension
+    final S3StandInExtension standIn = new S3StandInExtension(BUCKET);
+
+    private S3Client s3Client;
+    private StreamingMultipartUploader streamingMultipartUploader;
+
+    @BeforeEach
+    void start() throws IOException {
+        s3Client = standIn.s3Client();
+        streamingMultipartUploader = new StreamingMultipartUploader(s3Client, DataSize.ofBytes(PART_SIZE), 2);
+    }
+
+    @AfterEach
+    void stop() throws IOException {
+        streamingMultipartUploader.destroy();
+    }
+
+    @Test
+    void streamOfUnknownLengthBecomesMultipartUpload() throws IOException {
+        byte[] content = randomBytes(4 * PART_SIZE + 12345);
+
+        StreamingUploadResult streamingUploadResult = streamingMultipartUploader.upload(BUCKET, "export.csv", "text/csv",
+                Map.of("source", "export"), new TrickleInputStream(content));
+
+        assertEquals(content.length, streamingUploadResult.size());
+        assertEquals(5, streamingUploadResult.partCount());
+        assertTrue(streamingUploadResult.eTag().endsWith("-5\""), streamingUploadResult.eTag());
+        ResponseBytes<GetObjectResponse> stored = s3Client.getObjectAsBytes(builder -> builder.bucket(BUCKET).key("export.csv"));
+        assertArrayEquals(content, stored.asByteArray());
+        assertEquals("text/csv", stored.response().contentType());
+        assertEquals("export", stored.response().metadata().get("source"));
+        // backpressure: the producer never got ahead of the pool
+        assertTrue(streamingMultipartUploader.allocatedBuffers() <= 2);
+    }
+
+    @Test
+    void shortStreamIsSinglePut() throws IOException {
+        byte[] content = randomBytes(1000);
+
+        StreamingUploadResult streamingUploadResult = streamingMultipartUploader.upload(BUCKET, "small.bin",
+                new ByteArrayInputStream(content));
+
+        assertEquals(1, streamingUploadResult.partCount());
+        assertFalse(streamingUploadResult.eTag().contains("-"));
+        assertArrayEquals(content, s3Client.getObjectAsBytes(builder -> builder.bucket(BUCKET).key("small.bin")).asByteArray());
+        assertEquals(0, standIn.server().openMultipartUploads());
+    }
+
+    @Test
+    void streamEndingOnPartBoundary() throws IOException {
+        byte[] content = randomBytes(2 * PART_SIZE);
+
+        StreamingUploadResult streamingUploadResult = streamingMultipartUploader.upload(BUCKET, "boundary.bin",
+                new TrickleInputStream(content));
+
+        assertEquals(2, streamingUploadResult.partCount());
+        assertArrayEquals(content, s3Client.getObjectAsBytes(builder -> builder.bucket(BUCKET).key("boundary.bin")).asByteArray());
+    }
+
+    @Test
+    void failingStreamAbortsUpload() {
+        InputStream failingStream = new SequenceInputStream(new ByteArrayInputStream(randomBytes(3 * PART_SIZE)),
+                new InputStream() {
+                    @Override
+                    public int read() throws IOException {
+                        throw new IOException("client went away");
+                    }
+                });
+
+        IOException ioException = assertThrows(IOException.class,
+                () -> streamingMultipartUploader.upload(BUCKET, "broken.bin", failingStream));
+
+        assertEquals("client went away", ioException.getMessage());
+        assertEquals(0, standIn.server().openMultipartUploads());
+        assertThrows(NoSuchKeyException.class, () -> s3Client.headObject(builder -> builder.bucket(BUCKET).key("broken.bin")));
+        // every buffer went back to the pool, the next upload does not block
+        assertEquals(1, assertDoesNotThrow(() -> streamingMultipartUploader.upload(BUCKET, "next.bin",
+                new ByteArrayInputStream(new byte[10]))).partCount());
+    }
+
+    @Test
+    void onlyUploadsWithABufferWaitAreTurnedAway() throws Exception {
+        StreamingMultipartUploader singleBuffer = new StreamingMultipartUploader(s3Client, DataSize.ofBytes(PART_SIZE),
+                1, 1);
+        ExecutorService producers = Executors.newFixedThreadPool(2);
+        CountDownLatch slowProducerReading = new CountDownLatch(1);
+        CountDownLatch slowProducerDone = new CountDownLatch(1);
+        try {
+            // holds the only buffer until it is let go
+            InputStream slowStream = new SequenceInputStream(new ByteArrayInputStream(new byte[10]), new InputStream() {
+                @Override
+                public int read() throws IOException {
+                    slowProducerReading.countDown();
+                    try {
+                        slowProducerDone.await();
+                    } catch (InterruptedException interruptedException) {
+                        throw new IOException(interruptedException);
+                    }
+                    return -1;
+                }
+            });
+            Future<StreamingUploadResult> slow = producers.submit(() -> singleBuffer.upload(BUCKET, "slow.bin", slowStream));
+            assertTrue(slowProducerReading.await(10, TimeUnit.SECONDS));
+
+            assertThrows(UploadCapacityExceededException.class, () -> singleBuffer.upload(BUCKET, "turned-away.bin",
+                    null, Map.of(), new ByteArrayInputStream(new byte[10]), Duration.ofMillis(100)));
+            Future<StreamingUploadResult> waiting = producers.submit(() -> singleBuffer.upload(BUCKET, "waiting.bin",
+                    new ByteArrayInputStream(new byte[10])));
+            assertThrows(TimeoutException.class, () -> waiting.get(300, TimeUnit.MILLISECONDS));
+
+            slowProducerDone.countDown();
+            assertEquals(10, slow.get(10, TimeUnit.SECONDS).size());
+            assertEquals(10, waiting.get(10, TimeUnit.SECONDS).size());
+        } finally {
+            slowProducerDone.countDown();
+            producers.shutdownNow();
+            singleBuffer.destroy();
+        }
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+
+    /**
+     * Hands out a few KB per read like a socket does, and has no known length.
+     */
+    private static final class TrickleInputStream extends InputStream
+    {
+        private final byte[] content;
+        private int position;
+
+        private TrickleInputStream(byte[] content) {
+            this.content = content;
+        }
+
+        @Override
+        public int read() {
+            return position < content.length ? content[position++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (position >= content.length)
+                return -1;
+            int count = Math.min(Math.min(length, 7919), content.length - position);
+            System.arraycopy(content, position, bytes, offset, count);
+            position += count;
+            return count;
+        }
+    }
+}
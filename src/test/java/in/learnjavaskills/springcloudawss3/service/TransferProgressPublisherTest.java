@@ -0,0 +1,134 @@
+package in.learnjavaskills.springcloudawss3.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.core.SdkResponse;
+import software.amazon.awssdk.transfer.s3.model.CompletedObjectTransfer;
+import software.amazon.awssdk.transfer.s3.model.TransferObjectRequest;
+import software.amazon.awssdk.transfer.s3.progress.TransferListener;
+import software.amazon.awssdk.transfer.s3.progress.TransferProgressSnapshot;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalDouble;
+import java.util.OptionalLong;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TransferProgressPublisherTest
+{
+    private static final long TOTAL_BYTES = 1000;
+
+    @Test
+    void throttleProgressEventsAndRecordMetrics() throws InterruptedException
+    {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        TransferProgressPublisher transferProgressPublisher = new TransferProgressPublisher(meterRegistry);
+        List<TransferProgressEvent> events = new CopyOnWriteArrayList<>();
+        transferProgressPublisher.subscribe(events::add);
+
+        TransferListener transferListener = transferProgressPublisher.listenerFor(TransferProgressEvent.Direction.UPLOAD,
+                "learnjavaskills", "robot.gif");
+        transferListener.transferInitiated(context(0));
+        assertEquals(1, meterRegistry.get("s3.transfer.active").tag("direction", "upload").gauge().value());
+        // a burst of callbacks inside one publish interval produces no extra event
+        for (long bytes = 100; bytes < TOTAL_BYTES; bytes += 100) {
+            long transferred = bytes;
+            transferListener.bytesTransferred(context(transferred));
+        }
+        transferListener.transferComplete(context(TOTAL_BYTES));
+
+        // events are delivered on the dispatch thread
+        for (int i = 0; i < 50 && events.size() < 2; i++)
+            TimeUnit.MILLISECONDS.sleep(20);
+        transferProgressPublisher.destroy();
+        assertEquals(2, events.size());
+        TransferProgressEvent completed = events.get(1);
+        assertEquals(TransferProgressEvent.Status.COMPLETED, completed.status());
+        assertEquals(TOTAL_BYTES, completed.bytesTransferred());
+        assertEquals(TOTAL_BYTES, meterRegistry.get("s3.transfer.bytes").counter().count());
+        assertEquals(0, meterRegistry.get("s3.transfer.active").tag("direction", "upload").gauge().value());
+        assertEquals(1, meterRegistry.get("s3.transfer.duration").tag("outcome", "completed").timer().count());
+    }
+
+    @Test
+    void slowSubscriberHoldsBackNobodyAndIsDropped() throws InterruptedException
+    {
+        TransferProgressPublisher transferProgressPublisher = new TransferProgressPublisher(new SimpleMeterRegistry());
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch dropped = new CountDownLatch(1);
+        transferProgressPublisher.subscribe(transferProgressEvent -> {
+            try {
+                release.await();
+            } catch (InterruptedException interruptedException) {
+                Thread.currentThread().interrupt();
+            }
+        }, dropped::countDown);
+        List<TransferProgressEvent> events = new CopyOnWriteArrayList<>();
+        transferProgressPublisher.subscribe(events::add);
+
+        // the stuck subscriber holds one event, the others of every new transfer pile up in its queue
+        int transfers = TransferProgressPublisher.MAX_PENDING_TRANSFERS + 2;
+        for (int transfer = 0; transfer < transfers; transfer++)
+            transferProgressPublisher.listenerFor(TransferProgressEvent.Direction.DOWNLOAD, "learnjavaskills",
+                    "file-" + transfer).transferInitiated(context(0));
+
+        assertTrue(dropped.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 250 && events.size() < transfers; i++)
+            TimeUnit.MILLISECONDS.sleep(20);
+        release.countDown();
+        transferProgressPublisher.destroy();
+        assertEquals(transfers, events.size());
+    }
+
+    private static TransferListener.Context.TransferComplete context(long transferred) {
+        return new TransferListener.Context.TransferComplete() {
+            @Override
+            public CompletedObjectTransfer completedTransfer() {
+                return null;
+            }
+
+            @Override
+            public TransferObjectRequest request() {
+                return null;
+            }
+
+            @Override
+            public TransferProgressSnapshot progressSnapshot() {
+                return snapshot(transferred);
+            }
+        };
+    }
+
+    private static TransferProgressSnapshot snapshot(long transferred) {
+        return new TransferProgressSnapshot() {
+            @Override
+            public long transferredBytes() {
+                return transferred;
+            }
+
+            @Override
+            public OptionalLong totalBytes() {
+                return OptionalLong.of(TOTAL_BYTES);
+            }
+
+            @Override
+            public Optional<SdkResponse> sdkResponse() {
+                return Optional.empty();
+            }
+
+            @Override
+            public OptionalDouble ratioTransferred() {
+                return OptionalDouble.of(transferred / (double) TOTAL_BYTES);
+            }
+
+            @Override
+            public OptionalLong remainingBytes() {
+                return OptionalLong.of(TOTAL_BYTES - transferred);
+            }
+        };
+    }
+}
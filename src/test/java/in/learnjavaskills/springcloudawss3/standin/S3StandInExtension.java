@@ -0,0 +1,60 @@
+package in.learnjavaskills.springcloudawss3.standin;
+
+import org.junit.jupiter.api.extension.AfterEachCallback;
+import org.junit.jupiter.api.extension.BeforeEachCallback;
+import org.junit.jupiter.api.extension.ExtensionContext;
+import software.amazon.awssdk.services.s3.S3Client;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * JUnit extension giving every test a fresh {@link S3StandInServer} with the named buckets created and an S3Client
+ * pointed at it. Register it on an instance field:
+ * <pre>
+ * &#64;RegisterExtension
+ * final S3StandInExtension standIn = new S3StandInExtension("bucket");
+ * </pre>
+ * The server starts before the {@code @BeforeEach} methods of the test class and is closed after its {@code @AfterEach}
+ * methods, so those can build and destroy their own collaborators against it.
+ */
+public class S3StandInExtension implements BeforeEachCallback, AfterEachCallback
+{
+    private final List<String> bucketNames;
+    private S3StandInServer server;
+    private S3Client s3Client;
+
+    public S3StandInExtension(String... bucketNames) {
+        this.bucketNames = List.of(bucketNames);
+    }
+
+    @Override
+    public void beforeEach(ExtensionContext extensionContext) throws IOException {
+        server = S3StandInServer.start();
+        bucketNames.forEach(server::createBucket);
+        s3Client = server.newS3Client();
+    }
+
+    @Override
+    public void afterEach(ExtensionContext extensionContext) throws IOException {
+        try {
+            s3Client.close();
+        } finally {
+            server.close();
+        }
+    }
+
+    /**
+     * @return the server of the running test
+     */
+    public S3StandInServer server() {
+        return server;
+    }
+
+    /**
+     * @return a client of the running test's server, closed with it
+     */
+    public S3Client s3Client() {
+        return s3Client;
+    }
+}
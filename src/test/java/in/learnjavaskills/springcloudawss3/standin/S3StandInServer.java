@@ -0,0 +1,1458 @@
+package in.learnjavaskills.springcloudawss3.standin;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.SAXException;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3ClientBuilder;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Embedded, in-process S3-compatible HTTP server for offline tests and benchmarks. It speaks the path-style REST API
+ * used by the SDK clients: buckets and versioning, PUT/GET/HEAD/DELETE of objects with ranges and conditional headers,
+ * multipart upload, ListObjectsV2, ListObjectVersions, DeleteObjects, object tagging and CRC32C checksums, which are
+ * verified on upload and returned by GET, HEAD and GetObjectAttributes.
+ * Object bodies are kept in temporary files, so large objects do not sit on the heap. Signatures are not verified.
+ *
+ * For load tests the server can add per-request latency, cap the bandwidth of request and response bodies and answer
+ * with 503 SlowDown, see {@link #setLatency}, {@link #setBandwidth}, {@link #setSlowDownRate} and {@link #slowDownNext}.
+ * Spring beans are pointed at it with {@link #springProperties()}.
+ */
+public class S3StandInServer implements AutoCloseable
+{
+    public static final String ACCESS_KEY = "stand-in-access-key";
+    public static final String SECRET_KEY = "stand-in-secret-key";
+    public static final Region REGION = Region.AP_SOUTH_1;
+
+    private static final String NULL_VERSION = "null";
+    private static final DateTimeFormatter HTTP_DATE = DateTimeFormatter.RFC_1123_DATE_TIME.withZone(ZoneOffset.UTC);
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d*)-(\\d*)");
+
+    private final HttpServer httpServer;
+    private final ExecutorService executorService;
+    private final Path storageDirectory;
+    private final Map<String, StandInBucket> buckets = new ConcurrentHashMap<>();
+    private final Map<String, MultipartUpload> multipartUploads = new ConcurrentHashMap<>();
+    private final AtomicLong ids = new AtomicLong();
+
+    // fault and load injection, changeable while the server runs
+    private volatile long latencyNanos;
+    private volatile long latencyJitterNanos;
+    private volatile double slowDownRate;
+    private final AtomicInteger pendingSlowDowns = new AtomicInteger();
+    private final BandwidthLimiter uploadBandwidth = new BandwidthLimiter();
+    private final BandwidthLimiter downloadBandwidth = new BandwidthLimiter();
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong slowDownCount = new AtomicLong();
+
+    private S3StandInServer(HttpServer httpServer, ExecutorService executorService, Path storageDirectory) {
+        this.httpServer = httpServer;
+        this.executorService = executorService;
+        this.storageDirectory = storageDirectory;
+    }
+
+    /**
+     * start a server on a free local port.
+     * @return running server, close it to stop it and delete its storage
+     */
+    public static S3StandInServer start() throws IOException {
+        HttpServer httpServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 256);
+        ExecutorService executorService = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "s3-stand-in");
+            thread.setDaemon(true);
+            return thread;
+        });
+        S3StandInServer s3StandInServer = new S3StandInServer(httpServer, executorService,
+                Files.createTempDirectory("s3-stand-in"));
+        httpServer.createContext("/", s3StandInServer::handle);
+        httpServer.setExecutor(executorService);
+        httpServer.start();
+        return s3StandInServer;
+    }
+
+    /**
+     * @return base URI to use as endpoint override, with path style access
+     */
+    public URI endpoint() {
+        return URI.create("http://127.0.0.1:" + httpServer.getAddress().getPort());
+    }
+
+    /**
+     * Properties which point the spring cloud aws S3Client, S3AsyncClient, S3TransferManager, S3Template and
+     * S3Presigner beans at this server, for example from a {@code @DynamicPropertySource} method.
+     * @return property name to value
+     */
+    public Map<String, String> springProperties() {
+        return Map.of(
+                "spring.cloud.aws.s3.endpoint", endpoint().toString(),
+                "spring.cloud.aws.s3.path-style-access-enabled", "true",
+                "spring.cloud.aws.credentials.access-key", ACCESS_KEY,
+                "spring.cloud.aws.credentials.secret-key", SECRET_KEY,
+                "spring.cloud.aws.region.static", REGION.id());
+    }
+
+    /**
+     * @return a synchronous client pointing at this server
+     */
+    public S3Client newS3Client() {
+        return s3ClientBuilder().build();
+    }
+
+    /**
+     * @return builder of a synchronous client pointing at this server, for tests which customize the client
+     */
+    public S3ClientBuilder s3ClientBuilder() {
+        return S3Client.builder()
+                .endpointOverride(endpoint())
+                .forcePathStyle(true)
+                .region(REGION)
+                .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create(ACCESS_KEY, SECRET_KEY)));
+    }
+
+    /**
+     * @return a CRT based asynchronous client pointing at this server, as used by S3TransferManager
+     */
+    public S3AsyncClient newS3CrtAsyncClient() {
+        return S3AsyncClient.crtBuilder()
+                .endpointOverride(endpoint())
+                .forcePathStyle(true)
+                .region(REGION)
+                .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create(ACCESS_KEY, SECRET_KEY)))
+                .build();
+    }
+
+    /**
+     * create a bucket without going through HTTP.
+     */
+    public void createBucket(String bucketName) {
+        buckets.putIfAbsent(bucketName, new StandInBucket());
+    }
+
+    /**
+     * Delay every request before it is handled, i.e. time to first byte.
+     * @param latency fixed delay, zero to disable
+     * @param jitter uniformly distributed extra delay between zero and jitter
+     */
+    public void setLatency(Duration latency, Duration jitter) {
+        this.latencyNanos = latency.toNanos();
+        this.latencyJitterNanos = jitter.toNanos();
+    }
+
+    /**
+     * Cap the rate of request bodies (uploads) and response bodies (downloads), each direction shared by all connections.
+     * @param bytesPerSecond cap per direction, zero for unlimited
+     */
+    public void setBandwidth(long bytesPerSecond) {
+        uploadBandwidth.setBytesPerSecond(bytesPerSecond);
+        downloadBandwidth.setBytesPerSecond(bytesPerSecond);
+    }
+
+    /**
+     * Answer a random share of the requests with 503 SlowDown.
+     * @param rate probability between 0 and 1
+     */
+    public void setSlowDownRate(double rate) {
+        if (rate < 0 || rate > 1)
+            throw new IllegalArgumentException("rate must be between 0 and 1");
+        this.slowDownRate = rate;
+    }
+
+    /**
+     * Answer the next requests with 503 SlowDown, on top of {@link #setSlowDownRate}.
+     * @param requests number of requests to reject
+     */
+    public void slowDownNext(int requests) {
+        pendingSlowDowns.addAndGet(requests);
+    }
+
+    /**
+     * @return requests received since start, including the rejected ones
+     */
+    public long requestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * @return requests answered with 503 SlowDown
+     */
+    public long slowDownCount() {
+        return slowDownCount.get();
+    }
+
+    /**
+     * Flip one stored byte of the current version of an object, as bit rot would, without changing its ETag or
+     * checksum.
+     * @param offset position of the byte in the object
+     */
+    public void corruptObject(String bucketName, String key, long offset) throws IOException {
+        StandInBucket standInBucket = bucket(bucketName);
+        synchronized (standInBucket) {
+            StoredObject storedObject = standInBucket.find(key, null);
+            if (storedObject == null || storedObject.deleteMarker)
+                throw new IllegalArgumentException("no object " + key + " in " + bucketName);
+            try (FileChannel fileChannel = FileChannel.open(storedObject.path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                ByteBuffer single = ByteBuffer.allocate(1);
+                fileChannel.read(single, offset);
+                single.put(0, (byte) (single.get(0) ^ 0x01));
+                fileChannel.write(single.rewind(), offset);
+            }
+        }
+    }
+
+    /**
+     * @return multipart uploads created but neither completed nor aborted
+     */
+    public int openMultipartUploads() {
+        return multipartUploads.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        httpServer.stop(0);
+        executorService.shutdownNow();
+        try (var paths = Files.walk(storageDirectory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            requestCount.incrementAndGet();
+            exchange.setStreams(uploadBandwidth.limit(exchange.getRequestBody()),
+                    downloadBandwidth.limit(exchange.getResponseBody()));
+            Request request = Request.of(exchange);
+            try {
+                delay();
+                if (shouldSlowDown()) {
+                    slowDownCount.incrementAndGet();
+                    drain(exchange);
+                    throw new S3Error(503, "SlowDown", "Please reduce your request rate.");
+                }
+                route(request);
+            } catch (S3Error s3Error) {
+                sendError(exchange, s3Error);
+            } catch (RuntimeException | IOException exception) {
+                sendError(exchange, new S3Error(500, "InternalError", String.valueOf(exception.getMessage())));
+            }
+        }
+    }
+
+    private void delay() {
+        long delayNanos = latencyNanos;
+        if (latencyJitterNanos > 0)
+            delayNanos += ThreadLocalRandom.current().nextLong(latencyJitterNanos);
+        if (delayNanos > 0)
+            LockSupport.parkNanos(delayNanos);
+    }
+
+    private boolean shouldSlowDown() {
+        if (pendingSlowDowns.get() > 0 && pendingSlowDowns.getAndDecrement() > 0)
+            return true;
+        return slowDownRate > 0 && ThreadLocalRandom.current().nextDouble() < slowDownRate;
+    }
+
+    private void route(Request request) throws IOException {
+        String method = request.exchange.getRequestMethod();
+        if (request.bucketName.isEmpty())
+            throw new S3Error(405, "MethodNotAllowed", "service level operations are not supported");
+        if (request.key.isEmpty()) {
+            routeBucket(request, method);
+            return;
+        }
+        if (request.query.containsKey("tagging")) {
+            switch (method) {
+                case "PUT" -> putObjectTagging(request);
+                case "GET" -> getObjectTagging(request);
+                case "DELETE" -> deleteObjectTagging(request);
+                default -> throw new S3Error(405, "MethodNotAllowed", method + " on tagging is not supported");
+            }
+            return;
+        }
+        switch (method) {
+            case "PUT" -> {
+                if (request.query.containsKey("uploadId"))
+                    uploadPart(request);
+                else
+                    putObject(request);
+            }
+            case "GET" -> {
+                if (request.query.containsKey("attributes"))
+                    getObjectAttributes(request);
+                else
+                    getObject(request, false);
+            }
+            case "HEAD" -> getObject(request, true);
+            case "POST" -> {
+                if (request.query.containsKey("uploads"))
+                    createMultipartUpload(request);
+                else if (request.query.containsKey("uploadId"))
+                    completeMultipartUpload(request);
+                else
+                    throw new S3Error(405, "MethodNotAllowed", "POST on an object is not supported");
+            }
+            case "DELETE" -> {
+                if (request.query.containsKey("uploadId"))
+                    abortMultipartUpload(request);
+                else
+                    deleteObject(request);
+            }
+            default -> throw new S3Error(405, "MethodNotAllowed", method + " is not supported");
+        }
+    }
+
+    private void routeBucket(Request request, String method) throws IOException {
+        switch (method) {
+            case "PUT" -> {
+                if (request.query.containsKey("versioning"))
+                    putBucketVersioning(request);
+                else {
+                    createBucket(request.bucketName);
+                    drain(request.exchange);
+                    sendEmpty(request.exchange, 200);
+                }
+            }
+            case "HEAD" -> {
+                bucket(request.bucketName);
+                sendEmpty(request.exchange, 200);
+            }
+            case "GET" -> {
+                if (request.query.containsKey("versioning"))
+                    getBucketVersioning(request);
+                else if (request.query.containsKey("versions"))
+                    listObjectVersions(request);
+                else if ("2".equals(request.query.get("list-type")))
+                    listObjectsV2(request);
+                else
+                    throw new S3Error(501, "NotImplemented", "only ListObjectsV2 listings are supported");
+            }
+            case "POST" -> {
+                if (request.query.containsKey("delete"))
+                    deleteObjects(request);
+                else
+                    throw new S3Error(405, "MethodNotAllowed", "POST on a bucket is not supported");
+            }
+            case "DELETE" -> deleteBucket(request);
+            default -> throw new S3Error(405, "MethodNotAllowed", method + " on a bucket is not supported");
+        }
+    }
+
+    // ---------------------------------------------------------------- buckets
+
+    private StandInBucket bucket(String bucketName) {
+        StandInBucket standInBucket = buckets.get(bucketName);
+        if (standInBucket == null)
+            throw new S3Error(404, "NoSuchBucket", "The specified bucket does not exist");
+        return standInBucket;
+    }
+
+    private void deleteBucket(Request request) throws IOException {
+        StandInBucket standInBucket = bucket(request.bucketName);
+        synchronized (standInBucket) {
+            if (!standInBucket.objects.isEmpty())
+                throw new S3Error(409, "BucketNotEmpty", "The bucket you tried to delete is not empty");
+            buckets.remove(request.bucketName);
+        }
+        sendEmpty(request.exchange, 204);
+    }
+
+    private void putBucketVersioning(Request request) throws IOException {
+        StandInBucket standInBucket = bucket(request.bucketName);
+        Element versioningConfiguration = parseXml(request.body()).getDocumentElement();
+        String status = childText(versioningConfiguration, "Status");
+        if (!"Enabled".equals(status) && !"Suspended".equals(status))
+            throw new S3Error(400, "MalformedXML", "versioning status must be Enabled or Suspended");
+        standInBucket.versioning = status;
+        sendEmpty(request.exchange, 200);
+    }
+
+    private void getBucketVersioning(Request request) throws IOException {
+        String versioning = bucket(request.bucketName).versioning;
+        sendXml(request.exchange, 200, "<VersioningConfiguration>" +
+                (versioning == null ? "" : "<Status>" + versioning + "</Status>") +
+                "</VersioningConfiguration>");
+    }
+
+    // ---------------------------------------------------------------- listings
+
+    private void listObjectsV2(Request request) throws IOException {
+        StandInBucket standInBucket = bucket(request.bucketName);
+        String prefix = request.query.getOrDefault("prefix", "");
+        String delimiter = request.query.getOrDefault("delimiter", "");
+        int maxKeys = maxKeys(request);
+        boolean urlEncoding = "url".equals(request.query.get("encoding-type"));
+        String continuationToken = request.query.get("continuation-token");
+        String startAfter = continuationToken != null
+                ? new String(Base64.getUrlDecoder().decode(continuationToken), StandardCharsets.UTF_8)
+                : request.query.getOrDefault("start-after", "");
+
+        StringBuilder contents = new StringBuilder();
+        Set<String> commonPrefixes = new LinkedHashSet<>();
+        int count = 0;
+        String last = null;
+        boolean truncated = false;
+        synchronized (standInBucket) {
+            for (Map.Entry<String, Deque<StoredObject>> entry : standInBucket.objects.tailMap(prefix, true).entrySet()) {
+                String key = entry.getKey();
+                if (!key.startsWith(prefix))
+                    break;
+                if (key.compareTo(startAfter) <= 0 || skippedByCommonPrefix(key, startAfter, delimiter))
+                    continue;
+                StoredObject current = entry.getValue().peekFirst();
+                if (current == null || current.deleteMarker)
+                    continue;
+                String commonPrefix = commonPrefix(key, prefix, delimiter);
+                if (commonPrefix != null && commonPrefixes.contains(commonPrefix))
+                    continue;
+                if (count == maxKeys) {
+                    truncated = true;
+                    break;
+                }
+                count++;
+                if (commonPrefix != null) {
+                    commonPrefixes.add(commonPrefix);
+                    last = commonPrefix;
+                } else {
+                    contents.append("<Contents><Key>").append(encodeKey(key, urlEncoding)).append("</Key>")
+                            .append("<LastModified>").append(current.lastModified).append("</LastModified>")
+                            .append("<ETag>").append(xml(current.eTag)).append("</ETag>")
+                            .append("<Size>").append(current.size).append("</Size>")
+                            .append("<StorageClass>STANDARD</StorageClass></Contents>");
+                    last = key;
+                }
+            }
+        }
+
+        StringBuilder body = new StringBuilder("<ListBucketResult xmlns=\"http://s3.amazonaws.com/doc/2006-03-01/\">")
+                .append("<Name>").append(xml(request.bucketName)).append("</Name>")
+                .append("<Prefix>").append(encodeKey(prefix, urlEncoding)).append("</Prefix>")
+                .append("<KeyCount>").append(count).append("</KeyCount>")
+                .append("<MaxKeys>").append(maxKeys).append("</MaxKeys>")
+                .append("<IsTruncated>").append(truncated).append("</IsTruncated>");
+        if (!delimiter.isEmpty())
+            body.append("<Delimiter>").append(encodeKey(delimiter, urlEncoding)).append("</Delimiter>");
+        if (urlEncoding)
+            body.append("<EncodingType>url</EncodingType>");
+        if (continuationToken != null)
+            body.append("<ContinuationToken>").append(continuationToken).append("</ContinuationToken>");
+        if (truncated)
+            body.append("<NextContinuationToken>")
+                    .append(Base64.getUrlEncoder().encodeToString(last.getBytes(StandardCharsets.UTF_8)))
+                    .append("</NextContinuationToken>");
+        body.append(contents);
+        commonPrefixes.forEach(commonPrefix -> body.append("<CommonPrefixes><Prefix>")
+                .append(encodeKey(commonPrefix, urlEncoding)).append("</Prefix></CommonPrefixes>"));
+        sendXml(request.exchange, 200, body.append("</ListBucketResult>").toString());
+    }
+
+    private void listObjectVersions(Request request) throws IOException {
+        StandInBucket standInBucket = bucket(request.bucketName);
+        String prefix = request.query.getOrDefault("prefix", "");
+        String delimiter = request.query.getOrDefault("delimiter", "");
+        int maxKeys = maxKeys(request);
+        boolean urlEncoding = "url".equals(request.query.get("encoding-type"));
+        String keyMarker = request.query.getOrDefault("key-marker", "");
+        String versionIdMarker = request.query.getOrDefault("version-id-marker", "");
+
+        StringBuilder versions = new StringBuilder();
+        Set<String> commonPrefixes = new LinkedHashSet<>();
+        int count = 0;
+        String nextKeyMarker = null;
+        String nextVersionIdMarker = null;
+        boolean truncated = false;
+        synchronized (standInBucket) {
+            listing:
+            for (Map.Entry<String, Deque<StoredObject>> entry : standInBucket.objects.tailMap(prefix, true).entrySet()) {
+                String key = entry.getKey();
+                if (!key.startsWith(prefix))
+                    break;
+                int keyOrder = key.compareTo(keyMarker);
+                if (keyOrder < 0 || (keyOrder == 0 && versionIdMarker.isEmpty())
+                        || skippedByCommonPrefix(key, keyMarker, delimiter))
+                    continue;
+                String commonPrefix = commonPrefix(key, prefix, delimiter);
+                if (commonPrefix != null) {
+                    if (commonPrefixes.contains(commonPrefix))
+                        continue;
+                    if (count == maxKeys) {
+                        truncated = true;
+                        break;
+                    }
+                    count++;
+                    commonPrefixes.add(commonPrefix);
+                    nextKeyMarker = commonPrefix;
+                    nextVersionIdMarker = null;
+                    continue;
+                }
+                // versions are kept newest first, the marker version itself was returned by the previous page
+                boolean afterMarker = keyOrder > 0;
+                boolean latest = true;
+                for (StoredObject version : entry.getValue()) {
+                    boolean isLatest = latest;
+                    latest = false;
+                    if (!afterMarker) {
+                        afterMarker = version.versionId.equals(versionIdMarker);
+                        continue;
+                    }
+                    if (count == maxKeys) {
+                        truncated = true;
+                        break listing;
+                    }
+                    count++;
+                    String element = version.deleteMarker ? "DeleteMarker" : "Version";
+                    versions.append('<').append(element).append('>')
+                            .append("<Key>").append(encodeKey(key, urlEncoding)).append("</Key>")
+                            .append("<VersionId>").append(version.versionId).append("</VersionId>")
+                            .append("<IsLatest>").append(isLatest).append("</IsLatest>")
+                            .append("<LastModified>").append(version.lastModified).append("</LastModified>");
+                    if (!version.deleteMarker)
+                        versions.append("<ETag>").append(xml(version.eTag)).append("</ETag>")
+                                .append("<Size>").append(version.size).append("</Size>")
+                                .append("<StorageClass>STANDARD</StorageClass>");
+                    versions.append("</").append(element).append('>');
+                    nextKeyMarker = key;
+                    nextVersionIdMarker = version.versionId;
+                }
+            }
+        }
+
+        StringBuilder body = new StringBuilder("<ListVersionsResult xmlns=\"http://s3.amazonaws.com/doc/2006-03-01/\">")
+                .append("<Name>").append(xml(request.bucketName)).append("</Name>")
+                .append("<Prefix>").append(encodeKey(prefix, urlEncoding)).append("</Prefix>")
+                .append("<KeyMarker>").append(encodeKey(keyMarker, urlEncoding)).append("</KeyMarker>")
+                .append("<VersionIdMarker>").append(xml(versionIdMarker)).append("</VersionIdMarker>")
+                .append("<MaxKeys>").append(maxKeys).append("</MaxKeys>")
+                .append("<IsTruncated>").append(truncated).append("</IsTruncated>");
+        if (!delimiter.isEmpty())
+            body.append("<Delimiter>").append(encodeKey(delimiter, urlEncoding)).append("</Delimiter>");
+        if (urlEncoding)
+            body.append("<EncodingType>url</EncodingType>");
+        if (truncated) {
+            body.append("<NextKeyMarker>").append(encodeKey(nextKeyMarker, urlEncoding)).append("</NextKeyMarker>");
+            if (nextVersionIdMarker != null)
+                body.append("<NextVersionIdMarker>").append(nextVersionIdMarker).append("</NextVersionIdMarker>");
+        }
+        body.append(versions);
+        commonPrefixes.forEach(commonPrefix -> body.append("<CommonPrefixes><Prefix>")
+                .append(encodeKey(commonPrefix, urlEncoding)).append("</Prefix></CommonPrefixes>"));
+        sendXml(request.exchange, 200, body.append("</ListVersionsResult>").toString());
+    }
+
+    private static int maxKeys(Request request) {
+        int maxKeys = Integer.parseInt(request.query.getOrDefault("max-keys", "1000"));
+        return Math.max(0, Math.min(maxKeys, 1000));
+    }
+
+    private static String commonPrefix(String key, String prefix, String delimiter) {
+        if (delimiter.isEmpty())
+            return null;
+        int index = key.indexOf(delimiter, prefix.length());
+        return index < 0 ? null : key.substring(0, index + delimiter.length());
+    }
+
+    // a marker which is a common prefix covers every key below it
+    private static boolean skippedByCommonPrefix(String key, String marker, String delimiter) {
+        return !delimiter.isEmpty() && !marker.isEmpty() && marker.endsWith(delimiter) && key.startsWith(marker);
+    }
+
+    private static String encodeKey(String key, boolean urlEncoding) {
+        return urlEncoding ? URLEncoder.encode(key, StandardCharsets.UTF_8).replace("+", "%20") : xml(key);
+    }
+
+    // ---------------------------------------------------------------- objects
+
+    private void putObject(Request request) throws IOException {
+        StandInBucket standInBucket = bucket(request.bucketName);
+        Headers requestHeaders = request.exchange.getRequestHeaders();
+        StoredBody storedBody = storeBody(request, false);
+        StoredObject storedObject = new StoredObject(request.key, storedBody.path, storedBody.size,
+                quote(hex(storedBody.md5)), userMetadata(requestHeaders), contentType(request));
+        storedObject.checksumCrc32c = storedBody.crc32c;
+        String tagging = requestHeaders.getFirst("x-amz-tagging");
+        if (tagging != null)
+            storedObject.tags = parseTaggingHeader(tagging);
+        String versionId = standInBucket.put(storedObject);
+        Headers responseHeaders = request.exchange.getResponseHeaders();
+        responseHeaders.set("ETag", storedObject.eTag);
+        if (storedObject.checksumCrc32c != null)
+            responseHeaders.set("x-amz-checksum-crc32c", storedObject.checksumCrc32c);
+        if (!NULL_VERSION.equals(versionId))
+            responseHeaders.set("x-amz-version-id", versionId);
+        sendEmpty(request.exchange, 200);
+    }
+
+    private void getObject(Request request, boolean headOnly) throws IOException {
+        StandInBucket standInBucket = bucket(request.bucketName);
+        String versionId = request.query.get("versionId");
+        StoredObject storedObject;
+        FileChannel fileChannel = null;
+        // open under the bucket lock, a concurrent overwrite may delete the file right after
+        synchronized (standInBucket) {
+            storedObject = standInBucket.find(request.key, versionId);
+            if (storedObject != null && !storedObject.deleteMarker && !headOnly)
+                fileChannel = FileChannel.open(storedObject.path);
+        }
+        Headers responseHeaders = request.exchange.getResponseHeaders();
+        if (storedObject == null)
+            throw new S3Error(404, versionId == null ? "NoSuchKey" : "NoSuchVersion", "The specified key does not exist.");
+        if (storedObject.deleteMarker) {
+            responseHeaders.set("x-amz-delete-marker", "true");
+            responseHeaders.set("x-amz-version-id", storedObject.versionId);
+            if (versionId != null)
+                throw new S3Error(405, "MethodNotAllowed", "The specified method is not allowed against this resource.");
+            throw new S3Error(404, "NoSuchKey", "The specified key does not exist.");
+        }
+
+        try (FileChannel body = fileChannel) {
+            Headers requestHeaders = request.exchange.getRequestHeaders();
+            String ifMatch = requestHeaders.getFirst("If-Match");
+            if (ifMatch != null && !ifMatch.equals(storedObject.eTag) && !ifMatch.equals("*"))
+                throw new S3Error(412, "PreconditionFailed", "At least one of the pre-conditions you specified did not hold");
+            String ifNoneMatch = requestHeaders.getFirst("If-None-Match");
+            responseHeaders.set("ETag", storedObject.eTag);
+            responseHeaders.set("Last-Modified", HTTP_DATE.format(storedObject.lastModified));
+            if (!NULL_VERSION.equals(storedObject.versionId))
+                responseHeaders.set("x-amz-version-id", storedObject.versionId);
+            if (ifNoneMatch != null && (ifNoneMatch.equals(storedObject.eTag) || ifNoneMatch.equals("*"))) {
+                sendHeaders(request.exchange, 304, -1);
+                return;
+            }
+
+            responseHeaders.set("Content-Type", storedObject.contentType);
+            responseHeaders.set("Accept-Ranges", "bytes");
+            if (!storedObject.tags.isEmpty())
+                responseHeaders.set("x-amz-tagging-count", String.valueOf(storedObject.tags.size()));
+            storedObject.metadata.forEach((name, value) -> responseHeaders.set("x-amz-meta-" + name, value));
+
+            long start = 0;
+            long end = storedObject.size - 1;
+            int status = 200;
+            String range = requestHeaders.getFirst("Range");
+            if (range != null && storedObject.size > 0) {
+                Matcher matcher = RANGE.matcher(range);
+                if (!matcher.matches())
+                    throw new S3Error(416, "InvalidRange", "The requested range is not satisfiable");
+                if (matcher.group(1).isEmpty()) {
+                    start = Math.max(0, storedObject.size - Long.parseLong(matcher.group(2)));
+                } else {
+                    start = Long.parseLong(matcher.group(1));
+                    if (!matcher.group(2).isEmpty())
+                        end = Math.min(end, Long.parseLong(matcher.group(2)));
+                }
+                if (start > end || start >= storedObject.size)
+                    throw new S3Error(416, "InvalidRange", "The requested range is not satisfiable");
+                status = 206;
+                responseHeaders.set("Content-Range", "bytes " + start + "-" + end + "/" + storedObject.size);
+            }
+            // like S3, the checksum is only sent for the whole object
+            if (status == 200 && storedObject.checksumCrc32c != null
+                    && "ENABLED".equals(requestHeaders.getFirst("x-amz-checksum-mode")))
+                responseHeaders.set("x-amz-checksum-crc32c", storedObject.checksumCrc32c);
+            long length = end - start + 1;
+            responseHeaders.set("Content-Length", String.valueOf(length));
+            if (headOnly || length == 0) {
+                sendHeaders(request.exchange, status, -1);
+                return;
+            }
+            sendHeaders(request.exchange, status, length);
+            copy(Channels.newInputStream(body.position(start)), request.exchange.getResponseBody(), length);
+        }
+    }
+
+    private void getObjectAttributes(Request request) throws IOException {
+        StoredObject storedObject = existingVersion(request);
+        Headers requestHeaders = request.exchange.getRequestHeaders();
+        Set<String> attributes = new HashSet<>();
+        for (String attribute : requestHeaders.getOrDefault("x-amz-object-attributes", List.of()))
+            for (String name : attribute.split(","))
+                attributes.add(name.trim());
+        StringBuilder body = new StringBuilder("<GetObjectAttributesResponse>");
+        if (attributes.contains("ETag"))
+            body.append("<ETag>").append(xml(storedObject.eTag.replace("\"", ""))).append("</ETag>");
+        if (attributes.contains("Checksum") && storedObject.checksumCrc32c != null)
+            body.append("<Checksum><ChecksumCRC32C>").append(storedObject.checksumCrc32c).append("</ChecksumCRC32C></Checksum>");
+        if (attributes.contains("ObjectParts") && !storedObject.parts.isEmpty()) {
+            String maxPartsHeader = requestHeaders.getFirst("x-amz-max-parts");
+            String markerHeader = requestHeaders.getFirst("x-amz-part-number-marker");
+            int maxParts = maxPartsHeader == null ? 1000 : Integer.parseInt(maxPartsHeader);
+            int marker = markerHeader == null ? 0 : Integer.parseInt(markerHeader);
+            int last = Math.min(storedObject.parts.size(), marker + maxParts);
+            body.append("<ObjectParts><PartsCount>").append(storedObject.parts.size()).append("</PartsCount>")
+                    .append("<PartNumberMarker>").append(marker).append("</PartNumberMarker>")
+                    .append("<NextPartNumberMarker>").append(last).append("</NextPartNumberMarker>")
+                    .append("<MaxParts>").append(maxParts).append("</MaxParts>")
+                    .append("<IsTruncated>").append(last < storedObject.parts.size()).append("</IsTruncated>");
+            for (int partNumber = marker + 1; partNumber <= last; partNumber++) {
+                StoredPart storedPart = storedObject.parts.get(partNumber - 1);
+                body.append("<Part><PartNumber>").append(partNumber).append("</PartNumber>")
+                        .append("<Size>").append(storedPart.size).append("</Size>");
+                if (storedPart.crc32c != null)
+                    body.append("<ChecksumCRC32C>").append(storedPart.crc32c).append("</ChecksumCRC32C>");
+                body.append("</Part>");
+            }
+            body.append("</ObjectParts>");
+        }
+        if (attributes.contains("ObjectSize"))
+            body.append("<ObjectSize>").append(storedObject.size).append("</ObjectSize>");
+        sendXml(request.exchange, 200, body.append("</GetObjectAttributesResponse>").toString());
+    }
+
+    private void deleteObject(Request request) throws IOException {
+        DeleteResult deleteResult = bucket(request.bucketName).delete(request.key, request.query.get("versionId"));
+        Headers responseHeaders = request.exchange.getResponseHeaders();
+        if (deleteResult.deleteMarker)
+            responseHeaders.set("x-amz-delete-marker", "true");
+        if (deleteResult.versionId != null && !NULL_VERSION.equals(deleteResult.versionId))
+            responseHeaders.set("x-amz-version-id", deleteResult.versionId);
+        sendEmpty(request.exchange, 204);
+    }
+
+    private void deleteObjects(Request request) throws IOException {
+        StandInBucket standInBucket = bucket(request.bucketName);
+        Element delete = parseXml(request.body()).getDocumentElement();
+        boolean quiet = "true".equals(childText(delete, "Quiet"));
+        List<Element> objects = children(delete, "Object");
+        if (objects.size() > 1000)
+            throw new S3Error(400, "MalformedXML", "DeleteObjects accepts at most 1000 keys");
+
+        StringBuilder body = new StringBuilder("<DeleteResult xmlns=\"http://s3.amazonaws.com/doc/2006-03-01/\">");
+        for (Element object : objects) {
+            String key = childText(object, "Key");
+            String versionId = childText(object, "VersionId");
+            try {
+                DeleteResult deleteResult = standInBucket.delete(key, versionId);
+                if (quiet)
+                    continue;
+                body.append("<Deleted><Key>").append(xml(key)).append("</Key>");
+                if (versionId != null)
+                    body.append("<VersionId>").append(xml(versionId)).append("</VersionId>");
+                if (deleteResult.deleteMarker)
+                    body.append("<DeleteMarker>true</DeleteMarker>")
+                            .append("<DeleteMarkerVersionId>").append(deleteResult.versionId).append("</DeleteMarkerVersionId>");
+                body.append("</Deleted>");
+            } catch (S3Error s3Error) {
+                body.append("<Error><Key>").append(xml(String.valueOf(key))).append("</Key>");
+                if (versionId != null)
+                    body.append("<VersionId>").append(xml(versionId)).append("</VersionId>");
+                body.append("<Code>").append(s3Error.code).append("</Code>")
+                        .append("<Message>").append(xml(s3Error.getMessage())).append("</Message></Error>");
+            }
+        }
+        sendXml(request.exchange, 200, body.append("</DeleteResult>").toString());
+    }
+
+    // ---------------------------------------------------------------- tagging
+
+    private void putObjectTagging(Request request) throws IOException {
+        Element tagging = parseXml(request.body()).getDocumentElement();
+        Map<String, String> tags = new LinkedHashMap<>();
+        for (Element tagSet : children(tagging, "TagSet"))
+            for (Element tag : children(tagSet, "Tag"))
+                tags.put(childText(tag, "Key"), Objects.requireNonNullElse(childText(tag, "Value"), ""));
+        if (tags.size() > 10)
+            throw new S3Error(400, "BadRequest", "Object tags cannot be greater than 10");
+        StoredObject storedObject = existingVersion(request);
+        storedObject.tags = Collections.unmodifiableMap(tags);
+        versionHeader(request, storedObject);
+        sendEmpty(request.exchange, 200);
+    }
+
+    private void getObjectTagging(Request request) throws IOException {
+        StoredObject storedObject = existingVersion(request);
+        StringBuilder body = new StringBuilder("<Tagging><TagSet>");
+        storedObject.tags.forEach((key, value) -> body.append("<Tag><Key>").append(xml(key)).append("</Key>")
+                .append("<Value>").append(xml(value)).append("</Value></Tag>"));
+        versionHeader(request, storedObject);
+        sendXml(request.exchange, 200, body.append("</TagSet></Tagging>").toString());
+    }
+
+    private void deleteObjectTagging(Request request) throws IOException {
+        StoredObject storedObject = existingVersion(request);
+        storedObject.tags = Map.of();
+        versionHeader(request, storedObject);
+        sendEmpty(request.exchange, 204);
+    }
+
+    private StoredObject existingVersion(Request request) {
+        StandInBucket standInBucket = bucket(request.bucketName);
+        StoredObject storedObject;
+        synchronized (standInBucket) {
+            storedObject = standInBucket.find(request.key, request.query.get("versionId"));
+        }
+        if (storedObject == null || storedObject.deleteMarker)
+            throw new S3Error(404, "NoSuchKey", "The specified key does not exist.");
+        return storedObject;
+    }
+
+    private static void versionHeader(Request request, StoredObject storedObject) {
+        if (!NULL_VERSION.equals(storedObject.versionId))
+            request.exchange.getResponseHeaders().set("x-amz-version-id", storedObject.versionId);
+    }
+
+    private static Map<String, String> parseTaggingHeader(String tagging) {
+        Map<String, String> tags = new LinkedHashMap<>();
+        for (String tag : tagging.split("&")) {
+            if (tag.isEmpty())
+                continue;
+            int equals = tag.indexOf('=');
+            String key = equals < 0 ? tag : tag.substring(0, equals);
+            String value = equals < 0 ? "" : tag.substring(equals + 1);
+            tags.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return Collections.unmodifiableMap(tags);
+    }
+
+    // ---------------------------------------------------------------- multipart upload
+
+    private void createMultipartUpload(Request request) throws IOException {
+        bucket(request.bucketName);
+        drain(request.exchange);
+        String uploadId = "upload-" + ids.incrementAndGet();
+        Headers requestHeaders = request.exchange.getRequestHeaders();
+        String tagging = requestHeaders.getFirst("x-amz-tagging");
+        String checksumAlgorithm = requestHeaders.getFirst("x-amz-checksum-algorithm");
+        multipartUploads.put(uploadId, new MultipartUpload(request.bucketName, request.key,
+                userMetadata(requestHeaders), contentType(request),
+                tagging == null ? Map.of() : parseTaggingHeader(tagging), checksumAlgorithm));
+        if (checksumAlgorithm != null)
+            request.exchange.getResponseHeaders().set("x-amz-checksum-algorithm", checksumAlgorithm);
+        sendXml(request.exchange, 200, "<InitiateMultipartUploadResult>" +
+                "<Bucket>" + xml(request.bucketName) + "</Bucket>" +
+                "<Key>" + xml(request.key) + "</Key>" +
+                "<UploadId>" + uploadId + "</UploadId>" +
+                "</InitiateMultipartUploadResult>");
+    }
+
+    private void uploadPart(Request request) throws IOException {
+        MultipartUpload multipartUpload = multipartUpload(request);
+        int partNumber = Integer.parseInt(request.query.get("partNumber"));
+        StoredBody storedBody = storeBody(request, "CRC32C".equalsIgnoreCase(multipartUpload.checksumAlgorithm));
+        StoredBody previous = multipartUpload.parts.put(partNumber, storedBody);
+        if (previous != null)
+            Files.deleteIfExists(previous.path);
+        request.exchange.getResponseHeaders().set("ETag", quote(hex(storedBody.md5)));
+        if (storedBody.crc32c != null)
+            request.exchange.getResponseHeaders().set("x-amz-checksum-crc32c", storedBody.crc32c);
+        sendEmpty(request.exchange, 200);
+    }
+
+    private void completeMultipartUpload(Request request) throws IOException {
+        MultipartUpload multipartUpload = multipartUpload(request);
+        List<Integer> partNumbers = new ArrayList<>();
+        for (Element part : children(parseXml(request.body()).getDocumentElement(), "Part")) {
+            int partNumber = Integer.parseInt(childText(part, "PartNumber"));
+            String checksum = childText(part, "ChecksumCRC32C");
+            StoredBody storedPart = multipartUpload.parts.get(partNumber);
+            if (checksum != null && storedPart != null && !checksum.equals(storedPart.crc32c))
+                throw new S3Error(400, "InvalidPart", "checksum of part " + partNumber + " does not match");
+            partNumbers.add(partNumber);
+        }
+        if (partNumbers.isEmpty())
+            throw new S3Error(400, "MalformedXML", "CompleteMultipartUpload lists no parts");
+        boolean crc32c = "CRC32C".equalsIgnoreCase(multipartUpload.checksumAlgorithm);
+        List<StoredPart> storedParts = new ArrayList<>();
+        // a checksum of the part checksums, as S3 computes it
+        CRC32C compositeChecksum = new CRC32C();
+
+        Path objectPath = newStorageFile();
+        MessageDigest eTagDigest = md5();
+        long size = 0;
+        try (OutputStream outputStream = Files.newOutputStream(objectPath)) {
+            for (int partNumber : partNumbers) {
+                StoredBody part = multipartUpload.parts.get(partNumber);
+                if (part == null)
+                    throw new S3Error(400, "InvalidPart", "part " + partNumber + " was not uploaded");
+                Files.copy(part.path, outputStream);
+                eTagDigest.update(part.md5);
+                size += part.size;
+                storedParts.add(new StoredPart(part.size, part.crc32c));
+                if (crc32c)
+                    compositeChecksum.update(Base64.getDecoder().decode(part.crc32c));
+            }
+        }
+        multipartUploads.remove(request.query.get("uploadId"));
+        for (StoredBody part : multipartUpload.parts.values())
+            Files.deleteIfExists(part.path);
+
+        String eTag = quote(hex(eTagDigest.digest()) + "-" + partNumbers.size());
+        StoredObject storedObject = new StoredObject(multipartUpload.key, objectPath, size, eTag,
+                multipartUpload.metadata, multipartUpload.contentType);
+        storedObject.tags = multipartUpload.tags;
+        storedObject.parts = List.copyOf(storedParts);
+        if (crc32c)
+            storedObject.checksumCrc32c = crc32c(compositeChecksum) + "-" + partNumbers.size();
+        String versionId = bucket(multipartUpload.bucketName).put(storedObject);
+        if (!NULL_VERSION.equals(versionId))
+            request.exchange.getResponseHeaders().set("x-amz-version-id", versionId);
+        sendXml(request.exchange, 200, "<CompleteMultipartUploadResult>" +
+                "<Location>" + xml(endpoint() + "/" + multipartUpload.bucketName + "/" + multipartUpload.key) + "</Location>" +
+                "<Bucket>" + xml(multipartUpload.bucketName) + "</Bucket>" +
+                "<Key>" + xml(multipartUpload.key) + "</Key>" +
+                "<ETag>" + xml(eTag) + "</ETag>" +
+                (storedObject.checksumCrc32c == null ? "" : "<ChecksumCRC32C>" + storedObject.checksumCrc32c + "</ChecksumCRC32C>") +
+                "</CompleteMultipartUploadResult>");
+    }
+
+    private void abortMultipartUpload(Request request) throws IOException {
+        MultipartUpload multipartUpload = multipartUploads.remove(request.query.get("uploadId"));
+        if (multipartUpload == null)
+            throw new S3Error(404, "NoSuchUpload", "The specified upload does not exist");
+        for (StoredBody part : multipartUpload.parts.values())
+            Files.deleteIfExists(part.path);
+        sendEmpty(request.exchange, 204);
+    }
+
+    private MultipartUpload multipartUpload(Request request) {
+        MultipartUpload multipartUpload = multipartUploads.get(request.query.get("uploadId"));
+        if (multipartUpload == null)
+            throw new S3Error(404, "NoSuchUpload", "The specified upload does not exist");
+        return multipartUpload;
+    }
+
+    // ---------------------------------------------------------------- bodies and responses
+
+    /**
+     * store the request body, verifying the CRC32C sent in a header or an aws-chunked trailer.
+     * @param checksumRequired keep the CRC32C even if the client sent none
+     */
+    private StoredBody storeBody(Request request, boolean checksumRequired) throws IOException {
+        Path path = newStorageFile();
+        MessageDigest digest = md5();
+        CRC32C checksum = new CRC32C();
+        InputStream body = request.body();
+        long size;
+        // the request body is left open, sendHeaders reads it to its end
+        try (OutputStream outputStream = new CheckedOutputStream(new DigestOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(path), 64 * 1024), digest), checksum)) {
+            size = body.transferTo(outputStream);
+        }
+        String sentChecksum = request.exchange.getRequestHeaders().getFirst("x-amz-checksum-crc32c");
+        if (sentChecksum == null && body instanceof AwsChunkedInputStream awsChunkedInputStream)
+            sentChecksum = awsChunkedInputStream.trailers().get("x-amz-checksum-crc32c");
+        String crc32c = crc32c(checksum);
+        if (sentChecksum != null && !sentChecksum.equals(crc32c)) {
+            Files.deleteIfExists(path);
+            throw new S3Error(400, "BadDigest", "The CRC32C you specified did not match the calculated checksum.");
+        }
+        String algorithm = request.exchange.getRequestHeaders().getFirst("x-amz-sdk-checksum-algorithm");
+        boolean keepChecksum = checksumRequired || sentChecksum != null || "CRC32C".equalsIgnoreCase(algorithm);
+        return new StoredBody(path, size, digest.digest(), keepChecksum ? crc32c : null);
+    }
+
+    private Path newStorageFile() {
+        return storageDirectory.resolve("body-" + ids.incrementAndGet());
+    }
+
+    private static void copy(InputStream inputStream, OutputStream outputStream, long length) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        long remaining = length;
+        while (remaining > 0) {
+            int read = inputStream.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+            if (read < 0)
+                throw new EOFException("stored body is shorter than expected");
+            outputStream.write(buffer, 0, read);
+            remaining -= read;
+        }
+    }
+
+    private static void drain(HttpExchange exchange) throws IOException {
+        exchange.getRequestBody().transferTo(OutputStream.nullOutputStream());
+    }
+
+    // the JDK server keeps a connection only if the request body was read to its end when the response is sent
+    private static void sendHeaders(HttpExchange exchange, int status, long length) throws IOException {
+        drain(exchange);
+        exchange.sendResponseHeaders(status, length);
+    }
+
+    private static void sendEmpty(HttpExchange exchange, int status) throws IOException {
+        sendHeaders(exchange, status, -1);
+    }
+
+    private static void sendXml(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>" + body).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/xml");
+        sendHeaders(exchange, status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    private static void sendError(HttpExchange exchange, S3Error s3Error) throws IOException {
+        String body = "<Error><Code>" + s3Error.code + "</Code><Message>" + xml(s3Error.getMessage()) + "</Message>" +
+                "<RequestId>stand-in</RequestId></Error>";
+        if ("HEAD".equals(exchange.getRequestMethod()))
+            sendEmpty(exchange, s3Error.status);
+        else
+            sendXml(exchange, s3Error.status, body);
+    }
+
+    private static Map<String, String> userMetadata(Headers headers) {
+        Map<String, String> metadata = new TreeMap<>();
+        headers.forEach((name, values) -> {
+            String lowerCase = name.toLowerCase(Locale.ROOT);
+            if (lowerCase.startsWith("x-amz-meta-") && !values.isEmpty())
+                metadata.put(lowerCase.substring("x-amz-meta-".length()), values.get(0));
+        });
+        return metadata;
+    }
+
+    private static String contentType(Request request) {
+        String contentType = request.exchange.getRequestHeaders().getFirst("Content-Type");
+        return contentType == null ? "binary/octet-stream" : contentType;
+    }
+
+    private static Document parseXml(InputStream inputStream) throws IOException {
+        // the parser closes its input, which must stay open for sendHeaders
+        byte[] xml = inputStream.readAllBytes();
+        try {
+            DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
+            documentBuilderFactory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+            return documentBuilderFactory.newDocumentBuilder().parse(new ByteArrayInputStream(xml));
+        } catch (ParserConfigurationException | SAXException exception) {
+            throw new S3Error(400, "MalformedXML", "The XML you provided was not well-formed");
+        }
+    }
+
+    private static List<Element> children(Element parent, String name) {
+        List<Element> children = new ArrayList<>();
+        for (Node node = parent.getFirstChild(); node != null; node = node.getNextSibling())
+            if (node instanceof Element element && name.equals(element.getTagName()))
+                children.add(element);
+        return children;
+    }
+
+    private static String childText(Element parent, String name) {
+        List<Element> children = children(parent, name);
+        return children.isEmpty() ? null : children.get(0).getTextContent();
+    }
+
+    static String xml(String value) {
+        return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+
+    private static String quote(String value) {
+        return "\"" + value + "\"";
+    }
+
+    private static String hex(byte[] bytes) {
+        return HexFormat.of().formatHex(bytes);
+    }
+
+    // base64 of the big endian checksum, the encoding of the x-amz-checksum-crc32c header
+    private static String crc32c(CRC32C checksum) {
+        return Base64.getEncoder().encodeToString(ByteBuffer.allocate(4).putInt((int) checksum.getValue()).array());
+    }
+
+    private static MessageDigest md5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException noSuchAlgorithmException) {
+            throw new IllegalStateException(noSuchAlgorithmException);
+        }
+    }
+
+    // ---------------------------------------------------------------- model
+
+    /**
+     * Keys in order, each with its versions newest first. Guarded by the bucket's monitor.
+     */
+    private final class StandInBucket
+    {
+        private final TreeMap<String, Deque<StoredObject>> objects = new TreeMap<>();
+        // null until versioning is configured, then Enabled or Suspended
+        private volatile String versioning;
+
+        /**
+         * store a new current version, an unversioned or suspended bucket replaces the "null" version.
+         * @return version id of the stored object
+         */
+        private synchronized String put(StoredObject storedObject) throws IOException {
+            storedObject.versionId = "Enabled".equals(versioning) ? "v" + ids.incrementAndGet() : NULL_VERSION;
+            Deque<StoredObject> versions = objects.computeIfAbsent(storedObject.key, key -> new ArrayDeque<>());
+            if (NULL_VERSION.equals(storedObject.versionId))
+                removeVersion(versions, NULL_VERSION);
+            versions.addFirst(storedObject);
+            return storedObject.versionId;
+        }
+
+        /**
+         * @return the version, the current version (possibly a delete marker) if versionId is null, or null
+         */
+        private StoredObject find(String key, String versionId) {
+            Deque<StoredObject> versions = objects.get(key);
+            if (versions == null)
+                return null;
+            if (versionId == null)
+                return versions.peekFirst();
+            for (StoredObject version : versions)
+                if (version.versionId.equals(versionId))
+                    return version;
+            return null;
+        }
+
+        private synchronized DeleteResult delete(String key, String versionId) throws IOException {
+            if (key == null || key.isEmpty())
+                throw new S3Error(400, "InvalidArgument", "key must not be empty");
+            Deque<StoredObject> versions = objects.get(key);
+            if (versionId != null) {
+                StoredObject removed = versions == null ? null : removeVersion(versions, versionId);
+                if (versions != null && versions.isEmpty())
+                    objects.remove(key);
+                return new DeleteResult(versionId, removed != null && removed.deleteMarker);
+            }
+            if (versioning == null) {
+                if (versions != null) {
+                    removeVersion(versions, NULL_VERSION);
+                    objects.remove(key);
+                }
+                return new DeleteResult(null, false);
+            }
+            // versioned bucket: deleting without a version id adds a delete marker
+            StoredObject deleteMarker = StoredObject.deleteMarker(key);
+            put(deleteMarker);
+            return new DeleteResult(deleteMarker.versionId, true);
+        }
+
+        private StoredObject removeVersion(Deque<StoredObject> versions, String versionId) throws IOException {
+            for (Iterator<StoredObject> iterator = versions.iterator(); iterator.hasNext(); ) {
+                StoredObject version = iterator.next();
+                if (version.versionId.equals(versionId)) {
+                    iterator.remove();
+                    if (version.path != null)
+                        Files.deleteIfExists(version.path);
+                    return version;
+                }
+            }
+            return null;
+        }
+    }
+
+    private static final class StoredObject
+    {
+        private final String key;
+        private final Path path;
+        private final long size;
+        private final String eTag;
+        private final Instant lastModified = Instant.now();
+        private final Map<String, String> metadata;
+        private final String contentType;
+        private final boolean deleteMarker;
+        private String versionId;
+        private volatile Map<String, String> tags = Map.of();
+        // base64 CRC32C, of the part checksums followed by -partCount for multipart objects, null if none was sent
+        private volatile String checksumCrc32c;
+        private volatile List<StoredPart> parts = List.of();
+
+        private StoredObject(String key, Path path, long size, String eTag, Map<String, String> metadata,
+                             String contentType) {
+            this(key, path, size, eTag, metadata, contentType, false);
+        }
+
+        private StoredObject(String key, Path path, long size, String eTag, Map<String, String> metadata,
+                             String contentType, boolean deleteMarker) {
+            this.key = key;
+            this.path = path;
+            this.size = size;
+            this.eTag = eTag;
+            this.metadata = metadata;
+            this.contentType = contentType;
+            this.deleteMarker = deleteMarker;
+        }
+
+        private static StoredObject deleteMarker(String key) {
+            return new StoredObject(key, null, 0, null, Map.of(), null, true);
+        }
+    }
+
+    private record DeleteResult(String versionId, boolean deleteMarker) {
+    }
+
+    private record StoredBody(Path path, long size, byte[] md5, String crc32c) {
+    }
+
+    private record StoredPart(long size, String crc32c) {
+    }
+
+    private static final class MultipartUpload
+    {
+        private final String bucketName;
+        private final String key;
+        private final Map<String, String> metadata;
+        private final String contentType;
+        private final Map<String, String> tags;
+        private final String checksumAlgorithm;
+        private final Map<Integer, StoredBody> parts = new ConcurrentHashMap<>();
+
+        private MultipartUpload(String bucketName, String key, Map<String, String> metadata, String contentType,
+                                Map<String, String> tags, String checksumAlgorithm) {
+            this.bucketName = bucketName;
+            this.key = key;
+            this.metadata = metadata;
+            this.contentType = contentType;
+            this.tags = tags;
+            this.checksumAlgorithm = checksumAlgorithm;
+        }
+    }
+
+    private static final class S3Error extends RuntimeException
+    {
+        private final int status;
+        private final String code;
+
+        private S3Error(int status, String code, String message) {
+            super(message);
+            this.status = status;
+            this.code = code;
+        }
+    }
+
+    /**
+     * Shared pacing of one direction: every chunk reserves its slot on a virtual timeline and waits until the slot ends,
+     * so all connections together never exceed bytesPerSecond.
+     */
+    private static final class BandwidthLimiter
+    {
+        private static final int CHUNK = 16 * 1024;
+
+        private volatile long bytesPerSecond;
+        private long nextFreeNanos;
+
+        private void setBytesPerSecond(long bytesPerSecond) {
+            if (bytesPerSecond < 0)
+                throw new IllegalArgumentException("bytesPerSecond must not be negative");
+            this.bytesPerSecond = bytesPerSecond;
+        }
+
+        private void acquire(int bytes) {
+            long rate = bytesPerSecond;
+            if (rate == 0 || bytes <= 0)
+                return;
+            long slotEnd;
+            synchronized (this) {
+                long now = System.nanoTime();
+                if (nextFreeNanos - now < 0)
+                    nextFreeNanos = now;
+                nextFreeNanos += bytes * 1_000_000_000L / rate;
+                slotEnd = nextFreeNanos;
+            }
+            long waitNanos;
+            while ((waitNanos = slotEnd - System.nanoTime()) > 0)
+                LockSupport.parkNanos(waitNanos);
+        }
+
+        private InputStream limit(InputStream inputStream) {
+            return new FilterInputStream(inputStream)
+            {
+                @Override
+                public int read() throws IOException {
+                    int read = super.read();
+                    if (read >= 0)
+                        acquire(1);
+                    return read;
+                }
+
+                @Override
+                public int read(byte[] bytes, int offset, int length) throws IOException {
+                    int read = super.read(bytes, offset, bytesPerSecond == 0 ? length : Math.min(length, CHUNK));
+                    acquire(read);
+                    return read;
+                }
+            };
+        }
+
+        private OutputStream limit(OutputStream outputStream) {
+            return new FilterOutputStream(outputStream)
+            {
+                @Override
+                public void write(int b) throws IOException {
+                    acquire(1);
+                    out.write(b);
+                }
+
+                @Override
+                public void write(byte[] bytes, int offset, int length) throws IOException {
+                    if (bytesPerSecond == 0) {
+                        out.write(bytes, offset, length);
+                        return;
+                    }
+                    while (length > 0) {
+                        int chunk = Math.min(length, CHUNK);
+                        acquire(chunk);
+                        out.write(bytes, offset, chunk);
+                        offset += chunk;
+                        length -= chunk;
+                    }
+                }
+            };
+        }
+    }
+
+    /**
+     * path style request: /bucket/key?query
+     */
+    private static final class Request
+    {
+        private final HttpExchange exchange;
+        private final String bucketName;
+        private final String key;
+        private final Map<String, String> query;
+
+        private Request(HttpExchange exchange, String bucketName, String key, Map<String, String> query) {
+            this.exchange = exchange;
+            this.bucketName = bucketName;
+            this.key = key;
+            this.query = query;
+        }
+
+        private static Request of(HttpExchange exchange) {
+            String rawPath = exchange.getRequestURI().getRawPath();
+            String path = rawPath.startsWith("/") ? rawPath.substring(1) : rawPath;
+            int slash = path.indexOf('/');
+            String bucketName = decode(slash < 0 ? path : path.substring(0, slash));
+            String key = slash < 0 ? "" : decode(path.substring(slash + 1));
+
+            Map<String, String> query = new HashMap<>();
+            String rawQuery = exchange.getRequestURI().getRawQuery();
+            if (rawQuery != null && !rawQuery.isEmpty()) {
+                for (String parameter : rawQuery.split("&")) {
+                    int equals = parameter.indexOf('=');
+                    if (equals < 0)
+                        query.put(decode(parameter), "");
+                    else
+                        query.put(decode(parameter.substring(0, equals)), decode(parameter.substring(equals + 1)));
+                }
+            }
+            return new Request(exchange, bucketName, key, query);
+        }
+
+        /**
+         * @return request body with aws-chunked framing removed
+         */
+        private InputStream body() {
+            Headers headers = exchange.getRequestHeaders();
+            String contentSha256 = headers.getFirst("x-amz-content-sha256");
+            String contentEncoding = headers.getFirst("Content-Encoding");
+            boolean awsChunked = (contentSha256 != null && contentSha256.startsWith("STREAMING-")) ||
+                    (contentEncoding != null && contentEncoding.contains("aws-chunked"));
+            InputStream requestBody = exchange.getRequestBody();
+            return awsChunked ? new AwsChunkedInputStream(requestBody) : requestBody;
+        }
+
+        private static String decode(String value) {
+            // keys are percent encoded, a literal + is not a space in a path
+            return URLDecoder.decode(value.replace("+", "%2B"), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Decodes the aws-chunked body framing: "hex-size[;chunk-signature=...]\r\n data \r\n" ... "0\r\n[trailers]\r\n".
+     */
+    static final class AwsChunkedInputStream extends InputStream
+    {
+        private final InputStream inputStream;
+        private final Map<String, String> trailers = new HashMap<>();
+        private long chunkRemaining;
+        private boolean finished;
+
+        AwsChunkedInputStream(InputStream inputStream) {
+            this.inputStream = new BufferedInputStream(inputStream, 64 * 1024);
+        }
+
+        Map<String, String> trailers() {
+            return trailers;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (length == 0)
+                return 0;
+            if (chunkRemaining == 0 && !nextChunk())
+                return -1;
+            int read = inputStream.read(bytes, offset, (int) Math.min(length, chunkRemaining));
+            if (read < 0)
+                throw new EOFException("aws-chunked body ended inside a chunk");
+            chunkRemaining -= read;
+            if (chunkRemaining == 0)
+                readLine(); // CRLF after the chunk data
+            return read;
+        }
+
+        private boolean nextChunk() throws IOException {
+            if (finished)
+                return false;
+            String header = readLine();
+            int semicolon = header.indexOf(';');
+            long size = Long.parseLong((semicolon < 0 ? header : header.substring(0, semicolon)).trim(), 16);
+            if (size > 0) {
+                chunkRemaining = size;
+                return true;
+            }
+            finished = true;
+            String trailer;
+            while (!(trailer = readLine()).isEmpty()) {
+                int colon = trailer.indexOf(':');
+                if (colon > 0)
+                    trailers.put(trailer.substring(0, colon).trim().toLowerCase(Locale.ROOT), trailer.substring(colon + 1).trim());
+            }
+            return false;
+        }
+
+        private String readLine() throws IOException {
+            StringBuilder line = new StringBuilder();
+            int b;
+            while ((b = inputStream.read()) >= 0) {
+                if (b == '\n')
+                    break;
+                if (b != '\r')
+                    line.append((char) b);
+            }
+            return line.toString();
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package in.learnjavaskills.springcloudawss3.standin;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.junit.jupiter.api.io.TempDir;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.core.ResponseBytes;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.*;
+import software.amazon.awssdk.transfer.s3.S3TransferManager;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class S3StandInServerTest
+{
+    private static final String BUCKET = "stand-in-bucket";
+
+    @RegisterExtension
+    final S3StandInExtension standIn = new S3StandInExtension();
+
+    private S3Client s3Client;
+
+    @BeforeEach
+    void start() throws Exception {
+        s3Client = standIn.s3Client();
+        s3Client.createBucket(builder -> builder.bucket(BUCKET));
+    }
+
+    @Test
+    void putGetAndHead() {
+        PutObjectResponse putObjectResponse = s3Client.putObject(builder -> builder.bucket(BUCKET).key("folder/a b+c.txt")
+                .metadata(Map.of("author", "learnjavaskills.in")), RequestBody.fromString("hello world"));
+
+        ResponseBytes<GetObjectResponse> objectBytes = s3Client.getObjectAsBytes(builder -> builder.bucket(BUCKET).key("folder/a b+c.txt"));
+        assertEquals("hello world", objectBytes.asUtf8String());
+        assertEquals(putObjectResponse.eTag(), objectBytes.response().eTag());
+        assertEquals("learnjavaskills.in", objectBytes.response().metadata().get("author"));
+
+        HeadObjectResponse headObjectResponse = s3Client.headObject(builder -> builder.bucket(BUCKET).key("folder/a b+c.txt"));
+        assertEquals(11, headObjectResponse.contentLength());
+
+        assertThrows(NoSuchKeyException.class, () -> s3Client.getObject(builder -> builder.bucket(BUCKET).key("missing")));
+        assertThrows(NoSuchBucketException.class, () -> s3Client.headBucket(builder -> builder.bucket("missing")));
+    }
+
+    @Test
+    void rangedAndConditionalGets() {
+        String eTag = s3Client.putObject(builder -> builder.bucket(BUCKET).key("digits"), RequestBody.fromString("0123456789")).eTag();
+
+        ResponseBytes<GetObjectResponse> middle = s3Client.getObjectAsBytes(builder -> builder.bucket(BUCKET).key("digits").range("bytes=2-5"));
+        assertEquals("2345", middle.asUtf8String());
+        assertEquals("bytes 2-5/10", middle.response().contentRange());
+
+        assertEquals("789", s3Client.getObjectAsBytes(builder -> builder.bucket(BUCKET).key("digits").range("bytes=-3")).asUtf8String());
+        assertEquals("89", s3Client.getObjectAsBytes(builder -> builder.bucket(BUCKET).key("digits").range("bytes=8-")).asUtf8String());
+        assertEquals("0123456789", s3Client.getObjectAsBytes(builder -> builder.bucket(BUCKET).key("digits").ifMatch(eTag)).asUtf8String());
+
+        S3Exception preconditionFailed = assertThrows(S3Exception.class,
+                () -> s3Client.getObject(builder -> builder.bucket(BUCKET).key("digits").ifMatch("\"other\"")));
+        assertEquals(412, preconditionFailed.statusCode());
+        S3Exception notModified = assertThrows(S3Exception.class,
+                () -> s3Client.getObject(builder -> builder.bucket(BUCKET).key("digits").ifNoneMatch(eTag)));
+        assertEquals(304, notModified.statusCode());
+    }
+
+    @Test
+    void multipartUpload() {
+        byte[] part1 = new byte[5 * 1024 * 1024];
+        byte[] part2 = "tail".getBytes(StandardCharsets.UTF_8);
+        new Random(7).nextBytes(part1);
+
+        String uploadId = s3Client.createMultipartUpload(builder -> builder.bucket(BUCKET).key("large")).uploadId();
+        String eTag1 = s3Client.uploadPart(builder -> builder.bucket(BUCKET).key("large").uploadId(uploadId).partNumber(1),
+                RequestBody.fromBytes(part1)).eTag();
+        String eTag2 = s3Client.uploadPart(builder -> builder.bucket(BUCKET).key("large").uploadId(uploadId).partNumber(2),
+                RequestBody.fromBytes(part2)).eTag();
+        CompleteMultipartUploadResponse completeMultipartUploadResponse = s3Client.completeMultipartUpload(builder -> builder
+                .bucket(BUCKET).key("large").uploadId(uploadId)
+                .multipartUpload(CompletedMultipartUpload.builder().parts(
+                        CompletedPart.builder().partNumber(1).eTag(eTag1).build(),
+                        CompletedPart.builder().partNumber(2).eTag(eTag2).build()).build()));
+        assertTrue(completeMultipartUploadResponse.eTag().endsWith("-2\""));
+
+        byte[] stored = s3Client.getObjectAsBytes(builder -> builder.bucket(BUCKET).key("large")).asByteArray();
+        assertEquals(part1.length + part2.length, stored.length);
+        assertArrayEquals(part1, Arrays.copyOf(stored, part1.length));
+        assertEquals("tail", new String(stored, part1.length, part2.length, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void transferManagerRoundTrip(@TempDir Path tempDir) throws Exception {
+        byte[] content = new byte[20 * 1024 * 1024];
+        new Random(11).nextBytes(content);
+        Path source = Files.write(tempDir.resolve("source.bin"), content);
+        Path destination = tempDir.resolve("destination.bin");
+
+        try (S3AsyncClient s3AsyncClient = standIn.server().newS3CrtAsyncClient();
+             S3TransferManager s3TransferManager = S3TransferManager.builder().s3Client(s3AsyncClient).build()) {
+            s3TransferManager.uploadFile(builder -> builder.putObjectRequest(request -> request.bucket(BUCKET).key("crt"))
+                    .source(source)).completionFuture().join();
+            s3TransferManager.downloadFile(builder -> builder.getObjectRequest(request -> request.bucket(BUCKET).key("crt"))
+                    .destination(destination)).completionFuture().join();
+        }
+        assertArrayEquals(content, Files.readAllBytes(destination));
+    }
+
+    @Test
+    void listObjectsV2WithPagesAndDelimiter() {
+        IntStream.range(0, 25).forEach(i -> s3Client.putObject(builder -> builder.bucket(BUCKET).key("photos/" + i + ".jpg"),
+                RequestBody.fromString("photo " + i)));
+        s3Client.putObject(builder -> builder.bucket(BUCKET).key("photos/2024/a.jpg"), RequestBody.fromString("a"));
+        s3Client.putObject(builder -> builder.bucket(BUCKET).key("readme.txt"), RequestBody.fromString("readme"));
+
+        List<String> keys = s3Client.listObjectsV2Paginator(builder -> builder.bucket(BUCKET).prefix("photos/").maxKeys(7))
+                .contents().stream().map(S3Object::key).toList();
+        assertEquals(26, keys.size());
+        assertEquals(keys.stream().sorted().toList(), keys);
+
+        ListObjectsV2Response topLevel = s3Client.listObjectsV2(builder -> builder.bucket(BUCKET).delimiter("/"));
+        assertEquals(List.of("readme.txt"), topLevel.contents().stream().map(S3Object::key).toList());
+        assertEquals(List.of("photos/"), topLevel.commonPrefixes().stream().map(CommonPrefix::prefix).toList());
+    }
+
+    @Test
+    void versionsDeleteMarkersAndDeleteObjects() {
+        s3Client.putBucketVersioning(builder -> builder.bucket(BUCKET)
+                .versioningConfiguration(configuration -> configuration.status(BucketVersioningStatus.ENABLED)));
+        String firstVersion = s3Client.putObject(builder -> builder.bucket(BUCKET).key("report.csv"), RequestBody.fromString("v1")).versionId();
+        s3Client.putObject(builder -> builder.bucket(BUCKET).key("report.csv"), RequestBody.fromString("v2"));
+        DeleteObjectResponse deleteObjectResponse = s3Client.deleteObject(builder -> builder.bucket(BUCKET).key("report.csv"));
+        assertTrue(deleteObjectResponse.deleteMarker());
+
+        assertThrows(NoSuchKeyException.class, () -> s3Client.getObject(builder -> builder.bucket(BUCKET).key("report.csv")));
+        assertEquals("v1", s3Client.getObjectAsBytes(builder -> builder.bucket(BUCKET).key("report.csv").versionId(firstVersion)).asUtf8String());
+
+        ListObjectVersionsResponse versions = s3Client.listObjectVersions(builder -> builder.bucket(BUCKET));
+        assertEquals(2, versions.versions().size());
+        assertEquals(1, versions.deleteMarkers().size());
+        assertTrue(versions.deleteMarkers().get(0).isLatest());
+        assertTrue(s3Client.listObjectsV2(builder -> builder.bucket(BUCKET)).contents().isEmpty());
+
+        // paging one entry at a time walks all versions of the key
+        long paged = s3Client.listObjectVersionsPaginator(builder -> builder.bucket(BUCKET).maxKeys(1)).stream()
+                .mapToLong(page -> page.versions().size() + page.deleteMarkers().size())
+                .sum();
+        assertEquals(3, paged);
+
+        List<ObjectIdentifier> identifiers = new ArrayList<>();
+        versions.versions().forEach(version -> identifiers.add(ObjectIdentifier.builder().key(version.key()).versionId(version.versionId()).build()));
+        versions.deleteMarkers().forEach(marker -> identifiers.add(ObjectIdentifier.builder().key(marker.key()).versionId(marker.versionId()).build()));
+        DeleteObjectsResponse deleteObjectsResponse = s3Client.deleteObjects(builder -> builder.bucket(BUCKET)
+                .delete(delete -> delete.objects(identifiers).quiet(true)));
+        assertTrue(deleteObjectsResponse.errors().isEmpty());
+        assertTrue(s3Client.listObjectVersions(builder -> builder.bucket(BUCKET)).versions().isEmpty());
+        s3Client.deleteBucket(builder -> builder.bucket(BUCKET));
+        s3Client.createBucket(builder -> builder.bucket(BUCKET));
+    }
+
+    @Test
+    void objectTagging() {
+        s3Client.putObject(builder -> builder.bucket(BUCKET).key("tagged")
+                .tagging(Tagging.builder().tagSet(Tag.builder().key("tag 1").value("tag 1 value").build()).build()),
+                RequestBody.fromString("tagged"));
+        assertEquals(Map.of("tag 1", "tag 1 value"), tags("tagged"));
+
+        s3Client.putObjectTagging(builder -> builder.bucket(BUCKET).key("tagged").tagging(tagging -> tagging.tagSet(
+                Tag.builder().key("tag 3").value("tag 3 value").build(),
+                Tag.builder().key("tag 4").value("a&b<c>").build())));
+        assertEquals(Map.of("tag 3", "tag 3 value", "tag 4", "a&b<c>"), tags("tagged"));
+
+        s3Client.deleteObjectTagging(builder -> builder.bucket(BUCKET).key("tagged"));
+        assertTrue(tags("tagged").isEmpty());
+    }
+
+    @Test
+    void injectedSlowDownLatencyAndBandwidth() {
+        S3Client noRetryClient = S3Client.builder()
+                .endpointOverride(standIn.server().endpoint())
+                .forcePathStyle(true)
+                .region(S3StandInServer.REGION)
+                .credentialsProvider(() -> AwsBasicCredentials.create(S3StandInServer.ACCESS_KEY, S3StandInServer.SECRET_KEY))
+                .overrideConfiguration(configuration -> configuration.retryPolicy(retry -> retry.numRetries(0)))
+                .build();
+        try (noRetryClient) {
+            standIn.server().slowDownNext(1);
+            S3Exception slowDown = assertThrows(S3Exception.class,
+                    () -> noRetryClient.listObjectsV2(builder -> builder.bucket(BUCKET)));
+            assertEquals(503, slowDown.statusCode());
+            assertEquals("SlowDown", slowDown.awsErrorDetails().errorCode());
+            assertEquals(1, standIn.server().slowDownCount());
+
+            // the default client retries SlowDown
+            standIn.server().slowDownNext(1);
+            s3Client.headBucket(builder -> builder.bucket(BUCKET));
+            assertEquals(2, standIn.server().slowDownCount());
+
+            standIn.server().setLatency(Duration.ofMillis(200), Duration.ZERO);
+            long start = System.nanoTime();
+            noRetryClient.headBucket(builder -> builder.bucket(BUCKET));
+            assertTrue(System.nanoTime() - start >= Duration.ofMillis(200).toNanos());
+            standIn.server().setLatency(Duration.ZERO, Duration.ZERO);
+
+            noRetryClient.putObject(builder -> builder.bucket(BUCKET).key("capped"), RequestBody.fromBytes(new byte[512 * 1024]));
+            standIn.server().setBandwidth(1024 * 1024);
+            start = System.nanoTime();
+            assertEquals(512 * 1024, noRetryClient.getObjectAsBytes(builder -> builder.bucket(BUCKET).key("capped")).asByteArray().length);
+            assertTrue(System.nanoTime() - start >= Duration.ofMillis(400).toNanos());
+            standIn.server().setBandwidth(0);
+        }
+    }
+
+    private Map<String, String> tags(String key) {
+        Map<String, String> tags = new HashMap<>();
+        s3Client.getObjectTagging(builder -> builder.bucket(BUCKET).key(key)).tagSet()
+                .forEach(tag -> tags.put(tag.key(), tag.value()));
+        return tags;
+    }
+}
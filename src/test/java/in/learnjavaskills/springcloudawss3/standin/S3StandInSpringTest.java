@@ -0,0 +1,87 @@
+package in.learnjavaskills.springcloudawss3.standin;
+
+import in.learnjavaskills.springcloudawss3.service.Bucket;
+import in.learnjavaskills.springcloudawss3.service.BucketPurgeProgress;
+import in.learnjavaskills.springcloudawss3.service.BucketPurgeReport;
+import in.learnjavaskills.springcloudawss3.service.DownloadObjects;
+import in.learnjavaskills.springcloudawss3.service.UploadObjects;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.BucketVersioningStatus;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The spring cloud aws beans (S3Client, CRT S3AsyncClient, S3TransferManager, S3Template) wired against the stand-in.
+ */
+@SpringBootTest
+class S3StandInSpringTest
+{
+    private static final String BUCKET = "stand-in-spring";
+    private static final S3StandInServer S3_STAND_IN_SERVER = startStandIn();
+
+    @Autowired private UploadObjects uploadObjects;
+    @Autowired private DownloadObjects downloadObjects;
+    @Autowired private Bucket bucket;
+    @Autowired private S3Client s3Client;
+
+    @DynamicPropertySource
+    static void standInProperties(DynamicPropertyRegistry dynamicPropertyRegistry) {
+        S3_STAND_IN_SERVER.springProperties().forEach((name, value) -> dynamicPropertyRegistry.add(name, () -> value));
+    }
+
+    @AfterAll
+    static void stopStandIn() throws IOException {
+        S3_STAND_IN_SERVER.close();
+    }
+
+    @Test
+    void uploadDownloadAndPurge(@TempDir Path tempDir) throws IOException {
+        S3_STAND_IN_SERVER.createBucket(BUCKET);
+        s3Client.putBucketVersioning(builder -> builder.bucket(BUCKET)
+                .versioningConfiguration(configuration -> configuration.status(BucketVersioningStatus.ENABLED)));
+        byte[] content = new byte[12 * 1024 * 1024];
+        new Random(3).nextBytes(content);
+        Path source = Files.write(tempDir.resolve("source.bin"), content);
+
+        uploadObjects.uploadFileUsingS3Client(BUCKET, "s3-client.bin", source.toString());
+        uploadObjects.uploadFileWithTransferManager(BUCKET, "transfer-manager.bin", source.toString());
+        uploadObjects.uploadFileUsingS3Template(BUCKET, "s3-template.bin", source.toString());
+
+        for (String key : List.of("s3-client.bin", "transfer-manager.bin", "s3-template.bin")) {
+            Path viaTransferManager = tempDir.resolve("tm-" + key);
+            downloadObjects.downloadFileUsingS3TransferManager(BUCKET, key, viaTransferManager.toString());
+            assertArrayEquals(content, Files.readAllBytes(viaTransferManager), key);
+            Path viaRangedGets = tempDir.resolve("ranged-" + key);
+            assertTrue(downloadObjects.downloadFileUsingRangedGets(BUCKET, key, viaRangedGets.toString(), 5 * 1024 * 1024, 4));
+            assertArrayEquals(content, Files.readAllBytes(viaRangedGets), key);
+        }
+
+        BucketPurgeReport bucketPurgeReport = bucket.purgeVersionedBucket(BUCKET, List.of(),
+                Bucket.DEFAULT_MAX_CONCURRENT_DELETE_BATCHES, new BucketPurgeProgress());
+        assertTrue(bucketPurgeReport.isComplete());
+        assertEquals(3, bucketPurgeReport.deletedCount());
+        assertTrue(bucket.deleteEmptyBucket(BUCKET));
+    }
+
+    private static S3StandInServer startStandIn() {
+        try {
+            return S3StandInServer.start();
+        } catch (IOException ioException) {
+            throw new UncheckedIOException(ioException);
+        }
+    }
+}